@@ -22,7 +22,7 @@ import boofcv.abst.feature.detect.interest.ConfigGeneralDetector;
 import boofcv.abst.feature.tracker.PointTracker;
 import boofcv.abst.sfm.d2.ImageMotion2D;
 import boofcv.abst.sfm.d2.PlToGrayMotion2D;
-import boofcv.alg.sfm.d2.StitchingFromMotion2D;
+import boofcv.alg.sfm.d2.VideoStabilizationPipeline;
 import boofcv.factory.feature.tracker.FactoryPointTracker;
 import boofcv.factory.sfm.FactoryMotion2D;
 import boofcv.gui.image.ImageGridPanel;
@@ -41,9 +41,11 @@ import georegression.struct.homography.Homography2D_F64;
 import java.awt.image.BufferedImage;
 
 /**
- * Example of how to stabilizing a video sequence using StitchingFromMotion2D.  Video stabilization is almost
- * the same as creating a video mosaic and the code in this example is a tweaked version of the mosaic example.
- * The differences are that the output size is the same as the input image size and that the origin is never changed.
+ * Example of how to stabilize a video sequence using VideoStabilizationPipeline.  Image motion is estimated using
+ * the same algorithms as when creating a video mosaic, but on a down sampled copy of each frame.  The camera's path
+ * is then smoothed by looking a few frames into the future, which removes jitter while following intentional
+ * motion.  Full resolution frames are warped in a background thread and passed to a listener.  The output is
+ * delayed by the smoothing radius, but the delay is fixed, making it suitable for live video.
  *
  * @author Peter Abeles
  */
@@ -69,9 +71,10 @@ public class ExampleVideoStabilization {
 		ImageMotion2D<Planar<GrayF32>,Homography2D_F64> motion2DColor =
 				new PlToGrayMotion2D<>(motion2D, GrayF32.class);
 
-		// This fuses the images together
-		StitchingFromMotion2D<Planar<GrayF32>,Homography2D_F64>
-				stabilize = FactoryMotion2D.createVideoStitch(0.5, motion2DColor,ImageType.pl(3,GrayF32.class));
+		// Motion is estimated at half resolution, the path is smoothed over 10 frames before and after, and
+		// frames are dropped if more than 2 are waiting to be warped
+		final VideoStabilizationPipeline<Planar<GrayF32>,Homography2D_F64> stabilize =
+				FactoryMotion2D.createVideoStabilization(motion2DColor, ImageType.pl(3, GrayF32.class), 2, 10, 2);
 
 		// Load an image sequence
 		MediaManager media = DefaultMediaManager.INSTANCE;
@@ -81,32 +84,44 @@ public class ExampleVideoStabilization {
 
 		Planar<GrayF32> frame = video.next();
 
-		// The output image size is the same as the input image size
-		stabilize.configure(frame.width, frame.height, null);
-		// process the first frame
-		stabilize.process(frame);
-
 		// Create the GUI for displaying the results + input image
-		ImageGridPanel gui = new ImageGridPanel(1,2);
+		final ImageGridPanel gui = new ImageGridPanel(1,2);
 		gui.setImage(0,0,new BufferedImage(frame.width,frame.height,BufferedImage.TYPE_INT_RGB));
 		gui.setImage(0,1,new BufferedImage(frame.width,frame.height,BufferedImage.TYPE_INT_RGB));
 		gui.autoSetPreferredSize();
 
 		ShowImages.showWindow(gui,"Example Stabilization", true);
 
+		// Stabilized frames are passed to this listener in a background thread
+		stabilize.setListener(new VideoStabilizationPipeline.Listener<Planar<GrayF32>>() {
+			@Override
+			public void processedFrame(int frameIndex, Planar<GrayF32> stabilized) {
+				ConvertBufferedImage.convertTo(stabilized, gui.getImage(0, 1),true);
+				gui.repaint();
+			}
+		});
+
 		// process the video sequence one frame at a time
-		while( video.hasNext() ) {
-			if( !stabilize.process(video.next()) )
-				throw new RuntimeException("Don't forget to handle failures!");
+		while( true ) {
+			stabilize.process(frame);
 
-			// display the stabilized image
+			// display the input image
 			ConvertBufferedImage.convertTo(frame,gui.getImage(0, 0),true);
-			ConvertBufferedImage.convertTo(stabilize.getStitchedImage(), gui.getImage(0, 1),true);
-
 			gui.repaint();
 
+			if( !video.hasNext() )
+				break;
+			frame = video.next();
+
 			// throttle the speed just in case it's on a fast computer
 			BoofMiscOps.pause(50);
 		}
+
+		// output the last few frames which are still being smoothed
+		stabilize.finish();
+		stabilize.close();
+
+		System.out.println("Frames in "+stabilize.getFramesIn()+" output "+stabilize.getFramesOutput()+
+				" dropped "+stabilize.getFramesDropped()+" motion faults "+stabilize.getMotionFaults());
 	}
 }
@@ -32,7 +32,7 @@ import georegression.struct.point.Point2D_F64;
 import georegression.struct.point.Point3D_F64;
 import georegression.struct.se.Se3_F64;
 import georegression.transform.se.SePointOps_F64;
-import org.ddogleg.fitting.modelset.ransac.Ransac;
+import org.ddogleg.fitting.modelset.ModelMatcher;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -117,7 +117,7 @@ public class ExamplePnP {
 	public Se3_F64 estimateOutliers( List<Point2D3D> observations ) {
 		// We can no longer trust that each point is a real observation.  Let's use RANSAC to separate the points
 		// You will need to tune the number of iterations and inlier threshold!!!
-		Ransac<Se3_F64,Point2D3D> ransac =
+		ModelMatcher<Se3_F64,Point2D3D> ransac =
 				FactoryMultiViewRobust.pnpRansac(new ConfigPnP(intrinsic),new ConfigRansac(300,1.0));
 
 		// Observations must be in normalized image coordinates!  See javadoc of pnpRansac
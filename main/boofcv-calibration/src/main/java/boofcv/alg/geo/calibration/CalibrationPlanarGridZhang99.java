@@ -48,6 +48,13 @@ import java.util.List;
  * </p>
  *
  * <p>
+ * By default, if the camera model has an analytical Jacobian, non-linear refinement is done with
+ * {@link Zhang99OptimizationSchur}.  It never forms the dense Jacobian, which grows with the square of the number
+ * of views, and processes views concurrently.  If an optimizer is specified or there is no analytical Jacobian then
+ * a general purpose dense optimizer is used instead.
+ * </p>
+ *
+ * <p>
  * [1] Zhengyou Zhang, "Flexible Camera Calibration By Viewing a Plane From Unknown Orientations,",
  * International Conference on Computer Vision (ICCV'99), Corfu, Greece, pages 666-673, September 1999.
  * </p>
@@ -69,6 +76,9 @@ public class CalibrationPlanarGridZhang99 {
 	// optimization algorithm
 	private UnconstrainedLeastSquares optimizer;
 
+	// should views be processed concurrently
+	private boolean concurrent = true;
+
 	// provides information on calibration status
 	private Listener listener;
 
@@ -181,13 +191,6 @@ public class CalibrationPlanarGridZhang99 {
 								   Zhang99AllParam found ,
 								   UnconstrainedLeastSquares optimizer )
 	{
-		if( optimizer == null ) {
-//			optimizer = FactoryOptimization.leastSquaresTrustRegion(1,
-//					RegionStepType.DOG_LEG_FTF,true);
-			optimizer = FactoryOptimization.leastSquaresLM(1e-3,true);
-//			optimizer = FactoryOptimization.leastSquareLevenberg(1e-3);
-		}
-
 		double model[] = new double[ initial.numParameters() ];
 		initial.convertToParam(model);
 
@@ -196,6 +199,21 @@ public class CalibrationPlanarGridZhang99 {
 
 		Zhang99OptimizationJacobian jacobian = initial.getIntrinsic().createJacobian(observations,grid);
 
+		if( optimizer == null && jacobian != null ) {
+			return optimizedParamSchur(observations, func, jacobian, model, found);
+		}
+
+		if( optimizer == null ) {
+//			optimizer = FactoryOptimization.leastSquaresTrustRegion(1,
+//					RegionStepType.DOG_LEG_FTF,true);
+			optimizer = FactoryOptimization.leastSquaresLM(1e-3,true);
+//			optimizer = FactoryOptimization.leastSquareLevenberg(1e-3);
+		}
+
+		func.setConcurrent(concurrent);
+		if( jacobian != null )
+			jacobian.setConcurrent(concurrent);
+
 		optimizer.setFunction(func,jacobian);
 		optimizer.initialize(model,1e-10,1e-25*observations.size());
 
@@ -219,6 +237,31 @@ public class CalibrationPlanarGridZhang99 {
 		return true;
 	}
 
+	/**
+	 * Non-linear refinement which exploits the independence of each view's extrinsic parameters
+	 */
+	private boolean optimizedParamSchur( List<CalibrationObservation> observations ,
+										 Zhang99OptimizationFunction func ,
+										 Zhang99OptimizationJacobian jacobian ,
+										 double model[] ,
+										 Zhang99AllParam found ) {
+		Zhang99OptimizationSchur alg = new Zhang99OptimizationSchur(func, jacobian, observations);
+		alg.setConcurrent(concurrent);
+		alg.initialize(model,1e-10,1e-25*observations.size());
+
+		for( int i = 0; i < 500; i++ ) {
+			if( alg.iterate() ) {
+				break;
+			} else {
+				if( i % 25 == 0 )
+					status("Progress "+(100*i/500.0)+"%");
+			}
+		}
+
+		found.setFromParam(alg.getParameters());
+		return true;
+	}
+
 	/**
 	 * Converts results fond in the linear algorithms into {@link Zhang99AllParam}
 	 */
@@ -273,6 +316,17 @@ public class CalibrationPlanarGridZhang99 {
 		this.optimizer = optimizer;
 	}
 
+	/**
+	 * If true then views are processed in multiple threads during non-linear refinement.  The results are the same.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
 	public Zhang99AllParam getOptimized() {
 		return optimized;
 	}
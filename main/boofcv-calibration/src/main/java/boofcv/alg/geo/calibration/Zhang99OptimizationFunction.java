@@ -18,6 +18,8 @@
 
 package boofcv.alg.geo.calibration;
 
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import georegression.geometry.ConvertRotation3D_F64;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.point.Point3D_F64;
@@ -29,7 +31,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Function for performing non-linear optimization on the Zhang99 calibration parameters.
+ * Function for performing non-linear optimization on the Zhang99 calibration parameters.  Residuals for each
+ * view only depend on the intrinsic parameters and that view's extrinsic parameters, so if concurrent the views are
+ * split across threads.  Each thread uses its own copy of the intrinsic parameters.
  *
  * @author Peter Abeles
  */
@@ -42,6 +46,13 @@ public class Zhang99OptimizationFunction implements FunctionNtoM {
 	// optimization parameters
 	private Zhang99AllParam param;
 
+	// index of the first observed point in each view.  Has one more element than the number of views
+	private int viewPointStart[];
+
+	// should views be processed in multiple threads
+	private boolean concurrent = false;
+	private ViewsTask viewsTask = new ViewsTask();
+
 	// variables for storing intermediate results
 	private Se3_F64 se = new Se3_F64();
 
@@ -73,8 +84,13 @@ public class Zhang99OptimizationFunction implements FunctionNtoM {
 			this.grid.add( new Point3D_F64(p.x,p.y,0) );
 		}
 
+		viewPointStart = new int[ observations.size()+1 ];
+		for( int i = 0; i < observations.size(); i++ ) {
+			viewPointStart[i+1] = viewPointStart[i] + observations.get(i).size();
+		}
+
 		N = param.numParameters();
-		M = CalibrationPlanarGridZhang99.totalPoints(observations)*2;
+		M = viewPointStart[observations.size()]*2;
 	}
 
 	@Override
@@ -95,8 +111,25 @@ public class Zhang99OptimizationFunction implements FunctionNtoM {
 	}
 
 	public void process(Zhang99AllParam param , double []residuals ) {
-		int index = 0;
-		for( int indexView = 0; indexView < param.views.length; indexView++ ) {
+		if( concurrent && BoofConcurrency.isConcurrent() ) {
+			viewsTask.param = param;
+			viewsTask.residuals = residuals;
+			BoofConcurrency.loopBlocks(0, param.views.length, viewsTask);
+			viewsTask.param = null;
+			viewsTask.residuals = null;
+		} else {
+			process(param, param.getIntrinsic(), se, cameraPt, pixelPt, 0, param.views.length, residuals);
+		}
+	}
+
+	/**
+	 * Computes the residuals for a range of views
+	 */
+	private void process( Zhang99AllParam param , Zhang99IntrinsicParam intrinsic ,
+						  Se3_F64 se , Point3D_F64 cameraPt , Point2D_F64 pixelPt ,
+						  int view0 , int view1 , double []residuals ) {
+		int index = viewPointStart[view0]*2;
+		for( int indexView = view0; indexView < view1; indexView++ ) {
 
 			Zhang99AllParam.View v = param.views[indexView];
 
@@ -113,11 +146,40 @@ public class Zhang99OptimizationFunction implements FunctionNtoM {
 				// Put the point in the camera's reference frame
 				SePointOps_F64.transform(se,grid.get(gridIndex), cameraPt);
 
-				param.getIntrinsic().project(cameraPt,pixelPt);
+				intrinsic.project(cameraPt,pixelPt);
 
 				residuals[index++] = pixelPt.x-obs.x;
 				residuals[index++] = pixelPt.y-obs.y;
 			}
 		}
 	}
+
+	/**
+	 * Computes residuals for a block of views using its own copy of the intrinsic parameters
+	 */
+	private class ViewsTask implements IntRangeTask {
+		Zhang99AllParam param;
+		double residuals[];
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			Zhang99IntrinsicParam intrinsic = param.getIntrinsic().createLike();
+			intrinsic.setTo(param.getIntrinsic());
+			intrinsic.forceProjectionUpdate();
+
+			process(param, intrinsic, new Se3_F64(), new Point3D_F64(), new Point2D_F64(),
+					minInclusive, maxExclusive, residuals);
+		}
+	}
+
+	/**
+	 * If true then views are processed in multiple threads.  The output is the same.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
 }
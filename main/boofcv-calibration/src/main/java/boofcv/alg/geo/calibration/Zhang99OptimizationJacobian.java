@@ -20,6 +20,8 @@ package boofcv.alg.geo.calibration;
 
 import boofcv.alg.geo.RodriguesRotationJacobian;
 import boofcv.alg.geo.calibration.pinhole.CalibParamPinholeRadial;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.struct.calib.CameraPinholeRadial;
 import georegression.geometry.ConvertRotation3D_F64;
 import georegression.geometry.GeometryMath_F64;
@@ -46,6 +48,13 @@ import java.util.List;
  * Jacobian.
  * </p>
  *
+ * <p>
+ * Each observation only depends on the intrinsic parameters and the extrinsic parameters of its view.  The
+ * Jacobian can be written as a dense matrix, see {@link #process(double[], double[])}, or only the non-zero
+ * blocks can be written, see {@link #processBlocks}.  The dense matrix grows with the square of the number of
+ * views while the blocks grow linearly.  If concurrent, views are split across threads.
+ * </p>
+ *
  * @author Peter Abeles
  */
 public class Zhang99OptimizationJacobian implements FunctionNtoMxN {
@@ -58,12 +67,20 @@ public class Zhang99OptimizationJacobian implements FunctionNtoMxN {
 
 	// number of functions and parameters being optimized
 	private int numParam, numFuncs;
+	// number of intrinsic parameters
+	private int numIntrinsic;
 
 	// description of the calibration grid
 	private List<Point3D_F64> grid = new ArrayList<>();
 
 	// List of observation sets.  Required so that it knows the total number of observations in each set
 	private List<CalibrationObservation> observationSets;
+	// index of the first observed point in each view.  Has one more element than the number of views
+	private int viewPointStart[];
+
+	// should views be processed in multiple threads
+	private boolean concurrent = false;
+	private ViewsTask viewsTask = new ViewsTask();
 
 	// variables for storing intermediate results
 	private Se3_F64 se = new Se3_F64();
@@ -100,9 +117,29 @@ public class Zhang99OptimizationJacobian implements FunctionNtoMxN {
 			this.grid.add( new Point3D_F64(p.x,p.y,0) );
 		}
 
-		numParam = param.numParameters()+(3+3)*observationSets.size();
+		viewPointStart = new int[ observationSets.size()+1 ];
+		for( int i = 0; i < observationSets.size(); i++ ) {
+			viewPointStart[i+1] = viewPointStart[i] + observationSets.get(i).size();
+		}
+
+		numIntrinsic = param.numParameters();
+		numParam = numIntrinsic+(3+3)*observationSets.size();
 
-		numFuncs = CalibrationPlanarGridZhang99.totalPoints(observationSets)*2;
+		numFuncs = viewPointStart[observationSets.size()]*2;
+	}
+
+	/**
+	 * Creates a copy for use in another thread.  Everything but the work space is shared.
+	 */
+	private Zhang99OptimizationJacobian( Zhang99OptimizationJacobian original ) {
+		this.param = original.param;
+		this.intrinsic = original.intrinsic;
+		this.observationSets = original.observationSets;
+		this.grid = original.grid;
+		this.viewPointStart = original.viewPointStart;
+		this.numIntrinsic = original.numIntrinsic;
+		this.numParam = original.numParam;
+		this.numFuncs = original.numFuncs;
 	}
 
 	@Override
@@ -119,9 +156,55 @@ public class Zhang99OptimizationJacobian implements FunctionNtoMxN {
 	public void process(double[] input, double[] output) {
 		int index = param.setFromParam(input);
 		intrinsic = (CameraPinholeRadial)param.getCameraModel();
-		
-		int indexPoint = 0;
-		for( int indexView = 0; indexView < observationSets.size(); indexView++ ) {
+
+		process(input, index, output, output, true);
+	}
+
+	/**
+	 * Computes only the non-zero blocks in the Jacobian.  For each observation there are two rows, x and y,
+	 * with one block for the intrinsic parameters and one block for the 6 extrinsic parameters of the view
+	 * it belongs to.  Observations are in the same order as the residuals.
+	 *
+	 * @param input Parameters, same format as {@link #process(double[], double[])}.
+	 * @param jacIntrinsic (Output) Row major Jacobian of intrinsic parameters. Must have
+	 *                     {@link #getNumOfOutputsM()}*{@link #getNumOfIntrinsic()} elements.
+	 * @param jacView (Output) Row major Jacobian of extrinsic parameters.  Must have
+	 *                {@link #getNumOfOutputsM()}*6 elements.
+	 */
+	public void processBlocks( double[] input , double[] jacIntrinsic , double[] jacView ) {
+		int index = param.setFromParam(input);
+		intrinsic = (CameraPinholeRadial)param.getCameraModel();
+
+		process(input, index, jacIntrinsic, jacView, false);
+	}
+
+	private void process( double[] input , int indexParam ,
+						  double[] outIntrinsic , double[] outView , boolean dense ) {
+		int numViews = observationSets.size();
+		if( concurrent && BoofConcurrency.isConcurrent() ) {
+			viewsTask.input = input;
+			viewsTask.indexParam = indexParam;
+			viewsTask.outIntrinsic = outIntrinsic;
+			viewsTask.outView = outView;
+			viewsTask.dense = dense;
+			BoofConcurrency.loopBlocks(0, numViews, viewsTask);
+			viewsTask.input = viewsTask.outIntrinsic = viewsTask.outView = null;
+		} else {
+			processViews(input, indexParam, outIntrinsic, outView, dense, 0, numViews);
+		}
+	}
+
+	/**
+	 * Computes the Jacobian for a range of views
+	 *
+	 * @param indexParam index in input of the first view's parameters
+	 */
+	private void processViews( double[] input , int indexParam ,
+							   double[] outIntrinsic , double[] outView , boolean dense ,
+							   int view0 , int view1 ) {
+		int index = indexParam + view0*6;
+		int indexPoint = viewPointStart[view0];
+		for( int indexView = view0; indexView < view1; indexView++ ) {
 			CalibrationObservation set = observationSets.get(indexView);
 
 			// extract rotation and translation parameters
@@ -142,8 +225,13 @@ public class Zhang99OptimizationJacobian implements FunctionNtoMxN {
 				int gridIndex = set.points.get(i).index;
 
 				// index = (function index)*numParam
-				indexJacX = (2*indexPoint     )*numParam;
-				indexJacY = (2*indexPoint + 1 )*numParam;
+				if( dense ) {
+					indexJacX = (2*indexPoint     )*numParam;
+					indexJacY = (2*indexPoint + 1 )*numParam;
+				} else {
+					indexJacX = (2*indexPoint     )*numIntrinsic;
+					indexJacY = (2*indexPoint + 1 )*numIntrinsic;
+				}
 
 				// Put the point in the camera's reference frame
 				SePointOps_F64.transform(se, grid.get(gridIndex), cameraPt);
@@ -156,21 +244,43 @@ public class Zhang99OptimizationJacobian implements FunctionNtoMxN {
 				dnormPt.set(normPt);
 				CalibrationPlanarGridZhang99.applyDistortion(dnormPt, intrinsic.radial, intrinsic.t1, intrinsic.t2);
 
-				calibrationGradient(dnormPt,output);
-				distortGradient(normPt,output);
+				calibrationGradient(dnormPt,outIntrinsic);
+				distortGradient(normPt,outIntrinsic);
 
-				indexJacX += indexView*6;
-				indexJacY += indexView*6;
+				if( dense ) {
+					indexJacX += indexView*6;
+					indexJacY += indexView*6;
+				} else {
+					indexJacX = (2*indexPoint     )*6;
+					indexJacY = (2*indexPoint + 1 )*6;
+				}
 
-				rodriguesGradient(rodJacobian.Rx,grid.get(gridIndex),cameraPt, normPt,output);
-				rodriguesGradient(rodJacobian.Ry,grid.get(gridIndex),cameraPt, normPt,output);
-				rodriguesGradient(rodJacobian.Rz,grid.get(gridIndex),cameraPt, normPt,output);
+				rodriguesGradient(rodJacobian.Rx,grid.get(gridIndex),cameraPt, normPt,outView);
+				rodriguesGradient(rodJacobian.Ry,grid.get(gridIndex),cameraPt, normPt,outView);
+				rodriguesGradient(rodJacobian.Rz,grid.get(gridIndex),cameraPt, normPt,outView);
 
-				translateGradient(cameraPt, normPt,output);
+				translateGradient(cameraPt, normPt,outView);
 			}
 		}
 	}
 
+	/**
+	 * Computes the Jacobian for a block of views using its own work space
+	 */
+	private class ViewsTask implements IntRangeTask {
+		double input[];
+		int indexParam;
+		double outIntrinsic[];
+		double outView[];
+		boolean dense;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			Zhang99OptimizationJacobian worker = new Zhang99OptimizationJacobian(Zhang99OptimizationJacobian.this);
+			worker.processViews(input, indexParam, outIntrinsic, outView, dense, minInclusive, maxExclusive);
+		}
+	}
+
 	/**
 	 * Gradient for calibration matrix
 	 */
@@ -346,4 +456,22 @@ public class Zhang99OptimizationJacobian implements FunctionNtoMxN {
 		output[indexJacX++] = intrinsic.fx*xdot + intrinsic.skew*ydot;
 		output[indexJacY++] = intrinsic.fy*ydot;
 	}
+
+	/**
+	 * Number of intrinsic parameters
+	 */
+	public int getNumOfIntrinsic() {
+		return numIntrinsic;
+	}
+
+	/**
+	 * If true then views are processed in multiple threads.  The output is the same.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
 }
@@ -0,0 +1,579 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.calibration;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Levenberg-Marquardt minimization of the Zhang99 calibration parameters which exploits the structure of the
+ * problem.  The extrinsic parameters of each view only affect the observations in that view, so in the normal
+ * equations they form independent 6x6 blocks which are coupled only through the few intrinsic parameters.  The view
+ * blocks are eliminated using the Schur complement, leaving a small system for the intrinsic parameters.  After it
+ * has been solved the change in each view is found by back substitution.
+ * </p>
+ *
+ * <pre>
+ * [ U  W ] [dc]   [-ea]
+ * [ W' V ] [dv] = [-eb]
+ *
+ * (U - W*inv(V)*W')*dc = -ea + W*inv(V)*eb
+ * dv = -inv(V)*(eb + W'*dc)
+ * </pre>
+ *
+ * <p>
+ * Only the non-zero blocks of the Jacobian are computed, see {@link Zhang99OptimizationJacobian#processBlocks}.
+ * Memory and computation grow linearly with the number of views instead of quadratically, as they would with a
+ * dense Jacobian.  Views are processed concurrently.  The sums are always accumulated in view order, so the
+ * results do not depend on the number of threads.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class Zhang99OptimizationSchur {
+
+	// computes the residuals and Jacobian
+	Zhang99OptimizationFunction function;
+	Zhang99OptimizationJacobian jacobian;
+
+	// number of intrinsic parameters, views, and all parameters
+	int numIntrinsic;
+	int numViews;
+	int numParam;
+	// index of the first observed point in each view.  Has one more element than the number of views
+	int viewPointStart[];
+
+	// current parameters and candidate parameters
+	double param[] = new double[0];
+	double candidate[] = new double[0];
+	// step being considered
+	double step[] = new double[0];
+	// residuals of the current and candidate parameters
+	double residuals[] = new double[0];
+	double candidateResiduals[] = new double[0];
+
+	// Jacobian blocks for intrinsic and extrinsic parameters
+	double jacIntrinsic[] = new double[0];
+	double jacView[] = new double[0];
+
+	// J'*J of the intrinsic parameters computed from each view.  Summed to get U
+	double viewU[] = new double[0];
+	// J'*r of the intrinsic parameters computed from each view.  Summed to get ea
+	double viewEa[] = new double[0];
+	// J'*J for each view's extrinsic parameters.  6x6 blocks
+	double V[] = new double[0];
+	// Cholesky decomposition of the damped V
+	double Vchol[] = new double[0];
+	// gradient of each view's extrinsic parameters.  6 elements each
+	double eb[] = new double[0];
+	// intrinsic-extrinsic cross terms for each view.  numIntrinsic x 6 blocks
+	double W[] = new double[0];
+	// W*inv(V)*W' and W*inv(V)*eb for each view
+	double viewS[] = new double[0];
+	double viewRhs[] = new double[0];
+
+	// J'*J and gradient for intrinsic parameters
+	double U[] = new double[0];
+	double ea[] = new double[0];
+
+	// reduced system for intrinsic parameters
+	DMatrixRMaj S = new DMatrixRMaj(1,1);
+	DMatrixRMaj rhs = new DMatrixRMaj(1,1);
+	DMatrixRMaj dc = new DMatrixRMaj(1,1);
+	LinearSolverDense<DMatrixRMaj> solver;
+
+	// sum of residuals squared
+	double cost;
+	// damping parameter
+	double lambda;
+	// how much lambda is increased by after a failed step
+	double nu;
+	// is the Jacobian out of date?
+	boolean updateJacobian;
+
+	// convergence tolerance for relative change in cost and parameters
+	double ftol;
+	// convergence tolerance for the gradient's largest element
+	double gtol;
+
+	// if true then computations are done concurrently
+	boolean concurrent = true;
+
+	// tasks which process a range of views
+	NormalTask taskNormal = new NormalTask();
+	ReduceTask taskReduce = new ReduceTask();
+	BackSubstituteTask taskBack = new BackSubstituteTask();
+
+	/**
+	 * Configures the minimizer
+	 *
+	 * @param function Computes the residuals
+	 * @param jacobian Computes the Jacobian
+	 * @param observations Observations in each view.  Must be the same as what was passed to the function
+	 *                     and Jacobian.
+	 */
+	public Zhang99OptimizationSchur( Zhang99OptimizationFunction function ,
+									 Zhang99OptimizationJacobian jacobian ,
+									 List<CalibrationObservation> observations ) {
+		this.function = function;
+		this.jacobian = jacobian;
+
+		numViews = observations.size();
+		numIntrinsic = jacobian.getNumOfIntrinsic();
+		numParam = jacobian.getNumOfInputsN();
+
+		viewPointStart = new int[ numViews+1 ];
+		for( int i = 0; i < numViews; i++ ) {
+			viewPointStart[i+1] = viewPointStart[i] + observations.get(i).size();
+		}
+
+		if( numParam != numIntrinsic + 6*numViews )
+			throw new IllegalArgumentException("Unexpected number of parameters");
+
+		function.setConcurrent(concurrent);
+		jacobian.setConcurrent(concurrent);
+	}
+
+	/**
+	 * Specifies the initial parameters.
+	 *
+	 * @param initial Initial parameters, encoded using {@link Zhang99AllParam}.
+	 * @param ftol Convergence tolerance for relative change in cost and parameters.  Try 1e-10
+	 * @param gtol Convergence tolerance for the gradient.  Try 1e-10
+	 */
+	public void initialize( double initial[] , double ftol , double gtol ) {
+		this.ftol = ftol;
+		this.gtol = gtol;
+
+		int K = numIntrinsic;
+		int M = jacobian.getNumOfOutputsM();
+
+		if( param.length != numParam ) {
+			param = new double[numParam];
+			candidate = new double[numParam];
+			step = new double[numParam];
+		}
+		if( residuals.length != M ) {
+			residuals = new double[M];
+			candidateResiduals = new double[M];
+			jacIntrinsic = new double[M*K];
+			jacView = new double[M*6];
+		}
+		if( V.length != numViews*36 || U.length != K*K ) {
+			viewU = new double[numViews*K*K];
+			viewEa = new double[numViews*K];
+			V = new double[numViews*36];
+			Vchol = new double[numViews*36];
+			eb = new double[numViews*6];
+			W = new double[numViews*K*6];
+			viewS = new double[numViews*K*K];
+			viewRhs = new double[numViews*K];
+			U = new double[K*K];
+			ea = new double[K];
+			S.reshape(K,K);
+			rhs.reshape(K,1);
+			dc.reshape(K,1);
+			solver = LinearSolverFactory_DDRM.chol(K);
+		}
+
+		System.arraycopy(initial,0,param,0,numParam);
+		lambda = -1;
+		nu = 2;
+		updateJacobian = true;
+	}
+
+	/**
+	 * Performs a single iteration.
+	 *
+	 * @return true if it has converged
+	 */
+	public boolean iterate() {
+		if( updateJacobian ) {
+			function.process(param, residuals);
+			cost = sumSquared(residuals);
+			if( cost == 0 )
+				return true;
+
+			jacobian.processBlocks(param, jacIntrinsic, jacView);
+			computeNormalEquations();
+			updateJacobian = false;
+
+			double maxGradient = 0;
+			double maxDiagonal = 0;
+			for( int i = 0; i < numIntrinsic; i++ ) {
+				maxGradient = Math.max(maxGradient, Math.abs(ea[i]));
+				maxDiagonal = Math.max(maxDiagonal, U[i*numIntrinsic+i]);
+			}
+			for( int i = 0; i < numViews*6; i++ ) {
+				maxGradient = Math.max(maxGradient, Math.abs(eb[i]));
+				maxDiagonal = Math.max(maxDiagonal, V[(i/6)*36 + (i%6)*7]);
+			}
+			if( maxGradient <= gtol )
+				return true;
+			if( lambda < 0 )
+				lambda = 1e-3*maxDiagonal;
+		}
+
+		if( !computeStep() ) {
+			lambda *= nu;
+			nu *= 2;
+			return false;
+		}
+
+		// see if the change in parameters is too small to matter
+		double normStep = 0, normParam = 0;
+		for( int i = 0; i < numParam; i++ ) {
+			normStep += step[i]*step[i];
+			normParam += param[i]*param[i];
+		}
+		normStep = Math.sqrt(normStep);
+		if( normStep <= ftol*(Math.sqrt(normParam) + ftol) )
+			return true;
+
+		for( int i = 0; i < numParam; i++ ) {
+			candidate[i] = param[i] + step[i];
+		}
+		function.process(candidate, candidateResiduals);
+		double candidateCost = sumSquared(candidateResiduals);
+
+		// predicted reduction = step'*(lambda*step - g)
+		double predicted = lambda*normStep*normStep;
+		for( int i = 0; i < numIntrinsic; i++ ) {
+			predicted -= step[i]*ea[i];
+		}
+		for( int i = 0; i < numViews*6; i++ ) {
+			predicted -= step[numIntrinsic+i]*eb[i];
+		}
+
+		double actual = cost - candidateCost;
+		double ratio = actual/predicted;
+
+		if( actual > 0 && ratio > 0 ) {
+			double tmp[] = param;
+			param = candidate;
+			candidate = tmp;
+
+			double change = 2*ratio-1;
+			lambda *= Math.max(1.0/3.0, 1 - change*change*change);
+			nu = 2;
+			updateJacobian = true;
+
+			if( actual <= ftol*cost ) {
+				cost = candidateCost;
+				return true;
+			}
+			cost = candidateCost;
+		} else {
+			lambda *= nu;
+			nu *= 2;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Computes the blocks in J'*J and J'*r
+	 */
+	void computeNormalEquations() {
+		run(taskNormal);
+
+		int K = numIntrinsic;
+		Arrays.fill(U,0);
+		Arrays.fill(ea,0);
+		for( int view = 0; view < numViews; view++ ) {
+			for( int i = 0; i < K*K; i++ ) {
+				U[i] += viewU[view*K*K+i];
+			}
+			for( int i = 0; i < K; i++ ) {
+				ea[i] += viewEa[view*K+i];
+			}
+		}
+	}
+
+	/**
+	 * Solves for the step using the Schur complement and the current damping
+	 *
+	 * @return true if successful
+	 */
+	boolean computeStep() {
+		taskReduce.failed = false;
+		run(taskReduce);
+		if( taskReduce.failed )
+			return false;
+
+		int K = numIntrinsic;
+		for( int i = 0; i < K; i++ ) {
+			for( int j = 0; j < K; j++ ) {
+				S.data[i*K+j] = U[i*K+j];
+			}
+			S.data[i*K+i] += lambda;
+			rhs.data[i] = -ea[i];
+		}
+		for( int view = 0; view < numViews; view++ ) {
+			for( int i = 0; i < K*K; i++ ) {
+				S.data[i] -= viewS[view*K*K+i];
+			}
+			for( int i = 0; i < K; i++ ) {
+				rhs.data[i] += viewRhs[view*K+i];
+			}
+		}
+
+		if( !solver.setA(S) )
+			return false;
+		solver.solve(rhs,dc);
+		System.arraycopy(dc.data,0,step,0,K);
+
+		run(taskBack);
+
+		for( int i = 0; i < numParam; i++ ) {
+			if( Double.isNaN(step[i]) || Double.isInfinite(step[i]) )
+				return false;
+		}
+		return true;
+	}
+
+	private void run( IntRangeTask task ) {
+		if( concurrent )
+			BoofConcurrency.loopBlocks(0, numViews, task);
+		else
+			task.run(0, numViews);
+	}
+
+	private static double sumSquared( double residuals[] ) {
+		double total = 0;
+		for( int i = 0; i < residuals.length; i++ ) {
+			total += residuals[i]*residuals[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Computes the contribution to U and ea from each view, plus V, eb, and W
+	 */
+	private class NormalTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			final int K = numIntrinsic;
+
+			for( int view = minInclusive; view < maxExclusive; view++ ) {
+				int indexU = view*K*K;
+				int indexEa = view*K;
+				int indexV = view*36;
+				int indexEb = view*6;
+				int indexW = view*K*6;
+				Arrays.fill(viewU,indexU,indexU+K*K,0);
+				Arrays.fill(viewEa,indexEa,indexEa+K,0);
+				Arrays.fill(V,indexV,indexV+36,0);
+				Arrays.fill(eb,indexEb,indexEb+6,0);
+				Arrays.fill(W,indexW,indexW+K*6,0);
+
+				for( int row = viewPointStart[view]*2; row < viewPointStart[view+1]*2; row++ ) {
+					int a = row*K;
+					int b = row*6;
+					double r = residuals[row];
+
+					for( int i = 0; i < K; i++ ) {
+						double ji = jacIntrinsic[a+i];
+						if( ji == 0 )
+							continue;
+						for( int j = 0; j < K; j++ ) {
+							viewU[indexU+i*K+j] += ji*jacIntrinsic[a+j];
+						}
+						for( int j = 0; j < 6; j++ ) {
+							W[indexW+i*6+j] += ji*jacView[b+j];
+						}
+						viewEa[indexEa+i] += ji*r;
+					}
+					for( int i = 0; i < 6; i++ ) {
+						double jv = jacView[b+i];
+						for( int j = 0; j < 6; j++ ) {
+							V[indexV+i*6+j] += jv*jacView[b+j];
+						}
+						eb[indexEb+i] += jv*r;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Factors the damped V and computes W*inv(V)*W' and W*inv(V)*eb for each view
+	 */
+	private class ReduceTask implements IntRangeTask {
+		volatile boolean failed;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			final int K = numIntrinsic;
+			// inv(V)*W' for one view. 6 x K
+			double VW[] = new double[6*K];
+			// inv(V)*eb for one view
+			double Veb[] = new double[6];
+
+			for( int view = minInclusive; view < maxExclusive; view++ ) {
+				int indexV = view*36;
+				int indexW = view*K*6;
+
+				System.arraycopy(V,indexV,Vchol,indexV,36);
+				for( int i = 0; i < 6; i++ ) {
+					Vchol[indexV+i*7] += lambda;
+				}
+				if( !choleskyBlock(Vchol,indexV) ) {
+					failed = true;
+					return;
+				}
+
+				// inv(V)*W', one column at a time
+				for( int col = 0; col < K; col++ ) {
+					for( int i = 0; i < 6; i++ ) {
+						Veb[i] = W[indexW+col*6+i];
+					}
+					solveBlock(Vchol,indexV,Veb);
+					for( int i = 0; i < 6; i++ ) {
+						VW[i*K+col] = Veb[i];
+					}
+				}
+				System.arraycopy(eb,view*6,Veb,0,6);
+				solveBlock(Vchol,indexV,Veb);
+
+				int indexS = view*K*K;
+				int indexRhs = view*K;
+				for( int i = 0; i < K; i++ ) {
+					double sumRhs = 0;
+					for( int k = 0; k < 6; k++ ) {
+						sumRhs += W[indexW+i*6+k]*Veb[k];
+					}
+					viewRhs[indexRhs+i] = sumRhs;
+
+					for( int j = 0; j < K; j++ ) {
+						double sum = 0;
+						for( int k = 0; k < 6; k++ ) {
+							sum += W[indexW+i*6+k]*VW[k*K+j];
+						}
+						viewS[indexS+i*K+j] = sum;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Solves for the change in each view given the change in intrinsic parameters
+	 */
+	private class BackSubstituteTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			final int K = numIntrinsic;
+			double t[] = new double[6];
+
+			for( int view = minInclusive; view < maxExclusive; view++ ) {
+				int indexW = view*K*6;
+
+				// t = eb + W'*dc
+				for( int i = 0; i < 6; i++ ) {
+					double sum = eb[view*6+i];
+					for( int k = 0; k < K; k++ ) {
+						sum += W[indexW+k*6+i]*step[k];
+					}
+					t[i] = sum;
+				}
+				solveBlock(Vchol,view*36,t);
+
+				int indexStep = K + view*6;
+				for( int i = 0; i < 6; i++ ) {
+					step[indexStep+i] = -t[i];
+				}
+			}
+		}
+	}
+
+	/**
+	 * In place Cholesky decomposition of a 6x6 block.  Lower triangular portion is set to L.
+	 *
+	 * @return false if the matrix is not positive definite
+	 */
+	static boolean choleskyBlock( double M[] , int offset ) {
+		for( int i = 0; i < 6; i++ ) {
+			for( int j = 0; j <= i; j++ ) {
+				double sum = M[offset+i*6+j];
+				for( int k = 0; k < j; k++ ) {
+					sum -= M[offset+i*6+k]*M[offset+j*6+k];
+				}
+				if( i == j ) {
+					if( !(sum > 0) )
+						return false;
+					M[offset+i*6+i] = Math.sqrt(sum);
+				} else {
+					M[offset+i*6+j] = sum/M[offset+j*6+j];
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves L*L'*x = b in place using a block decomposed by {@link #choleskyBlock}
+	 */
+	static void solveBlock( double L[] , int offset , double b[] ) {
+		for( int i = 0; i < 6; i++ ) {
+			double sum = b[i];
+			for( int k = 0; k < i; k++ ) {
+				sum -= L[offset+i*6+k]*b[k];
+			}
+			b[i] = sum/L[offset+i*6+i];
+		}
+		for( int i = 5; i >= 0; i-- ) {
+			double sum = b[i];
+			for( int k = i+1; k < 6; k++ ) {
+				sum -= L[offset+k*6+i]*b[k];
+			}
+			b[i] = sum/L[offset+i*6+i];
+		}
+	}
+
+	/**
+	 * If true then views are processed in multiple threads.  The results are the same.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+		function.setConcurrent(concurrent);
+		jacobian.setConcurrent(concurrent);
+	}
+
+	/**
+	 * Returns the current estimate of the parameters
+	 */
+	public double[] getParameters() {
+		return param;
+	}
+
+	/**
+	 * Sum of the residuals squared for the current parameters
+	 */
+	public double getCost() {
+		return cost;
+	}
+}
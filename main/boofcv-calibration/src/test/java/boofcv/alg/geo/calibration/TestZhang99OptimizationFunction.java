@@ -75,6 +75,45 @@ public class TestZhang99OptimizationFunction {
 		}
 	}
 	
+	/**
+	 * Computing views concurrently should produce identical residuals
+	 */
+	@Test
+	public void concurrent() {
+		Zhang99AllParam param = GenericCalibrationGrid.createStandardParam(
+				TestPinholeCalibrationZhang99.createStandard(false,  true,2,rand), 5, rand);
+
+		double array[] = new double[ param.numParameters() ];
+		param.convertToParam(array);
+
+		List<Point2D_F64> gridPts = GenericCalibrationGrid.standardLayout();
+
+		List<CalibrationObservation> observations = new ArrayList<>();
+
+		for( int i = 0; i < param.views.length; i++ ) {
+			CalibrationObservation obs = estimate(param,param.views[i],gridPts);
+			for( Point2D_F64 p : obs.points ) {
+				p.x += rand.nextGaussian();
+				p.y += rand.nextGaussian();
+			}
+			observations.add( obs );
+		}
+
+		Zhang99OptimizationFunction alg =
+				new Zhang99OptimizationFunction( param.createLike(),gridPts,observations );
+
+		double expected[] = new double[ alg.getNumOfOutputsM()];
+		alg.process(array,expected);
+
+		alg.setConcurrent(true);
+		double found[] = new double[ alg.getNumOfOutputsM()];
+		alg.process(array,found);
+
+		for( int i = 0; i < found.length; i++ ) {
+			assertEquals(expected[i],found[i],0);
+		}
+	}
+
 	protected static CalibrationObservation estimate( Zhang99AllParam param ,
 													  Zhang99AllParam.View v ,
 													  List<Point2D_F64> grid ) {
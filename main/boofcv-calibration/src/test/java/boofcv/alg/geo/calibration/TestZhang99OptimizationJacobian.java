@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.Random;
 
 import static boofcv.alg.geo.calibration.TestZhang99OptimizationFunction.estimate;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -107,4 +108,58 @@ public class TestZhang99OptimizationJacobian {
 		assertTrue(DerivativeChecker.jacobianR(func, alg, dataParam, tol));
 	}
 
+	/**
+	 * The non-zero blocks should be identical to the dense Jacobian, with and without concurrency
+	 */
+	@Test
+	public void processBlocks() {
+		Zhang99AllParam param = GenericCalibrationGrid.createStandardParam(
+				TestPinholeCalibrationZhang99.createStandard(false, true,2,rand), 4, rand);
+
+		List<Point2D_F64> gridPts = CalibrationDetectorSquareGrid.createLayout(3, 2, 30, 30);
+
+		List<CalibrationObservation> observations = new ArrayList<>();
+		for( int i = 0; i < param.views.length; i++ ) {
+			observations.add( estimate(param,param.views[i],gridPts));
+		}
+		// different number of points in each view
+		for (int i = 0; i < observations.size(); i++) {
+			for (int j = 0; j < i; j++) {
+				observations.get(i).points.remove(0);
+			}
+		}
+
+		double dataParam[] = new double[ param.numParameters() ];
+		param.convertToParam(dataParam);
+
+		Zhang99OptimizationJacobian alg = new Zhang99OptimizationJacobian(
+				(CalibParamPinholeRadial)param.getIntrinsic().createLike(),observations,gridPts);
+
+		int M = alg.getNumOfOutputsM();
+		int N = alg.getNumOfInputsN();
+		int K = alg.getNumOfIntrinsic();
+
+		double dense[] = new double[M*N];
+		alg.process(dataParam,dense);
+
+		for( boolean concurrent : new boolean[]{false,true}) {
+			alg.setConcurrent(concurrent);
+			double jacIntrinsic[] = new double[M*K];
+			double jacView[] = new double[M*6];
+			alg.processBlocks(dataParam,jacIntrinsic,jacView);
+
+			int row = 0;
+			for( int view = 0; view < observations.size(); view++ ) {
+				for( int i = 0; i < observations.get(view).size()*2; i++, row++ ) {
+					for( int j = 0; j < K; j++ ) {
+						assertEquals(dense[row*N+j], jacIntrinsic[row*K+j], 0);
+					}
+					for( int j = 0; j < 6; j++ ) {
+						assertEquals(dense[row*N+K+view*6+j], jacView[row*6+j], 0);
+					}
+				}
+			}
+		}
+	}
+
 }
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.calibration;
+
+import boofcv.alg.geo.calibration.pinhole.CalibParamPinholeRadial;
+import boofcv.alg.geo.calibration.pinhole.TestPinholeCalibrationZhang99;
+import boofcv.struct.calib.CameraPinholeRadial;
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.optimization.FactoryOptimization;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestZhang99OptimizationSchur {
+
+	Random rand = new Random(234);
+
+	List<Point2D_F64> grid = GenericCalibrationGrid.standardLayout();
+
+	/**
+	 * Perfect observations and a noisy initial estimate.  Should converge to the true parameters
+	 */
+	@Test
+	public void perfect() {
+		Zhang99AllParam expected = GenericCalibrationGrid.createStandardParam(
+				TestPinholeCalibrationZhang99.createStandard(false, true, 2, rand), 8, rand);
+		List<CalibrationObservation> observations = GenericCalibrationGrid.createObservations(expected, grid);
+
+		Zhang99AllParam initial = expected.copy();
+		addNoise(initial);
+
+		Zhang99AllParam found = minimize(initial, observations, true);
+
+		assertTrue(GenericCalibrationGrid.computeErrors(expected,grid,found) < 1e-6);
+	}
+
+	/**
+	 * Noisy observations.  Should converge to the same solution as a general purpose dense optimizer
+	 */
+	@Test
+	public void compareToDense() {
+		Zhang99AllParam expected = GenericCalibrationGrid.createStandardParam(
+				TestPinholeCalibrationZhang99.createStandard(true, true, 2, rand), 6, rand);
+		List<CalibrationObservation> observations = GenericCalibrationGrid.createObservations(expected, grid);
+		for( CalibrationObservation o : observations ) {
+			for( Point2D_F64 p : o.points ) {
+				p.x += rand.nextGaussian()*0.5;
+				p.y += rand.nextGaussian()*0.5;
+			}
+		}
+
+		Zhang99AllParam initial = expected.copy();
+		addNoise(initial);
+
+		Zhang99AllParam found = minimize(initial, observations, true);
+
+		Zhang99AllParam foundDense = initial.createLike();
+		CalibrationPlanarGridZhang99 alg = new CalibrationPlanarGridZhang99(grid, initial.getIntrinsic().createLike());
+		assertTrue(alg.optimizedParam(observations, grid, initial, foundDense,
+				FactoryOptimization.leastSquaresLM(1e-3, true)));
+
+		double error = GenericCalibrationGrid.computeErrors(foundDense,grid,found);
+		assertTrue(error < 1e-3);
+	}
+
+	/**
+	 * Processing views concurrently should produce identical results
+	 */
+	@Test
+	public void concurrent() {
+		Zhang99AllParam expected = GenericCalibrationGrid.createStandardParam(
+				TestPinholeCalibrationZhang99.createStandard(false, false, 2, rand), 10, rand);
+		List<CalibrationObservation> observations = GenericCalibrationGrid.createObservations(expected, grid);
+
+		Zhang99AllParam initial = expected.copy();
+		addNoise(initial);
+
+		Zhang99AllParam single = minimize(initial, observations, false);
+		Zhang99AllParam concurrent = minimize(initial, observations, true);
+
+		double a[] = new double[ single.numParameters() ];
+		double b[] = new double[ single.numParameters() ];
+		single.convertToParam(a);
+		concurrent.convertToParam(b);
+
+		for( int i = 0; i < a.length; i++ ) {
+			assertEquals(a[i], b[i], 0);
+		}
+	}
+
+	private Zhang99AllParam minimize( Zhang99AllParam initial , List<CalibrationObservation> observations ,
+									  boolean concurrent ) {
+		double model[] = new double[ initial.numParameters() ];
+		initial.convertToParam(model);
+
+		Zhang99OptimizationFunction func = new Zhang99OptimizationFunction(initial.createLike(), grid, observations);
+		// the Jacobian writes into the intrinsic it was created from, so don't let it modify initial
+		Zhang99OptimizationJacobian jacobian = initial.getIntrinsic().createLike().createJacobian(observations, grid);
+
+		Zhang99OptimizationSchur alg = new Zhang99OptimizationSchur(func, jacobian, observations);
+		alg.setConcurrent(concurrent);
+		alg.initialize(model, 1e-10, 1e-25*observations.size());
+		for( int i = 0; i < 500; i++ ) {
+			if( alg.iterate() )
+				break;
+		}
+
+		Zhang99AllParam found = initial.createLike();
+		found.setFromParam(alg.getParameters());
+		return found;
+	}
+
+	private void addNoise( Zhang99AllParam param ) {
+		CameraPinholeRadial p = ((CalibParamPinholeRadial)param.getIntrinsic()).intrinsic;
+		p.fx *= 1.02;
+		p.fy *= 0.98;
+		p.cx += 5;
+		p.cy -= 4;
+
+		for( Zhang99AllParam.View v : param.views ) {
+			v.T.x += 0.5;
+			v.T.y -= 0.3;
+		}
+	}
+}
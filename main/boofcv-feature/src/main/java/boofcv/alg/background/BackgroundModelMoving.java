@@ -19,6 +19,7 @@
 package boofcv.alg.background;
 
 import boofcv.alg.InputSanityCheck;
+import boofcv.alg.background.moving.MotionRowWarp_F32;
 import boofcv.struct.distort.Point2Transform2Model_F32;
 import boofcv.struct.image.GrayU8;
 import boofcv.struct.image.ImageBase;
@@ -76,6 +77,8 @@ public abstract class BackgroundModelMoving<T extends ImageBase<T>,MotionModel e
 	protected Point2D_F32 corners[] = new Point2D_F32[4];
 	// storage for transformed coordinate
 	protected Point2D_F32 work = new Point2D_F32();
+	// applies the motion model one row at a time
+	protected MotionRowWarp_F32 rowWarp = new MotionRowWarp_F32();
 
 
 	/**
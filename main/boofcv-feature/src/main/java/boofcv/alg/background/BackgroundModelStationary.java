@@ -47,4 +47,17 @@ public abstract class BackgroundModelStationary<T extends ImageBase<T>> extends
 	 * @param segmented Segmented image. 0 = background, 1 = foreground/moving
 	 */
 	public abstract void segment( T frame , GrayU8 segmented );
+
+	/**
+	 * Segments the current frame using the background model and then updates the background.  Produces the same
+	 * results as calling {@link #segment} followed by {@link #updateBackground} but implementations can do it in
+	 * a single pass through the image and split the work across threads.
+	 *
+	 * @param frame current image
+	 * @param segmented Segmented image. 0 = background, 1 = foreground/moving
+	 */
+	public void segmentAndUpdate( T frame , GrayU8 segmented ) {
+		segment(frame, segmented);
+		updateBackground(frame);
+	}
 }
@@ -21,6 +21,8 @@ package boofcv.alg.background.moving;
 import boofcv.alg.interpolate.InterpolatePixelMB;
 import boofcv.alg.interpolate.InterpolationType;
 import boofcv.alg.misc.GImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageMultiBand;
 import boofcv.core.image.GImageMultiBand;
 import boofcv.core.image.border.BorderType;
@@ -28,6 +30,9 @@ import boofcv.factory.interpolate.FactoryInterpolation;
 import boofcv.struct.distort.Point2Transform2Model_F32;
 import boofcv.struct.image.*;
 import georegression.struct.InvertibleTransform;
+import georegression.struct.point.Point2D_F32;
+
+import java.util.Arrays;
 
 /**
  * Implementation of {@link BackgroundMovingBasic} for {@link Planar}.
@@ -43,6 +48,8 @@ public class BackgroundMovingBasic_PL<T extends ImageGray<T>, Motion extends Inv
 	protected InterpolatePixelMB<Planar<T>> interpolationInput;
 	// interpolates the background image
 	protected InterpolatePixelMB<Planar<GrayF32>> interpolationBG;
+	// type of interpolation used on the input and background images
+	protected InterpolationType interpType;
 
 	// wrappers which provide abstraction across image types
 	protected GImageMultiBand backgroundWrapper;
@@ -57,14 +64,13 @@ public class BackgroundMovingBasic_PL<T extends ImageGray<T>, Motion extends Inv
 									ImageType<Planar<T>> imageType) {
 		super(learnRate, threshold,transform, imageType);
 
-		this.interpolationInput = FactoryInterpolation.createPixelMB(0, 255, interpType,BorderType.EXTENDED,imageType);
+		this.interpType = interpType;
+		this.interpolationInput = createInterpolateInput();
 
 		int numBands = imageType.getNumBands();
 		background = new Planar<>(GrayF32.class,1,1,numBands);
 
-		this.interpolationBG = FactoryInterpolation.createPixelMB(
-				0, 255, interpType, BorderType.EXTENDED, ImageType.pl(numBands, GrayF32.class));
-		this.interpolationBG.setImage(background);
+		this.interpolationBG = createInterpolateBG();
 
 		pixelInput = new float[numBands];
 		pixelBack = new float[numBands];
@@ -102,22 +108,45 @@ public class BackgroundMovingBasic_PL<T extends ImageGray<T>, Motion extends Inv
 	}
 
 	@Override
-	protected void updateBackground(int x0, int y0, int x1, int y1, Planar<T> frame) {
-
-		transform.setModel(worldToCurrent);
+	protected void updateBackground(final int x0, int y0, final int x1, int y1, final Planar<T> frame) {
+		rowWarp.configure(transform, worldToCurrent, frame.width, frame.height);
 		interpolationInput.setImage(frame);
 
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(y0, y1, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					InterpolatePixelMB<Planar<T>> interp = createInterpolateInput();
+					interp.setImage(frame);
+					updateRows(new MotionRowWarp_F32(rowWarp), interp,
+							new float[pixelInput.length], new float[pixelBack.length],
+							x0, blockY0, x1, blockY1, frame);
+				}
+			});
+		} else {
+			updateRows(rowWarp, interpolationInput, pixelInput, pixelBack, x0, y0, x1, y1, frame);
+		}
+	}
+
+	private void updateRows( MotionRowWarp_F32 warp , InterpolatePixelMB<Planar<T>> interp,
+							 float[] pixelInput, float[] pixelBack,
+							 int x0, int y0, int x1, int y1, Planar<T> frame) {
 		final int numBands = frame.getNumBands();
 		float minusLearn = 1.0f - learnRate;
+		Point2D_F32 p = new Point2D_F32();
 
 		for (int y = y0; y < y1; y++) {
-			int indexBG = background.startIndex + y*background.stride + x0;
-			for (int x = x0; x < x1; x++, indexBG++ ) {
-				transform.compute(x,y,work);
+			if( !warp.setRow(y, x0, x1) )
+				continue;
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
+
+			int indexBG = background.startIndex + y*background.stride + rowX0;
+			for (int x = rowX0; x < rowX1; x++, indexBG++ ) {
+				warp.compute(x,p);
 
-				if( work.x >= 0 && work.x < frame.width && work.y >= 0 && work.y < frame.height) {
+				if( p.x >= 0 && p.x < frame.width && p.y >= 0 && p.y < frame.height) {
 
-					interpolationInput.get(work.x,work.y, pixelInput);
+					interp.get(p.x,p.y, pixelInput);
 					backgroundWrapper.getF(indexBG,pixelBack);
 
 					for (int band = 0; band < numBands; band++) {
@@ -138,25 +167,54 @@ public class BackgroundMovingBasic_PL<T extends ImageGray<T>, Motion extends Inv
 	}
 
 	@Override
-	protected void _segment(Motion currentToWorld, Planar<T> frame, GrayU8 segmented) {
-		transform.setModel(currentToWorld);
+	protected void _segment(Motion currentToWorld, final Planar<T> frame, final GrayU8 segmented) {
+		rowWarp.configure(transform, currentToWorld, background.width, background.height);
 		inputWrapper.wrap(frame);
 
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					segmentRows(new MotionRowWarp_F32(rowWarp), createInterpolateBG(),
+							new float[pixelInput.length], new float[pixelBack.length],
+							blockY0, blockY1, frame, segmented);
+				}
+			});
+		} else {
+			segmentRows(rowWarp, interpolationBG, pixelInput, pixelBack, 0, frame.height, frame, segmented);
+		}
+	}
+
+	private void segmentRows( MotionRowWarp_F32 warp , InterpolatePixelMB<Planar<GrayF32>> interp,
+							  float[] pixelInput, float[] pixelBack,
+							  int y0 , int y1 , Planar<T> frame, GrayU8 segmented) {
 		int numBands = background.getNumBands();
 
 		float thresholdSq = numBands*threshold*threshold;
+		Point2D_F32 p = new Point2D_F32();
 
-		for (int y = 0; y < frame.height; y++) {
-			int indexFrame = frame.startIndex + y*frame.stride;
+		for (int y = y0; y < y1; y++) {
 			int indexSegmented = segmented.startIndex + y*segmented.stride;
 
-			for (int x = 0; x < frame.width; x++, indexFrame++ , indexSegmented++ ) {
-				transform.compute(x,y,work);
+			// there is no background outside the valid range.  Just mark it as not moving to avoid false positives
+			if( !warp.setRow(y, 0, frame.width) ) {
+				Arrays.fill(segmented.data, indexSegmented, indexSegmented+frame.width, unknownValue);
+				continue;
+			}
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
+			Arrays.fill(segmented.data, indexSegmented, indexSegmented+rowX0, unknownValue);
+			Arrays.fill(segmented.data, indexSegmented+rowX1, indexSegmented+frame.width, unknownValue);
+
+			int indexFrame = frame.startIndex + y*frame.stride + rowX0;
+			indexSegmented += rowX0;
+
+			for (int x = rowX0; x < rowX1; x++, indexFrame++ , indexSegmented++ ) {
+				warp.compute(x,p);
 
 				escapeIf:
-				if( work.x >= 0 && work.x < background.width && work.y >= 0 && work.y < background.height) {
+				if( p.x >= 0 && p.x < background.width && p.y >= 0 && p.y < background.height) {
 
-					interpolationBG.get(work.x,work.y,pixelBack);
+					interp.get(p.x,p.y,pixelBack);
 					inputWrapper.getF(indexFrame,pixelInput);
 
 					double sumErrorSq = 0;
@@ -179,12 +237,20 @@ public class BackgroundMovingBasic_PL<T extends ImageGray<T>, Motion extends Inv
 						segmented.data[indexSegmented] = 1;
 					}
 				} else {
-					// there is no background here.  Just mark it as not moving to avoid false positives
 					segmented.data[indexSegmented] = unknownValue;
 				}
 			}
 		}
 	}
 
+	private InterpolatePixelMB<Planar<T>> createInterpolateInput() {
+		return FactoryInterpolation.createPixelMB(0, 255, interpType,BorderType.EXTENDED,imageType);
+	}
 
+	private InterpolatePixelMB<Planar<GrayF32>> createInterpolateBG() {
+		InterpolatePixelMB<Planar<GrayF32>> interp = FactoryInterpolation.createPixelMB(
+				0, 255, interpType, BorderType.EXTENDED, ImageType.pl(background.getNumBands(), GrayF32.class));
+		interp.setImage(background);
+		return interp;
+	}
 }
@@ -21,6 +21,8 @@ package boofcv.alg.background.moving;
 import boofcv.alg.interpolate.InterpolatePixelS;
 import boofcv.alg.interpolate.InterpolationType;
 import boofcv.alg.misc.ImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageGray;
 import boofcv.core.image.GImageGray;
 import boofcv.core.image.border.BorderType;
@@ -32,6 +34,9 @@ import boofcv.struct.image.GrayU8;
 import boofcv.struct.image.ImageGray;
 import boofcv.struct.image.ImageType;
 import georegression.struct.InvertibleTransform;
+import georegression.struct.point.Point2D_F32;
+
+import java.util.Arrays;
 
 /**
  * Implementation of {@link BackgroundMovingBasic} for {@link ImageGray}.
@@ -47,6 +52,8 @@ public class BackgroundMovingBasic_SB<T extends ImageGray<T>, Motion extends Inv
 	protected InterpolatePixelS<T> interpolateInput;
 	// interpolates the background image
 	protected InterpolatePixelS<GrayF32> interpolationBG;
+	// type of interpolation used on the background
+	protected InterpolationType interpType;
 
 	// wrapper which provides abstraction across image types
 	protected GImageGray inputWrapper;
@@ -57,11 +64,9 @@ public class BackgroundMovingBasic_SB<T extends ImageGray<T>, Motion extends Inv
 									Class<T> imageType) {
 		super(learnRate, threshold, transform, ImageType.single(imageType));
 
-		this.interpolateInput = FactoryInterpolation.bilinearPixelS(imageType, BorderType.EXTENDED);
-
-		this.interpolationBG = FactoryInterpolation.createPixelS(0, 255, interpType, BorderType.EXTENDED, GrayF32.class);
-		this.interpolationBG.setBorder(FactoryImageBorder.single(GrayF32.class, BorderType.EXTENDED));
-		this.interpolationBG.setImage(background);
+		this.interpType = interpType;
+		this.interpolateInput = createInterpolateInput();
+		this.interpolationBG = createInterpolateBG();
 
 		inputWrapper = FactoryGImageGray.create(imageType);
 	}
@@ -93,19 +98,40 @@ public class BackgroundMovingBasic_SB<T extends ImageGray<T>, Motion extends Inv
 	}
 
 	@Override
-	protected void updateBackground(int x0, int y0, int x1, int y1, T frame) {
-		transform.setModel(worldToCurrent);
+	protected void updateBackground(final int x0, int y0, final int x1, int y1, final T frame) {
+		rowWarp.configure(transform, worldToCurrent, frame.width, frame.height);
 		interpolateInput.setImage(frame);
 
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(y0, y1, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					InterpolatePixelS<T> interp = createInterpolateInput();
+					interp.setImage(frame);
+					updateRows(new MotionRowWarp_F32(rowWarp), interp, x0, blockY0, x1, blockY1, frame);
+				}
+			});
+		} else {
+			updateRows(rowWarp, interpolateInput, x0, y0, x1, y1, frame);
+		}
+	}
+
+	private void updateRows( MotionRowWarp_F32 warp , InterpolatePixelS<T> interp,
+							 int x0, int y0, int x1, int y1, T frame) {
 		float minusLearn = 1.0f - learnRate;
+		Point2D_F32 p = new Point2D_F32();
 
 		for (int y = y0; y < y1; y++) {
-			int indexBG = background.startIndex + y*background.stride + x0;
-			for (int x = x0; x < x1; x++, indexBG++ ) {
-				transform.compute(x,y,work);
+			if( !warp.setRow(y, x0, x1) )
+				continue;
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
+
+			int indexBG = background.startIndex + y*background.stride + rowX0;
+			for (int x = rowX0; x < rowX1; x++, indexBG++ ) {
+				warp.compute(x,p);
 
-				if( work.x >= 0 && work.x < frame.width && work.y >= 0 && work.y < frame.height) {
-					float value = interpolateInput.get(work.x,work.y);
+				if( p.x >= 0 && p.x < frame.width && p.y >= 0 && p.y < frame.height) {
+					float value = interp.get(p.x,p.y);
 					float bg = background.data[indexBG];
 
 					if( bg == Float.MAX_VALUE ) {
@@ -119,21 +145,47 @@ public class BackgroundMovingBasic_SB<T extends ImageGray<T>, Motion extends Inv
 	}
 
 	@Override
-	protected void _segment(Motion currentToWorld, T frame, GrayU8 segmented) {
-		transform.setModel(currentToWorld);
+	protected void _segment(Motion currentToWorld, final T frame, final GrayU8 segmented) {
+		rowWarp.configure(transform, currentToWorld, background.width, background.height);
 		inputWrapper.wrap(frame);
 
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					segmentRows(new MotionRowWarp_F32(rowWarp), createInterpolateBG(), blockY0, blockY1, frame, segmented);
+				}
+			});
+		} else {
+			segmentRows(rowWarp, interpolationBG, 0, frame.height, frame, segmented);
+		}
+	}
+
+	private void segmentRows( MotionRowWarp_F32 warp , InterpolatePixelS<GrayF32> interp,
+							  int y0 , int y1 , T frame, GrayU8 segmented) {
 		float thresholdSq = threshold*threshold;
+		Point2D_F32 p = new Point2D_F32();
 
-		for (int y = 0; y < frame.height; y++) {
-			int indexFrame = frame.startIndex + y*frame.stride;
+		for (int y = y0; y < y1; y++) {
 			int indexSegmented = segmented.startIndex + y*segmented.stride;
 
-			for (int x = 0; x < frame.width; x++, indexFrame++ , indexSegmented++ ) {
-				transform.compute(x,y,work);
+			// there is no background outside the valid range.  Just mark it as not moving to avoid false positives
+			if( !warp.setRow(y, 0, frame.width) ) {
+				Arrays.fill(segmented.data, indexSegmented, indexSegmented+frame.width, unknownValue);
+				continue;
+			}
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
+			Arrays.fill(segmented.data, indexSegmented, indexSegmented+rowX0, unknownValue);
+			Arrays.fill(segmented.data, indexSegmented+rowX1, indexSegmented+frame.width, unknownValue);
+
+			int indexFrame = frame.startIndex + y*frame.stride + rowX0;
+			indexSegmented += rowX0;
+
+			for (int x = rowX0; x < rowX1; x++, indexFrame++ , indexSegmented++ ) {
+				warp.compute(x,p);
 
-				if( work.x >= 0 && work.x < background.width && work.y >= 0 && work.y < background.height) {
-					float bg = interpolationBG.get(work.x,work.y);
+				if( p.x >= 0 && p.x < background.width && p.y >= 0 && p.y < background.height) {
+					float bg = interp.get(p.x,p.y);
 					float pixelFrame = inputWrapper.getF(indexFrame);
 
 					if( bg == Float.MAX_VALUE ) {
@@ -147,12 +199,21 @@ public class BackgroundMovingBasic_SB<T extends ImageGray<T>, Motion extends Inv
 						}
 					}
 				} else {
-					// there is no background here.  Just mark it as not moving to avoid false positives
 					segmented.data[indexSegmented] = unknownValue;
 				}
 			}
 		}
 	}
 
+	private InterpolatePixelS<T> createInterpolateInput() {
+		return FactoryInterpolation.bilinearPixelS(imageType.getImageClass(), BorderType.EXTENDED);
+	}
 
+	private InterpolatePixelS<GrayF32> createInterpolateBG() {
+		InterpolatePixelS<GrayF32> interp =
+				FactoryInterpolation.createPixelS(0, 255, interpType, BorderType.EXTENDED, GrayF32.class);
+		interp.setBorder(FactoryImageBorder.single(GrayF32.class, BorderType.EXTENDED));
+		interp.setImage(background);
+		return interp;
+	}
 }
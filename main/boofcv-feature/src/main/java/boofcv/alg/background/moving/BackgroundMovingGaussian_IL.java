@@ -21,6 +21,8 @@ package boofcv.alg.background.moving;
 import boofcv.alg.interpolate.InterpolatePixelMB;
 import boofcv.alg.interpolate.InterpolationType;
 import boofcv.alg.misc.GImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageMultiBand;
 import boofcv.core.image.GImageMultiBand;
 import boofcv.core.image.border.BorderType;
@@ -31,6 +33,9 @@ import boofcv.struct.image.ImageInterleaved;
 import boofcv.struct.image.ImageType;
 import boofcv.struct.image.InterleavedF32;
 import georegression.struct.InvertibleTransform;
+import georegression.struct.point.Point2D_F32;
+
+import java.util.Arrays;
 
 /**
  * Implementation of {@link BackgroundMovingGaussian} for {@link ImageInterleaved}.
@@ -45,6 +50,8 @@ public class BackgroundMovingGaussian_IL<T extends ImageInterleaved<T>, Motion e
 	protected InterpolatePixelMB<T> interpolateInput;
 	// interpolates the background image
 	protected InterpolatePixelMB<InterleavedF32> interpolationBG;
+	// type of interpolation used on the background
+	protected InterpolationType interpType;
 
 	// wrappers which provide abstraction across image types
 	protected GImageMultiBand inputWrapper;
@@ -74,13 +81,11 @@ public class BackgroundMovingGaussian_IL<T extends ImageInterleaved<T>, Motion e
 
 		int numBands = imageType.getNumBands();
 
-		this.interpolateInput = FactoryInterpolation.createPixelMB(0, 255,
-				InterpolationType.BILINEAR, BorderType.EXTENDED, imageType);
+		this.interpType = interpType;
+		this.interpolateInput = createInterpolateInput();
 
 		background = new InterleavedF32(1,1,2*numBands);
-		this.interpolationBG = FactoryInterpolation.createPixelMB(
-				0, 255, interpType, BorderType.EXTENDED, ImageType.il(numBands*2, InterleavedF32.class));
-		this.interpolationBG.setImage(background);
+		this.interpolationBG = createInterpolateBG();
 		inputWrapper = FactoryGImageMultiBand.create(imageType);
 
 		pixelBG = new float[2*numBands];
@@ -105,21 +110,43 @@ public class BackgroundMovingGaussian_IL<T extends ImageInterleaved<T>, Motion e
 	}
 
 	@Override
-	protected void updateBackground(int x0, int y0, int x1, int y1, T frame) {
-		transform.setModel(worldToCurrent);
+	protected void updateBackground(final int x0, int y0, final int x1, int y1, final T frame) {
+		rowWarp.configure(transform, worldToCurrent, frame.width, frame.height);
 		interpolateInput.setImage(frame);
 
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(y0, y1, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					InterpolatePixelMB<T> interp = createInterpolateInput();
+					interp.setImage(frame);
+					updateRows(new MotionRowWarp_F32(rowWarp), interp, new float[pixelInput.length],
+							x0, blockY0, x1, blockY1, frame);
+				}
+			});
+		} else {
+			updateRows(rowWarp, interpolateInput, pixelInput, x0, y0, x1, y1, frame);
+		}
+	}
+
+	private void updateRows( MotionRowWarp_F32 warp , InterpolatePixelMB<T> interp, float[] pixelInput,
+							 int x0, int y0, int x1, int y1, T frame) {
 		float minusLearn = 1.0f - learnRate;
+		Point2D_F32 p = new Point2D_F32();
 
 		final int numBands = background.getNumBands()/2;
 
 		for (int y = y0; y < y1; y++) {
-			int indexBG = background.startIndex + y*background.stride + x0*background.numBands;
-			for (int x = x0; x < x1; x++, indexBG += numBands*2 ) {
-				transform.compute(x,y,work);
+			if( !warp.setRow(y, x0, x1) )
+				continue;
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
 
-				if( work.x >= 0 && work.x < frame.width && work.y >= 0 && work.y < frame.height) {
-					interpolateInput.get(work.x,work.y,pixelInput);
+			int indexBG = background.startIndex + y*background.stride + rowX0*background.numBands;
+			for (int x = rowX0; x < rowX1; x++, indexBG += numBands*2 ) {
+				warp.compute(x,p);
+
+				if( p.x >= 0 && p.x < frame.width && p.y >= 0 && p.y < frame.height) {
+					interp.get(p.x,p.y,pixelInput);
 
 					for (int band = 0; band < numBands; band++) {
 						int indexBG_band = indexBG + band*2;
@@ -143,22 +170,52 @@ public class BackgroundMovingGaussian_IL<T extends ImageInterleaved<T>, Motion e
 	}
 
 	@Override
-	protected void _segment(Motion currentToWorld, T frame, GrayU8 segmented) {
-		transform.setModel(currentToWorld);
+	protected void _segment(Motion currentToWorld, final T frame, final GrayU8 segmented) {
+		rowWarp.configure(transform, currentToWorld, background.width, background.height);
 		inputWrapper.wrap(frame);
 
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					segmentRows(new MotionRowWarp_F32(rowWarp), createInterpolateBG(),
+							new float[pixelBG.length], new float[pixelInput.length],
+							blockY0, blockY1, frame, segmented);
+				}
+			});
+		} else {
+			segmentRows(rowWarp, interpolationBG, pixelBG, pixelInput, 0, frame.height, frame, segmented);
+		}
+	}
+
+	private void segmentRows( MotionRowWarp_F32 warp , InterpolatePixelMB<InterleavedF32> interp,
+							  float[] pixelBG, float[] pixelInput,
+							  int y0 , int y1 , T frame, GrayU8 segmented) {
+		Point2D_F32 p = new Point2D_F32();
+
 		final int numBands = background.getNumBands()/2;
 		float adjustedMinimumDifference = minimumDifference*numBands;
 
-		for (int y = 0; y < frame.height; y++) {
-			int indexFrame = frame.startIndex + y*frame.stride;
+		for (int y = y0; y < y1; y++) {
 			int indexSegmented = segmented.startIndex + y*segmented.stride;
 
-			for (int x = 0; x < frame.width; x++, indexFrame += numBands , indexSegmented++ ) {
-				transform.compute(x,y,work);
+			// there is no background outside the valid range.  Just mark it as not moving to avoid false positives
+			if( !warp.setRow(y, 0, frame.width) ) {
+				Arrays.fill(segmented.data, indexSegmented, indexSegmented+frame.width, unknownValue);
+				continue;
+			}
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
+			Arrays.fill(segmented.data, indexSegmented, indexSegmented+rowX0, unknownValue);
+			Arrays.fill(segmented.data, indexSegmented+rowX1, indexSegmented+frame.width, unknownValue);
+
+			int indexFrame = frame.startIndex + y*frame.stride + rowX0*numBands;
+			indexSegmented += rowX0;
+
+			for (int x = rowX0; x < rowX1; x++, indexFrame += numBands , indexSegmented++ ) {
+				warp.compute(x,p);
 
-				escapeIf:if( work.x >= 0 && work.x < background.width && work.y >= 0 && work.y < background.height) {
-					interpolationBG.get(work.x,work.y,pixelBG);
+				escapeIf:if( p.x >= 0 && p.x < background.width && p.y >= 0 && p.y < background.height) {
+					interp.get(p.x,p.y,pixelBG);
 					inputWrapper.getF(indexFrame,pixelInput);
 
 					float mahalanobis = 0;
@@ -194,10 +251,21 @@ public class BackgroundMovingGaussian_IL<T extends ImageInterleaved<T>, Motion e
 						}
 					}
 				} else {
-					// there is no background here.  Just mark it as not moving to avoid false positives
 					segmented.data[indexSegmented] = unknownValue;
 				}
 			}
 		}
 	}
+
+	private InterpolatePixelMB<T> createInterpolateInput() {
+		return FactoryInterpolation.createPixelMB(0, 255,
+				InterpolationType.BILINEAR, BorderType.EXTENDED, imageType);
+	}
+
+	private InterpolatePixelMB<InterleavedF32> createInterpolateBG() {
+		InterpolatePixelMB<InterleavedF32> interp = FactoryInterpolation.createPixelMB(
+				0, 255, interpType, BorderType.EXTENDED, ImageType.il(background.getNumBands(), InterleavedF32.class));
+		interp.setImage(background);
+		return interp;
+	}
 }
@@ -22,6 +22,8 @@ import boofcv.alg.interpolate.InterpolatePixelMB;
 import boofcv.alg.interpolate.InterpolatePixelS;
 import boofcv.alg.interpolate.InterpolationType;
 import boofcv.alg.misc.GImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageGray;
 import boofcv.core.image.GImageGray;
 import boofcv.core.image.border.BorderType;
@@ -29,6 +31,9 @@ import boofcv.factory.interpolate.FactoryInterpolation;
 import boofcv.struct.distort.Point2Transform2Model_F32;
 import boofcv.struct.image.*;
 import georegression.struct.InvertibleTransform;
+import georegression.struct.point.Point2D_F32;
+
+import java.util.Arrays;
 
 /**
  * Implementation of {@link BackgroundMovingGaussian} for {@link ImageGray}.
@@ -43,6 +48,8 @@ public class BackgroundMovingGaussian_SB <T extends ImageGray<T>, Motion extends
 	protected InterpolatePixelS<T> interpolateInput;
 	// interpolates the background image
 	protected InterpolatePixelMB<Planar<GrayF32>> interpolationBG;
+	// type of interpolation used on the background
+	protected InterpolationType interpType;
 
 	// wrappers which provide abstraction across image types
 	protected GImageGray inputWrapper;
@@ -68,11 +75,9 @@ public class BackgroundMovingGaussian_SB <T extends ImageGray<T>, Motion extends
 	{
 		super(learnRate, threshold, transform, ImageType.single(imageType));
 
-		this.interpolateInput = FactoryInterpolation.bilinearPixelS(imageType, BorderType.EXTENDED);
-
-		this.interpolationBG = FactoryInterpolation.createPixelMB(
-				0, 255, interpType, BorderType.EXTENDED, ImageType.pl(2, GrayF32.class));
-		this.interpolationBG.setImage(background);
+		this.interpType = interpType;
+		this.interpolateInput = createInterpolateInput();
+		this.interpolationBG = createInterpolateBG();
 		inputWrapper = FactoryGImageGray.create(imageType);
 	}
 
@@ -96,22 +101,43 @@ public class BackgroundMovingGaussian_SB <T extends ImageGray<T>, Motion extends
 	}
 
 	@Override
-	protected void updateBackground(int x0, int y0, int x1, int y1, T frame) {
-		transform.setModel(worldToCurrent);
+	protected void updateBackground(final int x0, int y0, final int x1, int y1, final T frame) {
+		rowWarp.configure(transform, worldToCurrent, frame.width, frame.height);
 		interpolateInput.setImage(frame);
 
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(y0, y1, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					InterpolatePixelS<T> interp = createInterpolateInput();
+					interp.setImage(frame);
+					updateRows(new MotionRowWarp_F32(rowWarp), interp, x0, blockY0, x1, blockY1, frame);
+				}
+			});
+		} else {
+			updateRows(rowWarp, interpolateInput, x0, y0, x1, y1, frame);
+		}
+	}
+
+	private void updateRows( MotionRowWarp_F32 warp , InterpolatePixelS<T> interp,
+							 int x0, int y0, int x1, int y1, T frame) {
 		float minusLearn = 1.0f - learnRate;
+		Point2D_F32 p = new Point2D_F32();
 
 		GrayF32 backgroundMean = background.getBand(0);
 		GrayF32 backgroundVar = background.getBand(1);
 
 		for (int y = y0; y < y1; y++) {
-			int indexBG = background.startIndex + y*background.stride + x0;
-			for (int x = x0; x < x1; x++, indexBG++ ) {
-				transform.compute(x,y,work);
+			if( !warp.setRow(y, x0, x1) )
+				continue;
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
+
+			int indexBG = background.startIndex + y*background.stride + rowX0;
+			for (int x = rowX0; x < rowX1; x++, indexBG++ ) {
+				warp.compute(x,p);
 
-				if( work.x >= 0 && work.x < frame.width && work.y >= 0 && work.y < frame.height) {
-					float inputValue = interpolateInput.get(work.x,work.y);
+				if( p.x >= 0 && p.x < frame.width && p.y >= 0 && p.y < frame.height) {
+					float inputValue = interp.get(p.x,p.y);
 					float meanBG = backgroundMean.data[indexBG];
 					float varianceBG = backgroundVar.data[indexBG];
 
@@ -129,19 +155,47 @@ public class BackgroundMovingGaussian_SB <T extends ImageGray<T>, Motion extends
 	}
 
 	@Override
-	protected void _segment(Motion currentToWorld, T frame, GrayU8 segmented) {
-		transform.setModel(currentToWorld);
+	protected void _segment(Motion currentToWorld, final T frame, final GrayU8 segmented) {
+		rowWarp.configure(transform, currentToWorld, background.width, background.height);
 		inputWrapper.wrap(frame);
 
-		for (int y = 0; y < frame.height; y++) {
-			int indexFrame = frame.startIndex + y*frame.stride;
+		if( rowWarp.isIncremental() && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+				@Override
+				public void run(int blockY0, int blockY1) {
+					segmentRows(new MotionRowWarp_F32(rowWarp), createInterpolateBG(), new float[2],
+							blockY0, blockY1, frame, segmented);
+				}
+			});
+		} else {
+			segmentRows(rowWarp, interpolationBG, pixelBG, 0, frame.height, frame, segmented);
+		}
+	}
+
+	private void segmentRows( MotionRowWarp_F32 warp , InterpolatePixelMB<Planar<GrayF32>> interp, float[] pixelBG,
+							  int y0 , int y1 , T frame, GrayU8 segmented) {
+		Point2D_F32 p = new Point2D_F32();
+
+		for (int y = y0; y < y1; y++) {
 			int indexSegmented = segmented.startIndex + y*segmented.stride;
 
-			for (int x = 0; x < frame.width; x++, indexFrame++ , indexSegmented++ ) {
-				transform.compute(x,y,work);
+			// there is no background outside the valid range.  Just mark it as not moving to avoid false positives
+			if( !warp.setRow(y, 0, frame.width) ) {
+				Arrays.fill(segmented.data, indexSegmented, indexSegmented+frame.width, unknownValue);
+				continue;
+			}
+			int rowX0 = warp.getValidX0(), rowX1 = warp.getValidX1();
+			Arrays.fill(segmented.data, indexSegmented, indexSegmented+rowX0, unknownValue);
+			Arrays.fill(segmented.data, indexSegmented+rowX1, indexSegmented+frame.width, unknownValue);
+
+			int indexFrame = frame.startIndex + y*frame.stride + rowX0;
+			indexSegmented += rowX0;
+
+			for (int x = rowX0; x < rowX1; x++, indexFrame++ , indexSegmented++ ) {
+				warp.compute(x,p);
 
-				if( work.x >= 0 && work.x < background.width && work.y >= 0 && work.y < background.height) {
-					interpolationBG.get(work.x,work.y,pixelBG);
+				if( p.x >= 0 && p.x < background.width && p.y >= 0 && p.y < background.height) {
+					interp.get(p.x,p.y,pixelBG);
 					float pixelFrame = inputWrapper.getF(indexFrame);
 
 					float meanBG = pixelBG[0];
@@ -163,10 +217,20 @@ public class BackgroundMovingGaussian_SB <T extends ImageGray<T>, Motion extends
 						}
 					}
 				} else {
-					// there is no background here.  Just mark it as not moving to avoid false positives
 					segmented.data[indexSegmented] = unknownValue;
 				}
 			}
 		}
 	}
+
+	private InterpolatePixelS<T> createInterpolateInput() {
+		return FactoryInterpolation.bilinearPixelS(imageType.getImageClass(), BorderType.EXTENDED);
+	}
+
+	private InterpolatePixelMB<Planar<GrayF32>> createInterpolateBG() {
+		InterpolatePixelMB<Planar<GrayF32>> interp = FactoryInterpolation.createPixelMB(
+				0, 255, interpType, BorderType.EXTENDED, ImageType.pl(2, GrayF32.class));
+		interp.setImage(background);
+		return interp;
+	}
 }
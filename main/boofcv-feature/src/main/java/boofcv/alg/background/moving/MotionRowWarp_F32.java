@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.background.moving;
+
+import boofcv.struct.distort.Point2Transform2Model_F32;
+import georegression.struct.homography.Homography2D_F32;
+import georegression.struct.point.Point2D_F32;
+
+/**
+ * <p>
+ * Applies a motion model to every pixel in a row of an image.  When the model is a {@link Homography2D_F32}
+ * the numerator and denominator of the homography are linear along a row, so they are computed once at
+ * the start of the row and then advanced with a multiply-add for each pixel.  Only a single division
+ * is required per pixel and none if the homography is affine.  The range of columns which map inside
+ * of the destination image is also solved for in closed form, allowing pixels outside of it to be skipped.
+ * </p>
+ *
+ * <p>
+ * For other motion models the {@link Point2Transform2Model_F32} is invoked on each pixel and the entire row
+ * is considered valid.  Since the transform might not be thread safe it should only be used from one thread,
+ * see {@link #isIncremental()}.  In the homography case a copy can be made for each thread using
+ * {@link #MotionRowWarp_F32(MotionRowWarp_F32)}.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class MotionRowWarp_F32 {
+	// used when the model is not a homography
+	private Point2Transform2Model_F32 transform;
+
+	// homography coefficients
+	private float a11,a12,a13,a21,a22,a23,a31,a32,a33;
+	// true if the last row of the homography is [0 0 1]
+	private boolean affine;
+
+	// shape of the image that points are mapped into
+	private int dstWidth,dstHeight;
+
+	// current row
+	private int y;
+	// numerators and denominator at x = 0 and how much they change with each pixel
+	private float nx0,ny0,d0;
+	private float dnx,dny,dd;
+	// range of columns which might map inside the destination image.  upper extent is exclusive
+	private int validX0,validX1;
+	// work space for the range of columns while it's being solved for
+	private double lower,upper;
+
+	public MotionRowWarp_F32() {
+	}
+
+	/**
+	 * Creates a new instance with the same motion model as 'src'
+	 */
+	public MotionRowWarp_F32( MotionRowWarp_F32 src ) {
+		this.transform = src.transform;
+		this.a11 = src.a11; this.a12 = src.a12; this.a13 = src.a13;
+		this.a21 = src.a21; this.a22 = src.a22; this.a23 = src.a23;
+		this.a31 = src.a31; this.a32 = src.a32; this.a33 = src.a33;
+		this.affine = src.affine;
+		this.dstWidth = src.dstWidth;
+		this.dstHeight = src.dstHeight;
+	}
+
+	/**
+	 * Specifies the motion model
+	 *
+	 * @param transform Used to apply the model if it's not a homography
+	 * @param model The motion model
+	 * @param dstWidth Width of the image points are mapped into
+	 * @param dstHeight Height of the image points are mapped into
+	 */
+	public <Motion> void configure( Point2Transform2Model_F32<Motion> transform , Motion model ,
+									int dstWidth , int dstHeight ) {
+		this.dstWidth = dstWidth;
+		this.dstHeight = dstHeight;
+
+		if( model instanceof Homography2D_F32 ) {
+			Homography2D_F32 H = (Homography2D_F32)model;
+			a11 = H.a11; a12 = H.a12; a13 = H.a13;
+			a21 = H.a21; a22 = H.a22; a23 = H.a23;
+			a31 = H.a31; a32 = H.a32; a33 = H.a33;
+			affine = a31 == 0 && a32 == 0 && a33 == 1;
+			this.transform = null;
+		} else {
+			transform.setModel(model);
+			this.transform = transform;
+		}
+	}
+
+	/**
+	 * If true then the homography is evaluated incrementally and copies of this class can be used
+	 * concurrently.
+	 */
+	public boolean isIncremental() {
+		return transform == null;
+	}
+
+	/**
+	 * Starts a new row and finds the columns which can map inside the destination image.  Pixels
+	 * inside the valid range can still map just outside, so the caller must still check the bounds.
+	 *
+	 * @param y The row
+	 * @param x0 Lower extent of the columns being considered, inclusive
+	 * @param x1 Upper extent of the columns being considered, exclusive
+	 * @return true if any pixels in the row can map inside the destination image
+	 */
+	public boolean setRow( int y , int x0 , int x1 ) {
+		this.y = y;
+		validX0 = x0;
+		validX1 = x1;
+		if( x1 <= x0 )
+			return false;
+
+		if( transform != null )
+			return true;
+
+		nx0 = a12*y + a13;
+		ny0 = a22*y + a23;
+		d0 = a32*y + a33;
+		dnx = a11; dny = a21; dd = a31;
+
+		// H and -H describe the same transform.  Flip the sign so that the denominator is positive inside the row
+		if( d0 + dd*(x0+x1)*0.5f < 0 ) {
+			nx0 = -nx0; ny0 = -ny0; d0 = -d0;
+			dnx = -dnx; dny = -dny; dd = -dd;
+		}
+
+		// each constraint has the form p + q*x >= 0
+		lower = x0;
+		upper = x1-1;
+
+		// positive denominator
+		if( !constrain(d0, dd) ) return false;
+		// 0 <= x' < width
+		if( !constrain(nx0, dnx) ) return false;
+		if( !constrain(dstWidth*(double)d0 - nx0, dstWidth*(double)dd - dnx) ) return false;
+		// 0 <= y' < height
+		if( !constrain(ny0, dny) ) return false;
+		if( !constrain(dstHeight*(double)d0 - ny0, dstHeight*(double)dd - dny) ) return false;
+
+		// pad by a pixel to be robust to round off errors
+		validX0 = Math.max(x0,(int)Math.floor(lower)-1);
+		validX1 = Math.min(x1,(int)Math.floor(upper)+2);
+
+		return validX0 < validX1;
+	}
+
+	/**
+	 * Shrinks the range [lower, upper] so that p + q*x &ge; 0 inside of it
+	 *
+	 * @return false if the range is empty
+	 */
+	private boolean constrain( double p , double q ) {
+		if( q == 0 ) {
+			return p >= 0;
+		}
+		double x = -p/q;
+		if( q > 0 ) {
+			if( x > lower ) lower = x;
+		} else {
+			if( x < upper ) upper = x;
+		}
+		// allow for a small amount of slop so that single pixel ranges aren't lost to round off
+		return lower <= upper + 1;
+	}
+
+	/**
+	 * Applies the motion model to a pixel in the current row
+	 *
+	 * @param x The column
+	 * @param output (Output) transformed point
+	 */
+	public void compute( int x , Point2D_F32 output ) {
+		if( transform != null ) {
+			transform.compute(x, y, output);
+		} else if( affine ) {
+			output.x = nx0 + dnx*x;
+			output.y = ny0 + dny*x;
+		} else {
+			float inv = 1.0f/(d0 + dd*x);
+			output.x = (nx0 + dnx*x)*inv;
+			output.y = (ny0 + dny*x)*inv;
+		}
+	}
+
+	/**
+	 * First column in the current row which can map inside the destination image
+	 */
+	public int getValidX0() {
+		return validX0;
+	}
+
+	/**
+	 * One past the last column in the current row which can map inside the destination image
+	 */
+	public int getValidX1() {
+		return validX1;
+	}
+}
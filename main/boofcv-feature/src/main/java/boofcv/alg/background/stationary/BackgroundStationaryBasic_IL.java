@@ -20,6 +20,8 @@ package boofcv.alg.background.stationary;
 
 import boofcv.alg.InputSanityCheck;
 import boofcv.alg.misc.ImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageMultiBand;
 import boofcv.core.image.GConvertImage;
 import boofcv.core.image.GImageMultiBand;
@@ -131,5 +133,51 @@ public class BackgroundStationaryBasic_IL<T extends ImageInterleaved<T>>
 		}
 	}
 
+	@Override
+	public void segmentAndUpdate(final T frame, final GrayU8 segmented) {
+		if( background.width == 1 ) {
+			ImageMiscOps.fill(segmented,unknownValue);
+			updateBackground(frame);
+			return;
+		}
+		InputSanityCheck.checkSameShape(background,frame,segmented);
+		inputWrapper.wrap(frame);
+
+		final int numBands = background.getNumBands();
+		final float thresholdSq = numBands*threshold*threshold;
+		final float minusLearn = 1.0f - learnRate;
+
+		BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				for (int y = y0; y < y1; y++) {
+					int indexBG = y*background.width*numBands;
+					int indexInput = frame.startIndex + y*frame.stride;
+					int indexSegmented = segmented.startIndex + y*segmented.stride;
+
+					int end = indexInput + frame.width*numBands;
+					while( indexInput < end ) {
+						float sumErrorSq = 0;
+						int endIndexBG = indexBG + numBands;
+						while( indexBG < endIndexBG ) {
+							float valueBG = background.data[indexBG];
+							float value = inputWrapper.getF(indexInput++);
+							float diff = valueBG - value;
+							sumErrorSq += diff*diff;
+							background.data[indexBG++] = minusLearn*valueBG + learnRate*value;
+						}
+
+						if (sumErrorSq <= thresholdSq) {
+							segmented.data[indexSegmented] = 0;
+						} else {
+							segmented.data[indexSegmented] = 1;
+						}
+						indexSegmented++;
+					}
+				}
+			}
+		});
+	}
+
 
 }
@@ -20,6 +20,8 @@ package boofcv.alg.background.stationary;
 
 import boofcv.alg.InputSanityCheck;
 import boofcv.alg.misc.ImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageMultiBand;
 import boofcv.core.image.GConvertImage;
 import boofcv.core.image.GImageMultiBand;
@@ -141,5 +143,58 @@ public class BackgroundStationaryBasic_PL<T extends ImageGray<T>>
 		}
 	}
 
+	@Override
+	public void segmentAndUpdate(final Planar<T> frame, final GrayU8 segmented) {
+		if( background.width == 1 ) {
+			ImageMiscOps.fill(segmented,unknownValue);
+			updateBackground(frame);
+			return;
+		}
+		InputSanityCheck.checkSameShape(background,frame,segmented);
+		inputWrapper.wrap(frame);
+
+		final int numBands = background.getNumBands();
+		final float thresholdSq = numBands*threshold*threshold;
+		final float minusLearn = 1.0f - learnRate;
+
+		BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				// each thread needs its own storage
+				float pixels[] = new float[numBands];
+
+				for (int y = y0; y < y1; y++) {
+					int indexBG = y*background.width;
+					int indexInput = frame.startIndex + y*frame.stride;
+					int indexSegmented = segmented.startIndex + y*segmented.stride;
+
+					int end = indexInput + frame.width;
+					while( indexInput < end ) {
+						inputWrapper.getF(indexInput, pixels);
+
+						double sumErrorSq = 0;
+						for (int band = 0; band < numBands; band++) {
+							GrayF32 backgroundBand = background.getBand(band);
+							float bg = backgroundBand.data[indexBG];
+							float diff = bg - pixels[band];
+							sumErrorSq += diff*diff;
+							backgroundBand.data[indexBG] = minusLearn*bg + learnRate*pixels[band];
+						}
+
+						if (sumErrorSq <= thresholdSq) {
+							segmented.data[indexSegmented] = 0;
+						} else {
+							segmented.data[indexSegmented] = 1;
+						}
+
+						indexInput++;
+						indexSegmented++;
+						indexBG++;
+					}
+				}
+			}
+		});
+	}
+
 
 }
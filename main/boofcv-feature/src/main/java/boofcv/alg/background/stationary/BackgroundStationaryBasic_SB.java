@@ -20,6 +20,8 @@ package boofcv.alg.background.stationary;
 
 import boofcv.alg.InputSanityCheck;
 import boofcv.alg.misc.ImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageGray;
 import boofcv.core.image.GConvertImage;
 import boofcv.core.image.GImageGray;
@@ -122,5 +124,45 @@ public class BackgroundStationaryBasic_SB<T extends ImageGray<T>>
 		}
 	}
 
+	@Override
+	public void segmentAndUpdate(final T frame, final GrayU8 segmented) {
+		if( background.width == 1 ) {
+			ImageMiscOps.fill(segmented,unknownValue);
+			updateBackground(frame);
+			return;
+		}
+		InputSanityCheck.checkSameShape(background,frame,segmented);
+		inputWrapper.wrap(frame);
+
+		final float thresholdSq = threshold*threshold;
+		final float minusLearn = 1.0f - learnRate;
+
+		BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				for (int y = y0; y < y1; y++) {
+					int indexBG = y*background.width;
+					int indexInput = frame.startIndex + y*frame.stride;
+					int indexSegmented = segmented.startIndex + y*segmented.stride;
+
+					int end = indexInput + frame.width;
+					while( indexInput < end ) {
+						float bg = background.data[indexBG];
+						float value = inputWrapper.getF(indexInput++);
+
+						float diff = bg - value;
+						if (diff * diff <= thresholdSq) {
+							segmented.data[indexSegmented++] = 0;
+						} else {
+							segmented.data[indexSegmented++] = 1;
+						}
+
+						background.data[indexBG++] = minusLearn*bg + learnRate*value;
+					}
+				}
+			}
+		});
+	}
+
 
 }
@@ -20,6 +20,8 @@ package boofcv.alg.background.stationary;
 
 import boofcv.alg.InputSanityCheck;
 import boofcv.alg.misc.ImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageMultiBand;
 import boofcv.core.image.GImageMultiBand;
 import boofcv.struct.image.GrayU8;
@@ -135,8 +137,6 @@ public class BackgroundStationaryGaussian_IL<T extends ImageInterleaved<T>>
 
 		final int numBands = background.getNumBands()/2;
 
-		float adjustedMinimumDifference = minimumDifference*numBands;
-
 		int indexBG = 0;
 		for (int y = 0; y < frame.height; y++) {
 			int indexInput = frame.startIndex + y*frame.stride;
@@ -146,39 +146,93 @@ public class BackgroundStationaryGaussian_IL<T extends ImageInterleaved<T>>
 			while( indexInput < end ) {
 				inputWrapper.getF(indexInput, inputPixel);
 
-				float mahalanobis = 0;
-				for (int band = 0; band < numBands; band++) {
+				segmented.data[indexSegmented] = classify(indexBG, inputPixel, numBands);
 
-					int indexBG_band = indexBG + band*2;
+				indexInput     += frame.numBands;
+				indexSegmented += 1;
+				indexBG        += background.numBands;
+			}
+		}
+	}
 
-					float meanBG = background.data[indexBG_band];
-					float varBG  = background.data[indexBG_band+1];
+	@Override
+	public void segmentAndUpdate(final T frame, final GrayU8 segmented) {
+		if( background.width == 1 ) {
+			ImageMiscOps.fill(segmented, unknownValue);
+			updateBackground(frame);
+			return;
+		}
+		InputSanityCheck.checkSameShape(background,frame,segmented);
+		inputWrapper.wrap(frame);
 
-					float diff = meanBG - inputPixel[band];
-					mahalanobis += diff * diff / varBG;
-				}
+		final int numBands = background.getNumBands()/2;
+		final float minusLearn = 1.0f - learnRate;
+
+		BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				// each thread needs its own storage
+				float pixel[] = new float[numBands];
+
+				for (int y = y0; y < y1; y++) {
+					int indexBG = y*background.stride;
+					int indexInput = frame.startIndex + y*frame.stride;
+					int indexSegmented = segmented.startIndex + y*segmented.stride;
+
+					int end = indexInput + frame.width*frame.numBands;
+					while( indexInput < end ) {
+						inputWrapper.getF(indexInput, pixel);
+
+						segmented.data[indexSegmented++] = classify(indexBG, pixel, numBands);
 
-				if (mahalanobis <= threshold) {
-					segmented.data[indexSegmented] = 0;
-				} else {
-					if( minimumDifference == 0) {
-						segmented.data[indexSegmented] = 1;
-					} else {
-						float sumAbsDiff = 0;
 						for (int band = 0; band < numBands; band++) {
-							int indexBG_band = indexBG + band*2;
-							sumAbsDiff += Math.abs(background.data[indexBG_band] - inputPixel[band]);
+							float inputValue = pixel[band];
+							float meanBG = background.data[indexBG];
+							float varianceBG = background.data[indexBG+1];
+
+							float diff = meanBG-inputValue;
+							background.data[indexBG++] = minusLearn*meanBG + learnRate*inputValue;
+							background.data[indexBG++] = minusLearn*varianceBG + learnRate*diff*diff;
 						}
-						if (sumAbsDiff >= adjustedMinimumDifference)
-							segmented.data[indexSegmented] = 1;
-						else
-							segmented.data[indexSegmented] = 0;
+
+						indexInput += frame.numBands;
 					}
 				}
+			}
+		});
+	}
 
-				indexInput     += frame.numBands;
-				indexSegmented += 1;
-				indexBG        += background.numBands;
+	/**
+	 * Classifies a pixel using the background model which starts at the specified index
+	 *
+	 * @return 0 for background and 1 for foreground
+	 */
+	private byte classify( int indexBG , float pixel[] , int numBands ) {
+		float mahalanobis = 0;
+		for (int band = 0; band < numBands; band++) {
+			int indexBG_band = indexBG + band*2;
+
+			float meanBG = background.data[indexBG_band];
+			float varBG  = background.data[indexBG_band+1];
+
+			float diff = meanBG - pixel[band];
+			mahalanobis += diff * diff / varBG;
+		}
+
+		if (mahalanobis <= threshold) {
+			return 0;
+		} else {
+			if( minimumDifference == 0) {
+				return 1;
+			} else {
+				float sumAbsDiff = 0;
+				for (int band = 0; band < numBands; band++) {
+					sumAbsDiff += Math.abs(background.data[indexBG + band*2] - pixel[band]);
+				}
+				if (sumAbsDiff >= minimumDifference*numBands)
+					return 1;
+				else
+					return 0;
 			}
 		}
 	}
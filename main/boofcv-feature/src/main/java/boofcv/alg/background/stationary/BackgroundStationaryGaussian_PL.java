@@ -19,10 +19,10 @@
 package boofcv.alg.background.stationary;
 
 import boofcv.alg.InputSanityCheck;
-import boofcv.alg.misc.GImageMiscOps;
 import boofcv.alg.misc.ImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageMultiBand;
-import boofcv.core.image.GConvertImage;
 import boofcv.core.image.GImageMultiBand;
 import boofcv.struct.image.*;
 
@@ -37,13 +37,13 @@ public class BackgroundStationaryGaussian_PL<T extends ImageGray<T>>
 
 	// wrappers which provide abstraction across image types
 	protected GImageMultiBand inputWrapper;
-	protected GImageMultiBand bgWrapper;
 
 	// storage for multi-band pixel values
 	protected float[] inputPixel;
 
-	// background is composed of bands*2 channels.  even = mean, odd = variance
-	Planar<GrayF32> background;
+	// background is composed of bands*2 interleaved channels.  even = mean, odd = variance.
+	// Interleaved so that the model for a pixel is in a contiguous block of memory
+	InterleavedF32 background;
 
 	/**
 	 * Configurations background removal.
@@ -60,9 +60,7 @@ public class BackgroundStationaryGaussian_PL<T extends ImageGray<T>>
 
 		int numBands = imageType.getNumBands();
 
-		background = new Planar<>(GrayF32.class,1,1,2*numBands);
-		bgWrapper = FactoryGImageMultiBand.create(background.getImageType());
-		bgWrapper.wrap(background);
+		background = new InterleavedF32(1,1,2*numBands);
 
 		inputWrapper = FactoryGImageMultiBand.create(imageType);
 
@@ -76,24 +74,32 @@ public class BackgroundStationaryGaussian_PL<T extends ImageGray<T>>
 
 	@Override
 	public void updateBackground( Planar<T> frame) {
+		inputWrapper.wrap(frame);
+
+		int numBands = background.getNumBands()/2;
+
 		if( background.width == 1 ) {
 			background.reshape(frame.width, frame.height);
 			// initialize the mean to the current image and the initial variance is whatever it is set to
-			for (int band = 0; band < background.getNumBands(); band += 2) {
-				GConvertImage.convert(frame.getBand(band / 2), background.getBand(band));
-				GImageMiscOps.fill(background.getBand(band + 1), initialVariance);
+			int indexBG = 0;
+			for (int y = 0; y < frame.height; y++) {
+				int indexInput = frame.startIndex + y*frame.stride;
+				int end = indexInput + frame.width;
+				while( indexInput < end ) {
+					inputWrapper.getF(indexInput++, inputPixel);
+					for (int band = 0; band < numBands; band++) {
+						background.data[indexBG++] = inputPixel[band];
+						background.data[indexBG++] = initialVariance;
+					}
+				}
 			}
 			return;
 		} else {
 			InputSanityCheck.checkSameShape(background, frame);
 		}
 
-		inputWrapper.wrap(frame);
-
-		int numBands = background.getNumBands()/2;
 		float minusLearn = 1.0f - learnRate;
 
-
 		int indexBG = 0;
 		for (int y = 0; y < background.height; y++) {
 			int indexInput = frame.startIndex + y*frame.stride;
@@ -102,20 +108,16 @@ public class BackgroundStationaryGaussian_PL<T extends ImageGray<T>>
 				inputWrapper.getF(indexInput, inputPixel);
 
 				for (int band = 0; band < numBands; band++) {
-					GrayF32 backgroundMean = background.getBand(band*2);
-					GrayF32 backgroundVar = background.getBand(band*2+1);
-
 					float inputValue = inputPixel[band];
-					float meanBG = backgroundMean.data[indexBG];
-					float varianceBG = backgroundVar.data[indexBG];
+					float meanBG = background.data[indexBG];
+					float varianceBG = background.data[indexBG+1];
 
 					float diff = meanBG-inputValue;
-					backgroundMean.data[indexBG] = minusLearn*meanBG + learnRate*inputValue;
-					backgroundVar.data[indexBG] = minusLearn*varianceBG + learnRate*diff*diff;
+					background.data[indexBG++] = minusLearn*meanBG + learnRate*inputValue;
+					background.data[indexBG++] = minusLearn*varianceBG + learnRate*diff*diff;
 				}
 
 				indexInput++;
-				indexBG++;
 			}
 		}
 	}
@@ -130,8 +132,6 @@ public class BackgroundStationaryGaussian_PL<T extends ImageGray<T>>
 
 		final int numBands = background.getNumBands()/2;
 
-		float adjustedMinimumDifference = minimumDifference*numBands;
-
 		int indexBG = 0;
 		for (int y = 0; y < frame.height; y++) {
 			int indexInput = frame.startIndex + y*frame.stride;
@@ -141,40 +141,91 @@ public class BackgroundStationaryGaussian_PL<T extends ImageGray<T>>
 			while( indexInput < end ) {
 				inputWrapper.getF(indexInput, inputPixel);
 
-				float mahalanobis = 0;
-				for (int band = 0; band < numBands; band++) {
+				segmented.data[indexSegmented] = classify(indexBG, inputPixel, numBands);
 
-					GrayF32 backgroundMean = background.getBand(band*2);
-					GrayF32 backgroundVar = background.getBand(band*2+1);
+				indexInput++;
+				indexSegmented++;
+				indexBG += background.numBands;
+			}
+		}
+	}
 
-					float meanBG = backgroundMean.data[indexBG];
-					float varBG = backgroundVar.data[indexBG];
+	@Override
+	public void segmentAndUpdate(final Planar<T> frame, final GrayU8 segmented) {
+		if( background.width == 1 ) {
+			ImageMiscOps.fill(segmented, unknownValue);
+			updateBackground(frame);
+			return;
+		}
+		InputSanityCheck.checkSameShape(background,frame,segmented);
+		inputWrapper.wrap(frame);
 
-					float diff = meanBG - inputPixel[band];
-					mahalanobis += diff * diff / varBG;
-				}
+		final int numBands = background.getNumBands()/2;
+		final float minusLearn = 1.0f - learnRate;
+
+		BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				// each thread needs its own storage
+				float pixel[] = new float[numBands];
+
+				for (int y = y0; y < y1; y++) {
+					int indexBG = y*background.stride;
+					int indexInput = frame.startIndex + y*frame.stride;
+					int indexSegmented = segmented.startIndex + y*segmented.stride;
+
+					int end = indexInput + frame.width;
+					while( indexInput < end ) {
+						inputWrapper.getF(indexInput++, pixel);
+
+						segmented.data[indexSegmented++] = classify(indexBG, pixel, numBands);
 
-				if (mahalanobis <= threshold) {
-					segmented.data[indexSegmented] = 0;
-				} else {
-					if( minimumDifference == 0) {
-						segmented.data[indexSegmented] = 1;
-					} else {
-						float sumAbsDiff = 0;
 						for (int band = 0; band < numBands; band++) {
-							GrayF32 backgroundMean = background.getBand(band*2);
-							sumAbsDiff += Math.abs(backgroundMean.data[indexBG] - inputPixel[band]);
+							float inputValue = pixel[band];
+							float meanBG = background.data[indexBG];
+							float varianceBG = background.data[indexBG+1];
+
+							float diff = meanBG-inputValue;
+							background.data[indexBG++] = minusLearn*meanBG + learnRate*inputValue;
+							background.data[indexBG++] = minusLearn*varianceBG + learnRate*diff*diff;
 						}
-						if (sumAbsDiff >= adjustedMinimumDifference)
-							segmented.data[indexSegmented] = 1;
-						else
-							segmented.data[indexSegmented] = 0;
 					}
 				}
+			}
+		});
+	}
 
-				indexInput++;
-				indexSegmented++;
-				indexBG++;
+	/**
+	 * Classifies a pixel using the background model which starts at the specified index
+	 *
+	 * @return 0 for background and 1 for foreground
+	 */
+	private byte classify( int indexBG , float pixel[] , int numBands ) {
+		float mahalanobis = 0;
+		for (int band = 0; band < numBands; band++) {
+			int indexBG_band = indexBG + band*2;
+
+			float meanBG = background.data[indexBG_band];
+			float varBG  = background.data[indexBG_band+1];
+
+			float diff = meanBG - pixel[band];
+			mahalanobis += diff * diff / varBG;
+		}
+
+		if (mahalanobis <= threshold) {
+			return 0;
+		} else {
+			if( minimumDifference == 0) {
+				return 1;
+			} else {
+				float sumAbsDiff = 0;
+				for (int band = 0; band < numBands; band++) {
+					sumAbsDiff += Math.abs(background.data[indexBG + band*2] - pixel[band]);
+				}
+				if (sumAbsDiff >= minimumDifference*numBands)
+					return 1;
+				else
+					return 0;
 			}
 		}
 	}
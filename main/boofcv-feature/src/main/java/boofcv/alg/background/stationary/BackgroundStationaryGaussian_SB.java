@@ -20,10 +20,10 @@ package boofcv.alg.background.stationary;
 
 import boofcv.alg.InputSanityCheck;
 import boofcv.alg.background.moving.BackgroundMovingGaussian;
-import boofcv.alg.misc.GImageMiscOps;
 import boofcv.alg.misc.ImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageGray;
-import boofcv.core.image.GConvertImage;
 import boofcv.core.image.GImageGray;
 import boofcv.struct.image.*;
 
@@ -38,8 +38,8 @@ public class BackgroundStationaryGaussian_SB<T extends ImageGray<T>>
 	// wrappers which provide abstraction across image types
 	protected GImageGray inputWrapper;
 
-	// background is composed of two channels.  0 = mean, 1 = variance
-	Planar<GrayF32> background = new Planar<>(GrayF32.class,1,1,2);
+	// background is composed of two interleaved channels.  0 = mean, 1 = variance
+	InterleavedF32 background = new InterleavedF32(1,1,2);
 
 	/**
 	 * Configurations background removal.
@@ -62,22 +62,27 @@ public class BackgroundStationaryGaussian_SB<T extends ImageGray<T>>
 
 	@Override
 	public void updateBackground( T frame) {
+		inputWrapper.wrap(frame);
+
 		if( background.width == 1 ) {
 			background.reshape(frame.width, frame.height);
-			GConvertImage.convert(frame, background.getBand(0));
-			GImageMiscOps.fill(background.getBand(1),initialVariance);
+
+			int indexBG = 0;
+			for (int y = 0; y < frame.height; y++) {
+				int indexInput = frame.startIndex + y*frame.stride;
+				int end = indexInput + frame.width;
+				while( indexInput < end ) {
+					background.data[indexBG++] = inputWrapper.getF(indexInput++);
+					background.data[indexBG++] = initialVariance;
+				}
+			}
 			return;
 		} else {
 			InputSanityCheck.checkSameShape(background, frame);
 		}
 
-		inputWrapper.wrap(frame);
-
 		float minusLearn = 1.0f - learnRate;
 
-		GrayF32 backgroundMean = background.getBand(0);
-		GrayF32 backgroundVar = background.getBand(1);
-
 		int indexBG = 0;
 		for (int y = 0; y < background.height; y++) {
 			int indexInput = frame.startIndex + y*frame.stride;
@@ -85,14 +90,13 @@ public class BackgroundStationaryGaussian_SB<T extends ImageGray<T>>
 			int end = indexInput + frame.width;
 			while( indexInput < end ) {
 				float inputValue = inputWrapper.getF(indexInput);
-				float meanBG = backgroundMean.data[indexBG];
-				float varianceBG = backgroundVar.data[indexBG];
+				float meanBG = background.data[indexBG];
+				float varianceBG = background.data[indexBG+1];
 
 				float diff = meanBG-inputValue;
-				backgroundMean.data[indexBG] = minusLearn*meanBG + learnRate*inputValue;
-				backgroundVar.data[indexBG] = minusLearn*varianceBG + learnRate*diff*diff;
+				background.data[indexBG++] = minusLearn*meanBG + learnRate*inputValue;
+				background.data[indexBG++] = minusLearn*varianceBG + learnRate*diff*diff;
 
-				indexBG++;
 				indexInput++;
 			}
 		}
@@ -107,9 +111,6 @@ public class BackgroundStationaryGaussian_SB<T extends ImageGray<T>>
 		InputSanityCheck.checkSameShape(background,frame,segmented);
 		inputWrapper.wrap(frame);
 
-		GrayF32 backgroundMean = background.getBand(0);
-		GrayF32 backgroundVar = background.getBand(1);
-
 		int indexBG = 0;
 		for (int y = 0; y < frame.height; y++) {
 			int indexInput = frame.startIndex + y*frame.stride;
@@ -119,25 +120,70 @@ public class BackgroundStationaryGaussian_SB<T extends ImageGray<T>>
 			while( indexInput < end ) {
 				float pixelFrame = inputWrapper.getF(indexInput);
 
-				float meanBG = backgroundMean.data[indexBG];
-				float varBG = backgroundVar.data[indexBG];
+				float meanBG = background.data[indexBG];
+				float varBG = background.data[indexBG+1];
 
-				float diff = meanBG - pixelFrame;
-				float chisq = diff*diff/varBG;
-
-				if (chisq <= threshold) {
-					segmented.data[indexSegmented] = 0;
-				} else {
-					if( diff >= minimumDifference || -diff >= minimumDifference )
-						segmented.data[indexSegmented] = 1;
-					else
-						segmented.data[indexSegmented] = 0;
-				}
+				segmented.data[indexSegmented] = classify(meanBG - pixelFrame, varBG);
 
 				indexInput++;
 				indexSegmented++;
-				indexBG++;
+				indexBG += 2;
 			}
 		}
 	}
+
+	@Override
+	public void segmentAndUpdate(final T frame, final GrayU8 segmented) {
+		if( background.width == 1 ) {
+			ImageMiscOps.fill(segmented, unknownValue);
+			updateBackground(frame);
+			return;
+		}
+		InputSanityCheck.checkSameShape(background,frame,segmented);
+		inputWrapper.wrap(frame);
+
+		final float minusLearn = 1.0f - learnRate;
+
+		BoofConcurrency.loopBlocks(0, frame.height, new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				for (int y = y0; y < y1; y++) {
+					int indexBG = y*background.width*2;
+					int indexInput = frame.startIndex + y*frame.stride;
+					int indexSegmented = segmented.startIndex + y*segmented.stride;
+
+					int end = indexInput + frame.width;
+					while( indexInput < end ) {
+						float inputValue = inputWrapper.getF(indexInput++);
+						float meanBG = background.data[indexBG];
+						float varianceBG = background.data[indexBG+1];
+
+						float diff = meanBG - inputValue;
+						segmented.data[indexSegmented++] = classify(diff, varianceBG);
+
+						background.data[indexBG++] = minusLearn*meanBG + learnRate*inputValue;
+						background.data[indexBG++] = minusLearn*varianceBG + learnRate*diff*diff;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Classifies a pixel given the difference from the mean and the variance
+	 *
+	 * @return 0 for background and 1 for foreground
+	 */
+	private byte classify( float diff , float varBG ) {
+		float chisq = diff*diff/varBG;
+
+		if (chisq <= threshold) {
+			return 0;
+		} else {
+			if( diff >= minimumDifference || -diff >= minimumDifference )
+				return 1;
+			else
+				return 0;
+		}
+	}
 }
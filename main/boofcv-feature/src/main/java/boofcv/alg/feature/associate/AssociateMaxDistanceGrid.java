@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.feature.associate;
+
+import boofcv.abst.feature.associate.ScoreAssociation;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.MatchScoreType;
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
+
+/**
+ * <p>
+ * Two features are only considered for association if they are within the specified max distance
+ * of each other.  Produces the same output as {@link AssociateMaxDistanceNaive} but instead of scanning
+ * every possible pair, features are binned into a {@link GridPointIndex2D} whose cells are at least as large
+ * as the max distance.  Only features in neighboring cells are examined, making the cost proportional to the
+ * local feature density instead of N*M.
+ * </p>
+ *
+ * <p>
+ * The grid is rebuilt each time association is performed.  This is O(N) and reuses its memory, so as tracks
+ * move around between frames the index is maintained without creating new objects.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class AssociateMaxDistanceGrid<D> implements AssociateMaxDistance<D> {
+	// computes association score
+	private ScoreAssociation<D> scoreAssociation;
+
+	// maximum distance two features can be apart
+	private double maxDistance = Double.MAX_VALUE;
+
+	// the largest allowed error
+	private double maxError;
+
+	// is backwards validation performed during association?
+	private boolean backwardsValidation;
+
+	// input lists
+	private FastQueue<Point2D_F64> locationSrc;
+	private FastQueue<D> descSrc;
+	private FastQueue<Point2D_F64> locationDst;
+	private FastQueue<D> descDst;
+
+	// spatial index of source and destination features
+	private GridPointIndex2D gridSrc = new GridPointIndex2D();
+	private GridPointIndex2D gridDst = new GridPointIndex2D();
+
+	// storage for indexes of features which are inside the search region
+	private GrowQueue_I32 candidates = new GrowQueue_I32();
+
+	// list of source features not associated
+	private GrowQueue_I32 unassociatedSrc = new GrowQueue_I32();
+
+	// list of features that have been matched with each other
+	private FastQueue<AssociatedIndex> matched = new FastQueue<>(10, AssociatedIndex.class, true);
+
+	// creates a list of unassociated features from the list of matches
+	private FindUnassociated unassociated = new FindUnassociated();
+
+	/**
+	 * Specifies score mechanism
+	 *
+	 * @param scoreAssociation How features are scored.
+	 * @param backwardsValidation Require that matches are mutual in forward/backwards directions
+	 * @param maxError Maximum allowed association error
+	 * @param maxDistance Maximum distance in pixels two features can be apart
+	 */
+	public AssociateMaxDistanceGrid(ScoreAssociation<D> scoreAssociation,
+									boolean backwardsValidation,
+									double maxError ,
+									double maxDistance )
+	{
+		this.scoreAssociation = scoreAssociation;
+		this.backwardsValidation = backwardsValidation;
+		this.maxError = maxError;
+		this.maxDistance = maxDistance;
+	}
+
+	@Override
+	public double getMaxDistance() {
+		return maxDistance;
+	}
+
+	@Override
+	public void setMaxDistance(double maxDistance) {
+		this.maxDistance = maxDistance;
+	}
+
+	@Override
+	public void setSource(FastQueue<Point2D_F64> location, FastQueue<D> descriptions) {
+		if( location.size() != descriptions.size() )
+			throw new IllegalArgumentException("The two lists must be the same size");
+
+		this.locationSrc = location;
+		this.descSrc = descriptions;
+	}
+
+	@Override
+	public void setDestination(FastQueue<Point2D_F64> location, FastQueue<D> descriptions) {
+		if( location.size() != descriptions.size() )
+			throw new IllegalArgumentException("The two lists must be the same size");
+
+		this.locationDst = location;
+		this.descDst = descriptions;
+	}
+
+	@Override
+	public void associate() {
+		unassociatedSrc.reset();
+		matched.reset();
+
+		gridDst.process(locationDst, maxDistance);
+		if( backwardsValidation )
+			gridSrc.process(locationSrc, maxDistance);
+
+		for( int i = 0; i < locationSrc.size(); i++ ) {
+			Point2D_F64 p_s = locationSrc.get(i);
+			D d_s = descSrc.get(i);
+
+			gridDst.findNearby(p_s.x, p_s.y, maxDistance, candidates);
+
+			double bestScore = maxError;
+			int bestIndex = -1;
+
+			for( int k = 0; k < candidates.size; k++ ) {
+				int j = candidates.data[k];
+
+				double score = scoreAssociation.score(d_s,descDst.get(j));
+				if( isBetter(score, j, bestScore, bestIndex) ) {
+					bestScore = score;
+					bestIndex = j;
+				}
+			}
+
+			if( bestIndex == -1 ) {
+				unassociatedSrc.add(i);
+				continue;
+			}
+
+			if( backwardsValidation && !backwardsValidation(i, bestIndex)) {
+				unassociatedSrc.add(i);
+				continue;
+			}
+
+			AssociatedIndex m = matched.grow();
+			m.src = i;
+			m.dst = bestIndex;
+			m.fitScore = bestScore;
+		}
+	}
+
+	/**
+	 * Finds the best match for an index in destination and sees if it matches the source index
+	 *
+	 * @param indexSrc The index in source being examined
+	 * @param bestIndex Index in dst with the best fit to source
+	 * @return true if a match was found and false if not
+	 */
+	private boolean backwardsValidation(int indexSrc, int bestIndex) {
+		double bestScoreV = maxError;
+		int bestIndexV = -1;
+
+		D d_forward = descDst.get(bestIndex);
+		Point2D_F64 p_d = locationDst.get(bestIndex);
+
+		gridSrc.findNearby(p_d.x, p_d.y, maxDistance, candidates);
+
+		for( int k = 0; k < candidates.size; k++ ) {
+			int j = candidates.data[k];
+
+			double score = scoreAssociation.score(d_forward,descSrc.get(j));
+			if( isBetter(score, j, bestScoreV, bestIndexV) ) {
+				bestScoreV = score;
+				bestIndexV = j;
+			}
+		}
+
+		return bestIndexV == indexSrc;
+	}
+
+	/**
+	 * Candidates are not visited in index order.  Ties are resolved by selecting the lowest index so that
+	 * the results are identical to a brute force search.
+	 */
+	private static boolean isBetter( double score , int index , double bestScore , int bestIndex ) {
+		if( score < bestScore )
+			return true;
+		return bestIndex != -1 && score == bestScore && index < bestIndex;
+	}
+
+	@Override
+	public FastQueue<AssociatedIndex> getMatches() {
+		return matched;
+	}
+
+	@Override
+	public GrowQueue_I32 getUnassociatedSource() {
+		return unassociatedSrc;
+	}
+
+	@Override
+	public GrowQueue_I32 getUnassociatedDestination() {
+		return unassociated.checkDestination(matched,locationDst.size());
+	}
+
+	@Override
+	public void setThreshold(double score) {
+		maxError = score;
+	}
+
+	@Override
+	public MatchScoreType getScoreType() {
+		return scoreAssociation.getScoreType();
+	}
+
+	@Override
+	public boolean uniqueSource() {
+		return true;
+	}
+
+	@Override
+	public boolean uniqueDestination() {
+		return false;
+	}
+}
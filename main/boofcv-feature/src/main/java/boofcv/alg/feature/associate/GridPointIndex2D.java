@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.feature.associate;
+
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
+
+/**
+ * <p>
+ * Spatial index for quickly finding all the points which are within a radius of a query location.  Points are
+ * sorted into a regular grid that covers their bounding box.  The width of a cell is at least the search radius
+ * so a search only needs to examine the 3x3 block of cells around the query.  If the radius is small relative to
+ * the spread of the points the cell size is increased so that the number of cells never exceeds the number of
+ * points.
+ * </p>
+ *
+ * <p>
+ * Cells are stored in a compressed format, the index of every point is sorted by cell in a single array and
+ * the start of each cell is recorded in another.  Rebuilding the index is O(N) and after the first call no
+ * memory is declared unless the number of points increases.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class GridPointIndex2D {
+
+	// the points which have been indexed
+	private FastQueue<Point2D_F64> points;
+
+	// lower extent of the grid
+	private double minX,minY;
+	// size of a square cell
+	private double cellSize;
+	// shape of the grid.  Set to zero if empty
+	private int cols,rows;
+
+	// index in 'ordered' that each cell starts at.  Has one more element than the number of cells
+	private GrowQueue_I32 cellStart = new GrowQueue_I32();
+	// point indexes sorted by cell
+	private GrowQueue_I32 ordered = new GrowQueue_I32();
+	// which cell each point belongs in
+	private GrowQueue_I32 cellOfPoint = new GrowQueue_I32();
+
+	/**
+	 * Builds the index for the set of points
+	 *
+	 * @param points Points which are to be indexed.  A reference is saved internally.
+	 * @param radius The radius which searches will be performed at
+	 */
+	public void process( FastQueue<Point2D_F64> points , double radius ) {
+		this.points = points;
+
+		final int N = points.size();
+		if( N == 0 ) {
+			cols = rows = 0;
+			return;
+		}
+
+		// find the bounding box
+		minX = Double.MAX_VALUE; minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for( int i = 0; i < N; i++ ) {
+			Point2D_F64 p = points.data[i];
+			if( p.x < minX ) minX = p.x;
+			if( p.x > maxX ) maxX = p.x;
+			if( p.y < minY ) minY = p.y;
+			if( p.y > maxY ) maxY = p.y;
+		}
+		double width = maxX-minX;
+		double height = maxY-minY;
+
+		// make sure there aren't more cells than points
+		cellSize = Math.max(radius,Math.sqrt(width*height/N));
+		cellSize = Math.max(cellSize,Math.max(width,height)/N);
+		if( !(cellSize > 0) )
+			cellSize = 1;
+
+		cols = (int)(width/cellSize) + 1;
+		rows = (int)(height/cellSize) + 1;
+
+		// counting sort of point indexes by cell
+		int numCells = cols*rows;
+		cellStart.resize(numCells+1);
+		cellOfPoint.resize(N);
+		ordered.resize(N);
+
+		int[] start = cellStart.data;
+		for( int i = 0; i <= numCells; i++ ) {
+			start[i] = 0;
+		}
+
+		for( int i = 0; i < N; i++ ) {
+			Point2D_F64 p = points.data[i];
+			int cell = cellRow(p.y)*cols + cellCol(p.x);
+			cellOfPoint.data[i] = cell;
+			start[cell+1]++;
+		}
+		for( int i = 0; i < numCells; i++ ) {
+			start[i+1] += start[i];
+		}
+		// use the start of the next cell as a counter then shift it back at the end
+		for( int i = 0; i < N; i++ ) {
+			int cell = cellOfPoint.data[i];
+			ordered.data[start[cell]++] = i;
+		}
+		for( int i = numCells; i > 0; i-- ) {
+			start[i] = start[i-1];
+		}
+		start[0] = 0;
+	}
+
+	/**
+	 * Finds all the points which are within the specified distance of the query point, inclusive.
+	 *
+	 * @param x query point x-coordinate
+	 * @param y query point y-coordinate
+	 * @param radius search radius.  Should be &le; the radius the index was built for.
+	 * @param output (Output) indexes of points inside the search region.
+	 */
+	public void findNearby( double x , double y , double radius , GrowQueue_I32 output ) {
+		output.reset();
+		if( cols == 0 )
+			return;
+
+		double c0 = Math.floor((x-radius-minX)/cellSize);
+		double c1 = Math.floor((x+radius-minX)/cellSize);
+		double r0 = Math.floor((y-radius-minY)/cellSize);
+		double r1 = Math.floor((y+radius-minY)/cellSize);
+
+		if( c1 < 0 || r1 < 0 || c0 >= cols || r0 >= rows )
+			return;
+
+		int col0 = c0 < 0 ? 0 : (int)c0;
+		int col1 = c1 >= cols ? cols-1 : (int)c1;
+		int row0 = r0 < 0 ? 0 : (int)r0;
+		int row1 = r1 >= rows ? rows-1 : (int)r1;
+
+		double radius2 = radius*radius;
+		int[] start = cellStart.data;
+
+		for( int row = row0; row <= row1; row++ ) {
+			int cell0 = row*cols+col0;
+			int end = start[row*cols+col1+1];
+			for( int k = start[cell0]; k < end; k++ ) {
+				int index = ordered.data[k];
+				Point2D_F64 p = points.data[index];
+				double dx = p.x-x;
+				double dy = p.y-y;
+				if( dx*dx + dy*dy <= radius2 )
+					output.add(index);
+			}
+		}
+	}
+
+	private int cellCol( double x ) {
+		int col = (int)((x-minX)/cellSize);
+		return col >= cols ? cols-1 : col;
+	}
+
+	private int cellRow( double y ) {
+		int row = (int)((y-minY)/cellSize);
+		return row >= rows ? rows-1 : row;
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	public double getCellSize() {
+		return cellSize;
+	}
+}
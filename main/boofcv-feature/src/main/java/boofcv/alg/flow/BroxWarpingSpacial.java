@@ -242,7 +242,6 @@ public class BroxWarpingSpacial<T extends ImageGray<T>> extends DenseFlowPyramid
 								GrayF32 deriv2XX , GrayF32 deriv2YY, GrayF32 deriv2XY) {
 
 		int N = image1.width*image1.height;
-		int stride = image1.stride;
 
 		// outer Taylor expansion iterations
 		for( int indexOuter = 0; indexOuter < numOuter; indexOuter++ ) {
@@ -279,36 +278,7 @@ public class BroxWarpingSpacial<T extends ImageGray<T>> extends DenseFlowPyramid
 				int iter = 0;
 
 				do {
-					// inner SOR iteration.
-					error = 0;
-
-					// inner portion
-					for (int y = 1; y < image1.height - 1; y++) {
-						int i = y * image1.width + 1;
-						for (int x = 1; x < image1.width - 1; x++, i++) {
-							error += iterationSor(image1, deriv1X, deriv1Y, i, i + 1, i - 1, i + stride, i - stride);
-						}
-					}
-
-					// border regions require special treatment
-					int y0 = 0;
-					int y1 = image1.height-1;
-					for (int x = 0; x < image1.width; x++ ) {
-						error += iterationSor(image1, deriv1X, deriv1Y,
-								s(x, y0), s(x + 1, y0), s(x - 1, y0), s(x, y0 - 1), s(x, y0 + 1));
-
-						error += iterationSor(image1, deriv1X, deriv1Y,
-								s(x, y1), s(x + 1, y1), s(x - 1, y1), s(x, y1 - 1), s(x, y1 + 1));
-					}
-
-					int x0 = 0;
-					int x1 = image1.width-1;
-					for (int y = 1; y < image1.height - 1; y++) {
-						error += iterationSor(image1, deriv1X, deriv1Y,
-								s(x0, y), s(x0 - 1, y), s(x0 + 1, y), s(x0, y - 1), s(x0, y + 1));
-						error += iterationSor(image1, deriv1X, deriv1Y,
-								s(x1, y), s(x1 - 1, y), s(x1 + 1, y), s(x1, y - 1), s(x1, y + 1));
-					}
+					error = sweepSor(image1, deriv1X, deriv1Y);
 				} while (error > convergeTolerance * image1.width * image1.height && ++iter < maxIterationsSor);
 			}
 
@@ -318,6 +288,80 @@ public class BroxWarpingSpacial<T extends ImageGray<T>> extends DenseFlowPyramid
 		}
 	}
 
+	/**
+	 * Performs a single SOR iteration across the whole image
+	 *
+	 * @return sum of the squared change in the motion increments
+	 */
+	protected float sweepSor(GrayF32 image1, GrayF32 deriv1X, GrayF32 deriv1Y) {
+		int stride = image1.stride;
+		float error = 0;
+
+		// inner portion
+		for (int y = 1; y < image1.height - 1; y++) {
+			int i = y * image1.width + 1;
+			for (int x = 1; x < image1.width - 1; x++, i++) {
+				error += iterationSor(image1, deriv1X, deriv1Y, i, i + 1, i - 1, i + stride, i - stride);
+			}
+		}
+
+		// border regions require special treatment
+		int y0 = 0;
+		int y1 = image1.height-1;
+		for (int x = 0; x < image1.width; x++ ) {
+			error += iterationSor(image1, deriv1X, deriv1Y,
+					s(x, y0), s(x + 1, y0), s(x - 1, y0), s(x, y0 - 1), s(x, y0 + 1));
+
+			error += iterationSor(image1, deriv1X, deriv1Y,
+					s(x, y1), s(x + 1, y1), s(x - 1, y1), s(x, y1 - 1), s(x, y1 + 1));
+		}
+
+		int x0 = 0;
+		int x1 = image1.width-1;
+		for (int y = 1; y < image1.height - 1; y++) {
+			error += iterationSor(image1, deriv1X, deriv1Y,
+					s(x0, y), s(x0 - 1, y), s(x0 + 1, y), s(x0, y - 1), s(x0, y + 1));
+			error += iterationSor(image1, deriv1X, deriv1Y,
+					s(x1, y), s(x1 - 1, y), s(x1 + 1, y), s(x1, y - 1), s(x1, y + 1));
+		}
+
+		return error;
+	}
+
+	/**
+	 * Performs a SOR iteration along a single row.  Only pixels in the row and the rows immediately
+	 * above and below are accessed, so rows with the same parity can be updated at the same time.
+	 *
+	 * @return sum of the squared change in the motion increments
+	 */
+	protected float sweepSorRow(GrayF32 image1, GrayF32 deriv1X, GrayF32 deriv1Y, int y) {
+		int stride = image1.stride;
+		float error = 0;
+
+		if( y == 0 || y == image1.height-1 ) {
+			for (int x = 0; x < image1.width; x++ ) {
+				error += iterationSor(image1, deriv1X, deriv1Y,
+						s(x, y), s(x + 1, y), s(x - 1, y), s(x, y - 1), s(x, y + 1));
+			}
+			return error;
+		}
+
+		int x1 = image1.width-1;
+		error += iterationSor(image1, deriv1X, deriv1Y,
+				s(0, y), s(-1, y), s(1, y), s(0, y - 1), s(0, y + 1));
+
+		int i = y * image1.width + 1;
+		for (int x = 1; x < x1; x++, i++) {
+			error += iterationSor(image1, deriv1X, deriv1Y, i, i + 1, i - 1, i + stride, i - stride);
+		}
+
+		if( x1 > 0 )
+			error += iterationSor(image1, deriv1X, deriv1Y,
+					s(x1, y), s(x1 - 1, y), s(x1 + 1, y), s(x1, y - 1), s(x1, y + 1));
+
+		return error;
+	}
+
 	/**
 	 * Inner SOR iteration step
 	 *
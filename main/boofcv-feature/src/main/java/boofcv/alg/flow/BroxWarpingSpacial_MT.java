@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.flow;
+
+import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.ImageGray;
+import org.ddogleg.struct.GrowQueue_F32;
+
+/**
+ * <p>
+ * Concurrent implementation of {@link BroxWarpingSpacial}.  SOR iterations use a red-black ordering of the rows,
+ * first all the even rows are updated and then all the odd rows.  The update for a pixel only depends on
+ * its 4-connected neighbors, making the rows inside of each pass independent so that they can be processed
+ * in parallel.
+ * </p>
+ *
+ * <p>
+ * The ordering is different from {@link BroxWarpingSpacial} so the results will be slightly different.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class BroxWarpingSpacial_MT<T extends ImageGray<T>> extends BroxWarpingSpacial<T> {
+
+	// the error for each row in the most recent iteration
+	private GrowQueue_F32 rowError = new GrowQueue_F32();
+
+	// processes a set of rows with the same parity
+	private RowTask task = new RowTask();
+
+	/**
+	 * Configures flow estimation
+	 *
+	 * @param config Configuration parameters
+	 * @param interp Interpolation for image flow between image layers and warping.  Overrides selection in config.
+	 */
+	public BroxWarpingSpacial_MT(ConfigBroxWarping config, InterpolatePixelS<GrayF32> interp) {
+		super(config, interp);
+	}
+
+	@Override
+	protected float sweepSor(GrayF32 image1, GrayF32 deriv1X, GrayF32 deriv1Y) {
+		rowError.resize(image1.height);
+		task.image1 = image1;
+		task.deriv1X = deriv1X;
+		task.deriv1Y = deriv1Y;
+
+		for( int parity = 0; parity < 2; parity++ ) {
+			task.parity = parity;
+			BoofConcurrency.loopBlocks(0, (image1.height-parity+1)/2, task);
+		}
+
+		float error = 0;
+		for (int y = 0; y < image1.height; y++) {
+			error += rowError.data[y];
+		}
+		return error;
+	}
+
+	private class RowTask implements IntRangeTask {
+		GrayF32 image1, deriv1X, deriv1Y;
+		int parity;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			for( int i = minInclusive; i < maxExclusive; i++ ) {
+				int y = i*2 + parity;
+				rowError.data[y] = sweepSorRow(image1, deriv1X, deriv1Y, y);
+			}
+		}
+	}
+}
@@ -79,6 +79,12 @@ public class ConfigBroxWarping implements Configuration {
 	 */
 	public InterpolationType interpolation = InterpolationType.BILINEAR;
 
+	/**
+	 * If true then the SOR solver updates even and odd rows in separate passes, which allows the rows in each
+	 * pass to be processed concurrently.  Results are slightly different from the sequential ordering.
+	 */
+	public boolean concurrent = false;
+
 	@Override
 	public void checkValidity() {}
 
@@ -19,6 +19,8 @@
 package boofcv.alg.flow;
 
 import boofcv.alg.InputSanityCheck;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.GeneralizedImageOps;
 import boofcv.struct.flow.ImageFlow;
 import boofcv.struct.image.GrayF32;
@@ -71,11 +73,22 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 	// flow in the current layer
 	protected ImageFlow flowCurrLayer = new ImageFlow(1,1);
 
-	protected ImageFlow.D tmp = new ImageFlow.D();
-
 	// fit score for each pixel
 	protected float scores[] = new float[0];
 
+	// flow and score found by the search at each pixel in the current layer
+	protected ImageFlow searchFlow = new ImageFlow(1,1);
+	protected float searchScores[] = new float[0];
+
+	// value in searchScores for pixels which were skipped
+	protected static final float NOT_SEARCHED = -1;
+
+	// type of image being processed
+	protected Class<T> imageType;
+
+	// searches a block of rows
+	private SearchTask searchTask = new SearchTask();
+
 	/**
 	 * Configures the search.
 	 *
@@ -92,6 +105,7 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 		int w = regionRadius*2+1;
 		maxError = maxPerPixelError*w*w;
 
+		this.imageType = imageType;
 		template = GeneralizedImageOps.createSingleBand(imageType,w, w);
 	}
 
@@ -112,10 +126,13 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 			T curr = pyramidCurr.getLayer(i);
 
 			flowCurrLayer.reshape(prev.width, prev.height);
+			searchFlow.reshape(prev.width, prev.height);
 
 			int N = prev.width*prev.height;
-			if( scores.length < N )
+			if( scores.length < N ) {
 				scores = new float[N];
+				searchScores = new float[N];
+			}
 			// mark all the scores as being very large so that if it has not been processed its score
 			// will be set inside of checkNeighbors.
 			Arrays.fill(scores,0,N,Float.MAX_VALUE);
@@ -123,51 +140,28 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 			int x1 = prev.width-regionRadius;
 			int y1 = prev.height-regionRadius;
 
-			if( i == numLayers-1 ) {
-				// the top most layer in the pyramid has no hint
-				for( int y = regionRadius; y < y1; y++ ) {
-					for( int x = regionRadius; x < x1; x++ ) {
-						extractTemplate(x,y,prev);
-						float score = findFlow(x,y,curr,tmp);
-
-						if( tmp.isValid() )
-							checkNeighbors(x,y,tmp, flowCurrLayer,score);
-						else
-							flowCurrLayer.unsafe_get(x, y).markInvalid();
-					}
-				}
-			} else {
-				// for all the other layers use the hint of the previous layer to start its search
-				double scale = pyramidPrev.getScale(i+1)/pyramidPrev.getScale(i);
-				for( int y = regionRadius; y < y1; y++ ) {
-					for( int x = regionRadius; x < x1; x++ ) {
-						// grab the flow in higher level pyramid
-						ImageFlow.D p = flowPrevLayer.get((int)(x/scale),(int)(y/scale));
-						if( !p.isValid() )
-							continue;
-
-						// get the template around the current point in this layer
-						extractTemplate(x,y,prev);
-
-						// add the flow from the higher layer (adjusting for scale and rounding) as the start of
-						// this search
-						int deltaX = (int)(p.x*scale+0.5);
-						int deltaY = (int)(p.y*scale+0.5);
-
-						int startX = x + deltaX;
-						int startY = y + deltaY;
-
-						float score = findFlow(startX,startY,curr,tmp);
-
-						// find flow only does it relative to the starting point
-						tmp.x += deltaX;
-						tmp.y += deltaY;
-
-						if( tmp.isValid() )
-							checkNeighbors(x,y,tmp, flowCurrLayer,score);
-						else
-							flowCurrLayer.unsafe_get(x,y).markInvalid();
-					}
+			// the top most layer in the pyramid has no hint
+			double scale = i == numLayers-1 ? 0 : pyramidPrev.getScale(i+1)/pyramidPrev.getScale(i);
+
+			// The search for each pixel is independent, so rows are split up between threads
+			searchTask.prev = prev;
+			searchTask.curr = curr;
+			searchTask.scale = scale;
+			BoofConcurrency.loopBlocks(regionRadius,y1,searchTask);
+
+			// Updating the neighbors is done in the same order as before to ensure ties are resolved the same way
+			for( int y = regionRadius; y < y1; y++ ) {
+				int index = y*prev.width + regionRadius;
+				for( int x = regionRadius; x < x1; x++ , index++ ) {
+					float score = searchScores[index];
+					if( score == NOT_SEARCHED )
+						continue;
+
+					ImageFlow.D flow = searchFlow.data[index];
+					if( flow.isValid() )
+						checkNeighbors(x,y,flow, flowCurrLayer,score);
+					else
+						flowCurrLayer.unsafe_get(x, y).markInvalid();
 				}
 			}
 
@@ -178,11 +172,62 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 		}
 	}
 
+	/**
+	 * Searches for the flow of every pixel in the specified rows and saves the results in searchFlow
+	 * and searchScores.
+	 *
+	 * @param scale Change in scale from the previous layer.  If 0 then there is no previous layer
+	 * @param template Storage for the template
+	 */
+	protected void searchRows( T prev , T curr , double scale , T template , int y0 , int y1 ) {
+		int x1 = prev.width-regionRadius;
+
+		for( int y = y0; y < y1; y++ ) {
+			int index = y*prev.width + regionRadius;
+			for( int x = regionRadius; x < x1; x++ , index++ ) {
+				ImageFlow.D flow = searchFlow.data[index];
+
+				if( scale == 0 ) {
+					extractTemplate(x,y,prev,template);
+					searchScores[index] = findFlow(x,y,curr,template,flow);
+					continue;
+				}
+
+				// for all the other layers use the hint of the previous layer to start its search
+				// grab the flow in higher level pyramid
+				ImageFlow.D p = flowPrevLayer.get((int)(x/scale),(int)(y/scale));
+				if( !p.isValid() ) {
+					searchScores[index] = NOT_SEARCHED;
+					continue;
+				}
+
+				// get the template around the current point in this layer
+				extractTemplate(x,y,prev,template);
+
+				// add the flow from the higher layer (adjusting for scale and rounding) as the start of
+				// this search
+				int deltaX = (int)(p.x*scale+0.5);
+				int deltaY = (int)(p.y*scale+0.5);
+
+				int startX = x + deltaX;
+				int startY = y + deltaY;
+
+				searchScores[index] = findFlow(startX,startY,curr,template,flow);
+
+				// find flow only does it relative to the starting point
+				if( flow.isValid() ) {
+					flow.x += deltaX;
+					flow.y += deltaY;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Performs an exhaustive search centered around (cx,cy) for the region in 'curr' which is the best
 	 * match for the template.  Results are written into 'flow'
 	 */
-	protected float findFlow( int cx , int cy , T curr , ImageFlow.D flow ) {
+	protected float findFlow( int cx , int cy , T curr , T template , ImageFlow.D flow ) {
 		float bestScore = Float.MAX_VALUE;
 		int bestFlowX=0,bestFlowY=0;
 
@@ -197,7 +242,7 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 			int y = cy+i;
 			for( int j = startX; j <= endX; j++ ) {
 				int x = cx+j;
-				float error = computeError(x,y,curr);
+				float error = computeError(x,y,curr,template);
 				if( error < bestScore ) {
 					bestScore = error;
 					bestFlowX = j;
@@ -253,12 +298,12 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 	/**
 	 * Extracts a square template from the image 'prev' center at cx and cy
 	 */
-	protected abstract void extractTemplate( int cx , int cy , T prev );
+	protected abstract void extractTemplate( int cx , int cy , T prev , T template );
 
 	/**
 	 * Computes the error between the template and a region in 'curr' centered at cx,cy
 	 */
-	protected abstract float computeError( int cx , int cy , T curr );
+	protected abstract float computeError( int cx , int cy , T curr , T template );
 
 	/**
 	 * Returns the found optical flow
@@ -277,7 +322,7 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 		}
 
 		@Override
-		protected void extractTemplate( int cx , int cy , GrayU8 prev ) {
+		protected void extractTemplate( int cx , int cy , GrayU8 prev , GrayU8 template ) {
 			int index = 0;
 			for( int i = -regionRadius; i <= regionRadius; i++ ) {
 				int indexPrev = prev.startIndex + prev.stride*(i+cy) + cx-regionRadius;
@@ -288,7 +333,7 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 		}
 
 		@Override
-		protected float computeError( int cx , int cy , GrayU8 curr ) {
+		protected float computeError( int cx , int cy , GrayU8 curr , GrayU8 template ) {
 			int index = 0;
 			int error = 0;
 			for( int i = -regionRadius; i <= regionRadius; i++ ) {
@@ -313,7 +358,7 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 		}
 
 		@Override
-		protected void extractTemplate( int cx , int cy , GrayF32 prev ) {
+		protected void extractTemplate( int cx , int cy , GrayF32 prev , GrayF32 template ) {
 			int index = 0;
 			for( int i = -regionRadius; i <= regionRadius; i++ ) {
 				int indexPrev = prev.startIndex + prev.stride*(i+cy) + cx-regionRadius;
@@ -324,7 +369,7 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 		}
 
 		@Override
-		protected float computeError( int cx , int cy , GrayF32 curr ) {
+		protected float computeError( int cx , int cy , GrayF32 curr , GrayF32 template ) {
 			int index = 0;
 			float error = 0;
 			for( int i = -regionRadius; i <= regionRadius; i++ ) {
@@ -339,6 +384,18 @@ public abstract class DenseOpticalFlowBlockPyramid<T extends ImageGray<T>> {
 		}
 	}
 
+	private class SearchTask implements IntRangeTask {
+		T prev, curr;
+		double scale;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			int w = regionRadius*2+1;
+			T template = GeneralizedImageOps.createSingleBand(imageType, w, w);
+			searchRows(prev, curr, scale, template, minInclusive, maxExclusive);
+		}
+	}
+
 	public int getSearchRadius() {
 		return searchRadius;
 	}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.flow;
+
+import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import boofcv.factory.flow.ConfigHornSchunckPyramid;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.ImageGray;
+import org.ddogleg.struct.GrowQueue_F32;
+
+/**
+ * <p>
+ * Concurrent implementation of {@link HornSchunckPyramid}.  Each SOR iteration is done using a red-black
+ * ordering of the rows.  All the even rows are updated first and then all the odd rows.  Since a pixel's
+ * update only depends on the rows immediately above and below it, the rows inside of each pass are independent
+ * and can be processed in parallel.  Inside a row pixels are still updated in place, like the sequential
+ * implementation.
+ * </p>
+ *
+ * <p>
+ * The ordering is different from {@link HornSchunckPyramid} so the results will be slightly different, but
+ * the convergence properties of SOR are maintained.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class HornSchunckPyramid_MT<T extends ImageGray<T>> extends HornSchunckPyramid<T> {
+
+	// the error for each row in the most recent iteration
+	private GrowQueue_F32 rowError = new GrowQueue_F32();
+
+	// processes a set of rows with the same parity
+	private RowTask task = new RowTask();
+
+	/**
+	 * Configures flow estimation
+	 *
+	 * @param config Configuration parameters
+	 * @param interp Interpolation for image flow between image layers and warping.  Overrides selection in config.
+	 */
+	public HornSchunckPyramid_MT(ConfigHornSchunckPyramid config, InterpolatePixelS<GrayF32> interp) {
+		super(config, interp);
+	}
+
+	@Override
+	protected float sweepSor(GrayF32 image1) {
+		rowError.resize(image1.height);
+		task.image1 = image1;
+
+		for( int parity = 0; parity < 2; parity++ ) {
+			task.parity = parity;
+			BoofConcurrency.loopBlocks(0, (image1.height-parity+1)/2, task);
+		}
+
+		float error = 0;
+		for (int y = 0; y < image1.height; y++) {
+			error += rowError.data[y];
+		}
+		return error;
+	}
+
+	private class RowTask implements IntRangeTask {
+		GrayF32 image1;
+		int parity;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			for( int i = minInclusive; i < maxExclusive; i++ ) {
+				int y = i*2 + parity;
+				rowError.data[y] = sweepSorRow(image1, y);
+			}
+		}
+	}
+}
@@ -18,6 +18,8 @@
 
 package boofcv.alg.flow;
 
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.struct.flow.ImageFlow;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.GrayS16;
@@ -148,31 +150,49 @@ public class HornSchunck_U8 extends HornSchunck<GrayU8,GrayS16> {
 	}
 
 	@Override
-	protected void findFlow(GrayS16 derivX , GrayS16 derivY ,
-							GrayS16 derivT , ImageFlow output) {
-
-		int N = output.width*output.height;
+	protected void findFlow(final GrayS16 derivX , final GrayS16 derivY ,
+							final GrayS16 derivT , final ImageFlow output) {
+
+		// the average is computed before the flow is updated, so each step can be split up by rows
+		IntRangeTask averageTask = new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				innerAverageFlow(output,averageFlow,y0,y1);
+			}
+		};
+		IntRangeTask updateTask = new IntRangeTask() {
+			@Override
+			public void run(int y0, int y1) {
+				updateFlow(derivX,derivY,derivT,output,y0*output.width,y1*output.width);
+			}
+		};
 
 		for( int iter = 0; iter < numIterations; iter++ ) {
 
 			borderAverageFlow(output,averageFlow);
-			innerAverageFlow(output,averageFlow);
+			BoofConcurrency.loopBlocks(1,output.height-1,averageTask);
+			BoofConcurrency.loopBlocks(0,output.height,updateTask);
+		}
+	}
 
-			for( int i = 0; i < N; i++ ) {
-				float dx = derivX.data[i];
-				float dy = derivY.data[i];
-				float dt = derivT.data[i];
+	/**
+	 * Updates the flow for pixels with indexes from i0 to i1-1 using the average flow
+	 */
+	protected void updateFlow(GrayS16 derivX , GrayS16 derivY , GrayS16 derivT , ImageFlow output , int i0 , int i1 ) {
+		for( int i = i0; i < i1; i++ ) {
+			float dx = derivX.data[i];
+			float dy = derivY.data[i];
+			float dt = derivT.data[i];
 
-				ImageFlow.D aveFlow = averageFlow.data[i];
+			ImageFlow.D aveFlow = averageFlow.data[i];
 
-				float u = aveFlow.x;
-				float v = aveFlow.y;
+			float u = aveFlow.x;
+			float v = aveFlow.y;
 
-				ImageFlow.D flow = output.data[i];
-				float r = (dx*u + dy*v + dt)/(alpha2 + dx*dx + dy*dy);
-				flow.x = u - dx*r;
-				flow.y = v - dy*r;
-			}
+			ImageFlow.D flow = output.data[i];
+			float r = (dx*u + dy*v + dt)/(alpha2 + dx*dx + dy*dy);
+			flow.x = u - dx*r;
+			flow.y = v - dy*r;
 		}
 	}
 }
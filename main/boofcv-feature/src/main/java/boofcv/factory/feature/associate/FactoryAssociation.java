@@ -20,6 +20,8 @@ package boofcv.factory.feature.associate;
 
 import boofcv.abst.feature.associate.*;
 import boofcv.alg.feature.associate.AssociateGreedy;
+import boofcv.alg.feature.associate.AssociateMaxDistance;
+import boofcv.alg.feature.associate.AssociateMaxDistanceGrid;
 import boofcv.struct.feature.*;
 import org.ddogleg.nn.FactoryNearestNeighbor;
 import org.ddogleg.nn.NearestNeighbor;
@@ -56,6 +58,28 @@ public class FactoryAssociation {
 	}
 
 
+	/**
+	 * Association which only considers features within a maximum distance in pixels of each other.  Features are
+	 * spatially indexed using a grid so that only nearby pairs are scored.
+	 * See {@link AssociateMaxDistanceGrid} for details.
+	 *
+	 * @param score Computes the fit score between two features.
+	 * @param maxError Maximum allowed error/fit score between two features.  To disable set to Double.MAX_VALUE
+	 * @param maxDistance Maximum distance in pixels that two features can be apart.
+	 * @param backwardsValidation If true associations are validated by associating in the reverse direction.  If the
+	 *                  forward and reverse matches fit an association is excepted.
+	 * @param <D> Data structure being associated
+	 * @return AssociateMaxDistance
+	 */
+	public static <D> AssociateMaxDistance<D>
+	maxDistance( ScoreAssociation<D> score ,
+				 double maxError ,
+				 double maxDistance ,
+				 boolean backwardsValidation )
+	{
+		return new AssociateMaxDistanceGrid<>(score, backwardsValidation, maxError, maxDistance);
+	}
+
 	/**
 	 * Approximate association using a K-D tree degree of moderate size (10-15) that uses a best-bin-first search
 	 * order.
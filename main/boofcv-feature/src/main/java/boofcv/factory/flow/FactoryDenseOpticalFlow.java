@@ -80,7 +80,7 @@ public class FactoryDenseOpticalFlow {
 	}
 
 	/**
-	 * Creates a pyramidal block
+	 * Creates a pyramidal block.  The search for each row of pixels is split up between threads.
 	 *
 	 * @see boofcv.alg.flow.DenseOpticalFlowBlockPyramid
 	 * @see boofcv.alg.flow.UtilDenseOpticalFlow#standardPyramid(int, int, double, double, int, int, Class)
@@ -109,7 +109,8 @@ public class FactoryDenseOpticalFlow {
 	}
 
 	/**
-	 * The original Horn-Schunck algorithm.  Only good for very small motions.
+	 * The original Horn-Schunck algorithm.  Only good for very small motions.  Each Jacobi iteration
+	 * is split up by rows between threads.
 	 *
 	 * @see HornSchunck
 	 *
@@ -136,7 +137,8 @@ public class FactoryDenseOpticalFlow {
 	}
 
 	/**
-	 * Creates an instance of {@link HornSchunckPyramid}
+	 * Creates an instance of {@link HornSchunckPyramid}.  If {@link ConfigHornSchunckPyramid#concurrent} is true
+	 * then {@link HornSchunckPyramid_MT} is used instead.
 	 *
 	 * @see HornSchunckPyramid
 	 *
@@ -152,11 +154,24 @@ public class FactoryDenseOpticalFlow {
 		InterpolatePixelS<GrayF32> interpolate =
 				FactoryInterpolation.createPixelS(0,255,config.interpolation, BorderType.EXTENDED, GrayF32.class);
 
-		HornSchunckPyramid<T> alg = new HornSchunckPyramid<>(config, interpolate);
+		HornSchunckPyramid<T> alg;
+		if( config.concurrent )
+			alg = new HornSchunckPyramid_MT<>(config, interpolate);
+		else
+			alg = new HornSchunckPyramid<>(config, interpolate);
 
 		return new HornSchunckPyramid_to_DenseOpticalFlow<>(alg, imageType);
 	}
 
+	/**
+	 * Creates an instance of {@link BroxWarpingSpacial}.  If {@link ConfigBroxWarping#concurrent} is true
+	 * then {@link BroxWarpingSpacial_MT} is used instead.
+	 *
+	 * @see BroxWarpingSpacial
+	 *
+	 * @param config Configuration parameters.  If null defaults will be used.
+	 * @return Dense optical flow implementation of BroxWarpingSpacial
+	 */
 	public static <T extends ImageGray<T>>
 	DenseOpticalFlow<T> broxWarping( ConfigBroxWarping config , Class<T> imageType )
 	{
@@ -166,7 +181,11 @@ public class FactoryDenseOpticalFlow {
 		InterpolatePixelS<GrayF32> interpolate =
 				FactoryInterpolation.createPixelS(0,255,config.interpolation, BorderType.EXTENDED, GrayF32.class);
 
-		BroxWarpingSpacial<T> alg = new BroxWarpingSpacial<>(config, interpolate);
+		BroxWarpingSpacial<T> alg;
+		if( config.concurrent )
+			alg = new BroxWarpingSpacial_MT<>(config, interpolate);
+		else
+			alg = new BroxWarpingSpacial<>(config, interpolate);
 
 		return new BroxWarpingSpacial_to_DenseOpticalFlow<>(alg, imageType);
 	}
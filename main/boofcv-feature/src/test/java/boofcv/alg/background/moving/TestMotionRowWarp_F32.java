@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.background.moving;
+
+import boofcv.alg.distort.PointTransformHomography_F32;
+import georegression.struct.homography.Homography2D_F32;
+import georegression.struct.point.Point2D_F32;
+import georegression.transform.homography.HomographyPointOps_F32;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestMotionRowWarp_F32 {
+
+	int width = 60, height = 50;
+
+	/**
+	 * Compare the incremental solution against applying the homography directly
+	 */
+	@Test
+	public void compute_homography() {
+		Homography2D_F32 H = new Homography2D_F32(1.1f,0.05f,-4,-0.02f,0.9f,6,0.001f,-0.0005f,1.02f);
+		checkCompute(H);
+		// negative scale factor describes the same transform
+		H = new Homography2D_F32(-1.1f,-0.05f,4,0.02f,-0.9f,-6,-0.001f,0.0005f,-1.02f);
+		checkCompute(H);
+		// affine
+		H = new Homography2D_F32(0.9f,0.1f,3,-0.1f,0.9f,-2,0,0,1);
+		checkCompute(H);
+	}
+
+	private void checkCompute( Homography2D_F32 H ) {
+		MotionRowWarp_F32 alg = new MotionRowWarp_F32();
+		alg.configure(new PointTransformHomography_F32(), H, width, height);
+		assertTrue(alg.isIncremental());
+
+		Point2D_F32 expected = new Point2D_F32();
+		Point2D_F32 found = new Point2D_F32();
+
+		for (int y = 0; y < height; y++) {
+			alg.setRow(y,0,width);
+			for (int x = alg.getValidX0(); x < alg.getValidX1(); x++) {
+				HomographyPointOps_F32.transform(H,x,y,expected);
+				alg.compute(x,found);
+				assertEquals(expected.x,found.x,1e-3f);
+				assertEquals(expected.y,found.y,1e-3f);
+			}
+		}
+	}
+
+	/**
+	 * Every pixel which maps inside the destination image must be inside the valid range
+	 */
+	@Test
+	public void setRow_validRange() {
+		checkValidRange(new Homography2D_F32(1.1f,0.05f,-4,-0.02f,0.9f,6,0.001f,-0.0005f,1.02f));
+		checkValidRange(new Homography2D_F32(0.5f,0.3f,20,-0.3f,0.5f,30,0.002f,0.001f,1));
+		checkValidRange(new Homography2D_F32(1,0,35,0,1,-20,0,0,1));
+		checkValidRange(new Homography2D_F32(-1,0,59,0,1,0,0,0,1));
+	}
+
+	private void checkValidRange( Homography2D_F32 H ) {
+		MotionRowWarp_F32 alg = new MotionRowWarp_F32();
+		alg.configure(new PointTransformHomography_F32(), H, width, height);
+
+		Point2D_F32 p = new Point2D_F32();
+		int total = 0;
+		for (int y = 0; y < height; y++) {
+			boolean any = alg.setRow(y,5,width-5);
+			for (int x = 5; x < width-5; x++) {
+				HomographyPointOps_F32.transform(H,x,y,p);
+				boolean inside = p.x >= 0 && p.x < width && p.y >= 0 && p.y < height;
+				if( inside ) {
+					total++;
+					assertTrue(any);
+					assertTrue(x >= alg.getValidX0() && x < alg.getValidX1());
+				}
+			}
+			assertTrue(alg.getValidX0() >= 5);
+			assertTrue(alg.getValidX1() <= width-5);
+		}
+		assertTrue(total > 0);
+	}
+
+	@Test
+	public void setRow_outside() {
+		Homography2D_F32 H = new Homography2D_F32(1,0,0,0,1,-200,0,0,1);
+		MotionRowWarp_F32 alg = new MotionRowWarp_F32();
+		alg.configure(new PointTransformHomography_F32(), H, width, height);
+
+		for (int y = 0; y < height; y++) {
+			assertFalse(alg.setRow(y,0,width));
+		}
+	}
+
+	@Test
+	public void copy() {
+		Homography2D_F32 H = new Homography2D_F32(1.1f,0.05f,-4,-0.02f,0.9f,6,0.001f,-0.0005f,1.02f);
+		MotionRowWarp_F32 original = new MotionRowWarp_F32();
+		original.configure(new PointTransformHomography_F32(), H, width, height);
+		MotionRowWarp_F32 copy = new MotionRowWarp_F32(original);
+
+		Point2D_F32 a = new Point2D_F32();
+		Point2D_F32 b = new Point2D_F32();
+		original.setRow(10,0,width);
+		copy.setRow(10,0,width);
+		assertEquals(original.getValidX0(),copy.getValidX0());
+		assertEquals(original.getValidX1(),copy.getValidX1());
+		original.compute(20,a);
+		copy.compute(20,b);
+		assertEquals(a.x,b.x,0f);
+		assertEquals(a.y,b.y,0f);
+	}
+}
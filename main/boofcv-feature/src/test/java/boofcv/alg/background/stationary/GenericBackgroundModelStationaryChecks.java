@@ -91,6 +91,38 @@ public abstract class GenericBackgroundModelStationaryChecks {
 		}
 	}
 
+	/**
+	 * The fused operation should produce the same results as calling segment then update
+	 */
+	@Test
+	public void segmentAndUpdate() {
+		for( ImageType type : imageTypes ) {
+			segmentAndUpdate(type);
+		}
+	}
+
+	private <T extends ImageBase<T>> void segmentAndUpdate( ImageType<T> imageType ) {
+		BackgroundModelStationary<T> expected = create(imageType);
+		BackgroundModelStationary<T> found = create(imageType);
+
+		T frame = imageType.createImage(width,height);
+		GrayU8 segmentedExpected = new GrayU8(width,height);
+		GrayU8 segmentedFound = new GrayU8(width,height);
+
+		for (int i = 0; i < 10; i++) {
+			noise(100, 30, frame);
+			if( i == 8 )
+				GImageMiscOps.fillRectangle(frame, 200, 10, 12, 20, 15);
+
+			expected.segment(frame, segmentedExpected);
+			expected.updateBackground(frame);
+
+			found.segmentAndUpdate(frame, segmentedFound);
+
+			BoofTesting.assertEquals(segmentedExpected, segmentedFound, 1e-8);
+		}
+	}
+
 	/**
 	 * Sees if reset discard the previous history in the background image
 	 */
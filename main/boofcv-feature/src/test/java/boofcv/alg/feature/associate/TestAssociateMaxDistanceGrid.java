@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.feature.associate;
+
+import boofcv.abst.feature.associate.ScoreAssociation;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.MatchScoreType;
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestAssociateMaxDistanceGrid {
+
+	Random rand = new Random(234);
+
+	FastQueue<Point2D_F64> locationSrc = new FastQueue<>(Point2D_F64.class, true);
+	FastQueue<Integer> descSrc = new FastQueue<>(Integer.class, false);
+	FastQueue<Point2D_F64> locationDst = new FastQueue<>(Point2D_F64.class, true);
+	FastQueue<Integer> descDst = new FastQueue<>(Integer.class, false);
+
+	/**
+	 * Randomly generate features and compare against the brute force implementation
+	 */
+	@Test
+	public void compareToNaive() {
+		for( int trial = 0; trial < 20; trial++ ) {
+			createRandom(locationSrc, descSrc, 50 + rand.nextInt(100));
+			createRandom(locationDst, descDst, 50 + rand.nextInt(100));
+
+			double maxDistance = 5 + rand.nextDouble()*40;
+			boolean backwards = trial % 2 == 0;
+
+			AssociateMaxDistanceNaive<Integer> naive =
+					new AssociateMaxDistanceNaive<>(new Score(), backwards, 30, maxDistance);
+			AssociateMaxDistanceGrid<Integer> alg =
+					new AssociateMaxDistanceGrid<>(new Score(), backwards, 30, maxDistance);
+
+			naive.setSource(locationSrc, descSrc);
+			naive.setDestination(locationDst, descDst);
+			naive.associate();
+
+			alg.setSource(locationSrc, descSrc);
+			alg.setDestination(locationDst, descDst);
+			alg.associate();
+
+			FastQueue<AssociatedIndex> expected = naive.getMatches();
+			FastQueue<AssociatedIndex> found = alg.getMatches();
+
+			assertEquals(expected.size, found.size);
+			for( int i = 0; i < expected.size; i++ ) {
+				assertEquals(expected.get(i).src, found.get(i).src);
+				assertEquals(expected.get(i).dst, found.get(i).dst);
+				assertEquals(expected.get(i).fitScore, found.get(i).fitScore, 1e-8);
+			}
+			assertEquals(naive.getUnassociatedSource().size, alg.getUnassociatedSource().size);
+			assertEquals(naive.getUnassociatedDestination().size, alg.getUnassociatedDestination().size);
+		}
+	}
+
+	@Test
+	public void checkDistanceFilter() {
+		locationSrc.reset(); descSrc.reset();
+		locationDst.reset(); descDst.reset();
+
+		locationSrc.grow().set(10,10);
+		descSrc.add(20);
+		locationDst.grow().set(10,100);
+		descDst.add(20);
+
+		AssociateMaxDistanceGrid<Integer> alg = new AssociateMaxDistanceGrid<>(new Score(), false, 1000, 90);
+		alg.setSource(locationSrc,descSrc);
+		alg.setDestination(locationDst, descDst);
+
+		alg.associate();
+		assertEquals(1,alg.getMatches().size);
+
+		alg.setMaxDistance(80);
+		alg.associate();
+		assertEquals(0,alg.getMatches().size);
+		assertEquals(1,alg.getUnassociatedSource().size);
+	}
+
+	private void createRandom( FastQueue<Point2D_F64> location , FastQueue<Integer> desc , int N ) {
+		location.reset();
+		desc.reset();
+		for( int i = 0; i < N; i++ ) {
+			location.grow().set(rand.nextDouble()*300, rand.nextDouble()*200);
+			desc.add(rand.nextInt(100));
+		}
+	}
+
+	private static class Score implements ScoreAssociation<Integer> {
+
+		@Override
+		public double score(Integer a, Integer b) {
+			return Math.abs(a-b);
+		}
+
+		@Override
+		public MatchScoreType getScoreType() {
+			return MatchScoreType.NORM_ERROR;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.feature.associate;
+
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestGridPointIndex2D {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Compare the found points against a brute force search
+	 */
+	@Test
+	public void findNearby_bruteForce() {
+		FastQueue<Point2D_F64> points = new FastQueue<>(Point2D_F64.class, true);
+		for( int i = 0; i < 200; i++ ) {
+			points.grow().set(rand.nextDouble()*400-50, rand.nextDouble()*100+20);
+		}
+
+		GridPointIndex2D alg = new GridPointIndex2D();
+		GrowQueue_I32 found = new GrowQueue_I32();
+
+		for( double radius : new double[]{0.5,10,35,1000}) {
+			alg.process(points, radius);
+
+			for( int trial = 0; trial < 50; trial++ ) {
+				double x = rand.nextDouble()*500-100;
+				double y = rand.nextDouble()*200-20;
+
+				alg.findNearby(x, y, radius, found);
+
+				int expected = 0;
+				for( int i = 0; i < points.size; i++ ) {
+					Point2D_F64 p = points.get(i);
+					double dx = p.x-x, dy = p.y-y;
+					if( dx*dx + dy*dy <= radius*radius ) {
+						expected++;
+						assertTrue(contains(found, i));
+					}
+				}
+				assertEquals(expected, found.size);
+			}
+		}
+	}
+
+	private static boolean contains( GrowQueue_I32 list , int value ) {
+		for( int i = 0; i < list.size; i++ ) {
+			if( list.data[i] == value )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The number of cells should never be much more than the number of points
+	 */
+	@Test
+	public void numberOfCellsBounded() {
+		FastQueue<Point2D_F64> points = new FastQueue<>(Point2D_F64.class, true);
+		points.grow().set(0,0);
+		points.grow().set(10000,5000);
+
+		GridPointIndex2D alg = new GridPointIndex2D();
+		alg.process(points, 1);
+
+		assertTrue(alg.getCols()*alg.getRows() <= 9);
+	}
+
+	@Test
+	public void empty() {
+		FastQueue<Point2D_F64> points = new FastQueue<>(Point2D_F64.class, true);
+		GridPointIndex2D alg = new GridPointIndex2D();
+		alg.process(points, 10);
+
+		GrowQueue_I32 found = new GrowQueue_I32();
+		found.add(5);
+		alg.findNearby(1, 2, 10, found);
+		assertEquals(0, found.size);
+	}
+
+	@Test
+	public void identicalPoints() {
+		FastQueue<Point2D_F64> points = new FastQueue<>(Point2D_F64.class, true);
+		for( int i = 0; i < 5; i++ )
+			points.grow().set(3,4);
+
+		GridPointIndex2D alg = new GridPointIndex2D();
+		alg.process(points, 0);
+
+		GrowQueue_I32 found = new GrowQueue_I32();
+		alg.findNearby(3, 4, 0, found);
+		assertEquals(5, found.size);
+	}
+}
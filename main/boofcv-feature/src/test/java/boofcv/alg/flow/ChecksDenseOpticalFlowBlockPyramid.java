@@ -78,7 +78,7 @@ public abstract class ChecksDenseOpticalFlowBlockPyramid<T extends ImageGray<T>>
 		DenseOpticalFlowBlockPyramid<T> alg = createAlg(1,r,10);
 
 		GImageMiscOps.fillUniform(image,rand,0,200);
-		alg.extractTemplate(3,4,image);
+		alg.extractTemplate(3,4,image,alg.template);
 
 		for( int i = -r; i <= r; i++ ) {
 			for( int j = -r; j <= r; j++ ) {
@@ -101,7 +101,7 @@ public abstract class ChecksDenseOpticalFlowBlockPyramid<T extends ImageGray<T>>
 		GImageMiscOps.fillUniform(image,rand,0,200);
 		GImageMiscOps.fillUniform(alg.template,rand,0,200);
 
-		float found = alg.computeError(5,6,image);
+		float found = alg.computeError(5,6,image,alg.template);
 
 		float expected = 0;
 		for( int i = -r; i <= r; i++ ) {
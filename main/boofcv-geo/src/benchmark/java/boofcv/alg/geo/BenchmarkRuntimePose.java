@@ -19,6 +19,7 @@
 package boofcv.alg.geo;
 
 import boofcv.abst.geo.Estimate1ofPnP;
+import boofcv.alg.geo.pose.PnPBatch;
 import boofcv.alg.geo.pose.PnPLepetitEPnP;
 import boofcv.alg.geo.pose.PoseFromPairLinear6;
 import boofcv.factory.geo.EnumPNP;
@@ -30,6 +31,7 @@ import georegression.struct.se.Se3_F64;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * @author Peter Abeles
@@ -38,6 +40,8 @@ public class BenchmarkRuntimePose extends ArtificialStereoScene {
 	static final long TEST_TIME = 1000;
 	static final int NUM_POINTS = 5;
 	static final boolean FUNDAMENTAL = false;
+	// number of minimal sets processed in a single call by the batch algorithms
+	static final int BATCH_SIZE = 100;
 
 	Se3_F64 found = new Se3_F64();
 
@@ -83,6 +87,56 @@ public class BenchmarkRuntimePose extends ArtificialStereoScene {
 	}
 
 
+	/**
+	 * Generates hypotheses for {@link #BATCH_SIZE} sets at once.  Divide ops/sec by the batch size to compare.
+	 */
+	public class Batch extends PerformerBase {
+
+		PnPBatch alg = new PnPBatch();
+		boolean p3p;
+		int setSize;
+
+		double observations[] = new double[NUM_POINTS*2];
+		double points[] = new double[NUM_POINTS*3];
+		int sets[];
+		double poses[] = new double[BATCH_SIZE*PnPBatch.MAX_P3P*12];
+		int counts[] = new int[BATCH_SIZE];
+
+		public Batch( boolean p3p , boolean concurrent ) {
+			this.p3p = p3p;
+			this.setSize = p3p ? 3 : NUM_POINTS;
+			alg.setConcurrent(concurrent);
+
+			for( int i = 0; i < NUM_POINTS; i++ ) {
+				Point2D3D p = observationPose.get(i);
+				observations[i*2] = p.observation.x; observations[i*2+1] = p.observation.y;
+				points[i*3] = p.location.x; points[i*3+1] = p.location.y; points[i*3+2] = p.location.z;
+			}
+
+			// each set is a random rotation of the point indexes
+			Random rand = new Random(234);
+			sets = new int[BATCH_SIZE*setSize];
+			for( int i = 0; i < BATCH_SIZE; i++ ) {
+				int offset = rand.nextInt(NUM_POINTS);
+				for( int j = 0; j < setSize; j++ )
+					sets[i*setSize+j] = (offset+j)%NUM_POINTS;
+			}
+		}
+
+		@Override
+		public void process() {
+			if( p3p )
+				alg.p3p(observations, points, sets, BATCH_SIZE, poses, counts);
+			else
+				alg.epnp(observations, points, sets, setSize, BATCH_SIZE, poses);
+		}
+
+		@Override
+		public String getName() {
+			return "batch "+(p3p ? "p3p" : "epnp")+(alg.isConcurrent() ? " concurrent" : "")+" x"+BATCH_SIZE;
+		}
+	}
+
 	public class PairLinear extends PerformerBase {
 
 		PoseFromPairLinear6 alg = new PoseFromPairLinear6();
@@ -107,6 +161,10 @@ public class BenchmarkRuntimePose extends ArtificialStereoScene {
 //		ProfileOperation.printOpsPerSec(new PairLinear(), TEST_TIME);
 		ProfileOperation.printOpsPerSec(new InterfacePNP("grunert",grunert), TEST_TIME);
 		ProfileOperation.printOpsPerSec(new InterfacePNP("finster",finster), TEST_TIME);
+		ProfileOperation.printOpsPerSec(new Batch(true,false), TEST_TIME);
+		ProfileOperation.printOpsPerSec(new Batch(true,true), TEST_TIME);
+		ProfileOperation.printOpsPerSec(new Batch(false,false), TEST_TIME);
+		ProfileOperation.printOpsPerSec(new Batch(false,true), TEST_TIME);
 
 		System.out.println();
 		System.out.println("Done");
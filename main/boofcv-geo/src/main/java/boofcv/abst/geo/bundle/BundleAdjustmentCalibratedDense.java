@@ -28,7 +28,8 @@ import org.ddogleg.optimization.UnconstrainedLeastSquares;
 import java.util.List;
 
 /**
- * Performs bundle adjustment using less efficient, but easier to implement dense matrices.  
+ * Performs bundle adjustment using less efficient, but easier to implement dense matrices.  Views attached to
+ * other views, see {@link CalibratedPoseAndPoint#setViewRelative}, are not supported.
  * 
  * @author Peter Abeles
  */
@@ -61,6 +62,10 @@ public class BundleAdjustmentCalibratedDense
 	public boolean process(CalibratedPoseAndPoint initialModel,
 						   List<ViewPointObservations> observations) 
 	{
+		if( initialModel.hasRelativeViews() )
+			throw new IllegalArgumentException("Views attached to other views are not supported.  " +
+					"Use BundleAdjustmentCalibratedSparse");
+
 		int numViews = initialModel.getNumViews();
 		int numPoints = initialModel.getNumPoints();
 		int numViewsUnknown = initialModel.getNumUnknownViews();
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.abst.geo.bundle;
+
+import boofcv.abst.geo.BundleAdjustmentCalibrated;
+import boofcv.alg.geo.bundle.*;
+import georegression.struct.se.Se3_F64;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Bundle adjustment which takes advantage of the sparse structure of the problem.  The Jacobian is stored as
+ * small blocks for each observation and the points are removed from the normal equations using the Schur
+ * complement.  Memory and computations grow linearly with the number of observations and with the number
+ * of pairs of views which share a point, unlike {@link BundleAdjustmentCalibratedDense} which grows with the
+ * square and cube of the number of parameters.
+ * </p>
+ *
+ * <p>
+ * Views which are rigidly attached to another view, see {@link CalibratedPoseAndPoint#setViewRelative}, don't
+ * add any parameters.  Their observations constrain the parent's pose, e.g. both cameras in a stereo rig
+ * are optimized with only the left camera's pose as parameters.
+ * </p>
+ *
+ * @see CalibPoseAndPointSchurMinimizer
+ * @see ReducedCameraSystem
+ *
+ * @author Peter Abeles
+ */
+public class BundleAdjustmentCalibratedSparse
+		implements BundleAdjustmentCalibrated
+{
+	// converts to and from a parameterized version of the model
+	CalibPoseAndPointRodriguesCodec codec = new CalibPoseAndPointRodriguesCodec();
+	// storage for model parameters
+	double param[] = new double[0];
+	// storage for known view locations
+	Se3_F64 extrinsic[] = new Se3_F64[0];
+	// views which the codec doesn't encode, known or attached to another view
+	boolean skipView[] = new boolean[0];
+
+	// computes the residuals and the Jacobian's blocks
+	CalibPoseAndPointBlockJacobian jacobian = new CalibPoseAndPointBlockJacobian();
+	// storage and solver for the reduced camera system
+	ReducedCameraSystem reduced = new ReducedCameraSystem();
+	// minimization algorithm
+	CalibPoseAndPointSchurMinimizer minimizer = new CalibPoseAndPointSchurMinimizer(jacobian,reduced);
+
+	int maxIterations;
+	double convergenceTol;
+
+	/**
+	 * Configures bundle adjustment
+	 *
+	 * @param convergenceTol Convergence tolerance.  Try 1e-8
+	 * @param maxIterations Maximum number of iterations. Try 200 or more
+	 */
+	public BundleAdjustmentCalibratedSparse(double convergenceTol,
+											int maxIterations ) {
+		this.convergenceTol = convergenceTol;
+		this.maxIterations = maxIterations;
+	}
+
+	@Override
+	public boolean process(CalibratedPoseAndPoint initialModel,
+						   List<ViewPointObservations> observations)
+	{
+		int numViews = initialModel.getNumViews();
+		int numPoints = initialModel.getNumPoints();
+		int numViewsUnknown = initialModel.getNumUnknownViews();
+		boolean known[] = initialModel.getKnownArray();
+		int parents[] = initialModel.getParentArray();
+
+		// attached views have no parameters of their own
+		if( skipView.length < numViews )
+			skipView = new boolean[numViews];
+		for( int i = 0; i < numViews; i++ ) {
+			skipView[i] = known[i] || parents[i] >= 0;
+		}
+		codec.configure(numViews,numPoints,numViewsUnknown,skipView);
+
+		if( param.length < codec.getParamLength() )
+			param = new double[ codec.getParamLength() ];
+
+		if( extrinsic.length < numViews )
+			extrinsic = new Se3_F64[numViews];
+		for( int i = 0; i < numViews; i++ ) {
+			if( known[i] ) {
+				if( extrinsic[i] == null )
+					extrinsic[i] = new Se3_F64();
+				extrinsic[i].set( initialModel.getWorldToCamera(i));
+			} else {
+				extrinsic[i] = null;
+			}
+		}
+
+		codec.encode(initialModel,param);
+		if( initialModel.hasRelativeViews() ) {
+			Se3_F64 parentToView[] = new Se3_F64[numViews];
+			for( int i = 0; i < numViews; i++ ) {
+				if( parents[i] >= 0 )
+					parentToView[i] = initialModel.getParentToView(i);
+			}
+			jacobian.configure(observations,numPoints,extrinsic,parents,parentToView);
+		} else {
+			jacobian.configure(observations,numPoints,extrinsic);
+		}
+
+		minimizer.initialize(param, convergenceTol, convergenceTol);
+
+		for( int i = 0; i < maxIterations; i++ ) {
+			if( minimizer.iterate() )
+				break;
+		}
+
+		codec.decode(minimizer.getParameters(), initialModel);
+		initialModel.updateRelativeViews();
+
+		return true;
+	}
+
+	/**
+	 * If true then the Jacobian and normal equations are computed concurrently.  Results are
+	 * not affected by the number of threads.
+	 */
+	public void setConcurrent( boolean concurrent ) {
+		jacobian.setConcurrent(concurrent);
+		reduced.setConcurrent(concurrent);
+		minimizer.setConcurrent(concurrent);
+	}
+
+	public ReducedCameraSystem getReducedSystem() {
+		return reduced;
+	}
+
+	public CalibPoseAndPointSchurMinimizer getMinimizer() {
+		return minimizer;
+	}
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.bundle;
+
+import boofcv.alg.geo.RodriguesRotationJacobian;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Vector3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.struct.so.Rodrigues_F64;
+import org.ddogleg.struct.FastQueue;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Computes the residuals and Jacobian for bundle adjustment with known calibration, see
+ * {@link CalibPoseAndPointResiduals} and {@link CalibPoseAndPointRodriguesJacobian}.  Instead of a dense
+ * Jacobian matrix only the non-zero blocks are saved.  Each observation has a 2x6 block for the view's
+ * Rodrigues rotation and translation and a 2x3 block for the point's location.  Blocks are stored in the same order
+ * as the observations and in row-major format.  The parameter vector is encoded using
+ * {@link CalibPoseAndPointRodriguesCodec}.
+ * </p>
+ *
+ * <p>
+ * Observations are indexed by view and by point when configured so that the normal equations can be
+ * assembled without searching.  Each view is independent of the others, which allows the views to be processed
+ * concurrently.
+ * </p>
+ *
+ * <p>
+ * A view can be rigidly attached to a parent view, e.g. the right camera of a stereo rig, see
+ * {@link CalibratedPoseAndPoint#setViewRelative}.  It has no parameters of its own and its observations are
+ * differentiated with respect to the parent's parameters, worldToView = worldToParent*parentToView.  Several views
+ * then map to the same unknown view, see {@link #unknownViewStart}.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class CalibPoseAndPointBlockJacobian {
+
+	// if the extrinsic parameters are known, specify them here
+	Se3_F64 extrinsic[];
+	// (Optional) view each view is attached to, -1 if not attached.  null if no views are attached
+	int viewParent[];
+	// transform from parent to view for attached views
+	Se3_F64 parentToView[];
+
+	// number of camera views
+	int numViews;
+	// number of points in world coordinates
+	int numPoints;
+	// number of views with unknown extrinsic parameters
+	int numViewsUnknown;
+	// number of observations across all views
+	int numObservations;
+	// index in parameters of the first point
+	int indexFirstPoint;
+
+	// index of the unknown view whose parameters specify the view's pose.  -1 if known
+	int viewToUnknown[] = new int[0];
+	// views which depend on each unknown view.  Has one more element than the number of unknown views
+	int unknownViewStart[] = new int[0];
+	int unknownViews[] = new int[0];
+	// index of the first observation in each view.  Has one more element than the number of views
+	int viewObsStart[] = new int[0];
+	// index of the first observation in pointObs for each point.  Has one more element than the number of points
+	int pointObsStart[] = new int[0];
+	// observation indexes sorted by point
+	int pointObs[] = new int[0];
+	// the point and view each observation is of
+	int obsPoint[] = new int[0];
+	int obsView[] = new int[0];
+	// observed location in normalized image coordinates
+	double obsX[] = new double[0];
+	double obsY[] = new double[0];
+
+	// residual for each observation.  x and y interleaved
+	double residuals[] = new double[0];
+	// 2x6 Jacobian for each observation's view.  Empty if the view is known
+	double jacobianView[] = new double[0];
+	// 2x3 Jacobian for each observation's point
+	double jacobianPoint[] = new double[0];
+
+	// squared error for each view
+	double viewError[] = new double[0];
+
+	// if true the views are processed concurrently
+	boolean concurrent = true;
+
+	// computes the residuals and Jacobian for a range of views
+	ViewTask taskJacobian = new ViewTask(true);
+	ViewTask taskResiduals = new ViewTask(false);
+
+	/**
+	 * Specifies the observations and which views are known
+	 *
+	 * @param observations Observations in each view
+	 * @param numPoints Number of points
+	 * @param extrinsic Known location of each view.  If an element is null then the view is unknown.
+	 */
+	public void configure( List<ViewPointObservations> observations , int numPoints , Se3_F64 ...extrinsic) {
+		configure(observations, numPoints, extrinsic, null, null);
+	}
+
+	/**
+	 * Specifies the observations, which views are known, and which views are rigidly attached to another view
+	 *
+	 * @param observations Observations in each view
+	 * @param numPoints Number of points
+	 * @param extrinsic Known location of each view.  If an element is null then the view is unknown.  Ignored
+	 *                  for attached views.
+	 * @param viewParent (Optional) Index of the view each view is attached to or -1 if it's not attached.
+	 *                   Parents can't be attached to another view.  If null no views are attached.
+	 * @param parentToView (Optional) Transform from parent to view for each attached view.
+	 */
+	public void configure( List<ViewPointObservations> observations , int numPoints ,
+						   Se3_F64 extrinsic[] , int viewParent[] , Se3_F64 parentToView[] ) {
+		if( extrinsic.length < observations.size() )
+			throw new IllegalArgumentException("knownExtrinsic length is less than the number of views in 'observations'");
+
+		this.extrinsic = extrinsic;
+		this.viewParent = viewParent;
+		this.parentToView = parentToView;
+		this.numViews = observations.size();
+		this.numPoints = numPoints;
+
+		if( viewToUnknown.length < numViews ) {
+			viewToUnknown = new int[numViews];
+			viewObsStart = new int[numViews+1];
+			viewError = new double[numViews];
+			unknownViewStart = new int[numViews+1];
+			unknownViews = new int[numViews];
+		}
+
+		numViewsUnknown = 0;
+		numObservations = 0;
+		for( int i = 0; i < numViews; i++ ) {
+			viewObsStart[i] = numObservations;
+			if( parentOf(i) >= 0 )
+				viewToUnknown[i] = -1;
+			else
+				viewToUnknown[i] = extrinsic[i] == null ? numViewsUnknown++ : -1;
+			numObservations += observations.get(i).points.size;
+		}
+		viewObsStart[numViews] = numObservations;
+		indexFirstPoint = numViewsUnknown*6;
+
+		// attached views share the parameters of their parent
+		for( int i = 0; i < numViews; i++ ) {
+			int parent = parentOf(i);
+			if( parent < 0 )
+				continue;
+			if( parentOf(parent) >= 0 )
+				throw new IllegalArgumentException("View "+i+" is attached to a view which is also attached");
+			viewToUnknown[i] = viewToUnknown[parent];
+		}
+
+		// counting sort of views by unknown view
+		for( int i = 0; i <= numViewsUnknown; i++ ) {
+			unknownViewStart[i] = 0;
+		}
+		for( int i = 0; i < numViews; i++ ) {
+			if( viewToUnknown[i] >= 0 )
+				unknownViewStart[viewToUnknown[i]+1]++;
+		}
+		for( int i = 0; i < numViewsUnknown; i++ ) {
+			unknownViewStart[i+1] += unknownViewStart[i];
+		}
+		for( int i = 0; i < numViews; i++ ) {
+			if( viewToUnknown[i] >= 0 )
+				unknownViews[unknownViewStart[viewToUnknown[i]]++] = i;
+		}
+		for( int i = numViewsUnknown; i > 0; i-- ) {
+			unknownViewStart[i] = unknownViewStart[i-1];
+		}
+		unknownViewStart[0] = 0;
+
+		if( obsPoint.length < numObservations ) {
+			obsPoint = new int[numObservations];
+			obsView = new int[numObservations];
+			obsX = new double[numObservations];
+			obsY = new double[numObservations];
+			pointObs = new int[numObservations];
+			residuals = new double[numObservations*2];
+			jacobianView = new double[numObservations*12];
+			jacobianPoint = new double[numObservations*6];
+		}
+		if( pointObsStart.length < numPoints+1 )
+			pointObsStart = new int[numPoints+1];
+
+		// copy the observations into arrays
+		for( int i = 0; i <= numPoints; i++ ) {
+			pointObsStart[i] = 0;
+		}
+		int index = 0;
+		for( int view = 0; view < numViews; view++ ) {
+			FastQueue<PointIndexObservation> points = observations.get(view).points;
+			for( int j = 0; j < points.size; j++ , index++ ) {
+				PointIndexObservation o = points.data[j];
+				Point2D_F64 p = o.obs;
+				if( o.pointIndex < 0 || o.pointIndex >= numPoints )
+					throw new IllegalArgumentException("Observation references an invalid point "+o.pointIndex);
+				obsPoint[index] = o.pointIndex;
+				obsView[index] = view;
+				obsX[index] = p.x;
+				obsY[index] = p.y;
+				pointObsStart[o.pointIndex+1]++;
+			}
+		}
+
+		// counting sort of observations by point
+		for( int i = 0; i < numPoints; i++ ) {
+			pointObsStart[i+1] += pointObsStart[i];
+		}
+		for( int i = 0; i < numObservations; i++ ) {
+			pointObs[pointObsStart[obsPoint[i]]++] = i;
+		}
+		for( int i = numPoints; i > 0; i-- ) {
+			pointObsStart[i] = pointObsStart[i-1];
+		}
+		pointObsStart[0] = 0;
+	}
+
+	/**
+	 * Computes the residuals and the Jacobian blocks
+	 *
+	 * @param param Encoded parameters
+	 * @return Sum of the residuals squared
+	 */
+	public double process( double param[] ) {
+		return processViews(param, taskJacobian, residuals);
+	}
+
+	/**
+	 * Computes only the residuals.
+	 *
+	 * @param param Encoded parameters
+	 * @param output (Output) residuals, x and y interleaved for each observation.
+	 * @return Sum of the residuals squared
+	 */
+	public double computeResiduals( double param[] , double output[] ) {
+		return processViews(param, taskResiduals, output);
+	}
+
+	/**
+	 * Index of the view which the view is attached to or -1 if it's not attached
+	 */
+	private int parentOf( int view ) {
+		return viewParent == null ? -1 : viewParent[view];
+	}
+
+	private double processViews( double param[] , ViewTask task , double output[] ) {
+		task.param = param;
+		task.output = output;
+		if( concurrent )
+			BoofConcurrency.loopBlocks(0, numViews, task);
+		else
+			task.run(0, numViews);
+
+		// sum up in a fixed order so that the results don't depend on the number of threads
+		double total = 0;
+		for( int i = 0; i < numViews; i++ ) {
+			total += viewError[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Computes the residuals and optionally the Jacobian for a range of views
+	 */
+	private class ViewTask implements IntRangeTask {
+		boolean jacobian;
+		double param[];
+		double output[];
+
+		public ViewTask(boolean jacobian) {
+			this.jacobian = jacobian;
+		}
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			// storage is declared inside so that each block has its own copy
+			Rodrigues_F64 rodrigues = new Rodrigues_F64();
+			RodriguesRotationJacobian rodJacobian = new RodriguesRotationJacobian();
+			// pose of the view, or the parent if attached
+			DMatrixRMaj Rp = new DMatrixRMaj(3,3);
+			double Tp[] = new double[3];
+			// pose of the view
+			DMatrixRMaj R = new DMatrixRMaj(3,3);
+			double T[] = new double[3];
+			// rotation from parent to view.  Identity if not attached
+			DMatrixRMaj Ro = new DMatrixRMaj(3,3);
+			double X[] = new double[3];
+			// derivative of the normalized image coordinate with respect to the location in the parent's frame
+			double A[] = new double[6];
+
+			for( int view = minInclusive; view < maxExclusive; view++ ) {
+				int unknown = viewToUnknown[view];
+				int parent = parentOf(view);
+				int base = parent >= 0 ? parent : view;
+
+				if( unknown >= 0 ) {
+					int index = unknown*6;
+					double rodX = param[index];
+					double rodY = param[index+1];
+					double rodZ = param[index+2];
+					Tp[0] = param[index+3];
+					Tp[1] = param[index+4];
+					Tp[2] = param[index+5];
+
+					rodrigues.setParamVector(rodX,rodY,rodZ);
+					ConvertRotation3D_F64.rodriguesToMatrix(rodrigues,Rp);
+					if( jacobian )
+						rodJacobian.process(rodX,rodY,rodZ);
+				} else {
+					Rp.set(extrinsic[base].getR());
+					Vector3D_F64 t = extrinsic[base].getT();
+					Tp[0] = t.x;
+					Tp[1] = t.y;
+					Tp[2] = t.z;
+				}
+
+				if( parent >= 0 ) {
+					// R = Ro*Rp and T = Ro*Tp + To
+					Se3_F64 offset = parentToView[view];
+					Ro.set(offset.getR());
+					CommonOps_DDRM.mult(Ro,Rp,R);
+					double ro[] = Ro.data;
+					Vector3D_F64 to = offset.getT();
+					T[0] = ro[0]*Tp[0] + ro[1]*Tp[1] + ro[2]*Tp[2] + to.x;
+					T[1] = ro[3]*Tp[0] + ro[4]*Tp[1] + ro[5]*Tp[2] + to.y;
+					T[2] = ro[6]*Tp[0] + ro[7]*Tp[1] + ro[8]*Tp[2] + to.z;
+				} else {
+					CommonOps_DDRM.setIdentity(Ro);
+					R.set(Rp);
+					System.arraycopy(Tp,0,T,0,3);
+				}
+
+				double r[] = R.data;
+				double ro[] = Ro.data;
+				double error = 0;
+
+				for( int obs = viewObsStart[view]; obs < viewObsStart[view+1]; obs++ ) {
+					int indexParamWorld = indexFirstPoint + obsPoint[obs]*3;
+					X[0] = param[indexParamWorld];
+					X[1] = param[indexParamWorld+1];
+					X[2] = param[indexParamWorld+2];
+
+					// location of point in camera view
+					double cx = r[0]*X[0] + r[1]*X[1] + r[2]*X[2] + T[0];
+					double cy = r[3]*X[0] + r[4]*X[1] + r[5]*X[2] + T[1];
+					double cz = r[6]*X[0] + r[7]*X[1] + r[8]*X[2] + T[2];
+
+					double rx = cx/cz - obsX[obs];
+					double ry = cy/cz - obsY[obs];
+					output[obs*2] = rx;
+					output[obs*2+1] = ry;
+					error += rx*rx + ry*ry;
+
+					if( !jacobian )
+						continue;
+
+					// partial of the normalized image coordinate with respect to the camera coordinate is
+					// [1/z , 0 , -x/z^2 ; 0 , 1/z , -y/z^2]
+					double divZ = 1.0/cz;
+					double px = -cx*divZ*divZ;
+					double py = -cy*divZ*divZ;
+
+					if( unknown >= 0 ) {
+						// chain rule through the parent to view rotation.  A = [1/z,0,-x/z^2;0,1/z,-y/z^2]*Ro
+						for( int i = 0; i < 3; i++ ) {
+							A[i]   = ro[i]*divZ + ro[6+i]*px;
+							A[3+i] = ro[3+i]*divZ + ro[6+i]*py;
+						}
+
+						int indexX = obs*12;
+						int indexY = indexX + 6;
+						addRodrigues(rodJacobian.Rx, X, A, indexX  , indexY);
+						addRodrigues(rodJacobian.Ry, X, A, indexX+1, indexY+1);
+						addRodrigues(rodJacobian.Rz, X, A, indexX+2, indexY+2);
+
+						// partial T.x, T.y, T.z
+						for( int i = 0; i < 3; i++ ) {
+							jacobianView[indexX+3+i] = A[i];
+							jacobianView[indexY+3+i] = A[3+i];
+						}
+					}
+
+					// partial of the world point is R scaled by the projection's derivative
+					int indexP = obs*6;
+					for( int i = 0; i < 3; i++ ) {
+						jacobianPoint[indexP+i]   = r[i]*divZ + r[6+i]*px;
+						jacobianPoint[indexP+3+i] = r[3+i]*divZ + r[6+i]*py;
+					}
+				}
+
+				viewError[view] = error;
+			}
+		}
+
+		/**
+		 * Partial for a single Rodrigues parameter.  deriv = A*dot(R)*X, where A is the partial of the
+		 * normalized image coordinate with respect to the point in the parent's frame
+		 */
+		private void addRodrigues( DMatrixRMaj Rj , double X[] , double A[] ,
+								   int indexX , int indexY ) {
+			double d[] = Rj.data;
+			double dx = d[0]*X[0] + d[1]*X[1] + d[2]*X[2];
+			double dy = d[3]*X[0] + d[4]*X[1] + d[5]*X[2];
+			double dz = d[6]*X[0] + d[7]*X[1] + d[8]*X[2];
+
+			jacobianView[indexX] = A[0]*dx + A[1]*dy + A[2]*dz;
+			jacobianView[indexY] = A[3]*dx + A[4]*dy + A[5]*dz;
+		}
+	}
+
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	public int getNumViews() {
+		return numViews;
+	}
+
+	public int getNumPoints() {
+		return numPoints;
+	}
+
+	public int getNumViewsUnknown() {
+		return numViewsUnknown;
+	}
+
+	public int getNumObservations() {
+		return numObservations;
+	}
+
+	public int getNumParameters() {
+		return numViewsUnknown*6 + numPoints*3;
+	}
+
+	public double[] getResiduals() {
+		return residuals;
+	}
+
+	public double[] getJacobianView() {
+		return jacobianView;
+	}
+
+	public double[] getJacobianPoint() {
+		return jacobianPoint;
+	}
+}
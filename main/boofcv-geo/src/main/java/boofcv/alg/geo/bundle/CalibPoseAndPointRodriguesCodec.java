@@ -59,8 +59,8 @@ public class CalibPoseAndPointRodriguesCodec
 	 * Specify the number of views and points it can expected
 	 */
 	public void configure( int numViews , int numPoints , int numViewsUnknown , boolean []knownView) {
-		if( numViews < knownView.length )
-			throw new IllegalArgumentException("Number of views is less than knownView length");
+		if( knownView.length < numViews )
+			throw new IllegalArgumentException("knownView length is less than the number of views");
 
 		this.numViews = numViews;
 		this.numPoints = numPoints;
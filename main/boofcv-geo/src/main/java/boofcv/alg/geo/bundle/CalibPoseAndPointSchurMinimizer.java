@@ -0,0 +1,535 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.bundle;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Levenberg-Marquardt minimization of bundle adjustment which exploits the block structure of the Jacobian
+ * computed by {@link CalibPoseAndPointBlockJacobian}.  The normal equations are never formed as a single
+ * matrix.  Instead the 3x3 point blocks are inverted and the points are eliminated using the Schur complement,
+ * resulting in the {@link ReducedCameraSystem} which only contains the view parameters.  After the views
+ * have been solved for the change in each point is found by back substitution.
+ * </p>
+ *
+ * <pre>
+ * [ U  W ] [dc]   [-ea]
+ * [ W' V ] [dp] = [-eb]
+ *
+ * (U - W*inv(V)*W')*dc = -ea + W*inv(V)*eb
+ * dp = -inv(V)*(eb + W'*dc)
+ * </pre>
+ *
+ * <p>
+ * The damping parameter is added to the diagonal and updated using the gain ratio of the actual to
+ * predicted reduction in cost.  Views and points are processed concurrently when building the normal equations.
+ * Views which are attached to another view contribute to the parent's block.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class CalibPoseAndPointSchurMinimizer {
+
+	// computes the residuals and Jacobian
+	CalibPoseAndPointBlockJacobian jacobian;
+	// the Schur complement of the points
+	ReducedCameraSystem reduced;
+
+	// number of unknown views, points, and parameters
+	int numViewsUnknown;
+	int numPoints;
+	int numParam;
+
+	// current parameters and candidate parameters
+	double param[] = new double[0];
+	double candidate[] = new double[0];
+	// step being considered
+	double step[] = new double[0];
+	// right hand side of the reduced system
+	double rhs[] = new double[0];
+	// storage for residuals of the candidate parameters
+	double candidateResiduals[] = new double[0];
+
+	// J'*J for each view. 6x6 blocks
+	double U[] = new double[0];
+	// J'*J for each point.  3x3 blocks
+	double V[] = new double[0];
+	// inverse of damped V
+	double Vinv[] = new double[0];
+	// inv(V)*eb for each point
+	double Veb[] = new double[0];
+	// view-point cross terms for each observation.  6x3 blocks
+	double W[] = new double[0];
+	// gradient, J'*r, for views and points
+	double ea[] = new double[0];
+	double eb[] = new double[0];
+
+	// sum of residuals squared
+	double cost;
+	// damping parameter
+	double lambda;
+	// how much lambda is increased by after a failed step
+	double nu;
+	// is the Jacobian out of date?
+	boolean updateJacobian;
+
+	// convergence tolerance for relative change in cost and parameters
+	double ftol;
+	// convergence tolerance for the gradient's largest element
+	double gtol;
+
+	// if true then computations are done concurrently
+	boolean concurrent = true;
+
+	// tasks for computing the normal equations
+	ViewBlockTask taskViews = new ViewBlockTask();
+	PointBlockTask taskPoints = new PointBlockTask();
+	ReduceTask taskReduce = new ReduceTask();
+	BackSubstituteTask taskBack = new BackSubstituteTask();
+
+	public CalibPoseAndPointSchurMinimizer(CalibPoseAndPointBlockJacobian jacobian,
+										   ReducedCameraSystem reduced ) {
+		this.jacobian = jacobian;
+		this.reduced = reduced;
+	}
+
+	/**
+	 * Specifies the initial parameters.  The Jacobian must already be configured.
+	 *
+	 * @param initial Initial parameters, encoded using {@link CalibPoseAndPointRodriguesCodec}.
+	 * @param ftol Convergence tolerance for relative change in cost and parameters.  Try 1e-8
+	 * @param gtol Convergence tolerance for the gradient.  Try 1e-8
+	 */
+	public void initialize( double initial[] , double ftol , double gtol ) {
+		this.ftol = ftol;
+		this.gtol = gtol;
+
+		numViewsUnknown = jacobian.numViewsUnknown;
+		numPoints = jacobian.numPoints;
+		numParam = jacobian.getNumParameters();
+		int numObs = jacobian.numObservations;
+
+		if( param.length < numParam ) {
+			param = new double[numParam];
+			candidate = new double[numParam];
+			step = new double[numParam];
+		}
+		if( U.length < numViewsUnknown*36 ) {
+			U = new double[numViewsUnknown*36];
+			ea = new double[numViewsUnknown*6];
+			rhs = new double[numViewsUnknown*6];
+		}
+		if( V.length < numPoints*9 ) {
+			V = new double[numPoints*9];
+			Vinv = new double[numPoints*9];
+			eb = new double[numPoints*3];
+			Veb = new double[numPoints*3];
+		}
+		if( W.length < numObs*18 ) {
+			W = new double[numObs*18];
+			candidateResiduals = new double[numObs*2];
+		}
+
+		reduced.configure(jacobian);
+
+		System.arraycopy(initial,0,param,0,numParam);
+		lambda = -1;
+		nu = 2;
+		updateJacobian = true;
+	}
+
+	/**
+	 * Performs a single iteration.
+	 *
+	 * @return true if it has converged
+	 */
+	public boolean iterate() {
+		if( updateJacobian ) {
+			cost = jacobian.process(param);
+			if( cost == 0 )
+				return true;
+
+			computeNormalEquations();
+			updateJacobian = false;
+
+			double maxGradient = 0;
+			double maxDiagonal = 0;
+			for( int i = 0; i < numViewsUnknown*6; i++ ) {
+				maxGradient = Math.max(maxGradient, Math.abs(ea[i]));
+				maxDiagonal = Math.max(maxDiagonal, U[(i/6)*36 + (i%6)*7]);
+			}
+			for( int i = 0; i < numPoints*3; i++ ) {
+				maxGradient = Math.max(maxGradient, Math.abs(eb[i]));
+				maxDiagonal = Math.max(maxDiagonal, V[(i/3)*9 + (i%3)*4]);
+			}
+			if( maxGradient <= gtol )
+				return true;
+			if( lambda < 0 )
+				lambda = 1e-3*maxDiagonal;
+		}
+
+		if( !computeStep() ) {
+			lambda *= nu;
+			nu *= 2;
+			return false;
+		}
+
+		// see if the change in parameters is too small to matter
+		double normStep = 0, normParam = 0;
+		for( int i = 0; i < numParam; i++ ) {
+			normStep += step[i]*step[i];
+			normParam += param[i]*param[i];
+		}
+		normStep = Math.sqrt(normStep);
+		if( normStep <= ftol*(Math.sqrt(normParam) + ftol) )
+			return true;
+
+		for( int i = 0; i < numParam; i++ ) {
+			candidate[i] = param[i] + step[i];
+		}
+		double candidateCost = jacobian.computeResiduals(candidate, candidateResiduals);
+
+		// predicted reduction = step'*(lambda*step - g)
+		double predicted = lambda*normStep*normStep;
+		for( int i = 0; i < numViewsUnknown*6; i++ ) {
+			predicted -= step[i]*ea[i];
+		}
+		for( int i = 0; i < numPoints*3; i++ ) {
+			predicted -= step[numViewsUnknown*6+i]*eb[i];
+		}
+
+		double actual = cost - candidateCost;
+		double ratio = actual/predicted;
+
+		if( actual > 0 && ratio > 0 ) {
+			double tmp[] = param;
+			param = candidate;
+			candidate = tmp;
+
+			double change = 2*ratio-1;
+			lambda *= Math.max(1.0/3.0, 1 - change*change*change);
+			nu = 2;
+			updateJacobian = true;
+
+			if( actual <= ftol*cost ) {
+				cost = candidateCost;
+				return true;
+			}
+			cost = candidateCost;
+		} else {
+			lambda *= nu;
+			nu *= 2;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Computes J'*J and J'*r using the block structure
+	 */
+	void computeNormalEquations() {
+		run(taskViews, numViewsUnknown);
+		run(taskPoints, numPoints);
+	}
+
+	/**
+	 * Solves for the step using the Schur complement and the current damping
+	 *
+	 * @return true if successful
+	 */
+	boolean computeStep() {
+		// inverts the point blocks
+		taskPoints.invert = true;
+		run(taskPoints, numPoints);
+		taskPoints.invert = false;
+
+		run(taskReduce, numViewsUnknown);
+
+		if( !reduced.solve(rhs, step) )
+			return false;
+
+		run(taskBack, numPoints);
+
+		for( int i = 0; i < numParam; i++ ) {
+			if( Double.isNaN(step[i]) || Double.isInfinite(step[i]) )
+				return false;
+		}
+		return true;
+	}
+
+	private void run( IntRangeTask task , int length ) {
+		if( concurrent )
+			BoofConcurrency.loopBlocks(0, length, task);
+		else
+			task.run(0, length);
+	}
+
+	/**
+	 * Computes U, ea, and W for each unknown view
+	 */
+	private class ViewBlockTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			for( int unknown = minInclusive; unknown < maxExclusive; unknown++ ) {
+				int indexU = unknown*36;
+				int indexE = unknown*6;
+				Arrays.fill(U,indexU,indexU+36,0);
+				Arrays.fill(ea,indexE,indexE+6,0);
+
+				// views which are attached to this view share its parameters
+				for( int v = jacobian.unknownViewStart[unknown]; v < jacobian.unknownViewStart[unknown+1]; v++ ) {
+					addView(jacobian.unknownViews[v], indexU, indexE);
+				}
+			}
+		}
+
+		private void addView( int view , int indexU , int indexE ) {
+			double Jv[] = jacobian.jacobianView;
+			double Jp[] = jacobian.jacobianPoint;
+			double res[] = jacobian.residuals;
+
+			for( int obs = jacobian.viewObsStart[view]; obs < jacobian.viewObsStart[view+1]; obs++ ) {
+				int a = obs*12;
+				int b = obs*6;
+				double rx = res[obs*2];
+				double ry = res[obs*2+1];
+
+				for( int i = 0; i < 6; i++ ) {
+					double ax = Jv[a+i];
+					double ay = Jv[a+6+i];
+					for( int j = 0; j < 6; j++ ) {
+						U[indexU+i*6+j] += ax*Jv[a+j] + ay*Jv[a+6+j];
+					}
+					ea[indexE+i] += ax*rx + ay*ry;
+
+					int indexW = obs*18 + i*3;
+					for( int j = 0; j < 3; j++ ) {
+						W[indexW+j] = ax*Jp[b+j] + ay*Jp[b+3+j];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Computes V and eb for each point.  If invert is true then the damped V is inverted instead.
+	 */
+	private class PointBlockTask implements IntRangeTask {
+		boolean invert;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			if( invert ) {
+				for( int point = minInclusive; point < maxExclusive; point++ ) {
+					invertPoint(point);
+				}
+				return;
+			}
+
+			double Jp[] = jacobian.jacobianPoint;
+			double res[] = jacobian.residuals;
+
+			for( int point = minInclusive; point < maxExclusive; point++ ) {
+				int indexV = point*9;
+				int indexE = point*3;
+				Arrays.fill(V,indexV,indexV+9,0);
+				Arrays.fill(eb,indexE,indexE+3,0);
+
+				for( int k = jacobian.pointObsStart[point]; k < jacobian.pointObsStart[point+1]; k++ ) {
+					int obs = jacobian.pointObs[k];
+					int b = obs*6;
+					double rx = res[obs*2];
+					double ry = res[obs*2+1];
+
+					for( int i = 0; i < 3; i++ ) {
+						double bx = Jp[b+i];
+						double by = Jp[b+3+i];
+						for( int j = 0; j < 3; j++ ) {
+							V[indexV+i*3+j] += bx*Jp[b+j] + by*Jp[b+3+j];
+						}
+						eb[indexE+i] += bx*rx + by*ry;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Inverts the damped 3x3 symmetric point block and computes inv(V)*eb
+		 */
+		private void invertPoint( int point ) {
+			int i = point*9;
+			double a11 = V[i  ]+lambda, a12 = V[i+1]       , a13 = V[i+2];
+			double a22 = V[i+4]+lambda, a23 = V[i+5];
+			double a33 = V[i+8]+lambda;
+
+			double c11 = a22*a33 - a23*a23;
+			double c12 = a13*a23 - a12*a33;
+			double c13 = a12*a23 - a13*a22;
+			double c22 = a11*a33 - a13*a13;
+			double c23 = a12*a13 - a11*a23;
+			double c33 = a11*a22 - a12*a12;
+
+			double det = a11*c11 + a12*c12 + a13*c13;
+
+			Vinv[i  ] = c11/det; Vinv[i+1] = c12/det; Vinv[i+2] = c13/det;
+			Vinv[i+3] = c12/det; Vinv[i+4] = c22/det; Vinv[i+5] = c23/det;
+			Vinv[i+6] = c13/det; Vinv[i+7] = c23/det; Vinv[i+8] = c33/det;
+
+			int e = point*3;
+			for( int row = 0; row < 3; row++ ) {
+				Veb[e+row] = Vinv[i+row*3]*eb[e] + Vinv[i+row*3+1]*eb[e+1] + Vinv[i+row*3+2]*eb[e+2];
+			}
+		}
+	}
+
+	/**
+	 * Computes the reduced camera system and its right hand side for a range of block rows
+	 */
+	private class ReduceTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			// look up table from block column to block index for the current row
+			int colToBlock[] = new int[numViewsUnknown];
+			// Y = W*inv(V)
+			double Y[] = new double[18];
+
+			double blocks[] = reduced.blocks;
+			int rowStart[] = reduced.rowStart;
+			int columns[] = reduced.columns;
+
+			for( int row = minInclusive; row < maxExclusive; row++ ) {
+				for( int k = rowStart[row]; k < rowStart[row+1]; k++ ) {
+					colToBlock[columns[k]] = k;
+				}
+				Arrays.fill(blocks,rowStart[row]*36,rowStart[row+1]*36,0);
+
+				// diagonal block starts as the damped U
+				int indexDiag = colToBlock[row]*36;
+				System.arraycopy(U,row*36,blocks,indexDiag,36);
+				for( int i = 0; i < 6; i++ ) {
+					blocks[indexDiag+i*7] += lambda;
+				}
+				for( int i = 0; i < 6; i++ ) {
+					rhs[row*6+i] = -ea[row*6+i];
+				}
+
+				// views which are attached to this view share its parameters
+				for( int v = jacobian.unknownViewStart[row]; v < jacobian.unknownViewStart[row+1]; v++ ) {
+					int view = jacobian.unknownViews[v];
+					for( int obs = jacobian.viewObsStart[view]; obs < jacobian.viewObsStart[view+1]; obs++ ) {
+						int point = jacobian.obsPoint[obs];
+						int indexW = obs*18;
+						int indexVinv = point*9;
+						int indexVeb = point*3;
+
+						// Y = W*inv(V) and rhs += W*inv(V)*eb
+						for( int i = 0; i < 6; i++ ) {
+							double w0 = W[indexW+i*3], w1 = W[indexW+i*3+1], w2 = W[indexW+i*3+2];
+							for( int j = 0; j < 3; j++ ) {
+								Y[i*3+j] = w0*Vinv[indexVinv+j] + w1*Vinv[indexVinv+3+j] + w2*Vinv[indexVinv+6+j];
+							}
+							rhs[row*6+i] += w0*Veb[indexVeb] + w1*Veb[indexVeb+1] + w2*Veb[indexVeb+2];
+						}
+
+						// subtract Y*W' from every view which also observes this point
+						for( int k = jacobian.pointObsStart[point]; k < jacobian.pointObsStart[point+1]; k++ ) {
+							int other = jacobian.pointObs[k];
+							int col = jacobian.viewToUnknown[jacobian.obsView[other]];
+							if( col < 0 )
+								continue;
+
+							int indexBlock = colToBlock[col]*36;
+							int indexOther = other*18;
+							for( int i = 0; i < 6; i++ ) {
+								double y0 = Y[i*3], y1 = Y[i*3+1], y2 = Y[i*3+2];
+								for( int j = 0; j < 6; j++ ) {
+									int o = indexOther+j*3;
+									blocks[indexBlock+i*6+j] -= y0*W[o] + y1*W[o+1] + y2*W[o+2];
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Solves for the change in each point given the change in views
+	 */
+	private class BackSubstituteTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			int offset = numViewsUnknown*6;
+
+			for( int point = minInclusive; point < maxExclusive; point++ ) {
+				int e = point*3;
+				double t0 = eb[e], t1 = eb[e+1], t2 = eb[e+2];
+
+				// add W'*dc
+				for( int k = jacobian.pointObsStart[point]; k < jacobian.pointObsStart[point+1]; k++ ) {
+					int obs = jacobian.pointObs[k];
+					int unknown = jacobian.viewToUnknown[jacobian.obsView[obs]];
+					if( unknown < 0 )
+						continue;
+
+					int indexW = obs*18;
+					int indexC = unknown*6;
+					for( int i = 0; i < 6; i++ ) {
+						double c = step[indexC+i];
+						t0 += W[indexW+i*3  ]*c;
+						t1 += W[indexW+i*3+1]*c;
+						t2 += W[indexW+i*3+2]*c;
+					}
+				}
+
+				int i = point*9;
+				step[offset+e  ] = -(Vinv[i  ]*t0 + Vinv[i+1]*t1 + Vinv[i+2]*t2);
+				step[offset+e+1] = -(Vinv[i+3]*t0 + Vinv[i+4]*t1 + Vinv[i+5]*t2);
+				step[offset+e+2] = -(Vinv[i+6]*t0 + Vinv[i+7]*t1 + Vinv[i+8]*t2);
+			}
+		}
+	}
+
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Returns the current estimate of the parameters
+	 */
+	public double[] getParameters() {
+		return param;
+	}
+
+	/**
+	 * Sum of the residuals squared for the current parameters
+	 */
+	public double getCost() {
+		return cost;
+	}
+
+	public double getLambda() {
+		return lambda;
+	}
+}
@@ -27,7 +27,8 @@ import georegression.struct.se.Se3_F64;
  * If a view is known then initial pose is fixed and will not be optimized.  The list of points is a list
  * of all points which have been observed across all views.  Both views and points are referenced by
  * their index.  Before the class is used you must call {@link #configure(int, int)} to specif the number
- * of views and points.
+ * of views and points.  A view can also be rigidly attached to another view, e.g. the right camera in
+ * a stereo rig, see {@link #setViewRelative}.  Its pose is then determined by the other view's pose.
  *
  * @author Peter Abeles
  */
@@ -42,6 +43,10 @@ public class CalibratedPoseAndPoint {
 	private boolean[] viewKnown = new boolean[0];
 	// transformation from world to camera frame
 	private Se3_F64[] worldToCamera = new Se3_F64[0];
+	// index of the view a view is rigidly attached to.  -1 if it isn't attached
+	private int[] viewParent = new int[0];
+	// transform from the parent view to the view
+	private Se3_F64[] parentToView = new Se3_F64[0];
 	// location of each point in 3D space, world coordinate
 	private Point3D_F64[] points = new Point3D_F64[0];
 
@@ -60,7 +65,15 @@ public class CalibratedPoseAndPoint {
 			}
 			worldToCamera = temp;
 
+			Se3_F64 tempRelative[] = new Se3_F64[numViews];
+			System.arraycopy(parentToView, 0, tempRelative, 0, parentToView.length);
+			for( int i = parentToView.length; i < tempRelative.length; i++ ) {
+				tempRelative[i] = new Se3_F64();
+			}
+			parentToView = tempRelative;
+
 			viewKnown = new boolean[numViews];
+			viewParent = new int[numViews];
 		}
 
 		if( points.length < numPoints ) {
@@ -77,6 +90,7 @@ public class CalibratedPoseAndPoint {
 
 		for( int i = 0; i < numViews; i++ ) {
 			viewKnown[i] = false;
+			viewParent[i] = -1;
 		}
 	}
 
@@ -89,6 +103,59 @@ public class CalibratedPoseAndPoint {
 		viewKnown[view] = known;
 	}
 
+	/**
+	 * Rigidly attaches a view to another view.  The view's pose is not optimized, instead it's computed from the
+	 * parent's pose after optimization, worldToCamera = worldToParent*parentToView.  The parent can't be attached
+	 * to another view.
+	 *
+	 * @param view Index of the view
+	 * @param parent Index of the view it's attached to or -1 to detach it
+	 * @param parentToView Transform from the parent view to this view.  Copied.  Ignored if parent is -1.
+	 */
+	public void setViewRelative( int view , int parent , Se3_F64 parentToView ) {
+		if( parent == view )
+			throw new IllegalArgumentException("A view can't be attached to itself");
+		viewParent[view] = parent;
+		if( parent >= 0 )
+			this.parentToView[view].set(parentToView);
+	}
+
+	/**
+	 * Returns the index of the view that a view is rigidly attached to or -1 if it's not attached
+	 */
+	public int getViewParent( int view ) {
+		return viewParent[view];
+	}
+
+	/**
+	 * Transform from the parent view to the view.  Only valid if the view is attached to another view.
+	 */
+	public Se3_F64 getParentToView( int view ) {
+		return parentToView[view];
+	}
+
+	/**
+	 * Returns true if one or more views are attached to another view
+	 */
+	public boolean hasRelativeViews() {
+		for( int i = 0; i < numViews; i++ ) {
+			if( viewParent[i] >= 0 )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Updates the pose of each view which is attached to another view using the parent's pose
+	 */
+	public void updateRelativeViews() {
+		for( int i = 0; i < numViews; i++ ) {
+			int parent = viewParent[i];
+			if( parent >= 0 )
+				worldToCamera[parent].concat(parentToView[i], worldToCamera[i]);
+		}
+	}
+
 	/**
 	 * Used to see if a particular view is marked as known or not
 	 *
@@ -135,13 +202,14 @@ public class CalibratedPoseAndPoint {
 	}
 
 	/**
-	 * Returns the number of camera views which do not have a 'known' or fixed pose.
+	 * Returns the number of camera views which do not have a 'known' or fixed pose and are not attached to
+	 * another view.
 	 * @return Number of views whose pose is to be optimized.
 	 */
 	public int getNumUnknownViews() {
 		int ret = 0;
 		for( int i = 0; i < numViews; i++ ) {
-			if( !viewKnown[i] )
+			if( !viewKnown[i] && viewParent[i] < 0 )
 				ret++;
 		}
 		return ret;
@@ -153,4 +221,11 @@ public class CalibratedPoseAndPoint {
 	public boolean[] getKnownArray() {
 		return viewKnown;
 	}
+
+	/**
+	 * An array that indicates which view each view is attached to, -1 if it isn't attached
+	 */
+	public int[] getParentArray() {
+		return viewParent;
+	}
 }
@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.bundle;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.linsol.LinearSolverDense;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Storage and solver for the reduced camera system in bundle adjustment, which is created by taking the Schur
+ * complement of the point parameters.  The matrix has one 6x6 block for each pair of unknown views which observe
+ * a common point, all other blocks are zero.  The full symmetric matrix is stored.  Each block row is a sorted list
+ * of the block columns which are not zero and blocks are saved in row-major order.
+ * </p>
+ *
+ * <p>
+ * If the number of views is small enough the matrix is copied into a dense matrix and solved using Cholesky
+ * decomposition.  Otherwise it's solved using the conjugate gradient method with a block-Jacobi preconditioner,
+ * where memory and computations scale with the number of non-zero blocks.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class ReducedCameraSystem {
+	// number of parameters in each view
+	public static final int B = 6;
+	// number of elements in a block
+	public static final int BB = B*B;
+
+	// number of block rows and columns
+	int numViews;
+
+	// index of the first block in each row.  Has one more element than the number of rows
+	int rowStart[] = new int[0];
+	// block column of each block
+	int columns[] = new int[0];
+	// values of each block
+	double blocks[] = new double[0];
+
+	// If the number of views is less than or equal to this number a dense solver is used
+	int denseLimit = 200;
+	// maximum number of conjugate gradient iterations
+	int maxIterations = 500;
+	// conjugate gradient stops when the residual's norm is reduced by this fraction
+	double tolerance = 1e-10;
+
+	// if true then the conjugate gradient's matrix multiplication is done concurrently
+	boolean concurrent = true;
+
+	// dense solver
+	DMatrixRMaj A = new DMatrixRMaj(1,1);
+	DMatrixRMaj X = new DMatrixRMaj(1,1);
+	DMatrixRMaj Y = new DMatrixRMaj(1,1);
+	LinearSolverDense<DMatrixRMaj> solver;
+
+	// storage for conjugate gradient
+	double precond[] = new double[0];
+	boolean diagonalOnly[] = new boolean[0];
+	double r[] = new double[0];
+	double z[] = new double[0];
+	double p[] = new double[0];
+	double q[] = new double[0];
+
+	// computes q = A*p
+	MultTask taskMult = new MultTask();
+
+	// number of iterations the conjugate gradient used in the last solve
+	int iterations;
+
+	/**
+	 * Creates the sparse structure from the observations.  Two views are connected if they observe
+	 * the same point.  Only needs to be called when the observations change.
+	 *
+	 * @param jacobian Configured Jacobian which contains the observations
+	 */
+	public void configure( CalibPoseAndPointBlockJacobian jacobian ) {
+		numViews = jacobian.numViewsUnknown;
+
+		if( rowStart.length < numViews+1 )
+			rowStart = new int[numViews+1];
+
+		// last row each column was added to
+		int marker[] = new int[numViews];
+		Arrays.fill(marker,-1);
+
+		int total = 0;
+		for( int row = 0; row < numViews; row++ ) {
+			rowStart[row] = total;
+
+			// the diagonal block is always included
+			total = addColumn(row, total);
+			marker[row] = row;
+
+			// more than one view depends on the row if views are attached to each other
+			for( int v = jacobian.unknownViewStart[row]; v < jacobian.unknownViewStart[row+1]; v++ ) {
+				int view = jacobian.unknownViews[v];
+				for( int i = jacobian.viewObsStart[view]; i < jacobian.viewObsStart[view+1]; i++ ) {
+					int point = jacobian.obsPoint[i];
+					for( int k = jacobian.pointObsStart[point]; k < jacobian.pointObsStart[point+1]; k++ ) {
+						int col = jacobian.viewToUnknown[jacobian.obsView[jacobian.pointObs[k]]];
+						if( col < 0 || marker[col] == row )
+							continue;
+						marker[col] = row;
+						total = addColumn(col, total);
+					}
+				}
+			}
+			Arrays.sort(columns, rowStart[row], total);
+		}
+		rowStart[numViews] = total;
+
+		if( blocks.length < total*BB )
+			blocks = new double[total*BB];
+	}
+
+	private int addColumn( int col , int total ) {
+		if( columns.length <= total )
+			columns = Arrays.copyOf(columns, Math.max(16,columns.length*2));
+		columns[total] = col;
+		return total+1;
+	}
+
+	/**
+	 * Returns the index of the block in the row and column or -1 if it's zero
+	 */
+	public int findBlock( int row , int col ) {
+		int index = Arrays.binarySearch(columns, rowStart[row], rowStart[row+1], col);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * Solves the linear system A*x = b, where A is the reduced camera matrix.
+	 *
+	 * @param b The right hand side.  Not modified.
+	 * @param x (Output) solution
+	 * @return true if successful
+	 */
+	public boolean solve( double b[] , double x[] ) {
+		if( numViews == 0 )
+			return true;
+		if( numViews <= denseLimit )
+			return solveDense(b, x);
+		else
+			return solveConjugateGradient(b, x);
+	}
+
+	/**
+	 * Copies the blocks into a dense matrix and solves using Cholesky decomposition
+	 */
+	boolean solveDense( double b[] , double x[] ) {
+		int N = numViews*B;
+		if( solver == null || A.numRows != N ) {
+			A.reshape(N,N);
+			X.reshape(N,1);
+			Y.reshape(N,1);
+			solver = LinearSolverFactory_DDRM.chol(N);
+		}
+
+		A.zero();
+		for( int row = 0; row < numViews; row++ ) {
+			for( int k = rowStart[row]; k < rowStart[row+1]; k++ ) {
+				int col = columns[k];
+				int indexBlock = k*BB;
+				for( int i = 0; i < B; i++ ) {
+					System.arraycopy(blocks, indexBlock+i*B, A.data, (row*B+i)*N + col*B, B);
+				}
+			}
+		}
+		System.arraycopy(b,0,Y.data,0,N);
+
+		if( !solver.setA(A) )
+			return false;
+		solver.solve(Y,X);
+		System.arraycopy(X.data,0,x,0,N);
+		return true;
+	}
+
+	/**
+	 * Solves using preconditioned conjugate gradient
+	 */
+	boolean solveConjugateGradient( double b[] , double x[] ) {
+		int N = numViews*B;
+		if( r.length < N ) {
+			r = new double[N];
+			z = new double[N];
+			p = new double[N];
+			q = new double[N];
+		}
+		if( diagonalOnly.length < numViews ) {
+			precond = new double[numViews*BB];
+			diagonalOnly = new boolean[numViews];
+		}
+
+		computePreconditioner();
+
+		Arrays.fill(x,0,N,0);
+		System.arraycopy(b,0,r,0,N);
+		double normB = Math.sqrt(dot(b,b,N));
+		if( normB == 0 ) {
+			iterations = 0;
+			return true;
+		}
+
+		applyPreconditioner(r,z);
+		System.arraycopy(z,0,p,0,N);
+		double rz = dot(r,z,N);
+
+		for( iterations = 0; iterations < maxIterations; iterations++ ) {
+			multiply(p,q);
+			double pq = dot(p,q,N);
+			if( !(pq > 0) )
+				return false;
+
+			double alpha = rz/pq;
+			for( int i = 0; i < N; i++ ) {
+				x[i] += alpha*p[i];
+				r[i] -= alpha*q[i];
+			}
+
+			if( Math.sqrt(dot(r,r,N)) <= tolerance*normB )
+				break;
+
+			applyPreconditioner(r,z);
+			double rzNext = dot(r,z,N);
+			double beta = rzNext/rz;
+			rz = rzNext;
+			for( int i = 0; i < N; i++ ) {
+				p[i] = z[i] + beta*p[i];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the Cholesky decomposition of each diagonal block.  If the block isn't positive definite then
+	 * only its diagonal elements are used.
+	 */
+	void computePreconditioner() {
+		for( int row = 0; row < numViews; row++ ) {
+			int indexDiag = findBlock(row,row)*BB;
+			int indexL = row*BB;
+			System.arraycopy(blocks,indexDiag,precond,indexL,BB);
+
+			if( !choleskyBlock(precond, indexL) ) {
+				diagonalOnly[row] = true;
+				for( int i = 0; i < BB; i++ ) {
+					precond[indexL+i] = 0;
+				}
+				for( int i = 0; i < B; i++ ) {
+					double d = blocks[indexDiag+i*B+i];
+					precond[indexL+i*B+i] = d > 0 ? 1.0/d : 1.0;
+				}
+			} else {
+				diagonalOnly[row] = false;
+			}
+		}
+	}
+
+	/**
+	 * Computes z = inv(M)*r, where M is the block diagonal of A
+	 */
+	void applyPreconditioner( double r[] , double z[] ) {
+		for( int row = 0; row < numViews; row++ ) {
+			int indexL = row*BB;
+			int indexV = row*B;
+			if( diagonalOnly[row] ) {
+				for( int i = 0; i < B; i++ ) {
+					z[indexV+i] = precond[indexL+i*B+i]*r[indexV+i];
+				}
+				continue;
+			}
+			// solve L*y = r
+			for( int i = 0; i < B; i++ ) {
+				double sum = r[indexV+i];
+				for( int k = 0; k < i; k++ ) {
+					sum -= precond[indexL+i*B+k]*z[indexV+k];
+				}
+				z[indexV+i] = sum/precond[indexL+i*B+i];
+			}
+			// solve L'*z = y
+			for( int i = B-1; i >= 0; i-- ) {
+				double sum = z[indexV+i];
+				for( int k = i+1; k < B; k++ ) {
+					sum -= precond[indexL+k*B+i]*z[indexV+k];
+				}
+				z[indexV+i] = sum/precond[indexL+i*B+i];
+			}
+		}
+	}
+
+	/**
+	 * In place Cholesky decomposition of a 6x6 block.  Lower triangular portion is set to L.
+	 *
+	 * @return false if the matrix is not positive definite
+	 */
+	static boolean choleskyBlock( double M[] , int offset ) {
+		for( int i = 0; i < B; i++ ) {
+			for( int j = 0; j <= i; j++ ) {
+				double sum = M[offset+i*B+j];
+				for( int k = 0; k < j; k++ ) {
+					sum -= M[offset+i*B+k]*M[offset+j*B+k];
+				}
+				if( i == j ) {
+					if( !(sum > 0) )
+						return false;
+					M[offset+i*B+i] = Math.sqrt(sum);
+				} else {
+					M[offset+i*B+j] = sum/M[offset+j*B+j];
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes y = A*x
+	 */
+	public void multiply( double x[] , double y[] ) {
+		taskMult.x = x;
+		taskMult.y = y;
+		if( concurrent )
+			BoofConcurrency.loopBlocks(0, numViews, taskMult);
+		else
+			taskMult.run(0, numViews);
+	}
+
+	private class MultTask implements IntRangeTask {
+		double x[],y[];
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			for( int row = minInclusive; row < maxExclusive; row++ ) {
+				int indexY = row*B;
+				for( int i = 0; i < B; i++ ) {
+					y[indexY+i] = 0;
+				}
+				for( int k = rowStart[row]; k < rowStart[row+1]; k++ ) {
+					int indexX = columns[k]*B;
+					int indexBlock = k*BB;
+					for( int i = 0; i < B; i++ ) {
+						double sum = 0;
+						for( int j = 0; j < B; j++ ) {
+							sum += blocks[indexBlock++]*x[indexX+j];
+						}
+						y[indexY+i] += sum;
+					}
+				}
+			}
+		}
+	}
+
+	private static double dot( double a[] , double b[] , int N ) {
+		double total = 0;
+		for( int i = 0; i < N; i++ ) {
+			total += a[i]*b[i];
+		}
+		return total;
+	}
+
+	public int getNumViews() {
+		return numViews;
+	}
+
+	public int getNumBlocks() {
+		return rowStart[numViews];
+	}
+
+	public double[] getBlocks() {
+		return blocks;
+	}
+
+	public int[] getRowStart() {
+		return rowStart;
+	}
+
+	public int[] getColumns() {
+		return columns;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public void setDenseLimit(int denseLimit) {
+		this.denseLimit = denseLimit;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+}
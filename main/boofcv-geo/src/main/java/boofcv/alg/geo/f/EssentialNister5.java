@@ -21,17 +21,9 @@ package boofcv.alg.geo.f;
 import boofcv.struct.geo.AssociatedPair;
 import georegression.struct.point.Point2D_F64;
 import org.ddogleg.solver.Polynomial;
-import org.ddogleg.solver.PolynomialRoots;
 import org.ddogleg.solver.impl.FindRealRootsSturm;
-import org.ddogleg.solver.impl.WrapRealRootsSturm;
 import org.ddogleg.struct.FastQueue;
-import org.ejml.data.Complex_F64;
 import org.ejml.data.DMatrixRMaj;
-import org.ejml.dense.row.CommonOps_DDRM;
-import org.ejml.dense.row.factory.DecompositionFactory_DDRM;
-import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
-import org.ejml.interfaces.decomposition.SingularValueDecomposition;
-import org.ejml.interfaces.linsol.LinearSolverDense;
 
 import java.util.List;
 
@@ -43,8 +35,15 @@ import java.util.List;
  * </p>
  *
  * <p>
+ * The null space is found using a Householder QR factorization of the transposed constraint matrix, as proposed
+ * in [1].  Linear systems are solved in place on primitive arrays and roots are found with a Sturm sequence,
+ * so after the first call no memory is declared.  This is the inner loop of robust estimators and is
+ * called many times.
+ * </p>
+ *
+ * <p>
  * THIS IMPLEMENTATION DOES NOT CONTAIN ALL THE OPTIMIZATIONS OUTLIED IN [1].  A full implementation is
- * quite involved. Example: SVD instead of the proposed QR factorization.
+ * quite involved. Example: the full 10x10 system is solved instead of a partial Gauss-Jordan elimination.
  * </p>
  *
  * <p>
@@ -61,12 +60,10 @@ import java.util.List;
  */
 public class EssentialNister5 {
 
-	// Linear system describing p'*E*q = 0
-	private DMatrixRMaj Q = new DMatrixRMaj(5,9);
-	// contains the span of A
-	private DMatrixRMaj V = new DMatrixRMaj(9,9);
-	// TODO Try using QR-Factorization as in the paper
-	private SingularValueDecomposition<DMatrixRMaj> svd = DecompositionFactory_DDRM.svd(5,9,false,true,false);
+	// Linear system describing p'*E*q = 0.  Each row is one constraint.  Overwritten by Householder vectors
+	private double Q[] = new double[5*9];
+	// scale factor of each Householder reflection
+	private double beta[] = new double[5];
 
 	// where all the ugly equations go
 	private HelperNister5 helper = new HelperNister5();
@@ -80,9 +77,6 @@ public class EssentialNister5 {
 	// unknowns for E = x*X + y*Y + z*Z + W
 	private double x,y,z;
 
-	// Solver for the linear system below
-	LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.linear(10);
-
 	// Storage for linear systems
 	private DMatrixRMaj A1 = new DMatrixRMaj(10,10);
 	private DMatrixRMaj A2 = new DMatrixRMaj(10,10);
@@ -90,9 +84,7 @@ public class EssentialNister5 {
 
 	// Used for finding polynomial roots
 	private FindRealRootsSturm sturm = new FindRealRootsSturm(11,-1,1e-10,20,20);
-	private PolynomialRoots findRoots = new WrapRealRootsSturm(sturm);
 
-	// private PolynomialRoots findRoots = new RootFinderCompanion();
 	private Polynomial poly = new Polynomial(11);
 
 	/**
@@ -115,23 +107,26 @@ public class EssentialNister5 {
 		helper.setupA1(A1);
 		helper.setupA2(A2);
 
-		// instead of Gauss-Jordan elimination LU decomposition is used to solve the system
-		solver.setA(A1);
-		solver.solve(A2, C);
+		// Gaussian elimination with back substitution is used instead of Gauss-Jordan elimination
+		if( !solveLinear(A1, A2, C) )
+			return false;
 
 		// construct the z-polynomial matrix.  Equations 11-14
 		helper.setDeterminantVectors(C);
 		helper.extractPolynomial(poly.getCoefficients());
 
-		if( !findRoots.process(poly) )
+		try {
+			sturm.process(poly);
+		} catch( RuntimeException e ) {
 			return false;
+		}
 
-		for( Complex_F64 c : findRoots.getRoots() ) {
-			if( !c.isReal() )
+		double roots[] = sturm.getRoots();
+		int numRoots = sturm.getNumberOfRoots();
+		for( int k = 0; k < numRoots; k++ ) {
+			if( !solveForXandY(roots[k]) )
 				continue;
 
-			solveForXandY(c.real);
-
 			DMatrixRMaj E = solutions.grow();
 
 			for( int i = 0; i < 9; i++ ) {
@@ -148,72 +143,195 @@ public class EssentialNister5 {
 	 */
 	private void computeSpan( List<AssociatedPair> points ) {
 
-		Q.reshape(points.size(), 9);
 		int index = 0;
 
-		for( int i = 0; i < points.size(); i++ ) {
+		for( int i = 0; i < 5; i++ ) {
 			AssociatedPair p = points.get(i);
 
 			Point2D_F64 a = p.p2;
 			Point2D_F64 b = p.p1;
 
 			// The points are assumed to be in homogeneous coordinates.  This means z = 1
-			Q.data[index++] =  a.x*b.x;
-			Q.data[index++] =  a.x*b.y;
-			Q.data[index++] =  a.x;
-			Q.data[index++] =  a.y*b.x;
-			Q.data[index++] =  a.y*b.y;
-			Q.data[index++] =  a.y;
-			Q.data[index++] =      b.x;
-			Q.data[index++] =      b.y;
-			Q.data[index++] =  1;
+			Q[index++] =  a.x*b.x;
+			Q[index++] =  a.x*b.y;
+			Q[index++] =  a.x;
+			Q[index++] =  a.y*b.x;
+			Q[index++] =  a.y*b.y;
+			Q[index++] =  a.y;
+			Q[index++] =      b.x;
+			Q[index++] =      b.y;
+			Q[index++] =  1;
 		}
 
-		if( !svd.decompose(Q) )
-			throw new RuntimeException("SVD should never fail, probably bad input");
+		// QR factorization of Q', where each row in Q is a column in Q'.  The last four columns
+		// in the orthogonal matrix are an orthonormal basis for the null space of Q
+		for( int k = 0; k < 5; k++ ) {
+			int row = k*9;
+
+			double norm = 0;
+			for( int i = k; i < 9; i++ ) {
+				norm += Q[row+i]*Q[row+i];
+			}
+			norm = Math.sqrt(norm);
+
+			if( norm == 0 ) {
+				beta[k] = 0;
+				continue;
+			}
 
-		// While the order of the singular values isn't guaranteed in this implementation, since the system is
-		// under determined the solution is always contained in the last 4 rows of V
-		svd.getV(V,true);
+			// v = x - alpha*e_k, with the sign of alpha selected to avoid cancellation
+			double alpha = Q[row+k] > 0 ? -norm : norm;
+			Q[row+k] -= alpha;
+			// v'*v = 2*norm*(norm + |x_k|) = -2*alpha*v_k
+			beta[k] = -1.0/(alpha*Q[row+k]);
 
-		// extract the span of solutions for E from the null space
+			for( int j = k+1; j < 5; j++ ) {
+				applyReflection(k, Q, j*9);
+			}
+		}
+
+		nullVector(5, X);
+		nullVector(6, Y);
+		nullVector(7, Z);
+		nullVector(8, W);
+	}
+
+	/**
+	 * Computes H0*H1*...*H4*e_j, column 'j' in the orthogonal matrix
+	 */
+	private void nullVector( int j , double v[] ) {
 		for( int i = 0; i < 9; i++ ) {
-			X[i] = V.unsafe_get(5,i);
-			Y[i] = V.unsafe_get(6,i);
-			Z[i] = V.unsafe_get(7,i);
-			W[i] = V.unsafe_get(8,i);
+			v[i] = 0;
+		}
+		v[j] = 1;
+		for( int k = 4; k >= 0; k-- ) {
+			applyReflection(k, v, 0);
 		}
 	}
 
 	/**
-	 * Once z is known then x and y can be solved for using the B matrix
+	 * Applies Householder reflection 'k' to the vector starting at 'offset'.  a = a - beta*v*(v'*a)
 	 */
-	private void solveForXandY( double z ) {
-		this.z = z;
+	private void applyReflection( int k , double a[] , int offset ) {
+		if( beta[k] == 0 )
+			return;
+
+		int row = k*9;
+		double dot = 0;
+		for( int i = k; i < 9; i++ ) {
+			dot += Q[row+i]*a[offset+i];
+		}
+		dot *= beta[k];
+		for( int i = k; i < 9; i++ ) {
+			a[offset+i] -= dot*Q[row+i];
+		}
+	}
 
-		DMatrixRMaj A = new DMatrixRMaj(3,2);
-		DMatrixRMaj Y = new DMatrixRMaj(3,1);
+	/**
+	 * Solves A*X = B using Gaussian elimination with partial pivoting.  A and B are modified.
+	 *
+	 * @return false if A is singular
+	 */
+	private static boolean solveLinear( DMatrixRMaj A , DMatrixRMaj B , DMatrixRMaj X ) {
+		final int N = A.numRows;
+		final int M = B.numCols;
+		double a[] = A.data;
+		double b[] = B.data;
+
+		for( int k = 0; k < N; k++ ) {
+			// select the pivot
+			int pivot = k;
+			double largest = Math.abs(a[k*N+k]);
+			for( int i = k+1; i < N; i++ ) {
+				double v = Math.abs(a[i*N+k]);
+				if( v > largest ) {
+					largest = v;
+					pivot = i;
+				}
+			}
+			if( largest == 0 )
+				return false;
 
-		// solve for x and y using the first two rows of B
-		A.data[0] = ((helper.K00*z + helper.K01)*z + helper.K02)*z + helper.K03;
-		A.data[1] = ((helper.K04*z + helper.K05)*z + helper.K06)*z + helper.K07;
-		Y.data[0] = (((helper.K08*z + helper.K09)*z + helper.K10)*z + helper.K11)*z + helper.K12;
+			if( pivot != k ) {
+				swapRows(a, N, k, pivot);
+				swapRows(b, M, k, pivot);
+			}
 
-		A.data[2] = ((helper.L00*z + helper.L01)*z + helper.L02)*z + helper.L03;
-		A.data[3] = ((helper.L04*z + helper.L05)*z + helper.L06)*z + helper.L07;
-		Y.data[1] = (((helper.L08*z + helper.L09)*z + helper.L10)*z + helper.L11)*z + helper.L12;
+			double d = a[k*N+k];
+			for( int i = k+1; i < N; i++ ) {
+				double f = a[i*N+k]/d;
+				if( f == 0 )
+					continue;
+				for( int j = k+1; j < N; j++ ) {
+					a[i*N+j] -= f*a[k*N+j];
+				}
+				for( int j = 0; j < M; j++ ) {
+					b[i*M+j] -= f*b[k*M+j];
+				}
+			}
+		}
 
-		A.data[4] = ((helper.M00*z + helper.M01)*z + helper.M02)*z + helper.M03;
-		A.data[5] = ((helper.M04*z + helper.M05)*z + helper.M06)*z + helper.M07;
-		Y.data[2] = (((helper.M08*z + helper.M09)*z + helper.M10)*z + helper.M11)*z + helper.M12;
+		// back substitution
+		X.reshape(N,M);
+		double x[] = X.data;
+		for( int i = N-1; i >= 0; i-- ) {
+			double d = a[i*N+i];
+			for( int j = 0; j < M; j++ ) {
+				double sum = b[i*M+j];
+				for( int k = i+1; k < N; k++ ) {
+					sum -= a[i*N+k]*x[k*M+j];
+				}
+				x[i*M+j] = sum/d;
+			}
+		}
+		return true;
+	}
 
-		CommonOps_DDRM.scale(-1,Y);
+	private static void swapRows( double a[] , int numCols , int row0 , int row1 ) {
+		int i0 = row0*numCols, i1 = row1*numCols;
+		for( int j = 0; j < numCols; j++ ) {
+			double tmp = a[i0+j];
+			a[i0+j] = a[i1+j];
+			a[i1+j] = tmp;
+		}
+	}
 
-		DMatrixRMaj x = new DMatrixRMaj(2,1);
+	/**
+	 * Once z is known then x and y can be solved for using the B matrix.  The 3x2 system is solved in
+	 * a least squares sense using its normal equations.
+	 *
+	 * @return false if the system is singular
+	 */
+	private boolean solveForXandY( double z ) {
+		this.z = z;
 
-		CommonOps_DDRM.solve(A,Y,x);
+		HelperNister5 h = helper;
 
-		this.x = x.get(0,0);
-		this.y = x.get(1,0);
+		// solve for x and y using the first two rows of B
+		double a00 = ((h.K00*z + h.K01)*z + h.K02)*z + h.K03;
+		double a01 = ((h.K04*z + h.K05)*z + h.K06)*z + h.K07;
+		double b0 = -((((h.K08*z + h.K09)*z + h.K10)*z + h.K11)*z + h.K12);
+
+		double a10 = ((h.L00*z + h.L01)*z + h.L02)*z + h.L03;
+		double a11 = ((h.L04*z + h.L05)*z + h.L06)*z + h.L07;
+		double b1 = -((((h.L08*z + h.L09)*z + h.L10)*z + h.L11)*z + h.L12);
+
+		double a20 = ((h.M00*z + h.M01)*z + h.M02)*z + h.M03;
+		double a21 = ((h.M04*z + h.M05)*z + h.M06)*z + h.M07;
+		double b2 = -((((h.M08*z + h.M09)*z + h.M10)*z + h.M11)*z + h.M12);
+
+		double s00 = a00*a00 + a10*a10 + a20*a20;
+		double s01 = a00*a01 + a10*a11 + a20*a21;
+		double s11 = a01*a01 + a11*a11 + a21*a21;
+		double t0 = a00*b0 + a10*b1 + a20*b2;
+		double t1 = a01*b0 + a11*b1 + a21*b2;
+
+		double det = s00*s11 - s01*s01;
+		if( det == 0 )
+			return false;
+
+		this.x = (s11*t0 - s01*t1)/det;
+		this.y = (s00*t1 - s01*t0)/det;
+		return true;
 	}
 }
@@ -0,0 +1,493 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.pose;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Generates camera pose hypotheses for many minimal sets in a single call, e.g. all the samples a robust
+ * estimator will consider.  Observations, points, and found poses are stored in flat arrays so that no objects are
+ * created or modified for each set.  Observations are interleaved (x,y) normalized image coordinates and points
+ * are interleaved (x,y,z) in the world frame.  A set is specified by the index of each of its points.  Poses are
+ * the transform from world to camera and are stored as 12 elements, R in row-major then T.
+ * </p>
+ *
+ * <ul>
+ *     <li>P3P: Grunert's quartic, see {@link P3PGrunert}.  Instead of an eigenvalue based root finder
+ *     the quartic is solved in closed form using Ferrari's method followed by a few Newton steps.  The pose is then
+ *     found directly from the two congruent triangles, instead of a general point cloud fit.  Up to
+ *     {@link #MAX_P3P} solutions per set.</li>
+ *     <li>EPnP: {@link PnPLepetitEPnP}, one solution per set.  One instance is kept for each thread.</li>
+ * </ul>
+ *
+ * <p>
+ * Each set is processed independently and only writes to its own part of the output, so concurrent
+ * and single threaded results are identical.  Unlike {@link P3PGrunert} solutions which have a non-finite
+ * distance are discarded.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class PnPBatch {
+
+	/**
+	 * Maximum number of solutions a P3P set can have
+	 */
+	public static final int MAX_P3P = 4;
+
+	// if true then sets are processed concurrently
+	boolean concurrent = false;
+
+	// number of iterations EPnP will perform
+	int epnpIterations = 0;
+
+	// input and output for the current call
+	double observations[], points[];
+	int sets[];
+	int setSize;
+	double poses[];
+	int counts[];
+
+	P3PTask taskP3P = new P3PTask();
+	EPnPTask taskEPnP = new EPnPTask();
+
+	// EPnP instances not being used by any thread
+	final List<EPnPWorker> idleWorkers = new ArrayList<>();
+
+	/**
+	 * Computes up to four P3P solutions for each set.
+	 *
+	 * @param observations Normalized image coordinates of each point.  (x,y) interleaved.  Not modified.
+	 * @param points Location of each point in world frame.  (x,y,z) interleaved.  Not modified.
+	 * @param sets Index of the three points in each set.  Not modified.
+	 * @param numSets Number of sets
+	 * @param poses (Output) Solutions of set 'i' start at element i*{@link #MAX_P3P}*12
+	 * @param counts (Output) Number of solutions found for each set
+	 * @return Total number of solutions found
+	 */
+	public int p3p( double observations[] , double points[] , int sets[] , int numSets ,
+					double poses[] , int counts[] ) {
+		if( sets.length < numSets*3 )
+			throw new IllegalArgumentException("Not enough point indexes for the number of sets");
+		if( poses.length < numSets*MAX_P3P*12 || counts.length < numSets )
+			throw new IllegalArgumentException("Output array is too small");
+
+		this.observations = observations;
+		this.points = points;
+		this.sets = sets;
+		this.setSize = 3;
+		this.poses = poses;
+		this.counts = counts;
+
+		run(taskP3P, numSets, 50);
+
+		int total = 0;
+		for( int i = 0; i < numSets; i++ ) {
+			total += counts[i];
+		}
+		return total;
+	}
+
+	/**
+	 * Computes one EPnP solution for each set.
+	 *
+	 * @param observations Normalized image coordinates of each point.  (x,y) interleaved.  Not modified.
+	 * @param points Location of each point in world frame.  (x,y,z) interleaved.  Not modified.
+	 * @param sets Index of the points in each set.  Not modified.
+	 * @param setSize Number of points in each set.  See {@link PnPLepetitEPnP#getMinPoints()}
+	 * @param numSets Number of sets
+	 * @param poses (Output) Solution of set 'i' starts at element i*12
+	 */
+	public void epnp( double observations[] , double points[] , int sets[] , int setSize , int numSets ,
+					  double poses[] ) {
+		if( setSize < 4 )
+			throw new IllegalArgumentException("At least four points are required");
+		if( sets.length < numSets*setSize )
+			throw new IllegalArgumentException("Not enough point indexes for the number of sets");
+		if( poses.length < numSets*12 )
+			throw new IllegalArgumentException("Output array is too small");
+
+		this.observations = observations;
+		this.points = points;
+		this.sets = sets;
+		this.setSize = setSize;
+		this.poses = poses;
+		this.counts = null;
+
+		run(taskEPnP, numSets, 10);
+	}
+
+	private void run( IntRangeTask task , int count , int minBlock ) {
+		if( concurrent )
+			BoofConcurrency.loopBlocks(0, count, minBlock, task);
+		else
+			task.run(0, count);
+	}
+
+	/**
+	 * Computes the P3P solutions for a single set
+	 *
+	 * @return number of solutions written
+	 */
+	private int p3p( int set , int outputIndex ) {
+		int i1 = sets[set*3], i2 = sets[set*3+1], i3 = sets[set*3+2];
+		double o[] = observations;
+		double w[] = points;
+
+		// pointing vector of each observation, normalized to one
+		double x1 = o[i1*2], y1 = o[i1*2+1];
+		double x2 = o[i2*2], y2 = o[i2*2+1];
+		double x3 = o[i3*2], y3 = o[i3*2+1];
+		double n1 = Math.sqrt(x1*x1 + y1*y1 + 1);
+		double n2 = Math.sqrt(x2*x2 + y2*y2 + 1);
+		double n3 = Math.sqrt(x3*x3 + y3*y3 + 1);
+
+		double cos12 = (x1*x2 + y1*y2 + 1)/(n1*n2);
+		double cos13 = (x1*x3 + y1*y3 + 1)/(n1*n3);
+		double cos23 = (x2*x3 + y2*y3 + 1)/(n2*n3);
+
+		// world points
+		double w1x = w[i1*3], w1y = w[i1*3+1], w1z = w[i1*3+2];
+		double w2x = w[i2*3], w2y = w[i2*3+1], w2z = w[i2*3+2];
+		double w3x = w[i3*3], w3y = w[i3*3+1], w3z = w[i3*3+2];
+
+		// length of each side in the triangle
+		double a = length(w2x-w3x, w2y-w3y, w2z-w3z);
+		double b = length(w1x-w3x, w1y-w3y, w1z-w3z);
+		double c = length(w1x-w2x, w1y-w2y, w1z-w2z);
+
+		// Same polynomial as P3PGrunert
+		double a2_div_b2 = (a/b)*(a/b);
+		double c2_div_b2 = (c/b)*(c/b);
+		double a2_m_c2_div_b2 = a2_div_b2 - c2_div_b2;
+		double a2_p_c2_div_b2 = a2_div_b2 + c2_div_b2;
+
+		double cos12_2 = cos12*cos12, cos13_2 = cos13*cos13, cos23_2 = cos23*cos23;
+
+		double c0 = -4*a2_div_b2*cos12_2 + pow2(a2_m_c2_div_b2 + 1);
+		double c1 = 4*(-a2_m_c2_div_b2*(1 + a2_m_c2_div_b2)*cos13 + 2*a2_div_b2*cos12_2*cos13 - (1-a2_p_c2_div_b2)*cos23*cos12);
+		double c2 = 2*(pow2(a2_m_c2_div_b2) - 1 + 2*pow2(a2_m_c2_div_b2)*cos13_2 + 2*(1-c2_div_b2)*cos23_2 - 4*a2_p_c2_div_b2*cos12*cos13*cos23 + 2*(1-a2_div_b2)*cos12_2);
+		double c3 = 4*(a2_m_c2_div_b2*(1-a2_m_c2_div_b2)*cos13 - (1 - a2_p_c2_div_b2)*cos23*cos12 + 2*c2_div_b2*cos23_2*cos13);
+		double c4 = -4*c2_div_b2*cos23_2 + pow2(a2_m_c2_div_b2 - 1);
+
+		if( c4 == 0 || !(b > 0) )
+			return 0;
+
+		// the roots are written into the first element of each solution and then replaced by the pose
+		int numRoots = solveQuartic(c3/c4, c2/c4, c1/c4, c0/c4, poses, outputIndex, 12);
+
+		// the world triangle's reference frame is the same for all solutions
+		double wcx = (w1x+w2x+w3x)/3, wcy = (w1y+w2y+w3y)/3, wcz = (w1z+w2z+w3z)/3;
+		double e1x = w2x-w1x, e1y = w2y-w1y, e1z = w2z-w1z;
+		double e3x = e1y*(w3z-w1z) - e1z*(w3y-w1y);
+		double e3y = e1z*(w3x-w1x) - e1x*(w3z-w1z);
+		double e3z = e1x*(w3y-w1y) - e1y*(w3x-w1x);
+		double n;
+		n = length(e1x, e1y, e1z); e1x /= n; e1y /= n; e1z /= n;
+		n = length(e3x, e3y, e3z); e3x /= n; e3y /= n; e3z /= n;
+		double e2x = e3y*e1z - e3z*e1y;
+		double e2y = e3z*e1x - e3x*e1z;
+		double e2z = e3x*e1y - e3y*e1x;
+
+		int found = 0;
+		for( int k = 0; k < numRoots; k++ ) {
+			double v = poses[outputIndex + k*12];
+			double u = ((-1 + a2_div_b2 - c2_div_b2)*v*v - 2*(a2_div_b2 - c2_div_b2)*cos13*v + 1 + a2_div_b2 - c2_div_b2)/
+					(2*(cos12 - v*cos23));
+
+			double dist1 = Math.sqrt(a*a/(u*u + v*v - 2*u*v*cos23));
+			double dist2 = dist1*u;
+			double dist3 = dist1*v;
+
+			if( Double.isNaN(dist1+dist2+dist3) || Double.isInfinite(dist1+dist2+dist3) )
+				continue;
+
+			// points in camera frame
+			double s1 = dist1/n1, s2 = dist2/n2, s3 = dist3/n3;
+			double X1x = x1*s1, X1y = y1*s1, X1z = s1;
+			double X2x = x2*s2, X2y = y2*s2, X2z = s2;
+			double X3x = x3*s3, X3y = y3*s3, X3z = s3;
+
+			// frame of the camera triangle
+			double f1x = X2x-X1x, f1y = X2y-X1y, f1z = X2z-X1z;
+			double f3x = f1y*(X3z-X1z) - f1z*(X3y-X1y);
+			double f3y = f1z*(X3x-X1x) - f1x*(X3z-X1z);
+			double f3z = f1x*(X3y-X1y) - f1y*(X3x-X1x);
+			n = length(f1x, f1y, f1z); f1x /= n; f1y /= n; f1z /= n;
+			n = length(f3x, f3y, f3z); f3x /= n; f3y /= n; f3z /= n;
+			double f2x = f3y*f1z - f3z*f1y;
+			double f2y = f3z*f1x - f3x*f1z;
+			double f2z = f3x*f1y - f3y*f1x;
+
+			// R = F*E', where the columns of F and E are the frames in camera and world
+			double r11 = f1x*e1x + f2x*e2x + f3x*e3x;
+			double r12 = f1x*e1y + f2x*e2y + f3x*e3y;
+			double r13 = f1x*e1z + f2x*e2z + f3x*e3z;
+			double r21 = f1y*e1x + f2y*e2x + f3y*e3x;
+			double r22 = f1y*e1y + f2y*e2y + f3y*e3y;
+			double r23 = f1y*e1z + f2y*e2z + f3y*e3z;
+			double r31 = f1z*e1x + f2z*e2x + f3z*e3x;
+			double r32 = f1z*e1y + f2z*e2y + f3z*e3y;
+			double r33 = f1z*e1z + f2z*e2z + f3z*e3z;
+
+			if( Double.isNaN(r11+r12+r13+r21+r22+r23+r31+r32+r33) )
+				continue;
+
+			// T = centroid in camera - R*centroid in world
+			double ccx = (X1x+X2x+X3x)/3, ccy = (X1y+X2y+X3y)/3, ccz = (X1z+X2z+X3z)/3;
+
+			// roots which have yet to be processed are stored after this solution, so they are not overwritten
+			int idx = outputIndex + found*12;
+
+			poses[idx   ] = r11; poses[idx+1] = r12; poses[idx+2] = r13;
+			poses[idx+3 ] = r21; poses[idx+4] = r22; poses[idx+5] = r23;
+			poses[idx+6 ] = r31; poses[idx+7] = r32; poses[idx+8] = r33;
+			poses[idx+9 ] = ccx - (r11*wcx + r12*wcy + r13*wcz);
+			poses[idx+10] = ccy - (r21*wcx + r22*wcy + r23*wcz);
+			poses[idx+11] = ccz - (r31*wcx + r32*wcy + r33*wcz);
+			found++;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Finds the real roots of x^4 + b3*x^3 + b2*x^2 + b1*x + b0 using Ferrari's method.  Each root is refined
+	 * with a few Newton steps since the closed form solution can lose precision.
+	 *
+	 * @param roots (Output) storage for the roots
+	 * @param offset index of the first root in 'roots'
+	 * @param stride distance between roots in 'roots'
+	 * @return number of real roots
+	 */
+	static int solveQuartic( double b3 , double b2 , double b1 , double b0 ,
+							 double roots[] , int offset , int stride ) {
+		// depressed quartic y^4 + p*y^2 + q*y + r, where x = y - b3/4
+		double shift = b3/4;
+		double b3_2 = b3*b3;
+		double p = b2 - 3*b3_2/8;
+		double q = b1 - b3*b2/2 + b3_2*b3/8;
+		double r = b0 - b3*b1/4 + b3_2*b2/16 - 3*b3_2*b3_2/256;
+
+		int count = 0;
+
+		// the resolvent cubic m^3 + p*m^2 + (p^2/4 - r)*m - q^2/8 has a positive root if q != 0
+		double m = largestCubicRoot(p, p*p/4 - r, -q*q/8);
+
+		if( m > 0 && q != 0 ) {
+			double s = Math.sqrt(2*m);
+			// y^2 - s*y + (p/2 + m + q/(2s)) = 0 and y^2 + s*y + (p/2 + m - q/(2s)) = 0
+			count = solveQuadratic(-s, p/2 + m + q/(2*s), roots, offset, stride, count);
+			count = solveQuadratic(s, p/2 + m - q/(2*s), roots, offset, stride, count);
+		} else {
+			// bi-quadratic z^2 + p*z + r = 0 where z = y^2
+			double disc = p*p - 4*r;
+			if( disc >= 0 ) {
+				double sq = Math.sqrt(disc);
+				double z0 = (-p + sq)/2;
+				double z1 = (-p - sq)/2;
+				if( z0 >= 0 ) {
+					double y = Math.sqrt(z0);
+					roots[offset + stride*count++] = y;
+					roots[offset + stride*count++] = -y;
+				}
+				if( z1 >= 0 && z1 != z0 ) {
+					double y = Math.sqrt(z1);
+					roots[offset + stride*count++] = y;
+					roots[offset + stride*count++] = -y;
+				}
+			}
+		}
+
+		// undo the shift and polish
+		for( int i = 0; i < count; i++ ) {
+			double x = roots[offset + stride*i] - shift;
+			for( int iter = 0; iter < 2; iter++ ) {
+				double f = (((x + b3)*x + b2)*x + b1)*x + b0;
+				double df = ((4*x + 3*b3)*x + 2*b2)*x + b1;
+				if( df == 0 )
+					break;
+				x -= f/df;
+			}
+			roots[offset + stride*i] = x;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Real roots of x^2 + b*x + c.  Roots are appended to the array.
+	 */
+	private static int solveQuadratic( double b , double c , double roots[] , int offset , int stride , int count ) {
+		double disc = b*b - 4*c;
+		if( disc < 0 )
+			return count;
+		double sq = Math.sqrt(disc);
+		// avoid cancellation by computing the larger magnitude root first
+		double t = b >= 0 ? -(b + sq)/2 : (-b + sq)/2;
+		roots[offset + stride*count++] = t;
+		if( disc > 0 )
+			roots[offset + stride*count++] = t != 0 ? c/t : 0;
+		return count;
+	}
+
+	/**
+	 * Largest real root of x^3 + a*x^2 + b*x + c
+	 */
+	static double largestCubicRoot( double a , double b , double c ) {
+		double Q = (a*a - 3*b)/9;
+		double R = (2*a*a*a - 9*a*b + 27*c)/54;
+		double Q3 = Q*Q*Q;
+
+		double x;
+		if( R*R < Q3 ) {
+			// three real roots
+			double theta = Math.acos(R/Math.sqrt(Q3));
+			x = -2*Math.sqrt(Q)*Math.cos((theta + 2*Math.PI)/3) - a/3;
+		} else {
+			double A = -Math.signum(R)*Math.cbrt(Math.abs(R) + Math.sqrt(R*R - Q3));
+			double B = A != 0 ? Q/A : 0;
+			x = A + B - a/3;
+		}
+
+		// polish
+		for( int iter = 0; iter < 2; iter++ ) {
+			double f = ((x + a)*x + b)*x + c;
+			double df = (3*x + 2*a)*x + b;
+			if( df == 0 )
+				break;
+			x -= f/df;
+		}
+		return x;
+	}
+
+	private static double length( double x , double y , double z ) {
+		return Math.sqrt(x*x + y*y + z*z);
+	}
+
+	private static double pow2( double a ) {
+		return a*a;
+	}
+
+	/**
+	 * Processes a block of sets with P3P
+	 */
+	private class P3PTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			for( int set = minInclusive; set < maxExclusive; set++ ) {
+				counts[set] = p3p(set, set*MAX_P3P*12);
+			}
+		}
+	}
+
+	/**
+	 * Processes a block of sets with EPnP
+	 */
+	private class EPnPTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			EPnPWorker worker = acquireWorker();
+			try {
+				worker.resize(setSize);
+				worker.alg.setNumIterations(epnpIterations);
+
+				for( int set = minInclusive; set < maxExclusive; set++ ) {
+					for( int i = 0; i < setSize; i++ ) {
+						int index = sets[set*setSize + i];
+						worker.obs.get(i).set(observations[index*2], observations[index*2+1]);
+						worker.world.get(i).set(points[index*3], points[index*3+1], points[index*3+2]);
+					}
+
+					worker.alg.process(worker.world, worker.obs, worker.found);
+
+					int idx = set*12;
+					System.arraycopy(worker.found.getR().data, 0, poses, idx, 9);
+					poses[idx+9 ] = worker.found.getT().x;
+					poses[idx+10] = worker.found.getT().y;
+					poses[idx+11] = worker.found.getT().z;
+				}
+			} finally {
+				releaseWorker(worker);
+			}
+		}
+	}
+
+	private EPnPWorker acquireWorker() {
+		synchronized( idleWorkers ) {
+			if( idleWorkers.isEmpty() )
+				return new EPnPWorker();
+			return idleWorkers.remove(idleWorkers.size()-1);
+		}
+	}
+
+	private void releaseWorker( EPnPWorker worker ) {
+		synchronized( idleWorkers ) {
+			idleWorkers.add(worker);
+		}
+	}
+
+	/**
+	 * EPnP and storage for a set.  Used by one thread at a time.
+	 */
+	private static class EPnPWorker {
+		PnPLepetitEPnP alg = new PnPLepetitEPnP();
+		List<Point2D_F64> obs = new ArrayList<>();
+		List<Point3D_F64> world = new ArrayList<>();
+		Se3_F64 found = new Se3_F64();
+
+		void resize( int size ) {
+			while( obs.size() < size ) {
+				obs.add(new Point2D_F64());
+				world.add(new Point3D_F64());
+			}
+			while( obs.size() > size ) {
+				obs.remove(obs.size()-1);
+				world.remove(world.size()-1);
+			}
+		}
+	}
+
+	public int getEPnPIterations() {
+		return epnpIterations;
+	}
+
+	/**
+	 * Number of Gauss-Newton iterations EPnP will perform.  See {@link PnPLepetitEPnP#setNumIterations(int)}
+	 */
+	public void setEPnPIterations(int iterations) {
+		this.epnpIterations = iterations;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+}
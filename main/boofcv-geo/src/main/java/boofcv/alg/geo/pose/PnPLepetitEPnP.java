@@ -154,6 +154,13 @@ public class PnPLepetitEPnP {
 	DMatrixRMaj A_temp = new DMatrixRMaj(1,1);
 	DMatrixRMaj v_temp = new DMatrixRMaj(3,1);
 	DMatrixRMaj w_temp = new DMatrixRMaj(1,1);
+	private DMatrixRMaj covar = new DMatrixRMaj(3,3);
+	private DMatrixRMaj V = new DMatrixRMaj(12,12);
+	private Point3D_F64 meanNull = new Point3D_F64();
+	private Point3D_F64 meanWorld = new Point3D_F64();
+	// views of the FastQueues so that a new list isn't created each time they are passed to motionFit
+	private List<Point3D_F64> controlWorldList = controlWorldPts.toList();
+	private List<Point3D_F64> solutionList = solutionPts.toList();
 
 	/**
 	 * Constructor which uses the default magic number
@@ -267,7 +274,7 @@ public class PnPLepetitEPnP {
 		}
 
 		UtilLepetitEPnP.computeCameraControl(solution,nullPts,solutionPts,numControl);
-		motionFit.process(controlWorldPts.toList(), solutionPts.toList());
+		motionFit.process(controlWorldList, solutionList);
 
 		solutionModel.set(motionFit.getTransformSrcToDst());
 	}
@@ -326,12 +333,15 @@ public class PnPLepetitEPnP {
 		}
 		c11/=N;c12/=N;c13/=N;c22/=N;c23/=N;c33/=N;
 
-		DMatrixRMaj covar = new DMatrixRMaj(3,3,true,c11,c12,c13,c12,c22,c23,c13,c23,c33);
+		covar.data[0] = c11; covar.data[1] = c12; covar.data[2] = c13;
+		covar.data[3] = c12; covar.data[4] = c22; covar.data[5] = c23;
+		covar.data[6] = c13; covar.data[7] = c23; covar.data[8] = c33;
 
 		// find the data's orientation and check to see if it is planar
 		svd.decompose(covar);
 		double []singularValues = svd.getSingularValues();
-		DMatrixRMaj V = svd.getV(null,false);
+		V.reshape(3,3);
+		svd.getV(V,false);
 
 		SingularOps_DDRM.descendingOrder(null,false,singularValues,3,V,false);
 
@@ -459,7 +469,8 @@ public class PnPLepetitEPnP {
 			throw new IllegalArgumentException("SVD failed?!?!");
 
 		double []singularValues = svd.getSingularValues();
-		DMatrixRMaj V = svd.getV(null,false);
+		V.reshape(MM.numCols,MM.numCols);
+		svd.getV(V,false);
 
 		SingularOps_DDRM.descendingOrder(null,false,singularValues,3,V,false);
 
@@ -485,8 +496,17 @@ public class PnPLepetitEPnP {
 	protected double matchScale( List<Point3D_F64> nullPts ,
 								 FastQueue<Point3D_F64> controlWorldPts ) {
 
-		Point3D_F64 meanNull = UtilPoint3D_F64.mean(nullPts,numControl,null);
-		Point3D_F64 meanWorld = UtilPoint3D_F64.mean(controlWorldPts.toList(),numControl,null);
+		UtilPoint3D_F64.mean(nullPts,numControl,meanNull);
+		meanWorld.set(0,0,0);
+		for( int i = 0; i < numControl; i++ ) {
+			Point3D_F64 p = controlWorldPts.get(i);
+			meanWorld.x += p.x;
+			meanWorld.y += p.y;
+			meanWorld.z += p.z;
+		}
+		meanWorld.x /= numControl;
+		meanWorld.y /= numControl;
+		meanWorld.z /= numControl;
 
 		// compute the ratio of distance between world and null points from the centroid
 		double top = 0;
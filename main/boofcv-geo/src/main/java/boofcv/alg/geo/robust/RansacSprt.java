@@ -0,0 +1,576 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.robust;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+import org.ddogleg.fitting.modelset.ModelManager;
+import org.ddogleg.fitting.modelset.ModelMatcher;
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Variant of RANSAC which is designed to reduce the time spent scoring hypotheses and can score several
+ * hypotheses at once.  Each of the following can be turned on independently:
+ * </p>
+ * <ul>
+ *     <li><b>Concurrent</b>: Hypotheses are generated and scored in batches with the batch split across threads.
+ *     Each thread has its own generator and distance function created by {@link RobustModelFactory}.</li>
+ *     <li><b>SPRT</b>: Wald's Sequential Probability Ratio Test is used to stop scoring a hypothesis as soon as
+ *     it's likely to be bad [1].  The probability of a point agreeing with a good and bad model is estimated
+ *     while running.</li>
+ *     <li><b>PROSAC</b>: Samples are drawn from a set of the highest quality points which is gradually expanded
+ *     to include the entire set [2].  Quality is specified using {@link #setQuality}, otherwise the
+ *     input is assumed to be sorted from best to worst.</li>
+ * </ul>
+ *
+ * <p>
+ * Hypotheses are scored by counting the number of points with a distance &le; the threshold.  Iterations stop
+ * once the probability of having sampled an all inlier set exceeds the confidence or the maximum number of
+ * iterations has been reached.  Samples are drawn and statistics are updated in the calling thread between
+ * batches and ties are resolved by selecting the earliest hypothesis, which makes the results independent of
+ * the number of threads.
+ * </p>
+ *
+ * <ol>
+ *     <li>Matas, J. and Chum, O. "Randomized RANSAC with Sequential Probability Ratio Test" ICCV 2005</li>
+ *     <li>Chum, O. and Matas, J. "Matching with PROSAC - Progressive Sample Consensus" CVPR 2005</li>
+ * </ol>
+ *
+ * @author Peter Abeles
+ */
+public class RansacSprt<Model,Point> implements ModelMatcher<Model,Point> {
+
+	// creates the generator and distance function for each thread
+	RobustModelFactory<Model,Point> factory;
+	ModelManager<Model> manager;
+
+	// used to randomly select points
+	Random rand;
+
+	// maximum number of hypotheses which will be generated
+	int maxIterations;
+	// points with a distance less than or equal to this are inliers
+	double threshold;
+	// probability that an all inlier sample has been drawn before stopping.
+	double confidence = 0.999;
+
+	// Which techniques are used
+	boolean concurrent;
+	boolean sprt;
+	boolean prosac;
+
+	// initial probability of a point being consistent with a good model
+	double initialEpsilon = 0.1;
+	// initial probability of a point being consistent with a bad model
+	double initialDelta = 0.01;
+	// time to generate a hypothesis relative to the time to score a single point
+	double timeRatio = 200;
+
+	// number of points needed to generate a model
+	int sampleSize;
+
+	// SPRT parameters for the current data set
+	double epsilon, delta;
+	// SPRT decision threshold
+	double decisionA;
+	// how much the likelihood ratio changes for consistent and inconsistent points
+	double ratioConsistent, ratioInconsistent;
+	// total number of points evaluated and consistent points in rejected hypotheses
+	long rejectedEvaluated, rejectedConsistent;
+
+	// PROSAC state
+	int prosacN, prosacT, prosacTnPrime;
+	double prosacTn;
+
+	// points being processed
+	List<Point> dataSet;
+	// quality of each point.  lower is better
+	double quality[];
+	// order in which points are sampled.  index of point in data set
+	int order[] = new int[0];
+	// order in which points are scored
+	int evalOrder[] = new int[0];
+
+	// number of hypotheses which are considered between updating statistics
+	int batchSize = 32;
+	// index of points in each sample in the batch
+	int samples[];
+	// the hypothesis for each sample
+	List<Model> hypotheses = new ArrayList<>();
+	// number of inliers.  -1 if it failed or was rejected
+	int hypInliers[];
+	// SPRT statistics for each hypothesis
+	boolean hypRejected[];
+	int hypEvaluated[];
+	int hypConsistent[];
+	// the best inlier count before the batch started
+	int batchBestInliers;
+
+	// the best model found
+	Model bestModel;
+	int bestInliers;
+	List<Point> matchSet = new ArrayList<>();
+	GrowQueue_I32 matchToInput = new GrowQueue_I32();
+
+	// used to compute the inlier set of the best model
+	DistanceFromModel<Model,Point> distance;
+
+	// storage for each thread
+	final ArrayDeque<Worker> workers = new ArrayDeque<>();
+	HypothesisTask task = new HypothesisTask();
+
+	/**
+	 * Configures RANSAC.
+	 *
+	 * @param randSeed Random seed
+	 * @param factory Creates the generator, distance function, and model manager
+	 * @param maxIterations Maximum number of hypotheses
+	 * @param threshold Inlier threshold.  Same units as the distance function.
+	 */
+	public RansacSprt(long randSeed, RobustModelFactory<Model,Point> factory,
+					  int maxIterations, double threshold ) {
+		this.rand = new Random(randSeed);
+		this.factory = factory;
+		this.maxIterations = maxIterations;
+		this.threshold = threshold;
+
+		this.manager = factory.createManager();
+		this.distance = factory.createDistance();
+		this.bestModel = manager.createModelInstance();
+
+		Worker w = new Worker();
+		sampleSize = w.generator.getMinimumPoints();
+		workers.push(w);
+
+		samples = new int[batchSize*sampleSize];
+		hypInliers = new int[batchSize];
+		hypRejected = new boolean[batchSize];
+		hypEvaluated = new int[batchSize];
+		hypConsistent = new int[batchSize];
+		for( int i = 0; i < batchSize; i++ ) {
+			hypotheses.add(manager.createModelInstance());
+		}
+	}
+
+	/**
+	 * Specifies the quality of each point, e.g. its association score, for use with PROSAC.  Lower values
+	 * are better.  Only used by the next call to {@link #process}.
+	 *
+	 * @param quality Quality of each point in the data set.  Must be the same length.
+	 */
+	public void setQuality( double quality[] ) {
+		this.quality = quality;
+	}
+
+	@Override
+	public boolean process(List<Point> dataSet) {
+		this.dataSet = dataSet;
+		matchSet.clear();
+		matchToInput.reset();
+		bestInliers = 0;
+
+		int N = dataSet.size();
+		if( N < sampleSize ) {
+			quality = null;
+			return false;
+		}
+
+		selectSamplingOrder(N);
+		selectEvaluationOrder(N);
+
+		epsilon = initialEpsilon;
+		delta = initialDelta;
+		rejectedEvaluated = rejectedConsistent = 0;
+		computeDecisionThreshold();
+
+		if( prosac )
+			initializeProsac(N);
+
+		boolean found = false;
+		int iteration = 0;
+		int limit = maxIterations;
+		while( iteration < limit ) {
+			int count = Math.min(batchSize, limit-iteration);
+
+			for( int i = 0; i < count; i++ ) {
+				if( prosac )
+					sampleProsac(N, i*sampleSize);
+				else
+					sampleUniform(N, sampleSize, i*sampleSize);
+			}
+
+			batchBestInliers = bestInliers;
+			if( concurrent )
+				BoofConcurrency.loopBlocks(0, count, task);
+			else
+				task.run(0, count);
+
+			for( int i = 0; i < count; i++ ) {
+				if( hypInliers[i] > bestInliers ) {
+					bestInliers = hypInliers[i];
+					manager.copyModel(hypotheses.get(i), bestModel);
+					found = true;
+				} else if( hypRejected[i] ) {
+					rejectedEvaluated += hypEvaluated[i];
+					rejectedConsistent += hypConsistent[i];
+				}
+			}
+
+			iteration += count;
+			if( found ) {
+				if( sprt )
+					updateSprt(N);
+				limit = Math.min(maxIterations, requiredIterations(N));
+			}
+		}
+		quality = null;
+
+		if( !found )
+			return false;
+
+		// find the inliers of the best model
+		distance.setModel(bestModel);
+		for( int i = 0; i < N; i++ ) {
+			Point p = dataSet.get(i);
+			if( distance.computeDistance(p) <= threshold ) {
+				matchSet.add(p);
+				matchToInput.add(i);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Order that points are sampled in.  For PROSAC it's sorted by quality, otherwise it doesn't matter
+	 */
+	void selectSamplingOrder( int N ) {
+		if( order.length < N )
+			order = new int[N];
+
+		if( prosac && quality != null ) {
+			if( quality.length != N )
+				throw new IllegalArgumentException("Quality must be the same length as the data set");
+			final double q[] = quality;
+			Integer sorted[] = new Integer[N];
+			for( int i = 0; i < N; i++ ) {
+				sorted[i] = i;
+			}
+			Arrays.sort(sorted, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Double.compare(q[a],q[b]);
+				}
+			});
+			for( int i = 0; i < N; i++ ) {
+				order[i] = sorted[i];
+			}
+		} else {
+			for( int i = 0; i < N; i++ ) {
+				order[i] = i;
+			}
+		}
+	}
+
+	/**
+	 * SPRT assumes that points are scored in a random order
+	 */
+	void selectEvaluationOrder( int N ) {
+		if( evalOrder.length < N )
+			evalOrder = new int[N];
+		for( int i = 0; i < N; i++ ) {
+			evalOrder[i] = i;
+		}
+		if( !sprt )
+			return;
+		for( int i = N-1; i > 0; i-- ) {
+			int j = rand.nextInt(i+1);
+			int tmp = evalOrder[i];
+			evalOrder[i] = evalOrder[j];
+			evalOrder[j] = tmp;
+		}
+	}
+
+	/**
+	 * Randomly selects points from the first N in the sampling order without replacement
+	 */
+	void sampleUniform( int N , int count , int offset ) {
+		for( int i = 0; i < count; i++ ) {
+			int index;
+			boolean duplicate;
+			do {
+				index = rand.nextInt(N);
+				duplicate = false;
+				for( int j = 0; j < i; j++ ) {
+					if( samples[offset+j] == index ) {
+						duplicate = true;
+						break;
+					}
+				}
+			} while( duplicate );
+			samples[offset+i] = index;
+		}
+		for( int i = 0; i < count; i++ ) {
+			samples[offset+i] = order[samples[offset+i]];
+		}
+	}
+
+	void initializeProsac( int N ) {
+		prosacN = sampleSize;
+		prosacT = 0;
+		prosacTnPrime = 1;
+		prosacTn = maxIterations;
+		for( int i = 0; i < sampleSize; i++ ) {
+			prosacTn *= (double)(sampleSize-i)/(N-i);
+		}
+	}
+
+	/**
+	 * Draws a sample from the top prosacN points.  The size of the set increases with the number of iterations
+	 * following the growth function in [2].
+	 */
+	void sampleProsac( int N , int offset ) {
+		prosacT++;
+		while( prosacT >= prosacTnPrime && prosacN < N ) {
+			double Tn1 = prosacTn*(prosacN+1)/(prosacN+1-sampleSize);
+			prosacTnPrime += (int)Math.ceil(Tn1-prosacTn);
+			prosacTn = Tn1;
+			prosacN++;
+		}
+
+		if( prosacTnPrime < prosacT ) {
+			sampleUniform(prosacN, sampleSize, offset);
+		} else {
+			// the newest point is always included
+			sampleUniform(prosacN-1, sampleSize-1, offset);
+			samples[offset+sampleSize-1] = order[prosacN-1];
+		}
+	}
+
+	/**
+	 * Updates the SPRT probabilities from the best model and the rejected models
+	 */
+	void updateSprt( int N ) {
+		boolean changed = false;
+
+		double w = Math.min(0.99,bestInliers/(double)N);
+		if( w > epsilon ) {
+			epsilon = w;
+			changed = true;
+		}
+
+		if( rejectedEvaluated > 0 ) {
+			double d = Math.max(1e-4,rejectedConsistent/(double)rejectedEvaluated);
+			if( Math.abs(d-delta) > 0.05*delta ) {
+				delta = d;
+				changed = true;
+			}
+		}
+
+		if( changed )
+			computeDecisionThreshold();
+	}
+
+	/**
+	 * Computes the SPRT decision threshold 'A' using the approximation in [1].  One model is assumed
+	 * to be generated by each sample.
+	 */
+	void computeDecisionThreshold() {
+		if( !sprt || epsilon <= delta ) {
+			// the test can't tell good from bad models
+			decisionA = Double.MAX_VALUE;
+			ratioConsistent = ratioInconsistent = 1;
+			return;
+		}
+
+		double C = (1-delta)*Math.log((1-delta)/(1-epsilon)) + delta*Math.log(delta/epsilon);
+		double base = timeRatio*C + 1;
+		double A = base;
+		for( int i = 0; i < 10; i++ ) {
+			A = base + Math.log(A);
+		}
+		decisionA = A;
+		ratioConsistent = delta/epsilon;
+		ratioInconsistent = (1-delta)/(1-epsilon);
+	}
+
+	/**
+	 * Number of iterations needed to find an all inlier sample with the specified confidence
+	 */
+	int requiredIterations( int N ) {
+		double pGood = Math.pow(bestInliers/(double)N, sampleSize);
+		if( sprt && decisionA != Double.MAX_VALUE )
+			pGood *= 1 - 1/decisionA;
+		if( pGood >= 1 )
+			return 0;
+		if( pGood <= 0 )
+			return maxIterations;
+
+		double k = Math.log(1-confidence)/Math.log(1-pGood);
+		return k >= maxIterations ? maxIterations : (int)Math.ceil(k);
+	}
+
+	/**
+	 * Generates and scores a range of hypotheses in the batch
+	 */
+	private class HypothesisTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			Worker w;
+			synchronized( workers ) {
+				w = workers.isEmpty() ? null : workers.pop();
+			}
+			if( w == null )
+				w = new Worker();
+
+			for( int i = minInclusive; i < maxExclusive; i++ ) {
+				w.process(i);
+			}
+
+			synchronized( workers ) {
+				workers.push(w);
+			}
+		}
+	}
+
+	/**
+	 * Storage and algorithms used by a single thread
+	 */
+	private class Worker {
+		ModelGenerator<Model,Point> generator = factory.createGenerator();
+		DistanceFromModel<Model,Point> distance = factory.createDistance();
+		List<Point> sample = new ArrayList<>();
+
+		void process( int hypothesis ) {
+			hypRejected[hypothesis] = false;
+			hypInliers[hypothesis] = -1;
+
+			sample.clear();
+			for( int i = 0; i < sampleSize; i++ ) {
+				sample.add(dataSet.get(samples[hypothesis*sampleSize+i]));
+			}
+
+			Model model = hypotheses.get(hypothesis);
+			if( !generator.generate(sample, model) )
+				return;
+
+			distance.setModel(model);
+
+			final int N = dataSet.size();
+			double lambda = 1;
+			int inliers = 0;
+			for( int i = 0; i < N; i++ ) {
+				if( distance.computeDistance(dataSet.get(evalOrder[i])) <= threshold ) {
+					inliers++;
+					lambda *= ratioConsistent;
+				} else {
+					lambda *= ratioInconsistent;
+				}
+
+				if( lambda > decisionA ) {
+					hypRejected[hypothesis] = true;
+					hypEvaluated[hypothesis] = i+1;
+					hypConsistent[hypothesis] = inliers;
+					return;
+				}
+
+				// it can't be better than the best model found so far
+				if( inliers + (N-i-1) <= batchBestInliers )
+					return;
+			}
+			hypInliers[hypothesis] = inliers;
+		}
+	}
+
+	@Override
+	public Model getModelParameters() {
+		return bestModel;
+	}
+
+	@Override
+	public List<Point> getMatchSet() {
+		return matchSet;
+	}
+
+	@Override
+	public int getInputIndex(int matchIndex) {
+		return matchToInput.get(matchIndex);
+	}
+
+	/**
+	 * Number of inliers in the best model
+	 */
+	@Override
+	public double getFitQuality() {
+		return matchSet.size();
+	}
+
+	@Override
+	public int getMinimumSize() {
+		return sampleSize;
+	}
+
+	@Override
+	public Class<Point> getPointType() {
+		return distance.getPointType();
+	}
+
+	@Override
+	public Class<Model> getModelType() {
+		return distance.getModelType();
+	}
+
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public void setSprt(boolean sprt) {
+		this.sprt = sprt;
+	}
+
+	public void setProsac(boolean prosac) {
+		this.prosac = prosac;
+	}
+
+	/**
+	 * Probability that an all inlier sample has been drawn before stopping.  Set to 1 to always use the
+	 * maximum number of iterations.
+	 */
+	public void setConfidence(double confidence) {
+		this.confidence = confidence;
+	}
+
+	/**
+	 * Specifies the initial parameters for SPRT
+	 *
+	 * @param epsilon Probability of a point being consistent with a good model, i.e. the inlier fraction
+	 * @param delta Probability of a point being consistent with a bad model
+	 * @param timeRatio Time to generate a hypothesis relative to the time to score a single point
+	 */
+	public void setSprtParameters( double epsilon , double delta , double timeRatio ) {
+		this.initialEpsilon = epsilon;
+		this.initialDelta = delta;
+		this.timeRatio = timeRatio;
+	}
+}
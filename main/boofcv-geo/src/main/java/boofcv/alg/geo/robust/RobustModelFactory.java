@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.robust;
+
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+import org.ddogleg.fitting.modelset.ModelManager;
+
+/**
+ * Creates new instances of the classes used to robustly estimate a model.  Used by algorithms which need
+ * a separate copy for each thread since generators and distance functions are not thread safe.
+ *
+ * @author Peter Abeles
+ */
+public interface RobustModelFactory<Model,Point> {
+
+	ModelManager<Model> createManager();
+
+	ModelGenerator<Model,Point> createGenerator();
+
+	DistanceFromModel<Model,Point> createDistance();
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.triangulate;
+
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import georegression.struct.se.Se3_F64;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Triangulates many points in a single call.  Observations and found points are stored in flat arrays so that
+ * no objects are created or modified for each point.  Observations are interleaved (x,y) normalized image
+ * coordinates and points are interleaved (x,y,z).  Each point is solved in closed form using a few local variables,
+ * which allows points to be processed concurrently without any per thread storage.
+ * </p>
+ *
+ * <ul>
+ *     <li>Two views: midpoint of the closest points on the two rays, same as {@link TriangulateGeometric}</li>
+ *     <li>N views: inhomogeneous linear least squares, see page 313 in [1].  Same constraints as
+ *     {@link TriangulateLinearDLT} but with the point's homogeneous coordinate fixed to one, which reduces it to
+ *     a 3x3 linear system.</li>
+ * </ul>
+ *
+ * <p>
+ * If a point can't be triangulated, e.g. the rays are parallel, then its coordinates are set to NaN.
+ * </p>
+ *
+ * <p>
+ * [1] R. Hartley, and A. Zisserman, "Multiple View Geometry in Computer Vision", 2nd Ed, Cambridge 2003
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class TriangulateBatch {
+
+	// if true then points are processed concurrently
+	boolean concurrent = false;
+
+	// rotation and translation of each view, 12 elements per view.  R in row-major then T
+	double poses[] = new double[0];
+	int numViews;
+
+	// input and output for the current call
+	double obsA[], obsB[];
+	double output[];
+
+	TwoViewTask taskTwo = new TwoViewTask();
+	NViewTask taskN = new NViewTask();
+
+	/**
+	 * Triangulates points observed in two views.
+	 *
+	 * @param obsA Observations in view 'a'.  (x,y) interleaved.  Not modified.
+	 * @param obsB Observations in view 'b'.  (x,y) interleaved.  Not modified.
+	 * @param count Number of points
+	 * @param fromAtoB Transformation from camera view 'a' to 'b'  Not modified.
+	 * @param foundInA (Output) Points in view 'a' reference frame.  (x,y,z) interleaved.
+	 */
+	public void triangulate( double obsA[] , double obsB[] , int count ,
+							 Se3_F64 fromAtoB , double foundInA[] ) {
+		if( foundInA.length < count*3 )
+			throw new IllegalArgumentException("Output array is too small");
+
+		setPoses(fromAtoB);
+		this.obsA = obsA;
+		this.obsB = obsB;
+		this.output = foundInA;
+
+		run(taskTwo, count);
+	}
+
+	/**
+	 * Triangulates points which are observed in every view.
+	 *
+	 * @param observations Observations of each point in each view.  All the observations of a point are
+	 *                     consecutive and in the same order as the views.  (x,y) interleaved.  Not modified.
+	 * @param count Number of points
+	 * @param worldToView Transformations from world to each view.  Not modified.
+	 * @param found (Output) Points in world reference frame.  (x,y,z) interleaved.
+	 */
+	public void triangulate( double observations[] , int count ,
+							 List<Se3_F64> worldToView , double found[] ) {
+		if( found.length < count*3 )
+			throw new IllegalArgumentException("Output array is too small");
+		if( worldToView.size() < 2 )
+			throw new IllegalArgumentException("At least two views are required");
+
+		setPoses(worldToView.toArray(new Se3_F64[worldToView.size()]));
+		this.obsA = observations;
+		this.output = found;
+
+		run(taskN, count);
+	}
+
+	private void setPoses( Se3_F64 ...views ) {
+		numViews = views.length;
+		if( poses.length < numViews*12 )
+			poses = new double[numViews*12];
+		for( int i = 0; i < numViews; i++ ) {
+			System.arraycopy(views[i].getR().data,0,poses,i*12,9);
+			poses[i*12+9 ] = views[i].getT().x;
+			poses[i*12+10] = views[i].getT().y;
+			poses[i*12+11] = views[i].getT().z;
+		}
+	}
+
+	private void run( IntRangeTask task , int count ) {
+		if( concurrent )
+			BoofConcurrency.loopBlocks(0, count, 100, task);
+		else
+			task.run(0, count);
+	}
+
+	private class TwoViewTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			double p[] = poses;
+			double r11 = p[0], r12 = p[1], r13 = p[2];
+			double r21 = p[3], r22 = p[4], r23 = p[5];
+			double r31 = p[6], r32 = p[7], r33 = p[8];
+
+			// location of camera 'b' in 'a'.  c = -R'*T
+			double cx = -(r11*p[9] + r21*p[10] + r31*p[11]);
+			double cy = -(r12*p[9] + r22*p[10] + r32*p[11]);
+			double cz = -(r13*p[9] + r23*p[10] + r33*p[11]);
+
+			for( int i = minInclusive; i < maxExclusive; i++ ) {
+				// direction of ray 'a'
+				double ax = obsA[i*2], ay = obsA[i*2+1];
+
+				// direction of ray 'b' rotated into 'a'
+				double x = obsB[i*2], y = obsB[i*2+1];
+				double bx = r11*x + r21*y + r31;
+				double by = r12*x + r22*y + r32;
+				double bz = r13*x + r23*y + r33;
+
+				// find the closest point on each line.  a*s and c + b*t
+				double aa = ax*ax + ay*ay + 1;
+				double ab = ax*bx + ay*by + bz;
+				double bb = bx*bx + by*by + bz*bz;
+				double ad = -(ax*cx + ay*cy + cz);
+				double bd = -(bx*cx + by*cy + bz*cz);
+
+				double denom = aa*bb - ab*ab;
+				int index = i*3;
+				if( denom == 0 ) {
+					output[index] = output[index+1] = output[index+2] = Double.NaN;
+					continue;
+				}
+
+				double s = (ab*bd - bb*ad)/denom;
+				double t = (aa*bd - ab*ad)/denom;
+
+				// select the point half way between the two
+				output[index  ] = 0.5*(ax*s + cx + bx*t);
+				output[index+1] = 0.5*(ay*s + cy + by*t);
+				output[index+2] = 0.5*(s    + cz + bz*t);
+			}
+		}
+	}
+
+	private class NViewTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			double p[] = poses;
+			double obs[] = obsA;
+
+			for( int i = minInclusive; i < maxExclusive; i++ ) {
+				// normal equations, A'*A and A'*b
+				double m11 = 0, m12 = 0, m13 = 0, m22 = 0, m23 = 0, m33 = 0;
+				double b1 = 0, b2 = 0, b3 = 0;
+
+				int indexObs = i*numViews*2;
+				for( int view = 0; view < numViews; view++ ) {
+					int k = view*12;
+					double x = obs[indexObs++];
+					double y = obs[indexObs++];
+
+					// first row
+					double a1 = x*p[k+6] - p[k  ];
+					double a2 = x*p[k+7] - p[k+1];
+					double a3 = x*p[k+8] - p[k+2];
+					double a4 = p[k+9 ] - x*p[k+11];
+
+					m11 += a1*a1; m12 += a1*a2; m13 += a1*a3;
+					m22 += a2*a2; m23 += a2*a3; m33 += a3*a3;
+					b1 += a1*a4; b2 += a2*a4; b3 += a3*a4;
+
+					// second row
+					a1 = y*p[k+6] - p[k+3];
+					a2 = y*p[k+7] - p[k+4];
+					a3 = y*p[k+8] - p[k+5];
+					a4 = p[k+10] - y*p[k+11];
+
+					m11 += a1*a1; m12 += a1*a2; m13 += a1*a3;
+					m22 += a2*a2; m23 += a2*a3; m33 += a3*a3;
+					b1 += a1*a4; b2 += a2*a4; b3 += a3*a4;
+				}
+
+				// solve the symmetric 3x3 system using the adjugate
+				double c11 = m22*m33 - m23*m23;
+				double c12 = m13*m23 - m12*m33;
+				double c13 = m12*m23 - m13*m22;
+				double c22 = m11*m33 - m13*m13;
+				double c23 = m12*m13 - m11*m23;
+				double c33 = m11*m22 - m12*m12;
+
+				double det = m11*c11 + m12*c12 + m13*c13;
+
+				int index = i*3;
+				if( det == 0 ) {
+					output[index] = output[index+1] = output[index+2] = Double.NaN;
+					continue;
+				}
+
+				output[index  ] = (c11*b1 + c12*b2 + c13*b3)/det;
+				output[index+1] = (c12*b1 + c22*b2 + c23*b3)/det;
+				output[index+2] = (c13*b1 + c23*b2 + c33*b3)/det;
+			}
+		}
+	}
+
+	/**
+	 * If true then points are split across threads.  Results are identical either way.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.factory.geo;
+
+import boofcv.struct.Configuration;
+
+/**
+ * Configuration for {@link boofcv.abst.geo.bundle.BundleAdjustmentCalibratedSparse sparse bundle adjustment}.
+ *
+ * @author Peter Abeles
+ */
+public class ConfigBundleAdjustment implements Configuration {
+	/**
+	 * Convergence tolerance for the relative change in cost and parameters, and the gradient.
+	 */
+	public double convergenceTol = 1e-8;
+
+	/**
+	 * Maximum number of iterations
+	 */
+	public int maxIterations = 200;
+
+	/**
+	 * If the number of views being optimized is less than or equal to this number then the reduced camera
+	 * system is solved using dense Cholesky decomposition.  Otherwise conjugate gradient with a
+	 * block-Jacobi preconditioner is used.
+	 */
+	public int denseLimit = 200;
+
+	/**
+	 * Maximum number of conjugate gradient iterations when solving the reduced camera system
+	 */
+	public int cgMaxIterations = 500;
+
+	/**
+	 * Conjugate gradient stops when the residual has been reduced by this fraction
+	 */
+	public double cgTolerance = 1e-10;
+
+	/**
+	 * If true then the Jacobian and normal equations are computed concurrently.
+	 */
+	public boolean concurrent = true;
+
+	public ConfigBundleAdjustment(double convergenceTol, int maxIterations) {
+		this.convergenceTol = convergenceTol;
+		this.maxIterations = maxIterations;
+	}
+
+	public ConfigBundleAdjustment() {
+	}
+
+	@Override
+	public void checkValidity() {
+		if( maxIterations < 0 )
+			throw new IllegalArgumentException("maxIterations must be >= 0");
+		if( denseLimit < 0 )
+			throw new IllegalArgumentException("denseLimit must be >= 0");
+	}
+}
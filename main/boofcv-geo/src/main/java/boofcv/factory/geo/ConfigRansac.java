@@ -39,6 +39,47 @@ public class ConfigRansac implements Configuration {
 	 */
 	public double inlierThreshold;
 
+	/**
+	 * If true then hypotheses are generated and scored concurrently.  Each thread has its own copy of the
+	 * model generator and distance function.
+	 */
+	public boolean concurrent = false;
+
+	/**
+	 * If true then Wald's Sequential Probability Ratio Test is used to stop scoring bad hypotheses early.
+	 */
+	public boolean sprt = false;
+
+	/**
+	 * If true then PROSAC style sampling is used.  Samples are first drawn from the best points, which requires
+	 * that the input is sorted by quality, best first, or that the quality is provided to
+	 * {@link boofcv.alg.geo.robust.RansacSprt#setQuality}.
+	 */
+	public boolean prosac = false;
+
+	/**
+	 * Used when any of the options above are turned on.  Stops once the probability that an all inlier
+	 * sample has been drawn exceeds this value.  Set to 1 to always use the maximum number of iterations.
+	 */
+	public double confidence = 0.999;
+
+	/**
+	 * SPRT: Initial estimate of the probability that a point is consistent with a good model, i.e. the
+	 * fraction of inliers.  Updated as better models are found.
+	 */
+	public double sprtEpsilon = 0.1;
+
+	/**
+	 * SPRT: Initial estimate of the probability that a point is consistent with a bad model.  Updated
+	 * from rejected models.
+	 */
+	public double sprtDelta = 0.01;
+
+	/**
+	 * SPRT: Time to generate a hypothesis relative to the time it takes to score a single point.
+	 */
+	public double sprtTimeRatio = 200;
+
 	public ConfigRansac(int maxIterations, double inlierThreshold) {
 		this.maxIterations = maxIterations;
 		this.inlierThreshold = inlierThreshold;
@@ -49,6 +90,9 @@ public class ConfigRansac implements Configuration {
 
 	@Override
 	public void checkValidity() {
-
+		if( confidence <= 0 || confidence > 1 )
+			throw new IllegalArgumentException("confidence must be in the range (0,1]");
+		if( sprt && (sprtEpsilon <= 0 || sprtEpsilon >= 1 || sprtDelta <= 0 || sprtDelta >= 1) )
+			throw new IllegalArgumentException("SPRT probabilities must be in the range (0,1)");
 	}
 }
@@ -19,7 +19,7 @@
 package boofcv.factory.geo;
 
 import boofcv.abst.geo.*;
-import boofcv.abst.geo.bundle.BundleAdjustmentCalibratedDense;
+import boofcv.abst.geo.bundle.BundleAdjustmentCalibratedSparse;
 import boofcv.abst.geo.f.*;
 import boofcv.abst.geo.h.LeastSquaresHomography;
 import boofcv.abst.geo.h.WrapHomographyLinear;
@@ -63,7 +63,29 @@ public class FactoryMultiView {
 	 * @return Bundle Adjustment
 	 */
 	public static BundleAdjustmentCalibrated bundleCalibrated(double tol , int maxIterations) {
-		return new BundleAdjustmentCalibratedDense(tol,maxIterations);
+		return bundleCalibrated(new ConfigBundleAdjustment(tol,maxIterations));
+	}
+
+	/**
+	 * Creates sparse bundle adjustment for a camera with a know and fixed intrinsic calibration.
+	 *
+	 * @see BundleAdjustmentCalibratedSparse
+	 *
+	 * @param config Configuration.  If null then the default is used.
+	 * @return Bundle Adjustment
+	 */
+	public static BundleAdjustmentCalibrated bundleCalibrated( ConfigBundleAdjustment config ) {
+		if( config == null )
+			config = new ConfigBundleAdjustment();
+		config.checkValidity();
+
+		BundleAdjustmentCalibratedSparse alg =
+				new BundleAdjustmentCalibratedSparse(config.convergenceTol,config.maxIterations);
+		alg.getReducedSystem().setDenseLimit(config.denseLimit);
+		alg.getReducedSystem().setMaxIterations(config.cgMaxIterations);
+		alg.getReducedSystem().setTolerance(config.cgTolerance);
+		alg.setConcurrent(config.concurrent);
+		return alg;
 	}
 
 	/**
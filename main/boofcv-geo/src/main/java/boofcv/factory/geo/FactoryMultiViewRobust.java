@@ -26,6 +26,8 @@ import boofcv.alg.geo.pose.PnPDistanceReprojectionSq;
 import boofcv.alg.geo.robust.DistanceHomographySq;
 import boofcv.alg.geo.robust.DistanceSe3SymmetricSq;
 import boofcv.alg.geo.robust.GenerateHomographyLinear;
+import boofcv.alg.geo.robust.RansacSprt;
+import boofcv.alg.geo.robust.RobustModelFactory;
 import boofcv.alg.geo.robust.Se3FromEssentialGenerator;
 import boofcv.struct.calib.CameraPinholeRadial;
 import boofcv.struct.geo.AssociatedPair;
@@ -37,6 +39,7 @@ import georegression.struct.se.Se3_F64;
 import org.ddogleg.fitting.modelset.DistanceFromModel;
 import org.ddogleg.fitting.modelset.ModelGenerator;
 import org.ddogleg.fitting.modelset.ModelManager;
+import org.ddogleg.fitting.modelset.ModelMatcher;
 import org.ddogleg.fitting.modelset.lmeds.LeastMedianOfSquares;
 import org.ddogleg.fitting.modelset.ransac.Ransac;
 
@@ -86,20 +89,35 @@ public class FactoryMultiViewRobust {
 	 * @param ransac Parameters for RANSAC.  Can't be null.
 	 * @return Robust Se3_F64 estimator
 	 */
-	public static Ransac<Se3_F64, Point2D3D> pnpRansac( ConfigPnP pnp,
-														ConfigRansac ransac)
+	public static ModelMatcher<Se3_F64, Point2D3D> pnpRansac( final ConfigPnP pnp,
+															 ConfigRansac ransac)
 	{
-		Estimate1ofPnP estimatorPnP = FactoryMultiView.computePnP_1(pnp.which, -1, pnp.numResolve);
-		DistanceModelMonoPixels<Se3_F64,Point2D3D> distance = new PnPDistanceReprojectionSq();
-		distance.setIntrinsic(pnp.intrinsic.fx,pnp.intrinsic.fy,pnp.intrinsic.skew);
-		ModelManagerSe3_F64 manager = new ModelManagerSe3_F64();
-		EstimatorToGenerator<Se3_F64,Point2D3D> generator =
-				new EstimatorToGenerator<>(estimatorPnP);
+		ransac.checkValidity();
+
+		RobustModelFactory<Se3_F64,Point2D3D> factory = new RobustModelFactory<Se3_F64,Point2D3D>() {
+			@Override
+			public ModelManager<Se3_F64> createManager() {
+				return new ModelManagerSe3_F64();
+			}
+
+			@Override
+			public ModelGenerator<Se3_F64, Point2D3D> createGenerator() {
+				Estimate1ofPnP estimatorPnP = FactoryMultiView.computePnP_1(pnp.which, -1, pnp.numResolve);
+				return new EstimatorToGenerator<>(estimatorPnP);
+			}
+
+			@Override
+			public DistanceFromModel<Se3_F64, Point2D3D> createDistance() {
+				DistanceModelMonoPixels<Se3_F64,Point2D3D> distance = new PnPDistanceReprojectionSq();
+				distance.setIntrinsic(pnp.intrinsic.fx,pnp.intrinsic.fy,pnp.intrinsic.skew);
+				return distance;
+			}
+		};
 
 		// convert from pixels to pixels squared
 		double threshold = ransac.inlierThreshold*ransac.inlierThreshold;
 
-		return new Ransac<>(ransac.randSeed, manager, generator, distance, ransac.maxIterations, threshold);
+		return createRansac(factory, ransac, threshold);
 	}
 
 	/**
@@ -167,48 +185,71 @@ public class FactoryMultiViewRobust {
 	 * @param ransac Parameters for RANSAC.  Can't be null.
 	 * @return Robust Se3_F64 estimator
 	 */
-	public static Ransac<Se3_F64, AssociatedPair> essentialRansac( ConfigEssential essential,
-																   ConfigRansac ransac ) {
+	public static ModelMatcher<Se3_F64, AssociatedPair> essentialRansac( final ConfigEssential essential,
+																		 ConfigRansac ransac ) {
 
 		essential.checkValidity();
 		ransac.checkValidity();
 
-		Estimate1ofEpipolar essentialAlg = FactoryMultiView.
-				computeEssential_1(essential.which, essential.numResolve);
-
-		return epipolarRansac(essentialAlg, essential.intrinsic, ransac);
+		return epipolarRansac(new EpipolarFactory(essential.intrinsic) {
+			@Override
+			Estimate1ofEpipolar createEpipolar() {
+				return FactoryMultiView.computeEssential_1(essential.which, essential.numResolve);
+			}
+		}, ransac);
 	}
 
-	public static Ransac<Se3_F64, AssociatedPair> fundamentalRansac( ConfigFundamental essential,
-																	 ConfigRansac ransac ) {
+	public static ModelMatcher<Se3_F64, AssociatedPair> fundamentalRansac( final ConfigFundamental essential,
+																		   ConfigRansac ransac ) {
 
 		essential.checkValidity();
 		ransac.checkValidity();
 
-		Estimate1ofEpipolar essentialAlg = FactoryMultiView.
-				computeFundamental_1(essential.which, essential.numResolve);
-
-		return epipolarRansac(essentialAlg, essential.intrinsic, ransac);
+		return epipolarRansac(new EpipolarFactory(essential.intrinsic) {
+			@Override
+			Estimate1ofEpipolar createEpipolar() {
+				return FactoryMultiView.computeFundamental_1(essential.which, essential.numResolve);
+			}
+		}, ransac);
 	}
 
-	private static Ransac<Se3_F64, AssociatedPair> epipolarRansac(Estimate1ofEpipolar epipolar,
-																 CameraPinholeRadial intrinsic,
-																 ConfigRansac ransac ) {
-
-		TriangulateTwoViewsCalibrated triangulate = FactoryMultiView.triangulateTwoGeometric();
-		ModelManager<Se3_F64> manager = new ModelManagerSe3_F64();
-		ModelGenerator<Se3_F64, AssociatedPair> generateEpipolarMotion =
-				new Se3FromEssentialGenerator(epipolar, triangulate);
-
-		DistanceFromModel<Se3_F64, AssociatedPair> distanceSe3 =
-				new DistanceSe3SymmetricSq(triangulate,
-						intrinsic.fx, intrinsic.fy, intrinsic.skew,
-						intrinsic.fx, intrinsic.fy, intrinsic.skew);
-
+	private static ModelMatcher<Se3_F64, AssociatedPair> epipolarRansac( EpipolarFactory factory,
+																		 ConfigRansac ransac ) {
 		double ransacTOL = ransac.inlierThreshold * ransac.inlierThreshold * 2.0;
 
-		return new Ransac<>(ransac.randSeed, manager, generateEpipolarMotion, distanceSe3,
-				ransac.maxIterations, ransacTOL);
+		return createRansac(factory, ransac, ransacTOL);
+	}
+
+	/**
+	 * Creates the components for estimating {@link Se3_F64} from an essential or fundamental matrix
+	 */
+	private static abstract class EpipolarFactory implements RobustModelFactory<Se3_F64,AssociatedPair> {
+		CameraPinholeRadial intrinsic;
+
+		EpipolarFactory(CameraPinholeRadial intrinsic) {
+			this.intrinsic = intrinsic;
+		}
+
+		abstract Estimate1ofEpipolar createEpipolar();
+
+		@Override
+		public ModelManager<Se3_F64> createManager() {
+			return new ModelManagerSe3_F64();
+		}
+
+		@Override
+		public ModelGenerator<Se3_F64, AssociatedPair> createGenerator() {
+			TriangulateTwoViewsCalibrated triangulate = FactoryMultiView.triangulateTwoGeometric();
+			return new Se3FromEssentialGenerator(createEpipolar(), triangulate);
+		}
+
+		@Override
+		public DistanceFromModel<Se3_F64, AssociatedPair> createDistance() {
+			TriangulateTwoViewsCalibrated triangulate = FactoryMultiView.triangulateTwoGeometric();
+			return new DistanceSe3SymmetricSq(triangulate,
+					intrinsic.fx, intrinsic.fy, intrinsic.skew,
+					intrinsic.fx, intrinsic.fy, intrinsic.skew);
+		}
 	}
 
 	/**
@@ -255,19 +296,54 @@ public class FactoryMultiViewRobust {
 	 * @param ransac Parameters for RANSAC.  Can't be null.
 	 * @return Homography estimator
 	 */
-	public static Ransac<Homography2D_F64,AssociatedPair>
+	public static ModelMatcher<Homography2D_F64,AssociatedPair>
 	homographyRansac( ConfigHomography homography , ConfigRansac ransac )
 	{
 		if( homography == null )
 			homography = new ConfigHomography();
+		ransac.checkValidity();
 
-		ModelManager<Homography2D_F64> manager = new ModelManagerHomography2D_F64();
-		GenerateHomographyLinear modelFitter = new GenerateHomographyLinear(homography.normalize);
-		DistanceHomographySq distance = new DistanceHomographySq();
+		final boolean normalize = homography.normalize;
+		RobustModelFactory<Homography2D_F64,AssociatedPair> factory =
+				new RobustModelFactory<Homography2D_F64,AssociatedPair>() {
+			@Override
+			public ModelManager<Homography2D_F64> createManager() {
+				return new ModelManagerHomography2D_F64();
+			}
+
+			@Override
+			public ModelGenerator<Homography2D_F64, AssociatedPair> createGenerator() {
+				return new GenerateHomographyLinear(normalize);
+			}
+
+			@Override
+			public DistanceFromModel<Homography2D_F64, AssociatedPair> createDistance() {
+				return new DistanceHomographySq();
+			}
+		};
 
 		double ransacTol = ransac.inlierThreshold*ransac.inlierThreshold;
 
-		return new Ransac<>
-				(ransac.randSeed, manager, modelFitter, distance, ransac.maxIterations, ransacTol);
+		return createRansac(factory, ransac, ransacTol);
+	}
+
+	/**
+	 * Creates {@link Ransac} if none of the optional features in {@link ConfigRansac} are turned on, otherwise
+	 * {@link RansacSprt} is used.
+	 */
+	private static <Model,Point> ModelMatcher<Model,Point>
+	createRansac( RobustModelFactory<Model,Point> factory , ConfigRansac ransac , double threshold ) {
+		if( !ransac.concurrent && !ransac.sprt && !ransac.prosac ) {
+			return new Ransac<>(ransac.randSeed, factory.createManager(), factory.createGenerator(),
+					factory.createDistance(), ransac.maxIterations, threshold);
+		}
+
+		RansacSprt<Model,Point> alg = new RansacSprt<>(ransac.randSeed, factory, ransac.maxIterations, threshold);
+		alg.setConcurrent(ransac.concurrent);
+		alg.setSprt(ransac.sprt);
+		alg.setProsac(ransac.prosac);
+		alg.setConfidence(ransac.confidence);
+		alg.setSprtParameters(ransac.sprtEpsilon, ransac.sprtDelta, ransac.sprtTimeRatio);
+		return alg;
 	}
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.abst.geo.bundle;
+
+import boofcv.alg.geo.GeoTestingOps;
+import boofcv.alg.geo.bundle.CalibPoseAndPointResiduals;
+import boofcv.alg.geo.bundle.CalibratedPoseAndPoint;
+import boofcv.alg.geo.bundle.ViewPointObservations;
+import georegression.struct.se.Se3_F64;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static boofcv.abst.geo.bundle.TestBundleAdjustmentCalibratedDense.createModel;
+import static boofcv.abst.geo.bundle.TestBundleAdjustmentCalibratedDense.createObservations;
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestBundleAdjustmentCalibratedSparse {
+
+	Random rand = new Random(234);
+	int numViews = 2;
+	int numPoints = 4;
+
+	/**
+	 * Perfect observations and model
+	 */
+	@Test
+	public void perfect() {
+		CalibratedPoseAndPoint model = createModel(numViews,numPoints,rand);
+		List<ViewPointObservations> observations = createObservations(model,numViews,numPoints);
+
+		BundleAdjustmentCalibratedSparse alg = new BundleAdjustmentCalibratedSparse(1e-8,500);
+
+		assertTrue(alg.process(model, observations));
+
+		// compute error, which should be zero
+		assertEquals(0,computeError(model,observations),1e-8);
+	}
+
+	/**
+	 * Perfect observations with a corrupted model.  See if the error decreases
+	 */
+	@Test
+	public void noisy() {
+		noisy(false,200);
+	}
+
+	/**
+	 * Reduced camera system is solved using conjugate gradient
+	 */
+	@Test
+	public void noisy_conjugateGradient() {
+		noisy(false,0);
+	}
+
+	/**
+	 * The first view is known and should not be modified
+	 */
+	@Test
+	public void noisy_knownView() {
+		noisy(true,200);
+	}
+
+	private void noisy( boolean firstKnown , int denseLimit ) {
+		int numViews = 6;
+		int numPoints = 20;
+		CalibratedPoseAndPoint model = createModel(numViews,numPoints,rand);
+		List<ViewPointObservations> observations = createObservations(model,numViews,numPoints);
+
+		BundleAdjustmentCalibratedSparse alg = new BundleAdjustmentCalibratedSparse(1e-12,500);
+		alg.getReducedSystem().setDenseLimit(denseLimit);
+
+		model.setViewKnown(0,firstKnown);
+		Se3_F64 original = new Se3_F64();
+		original.set(model.getWorldToCamera(0));
+
+		// add noise to the model
+		model.getWorldToCamera(1).getT().x += 0.02;
+		model.getWorldToCamera(2).getT().y -= 0.01;
+		for( int i = 0; i < numPoints; i++ ) {
+			model.getPoint(i).z += rand.nextGaussian()*0.01;
+		}
+
+		double errorBefore = computeError(model,observations);
+
+		assertTrue(alg.process(model, observations));
+
+		double errorAfter = computeError(model,observations);
+
+		// the error should be less now
+		assertTrue(errorAfter<errorBefore*0.1);
+
+		if( firstKnown ) {
+			Se3_F64 found = model.getWorldToCamera(0);
+			assertEquals(0,original.getT().distance(found.getT()),1e-12);
+		}
+	}
+
+	/**
+	 * Right cameras are attached to the left cameras in a stereo rig.  Only the left poses should be optimized and
+	 * the rig should stay rigid
+	 */
+	@Test
+	public void stereoRig() {
+		int numViews = 6;
+		int numPoints = 20;
+		CalibratedPoseAndPoint model = createModel(numViews,numPoints,rand);
+
+		Se3_F64 leftToRight = new Se3_F64();
+		leftToRight.getT().set(-0.1,0,0);
+		for( int i = 1; i < numViews; i += 2 ) {
+			model.setViewRelative(i,i-1,leftToRight);
+		}
+		model.updateRelativeViews();
+		List<ViewPointObservations> observations = createObservations(model,numViews,numPoints);
+
+		// only the first left camera is known.  The rig's baseline specifies the scale
+		model.setViewKnown(0,true);
+		assertEquals(2,model.getNumUnknownViews());
+
+		Se3_F64 expected2 = model.getWorldToCamera(2).copy();
+		Se3_F64 expected4 = model.getWorldToCamera(4).copy();
+
+		model.getWorldToCamera(2).getT().x += 0.02;
+		model.getWorldToCamera(4).getT().z -= 0.02;
+		// the attached views are recomputed, so corrupting them should do nothing
+		model.getWorldToCamera(3).getT().y += 0.5;
+		for( int i = 0; i < numPoints; i++ ) {
+			model.getPoint(i).z += rand.nextGaussian()*0.01;
+		}
+
+		BundleAdjustmentCalibratedSparse alg = new BundleAdjustmentCalibratedSparse(1e-12,500);
+		assertTrue(alg.process(model, observations));
+
+		assertEquals(0,computeError(model,observations),1e-8);
+		assertEquals(0,expected2.getT().distance(model.getWorldToCamera(2).getT()),1e-6);
+		assertEquals(0,expected4.getT().distance(model.getWorldToCamera(4).getT()),1e-6);
+
+		// right cameras should be exactly where the rig puts them
+		for( int i = 1; i < numViews; i += 2 ) {
+			Se3_F64 right = model.getWorldToCamera(i-1).concat(leftToRight,null);
+			assertEquals(0,right.getT().distance(model.getWorldToCamera(i).getT()),1e-12);
+		}
+
+		// the dense implementation doesn't support attached views
+		try {
+			new BundleAdjustmentCalibratedDense(1e-8,10).process(model,observations);
+			fail("Should have thrown an exception");
+		} catch( IllegalArgumentException ignore ) {}
+	}
+
+	/**
+	 * The number of threads should not change the results
+	 */
+	@Test
+	public void concurrent_sameResults() {
+		int numViews = 6;
+		int numPoints = 20;
+		CalibratedPoseAndPoint modelA = createModel(numViews,numPoints,rand);
+		List<ViewPointObservations> observations = createObservations(modelA,numViews,numPoints);
+		modelA.getWorldToCamera(1).getT().x += 0.02;
+		for( int i = 0; i < numPoints; i++ ) {
+			modelA.getPoint(i).z += rand.nextGaussian()*0.01;
+		}
+
+		CalibratedPoseAndPoint modelB = new CalibratedPoseAndPoint();
+		modelB.configure(numViews,numPoints);
+		for( int i = 0; i < numViews; i++ ) {
+			modelB.getWorldToCamera(i).set(modelA.getWorldToCamera(i));
+		}
+		for( int i = 0; i < numPoints; i++ ) {
+			modelB.getPoint(i).set(modelA.getPoint(i));
+		}
+
+		BundleAdjustmentCalibratedSparse alg = new BundleAdjustmentCalibratedSparse(1e-12,500);
+		alg.setConcurrent(false);
+		alg.process(modelA, observations);
+		alg.setConcurrent(true);
+		alg.process(modelB, observations);
+
+		for( int i = 0; i < numPoints; i++ ) {
+			assertEquals(0,modelA.getPoint(i).distance(modelB.getPoint(i)),0);
+		}
+	}
+
+	private double computeError( CalibratedPoseAndPoint model ,
+								 List<ViewPointObservations> observations )
+	{
+		CalibPoseAndPointResiduals func = new CalibPoseAndPointResiduals();
+		func.configure(null,model,observations);
+		double residuals[] = new double[ func.getNumOfOutputsM() ];
+
+		func.process(model,residuals);
+
+		return GeoTestingOps.residualError(residuals);
+	}
+}
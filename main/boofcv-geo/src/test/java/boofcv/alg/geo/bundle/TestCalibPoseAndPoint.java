@@ -18,10 +18,10 @@
 
 package boofcv.alg.geo.bundle;
 
+import georegression.struct.se.Se3_F64;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author Peter Abeles
@@ -53,4 +53,32 @@ public class TestCalibPoseAndPoint {
 		assertTrue(alg.getWorldToCamera(6)!=null);
 		assertTrue(alg.getPoint(7) != null);
 	}
+
+	@Test
+	public void relativeViews() {
+		CalibratedPoseAndPoint alg = new CalibratedPoseAndPoint();
+		alg.configure(4, 2);
+		alg.setViewKnown(0,true);
+
+		Se3_F64 offset = new Se3_F64();
+		offset.getT().set(-0.1,0,0);
+		alg.setViewRelative(1,0,offset);
+		alg.setViewRelative(3,2,offset);
+		assertTrue(alg.hasRelativeViews());
+		assertEquals(2,alg.getViewParent(3));
+		assertEquals(-1,alg.getViewParent(2));
+
+		// only view 2 has parameters
+		assertEquals(1,alg.getNumUnknownViews());
+
+		alg.getWorldToCamera(2).getT().set(1,2,3);
+		alg.updateRelativeViews();
+		assertEquals(0.9,alg.getWorldToCamera(3).getT().x,1e-8);
+		assertEquals(2,alg.getWorldToCamera(3).getT().y,1e-8);
+
+		// configure should detach all the views
+		alg.configure(4, 2);
+		assertFalse(alg.hasRelativeViews());
+		assertEquals(4,alg.getNumUnknownViews());
+	}
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.bundle;
+
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.se.Se3_F64;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static boofcv.abst.geo.bundle.TestBundleAdjustmentCalibratedDense.createModel;
+import static boofcv.abst.geo.bundle.TestBundleAdjustmentCalibratedDense.createObservations;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestCalibPoseAndPointBlockJacobian {
+
+	Random rand = new Random(48854);
+	int numViews = 3;
+	int numPoints = 5;
+
+	CalibPoseAndPointRodriguesCodec codec = new CalibPoseAndPointRodriguesCodec();
+	CalibPoseAndPointResiduals func = new CalibPoseAndPointResiduals();
+
+	@Test
+	public void allUnknown() {
+		check(false,false,false);
+	}
+
+	@Test
+	public void someKnown() {
+		check(true,false,true);
+	}
+
+	/**
+	 * Compares the blocks against the dense Jacobian, which has been checked numerically
+	 */
+	private void check( boolean ...known ) {
+		CalibratedPoseAndPoint model = createModel(numViews,numPoints,rand);
+		List<ViewPointObservations> observations = createObservations(model,numViews,numPoints);
+
+		// remove some observations so that the structure isn't uniform
+		observations.get(1).getPoints().removeTail();
+
+		Se3_F64 extrinsic[] = new Se3_F64[known.length];
+		for( int i = 0; i < known.length; i++ ) {
+			model.setViewKnown(i,known[i]);
+			if( known[i] ) {
+				extrinsic[i] = new Se3_F64();
+				extrinsic[i].set(model.getWorldToCamera(i));
+			}
+		}
+
+		int numViewsUnknown = model.getNumUnknownViews();
+		codec.configure(numViews,numPoints,numViewsUnknown,known);
+		func.configure(codec,model,observations);
+
+		double []param = new double[ codec.getParamLength() ];
+		codec.encode(model,param);
+		// move it away from the solution so that the residuals are not zero
+		for( int i = 0; i < param.length; i++ ) {
+			param[i] += rand.nextGaussian()*0.01;
+		}
+
+		CalibPoseAndPointRodriguesJacobian dense = new CalibPoseAndPointRodriguesJacobian();
+		dense.configure(observations,numPoints,extrinsic);
+		int N = dense.getNumOfInputsN();
+		int M = dense.getNumOfOutputsM();
+		double expectedJ[] = new double[N*M];
+		dense.process(param,expectedJ);
+		double expectedR[] = new double[M];
+		func.process(param,expectedR);
+
+		CalibPoseAndPointBlockJacobian alg = new CalibPoseAndPointBlockJacobian();
+		alg.configure(observations,numPoints,extrinsic);
+		double cost = alg.process(param);
+
+		assertEquals(M/2,alg.getNumObservations());
+		assertEquals(N,alg.getNumParameters());
+
+		double expectedCost = 0;
+		for( int i = 0; i < M; i++ ) {
+			assertEquals(expectedR[i],alg.getResiduals()[i],1e-12);
+			expectedCost += expectedR[i]*expectedR[i];
+		}
+		assertEquals(expectedCost,cost,1e-12);
+
+		double found[] = new double[M];
+		assertEquals(expectedCost,alg.computeResiduals(param,found),1e-12);
+		for( int i = 0; i < M; i++ ) {
+			assertEquals(expectedR[i],found[i],1e-12);
+		}
+
+		int indexPoint = numViewsUnknown*6;
+		for( int obs = 0; obs < M/2; obs++ ) {
+			int view = alg.obsView[obs];
+			int unknown = alg.viewToUnknown[view];
+			for( int row = 0; row < 2; row++ ) {
+				int indexRow = (obs*2+row)*N;
+
+				if( unknown >= 0 ) {
+					for( int i = 0; i < 6; i++ ) {
+						assertEquals(expectedJ[indexRow+unknown*6+i],alg.getJacobianView()[obs*12+row*6+i],1e-8);
+					}
+				}
+				for( int i = 0; i < 3; i++ ) {
+					int col = indexPoint + alg.obsPoint[obs]*3 + i;
+					assertEquals(expectedJ[indexRow+col],alg.getJacobianPoint()[obs*6+row*3+i],1e-8);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void relativeViews() {
+		checkRelative(false);
+	}
+
+	@Test
+	public void relativeViews_knownParent() {
+		checkRelative(true);
+	}
+
+	/**
+	 * Views 1 and 3 are attached to views 0 and 2.  The blocks are compared against a numerical Jacobian
+	 */
+	private void checkRelative( boolean knownParent ) {
+		int numViews = 4;
+		CalibratedPoseAndPoint model = createModel(numViews,numPoints,rand);
+
+		Se3_F64 leftToRight = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ,0.01,-0.02,0.005,leftToRight.getR());
+		leftToRight.getT().set(-0.2,0.01,0.02);
+		model.setViewRelative(1,0,leftToRight);
+		model.setViewRelative(3,2,leftToRight);
+		model.setViewKnown(2,knownParent);
+		model.updateRelativeViews();
+
+		List<ViewPointObservations> observations = createObservations(model,numViews,numPoints);
+		observations.get(3).getPoints().removeTail();
+
+		boolean skip[] = new boolean[numViews];
+		Se3_F64 extrinsic[] = new Se3_F64[numViews];
+		Se3_F64 parentToView[] = new Se3_F64[numViews];
+		for( int i = 0; i < numViews; i++ ) {
+			skip[i] = model.isViewKnown(i) || model.getViewParent(i) >= 0;
+			if( model.isViewKnown(i) ) {
+				extrinsic[i] = new Se3_F64();
+				extrinsic[i].set(model.getWorldToCamera(i));
+			}
+			if( model.getViewParent(i) >= 0 )
+				parentToView[i] = model.getParentToView(i);
+		}
+
+		int numViewsUnknown = model.getNumUnknownViews();
+		assertEquals(knownParent ? 1 : 2, numViewsUnknown);
+		codec.configure(numViews,numPoints,numViewsUnknown,skip);
+		double param[] = new double[ codec.getParamLength() ];
+		codec.encode(model,param);
+
+		CalibPoseAndPointBlockJacobian alg = new CalibPoseAndPointBlockJacobian();
+		alg.configure(observations,numPoints,extrinsic,model.getParentArray(),parentToView);
+		assertEquals(numViewsUnknown*6 + numPoints*3, alg.getNumParameters());
+
+		// residuals should be zero since the relative views were rendered using the same transform
+		assertEquals(0, alg.process(param), 1e-20);
+
+		for( int i = 0; i < param.length; i++ ) {
+			param[i] += rand.nextGaussian()*0.01;
+		}
+		alg.process(param);
+
+		int M = alg.getNumObservations()*2;
+		double plus[] = new double[M];
+		double minus[] = new double[M];
+		double h = 1e-6;
+		int indexPoint = numViewsUnknown*6;
+		for( int col = 0; col < param.length; col++ ) {
+			double orig = param[col];
+			param[col] = orig + h;
+			alg.computeResiduals(param,plus);
+			param[col] = orig - h;
+			alg.computeResiduals(param,minus);
+			param[col] = orig;
+
+			for( int obs = 0; obs < M/2; obs++ ) {
+				int unknown = alg.viewToUnknown[alg.obsView[obs]];
+				for( int row = 0; row < 2; row++ ) {
+					double expected = (plus[obs*2+row]-minus[obs*2+row])/(2*h);
+					double found;
+					if( col < indexPoint ) {
+						found = col/6 == unknown ? alg.getJacobianView()[obs*12+row*6+col%6] : 0;
+					} else {
+						int point = (col-indexPoint)/3;
+						found = point == alg.obsPoint[obs] ? alg.getJacobianPoint()[obs*6+row*3+(col-indexPoint)%3] : 0;
+					}
+					assertEquals(expected,found,1e-6);
+				}
+			}
+		}
+
+		// the attached views share the unknown view with their parent
+		assertEquals(alg.viewToUnknown[0],alg.viewToUnknown[1]);
+		assertEquals(alg.viewToUnknown[2],alg.viewToUnknown[3]);
+		int unknown = alg.viewToUnknown[0];
+		assertEquals(2,alg.unknownViewStart[unknown+1]-alg.unknownViewStart[unknown]);
+	}
+
+	/**
+	 * See if observations are correctly sorted by point
+	 */
+	@Test
+	public void configure_pointObs() {
+		CalibratedPoseAndPoint model = createModel(numViews,numPoints,rand);
+		List<ViewPointObservations> observations = createObservations(model,numViews,numPoints);
+		observations.get(0).getPoints().removeTail();
+
+		CalibPoseAndPointBlockJacobian alg = new CalibPoseAndPointBlockJacobian();
+		alg.configure(observations,numPoints,new Se3_F64[numViews]);
+
+		assertEquals(numViews*numPoints-1,alg.getNumObservations());
+		for( int point = 0; point < numPoints; point++ ) {
+			int expected = point == numPoints-1 ? numViews-1 : numViews;
+			assertEquals(expected,alg.pointObsStart[point+1]-alg.pointObsStart[point]);
+			for( int k = alg.pointObsStart[point]; k < alg.pointObsStart[point+1]; k++ ) {
+				assertEquals(point,alg.obsPoint[alg.pointObs[k]]);
+			}
+		}
+	}
+}
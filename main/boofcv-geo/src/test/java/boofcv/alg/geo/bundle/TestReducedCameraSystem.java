@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.bundle;
+
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.se.Se3_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestReducedCameraSystem {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Views are only connected to their neighbors.  See if the structure reflects that
+	 */
+	@Test
+	public void configure() {
+		ReducedCameraSystem alg = createChain(5, null);
+
+		assertEquals(5,alg.getNumViews());
+		// diagonal and two neighbors, except at the ends
+		assertEquals(5+4*2,alg.getNumBlocks());
+
+		for( int row = 0; row < 5; row++ ) {
+			for( int col = 0; col < 5; col++ ) {
+				boolean expected = Math.abs(row-col) <= 1;
+				assertEquals(expected, alg.findBlock(row,col) >= 0);
+			}
+		}
+	}
+
+	/**
+	 * Known views are not included
+	 */
+	@Test
+	public void configure_known() {
+		Se3_F64 extrinsic[] = new Se3_F64[5];
+		extrinsic[2] = new Se3_F64();
+		ReducedCameraSystem alg = createChain(5, extrinsic);
+
+		assertEquals(4,alg.getNumViews());
+		// views 1 and 3 are no longer connected since they only share points with 2
+		assertEquals(4+2*2,alg.getNumBlocks());
+		assertTrue(alg.findBlock(1,2) < 0);
+	}
+
+	/**
+	 * Dense and conjugate gradient solvers should produce the same solution
+	 */
+	@Test
+	public void solve_denseAndSparse() {
+		ReducedCameraSystem alg = createChain(8, null);
+		fillPositiveDefinite(alg);
+
+		int N = alg.getNumViews()*6;
+		double b[] = new double[N];
+		for( int i = 0; i < N; i++ ) {
+			b[i] = rand.nextGaussian();
+		}
+
+		double expected[] = new double[N];
+		alg.setDenseLimit(100);
+		assertTrue(alg.solve(b,expected));
+
+		double found[] = new double[N];
+		alg.setDenseLimit(0);
+		assertTrue(alg.solve(b,found));
+
+		for( int i = 0; i < N; i++ ) {
+			assertEquals(expected[i],found[i],1e-6);
+		}
+
+		// see if it's actually a solution
+		double Ax[] = new double[N];
+		alg.multiply(expected,Ax);
+		for( int i = 0; i < N; i++ ) {
+			assertEquals(b[i],Ax[i],1e-8);
+		}
+	}
+
+	/**
+	 * Creates a chain of views where each point is seen by two neighboring views
+	 */
+	private ReducedCameraSystem createChain( int numViews , Se3_F64 extrinsic[] ) {
+		List<ViewPointObservations> observations = new ArrayList<>();
+		for( int view = 0; view < numViews; view++ ) {
+			ViewPointObservations o = new ViewPointObservations();
+			if( view > 0 )
+				o.getPoints().grow().set(view-1,new Point2D_F64());
+			if( view < numViews-1 )
+				o.getPoints().grow().set(view,new Point2D_F64());
+			observations.add(o);
+		}
+
+		if( extrinsic == null )
+			extrinsic = new Se3_F64[numViews];
+
+		CalibPoseAndPointBlockJacobian jacobian = new CalibPoseAndPointBlockJacobian();
+		jacobian.configure(observations,numViews-1,extrinsic);
+
+		ReducedCameraSystem alg = new ReducedCameraSystem();
+		alg.configure(jacobian);
+		return alg;
+	}
+
+	/**
+	 * Creates a symmetric positive definite matrix with the system's structure
+	 */
+	private void fillPositiveDefinite( ReducedCameraSystem alg ) {
+		double blocks[] = alg.getBlocks();
+		int rowStart[] = alg.getRowStart();
+		int columns[] = alg.getColumns();
+
+		for( int row = 0; row < alg.getNumViews(); row++ ) {
+			for( int k = rowStart[row]; k < rowStart[row+1]; k++ ) {
+				int col = columns[k];
+				if( col < row )
+					continue;
+				int transposed = alg.findBlock(col,row);
+				for( int i = 0; i < 6; i++ ) {
+					for( int j = 0; j < 6; j++ ) {
+						double value = rand.nextDouble()*0.1;
+						if( col == row ) {
+							if( j < i ) continue;
+							if( i == j ) value += 10;
+						}
+						blocks[k*36+i*6+j] = value;
+						blocks[transposed*36+j*6+i] = value;
+					}
+				}
+			}
+		}
+	}
+}
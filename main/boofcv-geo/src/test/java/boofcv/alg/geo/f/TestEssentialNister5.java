@@ -19,12 +19,33 @@
 package boofcv.alg.geo.f;
 
 import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.geo.QueueMatrix;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.solver.Polynomial;
+import org.ddogleg.solver.PolynomialRoots;
+import org.ddogleg.solver.impl.FindRealRootsSturm;
+import org.ddogleg.solver.impl.WrapRealRootsSturm;
 import org.ddogleg.struct.FastQueue;
+import org.ejml.data.Complex_F64;
 import org.ejml.data.DMatrixRMaj;
+import org.ejml.dense.row.CommonOps_DDRM;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.ejml.dense.row.NormOps_DDRM;
+import org.ejml.dense.row.factory.DecompositionFactory_DDRM;
+import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
+import org.ejml.interfaces.decomposition.SingularValueDecomposition;
+import org.ejml.interfaces.linsol.LinearSolverDense;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -37,6 +58,77 @@ public class TestEssentialNister5 extends EpipolarTestSimulation {
 		createCommonChecks().checkEpipolarMatrix(5, false);
 	}
 
+	/**
+	 * Compares the Householder QR implementation against the previous one, which found the null space with SVD
+	 * and solved the linear system with LU.  The null space bases are different, so the solutions are compared
+	 * after normalizing their scale and sign.
+	 */
+	@Test
+	public void compareToSvdReference() {
+		EssentialNister5 alg = new EssentialNister5();
+		SvdReference reference = new SvdReference();
+
+		FastQueue<DMatrixRMaj> found = new QueueMatrix(3, 3);
+		FastQueue<DMatrixRMaj> expected = new QueueMatrix(3, 3);
+
+		for (int trial = 0; trial < 100; trial++) {
+			List<AssociatedPair> pairs = randomConfiguration();
+
+			assertTrue(reference.process(pairs, expected));
+			assertTrue(alg.process(pairs, found));
+
+			assertEquals(expected.size(), found.size());
+			for (int i = 0; i < expected.size(); i++) {
+				DMatrixRMaj E = normalize(expected.get(i));
+				boolean matched = false;
+				for (int j = 0; j < found.size() && !matched; j++) {
+					matched = MatrixFeatures_DDRM.isIdentical(E, normalize(found.get(j)), 1e-6);
+				}
+				assertTrue("trial "+trial, matched);
+			}
+		}
+	}
+
+	/**
+	 * Five points observed by two cameras with a random motion between them
+	 */
+	private List<AssociatedPair> randomConfiguration() {
+		Se3_F64 motion = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, rand.nextGaussian()*0.1, rand.nextGaussian()*0.1,
+				rand.nextGaussian()*0.1, motion.getR());
+		motion.getT().set(rand.nextGaussian(), rand.nextGaussian(), rand.nextGaussian()*0.2);
+		motion.getT().divide(motion.getT().norm()*2);
+
+		List<AssociatedPair> pairs = new ArrayList<>();
+		Point3D_F64 p2 = new Point3D_F64();
+		for (int i = 0; i < 5; i++) {
+			Point3D_F64 p1 = new Point3D_F64(rand.nextDouble()*2-1, rand.nextDouble()*2-1, 2+rand.nextDouble()*3);
+			SePointOps_F64.transform(motion, p1, p2);
+
+			AssociatedPair pair = new AssociatedPair();
+			pair.p1.set(p1.x/p1.z, p1.y/p1.z);
+			pair.p2.set(p2.x/p2.z, p2.y/p2.z);
+			pairs.add(pair);
+		}
+		return pairs;
+	}
+
+	/**
+	 * Scales the matrix to have a Frobenius norm of one and its largest magnitude element positive
+	 */
+	private static DMatrixRMaj normalize( DMatrixRMaj E ) {
+		DMatrixRMaj N = E.copy();
+		CommonOps_DDRM.divide(N, NormOps_DDRM.normF(N));
+		int largest = 0;
+		for (int i = 1; i < 9; i++) {
+			if( Math.abs(N.data[i]) > Math.abs(N.data[largest]) )
+				largest = i;
+		}
+		if( N.data[largest] < 0 )
+			CommonOps_DDRM.scale(-1, N);
+		return N;
+	}
+
 	private CommonFundamentalChecks createCommonChecks() {
 		return new CommonFundamentalChecks() {
 			EssentialNister5 alg = new EssentialNister5();
@@ -55,4 +147,105 @@ public class TestEssentialNister5 extends EpipolarTestSimulation {
 			}
 		};
 	}
+
+	/**
+	 * The implementation before the null space was found using a QR factorization.  SVD is used to find the
+	 * null space, the 10x10 system is solved with LU and x,y are found with a 3x2 least squares solver.
+	 */
+	private static class SvdReference {
+		DMatrixRMaj Q = new DMatrixRMaj(5,9);
+		DMatrixRMaj V = new DMatrixRMaj(9,9);
+		SingularValueDecomposition<DMatrixRMaj> svd = DecompositionFactory_DDRM.svd(5,9,false,true,false);
+
+		HelperNister5 helper = new HelperNister5();
+
+		double []X = new double[9];
+		double []Y = new double[9];
+		double []Z = new double[9];
+		double []W = new double[9];
+
+		LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.linear(10);
+
+		DMatrixRMaj A1 = new DMatrixRMaj(10,10);
+		DMatrixRMaj A2 = new DMatrixRMaj(10,10);
+		DMatrixRMaj C = new DMatrixRMaj(10,10);
+
+		PolynomialRoots findRoots = new WrapRealRootsSturm(new FindRealRootsSturm(11,-1,1e-10,20,20));
+		Polynomial poly = new Polynomial(11);
+
+		public boolean process( List<AssociatedPair> points , FastQueue<DMatrixRMaj> solutions ) {
+			solutions.reset();
+
+			int index = 0;
+			for( int i = 0; i < points.size(); i++ ) {
+				Point2D_F64 a = points.get(i).p2;
+				Point2D_F64 b = points.get(i).p1;
+
+				Q.data[index++] =  a.x*b.x;
+				Q.data[index++] =  a.x*b.y;
+				Q.data[index++] =  a.x;
+				Q.data[index++] =  a.y*b.x;
+				Q.data[index++] =  a.y*b.y;
+				Q.data[index++] =  a.y;
+				Q.data[index++] =      b.x;
+				Q.data[index++] =      b.y;
+				Q.data[index++] =  1;
+			}
+
+			if( !svd.decompose(Q) )
+				return false;
+			svd.getV(V,true);
+
+			for( int i = 0; i < 9; i++ ) {
+				X[i] = V.unsafe_get(5,i);
+				Y[i] = V.unsafe_get(6,i);
+				Z[i] = V.unsafe_get(7,i);
+				W[i] = V.unsafe_get(8,i);
+			}
+
+			helper.setNullSpace(X,Y,Z,W);
+			helper.setupA1(A1);
+			helper.setupA2(A2);
+
+			solver.setA(A1);
+			solver.solve(A2, C);
+
+			helper.setDeterminantVectors(C);
+			helper.extractPolynomial(poly.getCoefficients());
+
+			if( !findRoots.process(poly) )
+				return false;
+
+			for( Complex_F64 c : findRoots.getRoots() ) {
+				if( !c.isReal() )
+					continue;
+
+				double z = c.real;
+				DMatrixRMaj A = new DMatrixRMaj(3,2);
+				DMatrixRMaj B = new DMatrixRMaj(3,1);
+
+				A.data[0] = ((helper.K00*z + helper.K01)*z + helper.K02)*z + helper.K03;
+				A.data[1] = ((helper.K04*z + helper.K05)*z + helper.K06)*z + helper.K07;
+				B.data[0] = (((helper.K08*z + helper.K09)*z + helper.K10)*z + helper.K11)*z + helper.K12;
+
+				A.data[2] = ((helper.L00*z + helper.L01)*z + helper.L02)*z + helper.L03;
+				A.data[3] = ((helper.L04*z + helper.L05)*z + helper.L06)*z + helper.L07;
+				B.data[1] = (((helper.L08*z + helper.L09)*z + helper.L10)*z + helper.L11)*z + helper.L12;
+
+				A.data[4] = ((helper.M00*z + helper.M01)*z + helper.M02)*z + helper.M03;
+				A.data[5] = ((helper.M04*z + helper.M05)*z + helper.M06)*z + helper.M07;
+				B.data[2] = (((helper.M08*z + helper.M09)*z + helper.M10)*z + helper.M11)*z + helper.M12;
+
+				CommonOps_DDRM.scale(-1,B);
+				DMatrixRMaj xy = new DMatrixRMaj(2,1);
+				CommonOps_DDRM.solve(A,B,xy);
+
+				DMatrixRMaj E = solutions.grow();
+				for( int i = 0; i < 9; i++ ) {
+					E.data[i] = xy.data[0]*X[i] + xy.data[1]*Y[i] + z*Z[i] + W[i];
+				}
+			}
+			return true;
+		}
+	}
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.pose;
+
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestPnPBatch extends CommonMotionNPoint {
+
+	int numPoints = 40;
+	int numSets = 100;
+
+	double observations[];
+	double points[];
+
+	private void createScene() {
+		Se3_F64 motion = new Se3_F64();
+		motion.getR().set(ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.5, -0.3, 0.2, null));
+		motion.getT().set(0.1,-0.1,0.5);
+
+		generateScene(numPoints, motion, false);
+
+		observations = new double[numPoints*2];
+		points = new double[numPoints*3];
+		for( int i = 0; i < numPoints; i++ ) {
+			Point2D_F64 o = pointPose.get(i).observation;
+			Point3D_F64 p = pointPose.get(i).location;
+			observations[i*2] = o.x; observations[i*2+1] = o.y;
+			points[i*3] = p.x; points[i*3+1] = p.y; points[i*3+2] = p.z;
+		}
+	}
+
+	/**
+	 * Randomly selects sets of unique points
+	 */
+	private int[] createSets( int setSize ) {
+		int sets[] = new int[numSets*setSize];
+		for( int i = 0; i < numSets; i++ ) {
+			for( int j = 0; j < setSize; j++ ) {
+				int index;
+				boolean unique;
+				do {
+					index = rand.nextInt(numPoints);
+					unique = true;
+					for( int k = 0; k < j; k++ )
+						unique &= sets[i*setSize+k] != index;
+				} while( !unique );
+				sets[i*setSize+j] = index;
+			}
+		}
+		return sets;
+	}
+
+	/**
+	 * The true pose should be one of the hypotheses for every set
+	 */
+	@Test
+	public void p3p() {
+		createScene();
+		int sets[] = createSets(3);
+
+		double poses[] = new double[numSets*PnPBatch.MAX_P3P*12];
+		int counts[] = new int[numSets];
+
+		PnPBatch alg = new PnPBatch();
+		int total = alg.p3p(observations, points, sets, numSets, poses, counts);
+
+		int sum = 0;
+		for( int i = 0; i < numSets; i++ ) {
+			assertTrue(counts[i] > 0 && counts[i] <= PnPBatch.MAX_P3P);
+			sum += counts[i];
+
+			double best = Double.MAX_VALUE;
+			for( int k = 0; k < counts[i]; k++ ) {
+				best = Math.min(best, error(poses, (i*PnPBatch.MAX_P3P + k)*12, motion));
+			}
+			assertEquals(0, best, 1e-5);
+		}
+		assertEquals(sum, total);
+	}
+
+	/**
+	 * Compares against calling EPnP one set at a time
+	 */
+	@Test
+	public void epnp() {
+		createScene();
+		int setSize = 6;
+		int sets[] = createSets(setSize);
+
+		double poses[] = new double[numSets*12];
+
+		PnPBatch alg = new PnPBatch();
+		alg.setEPnPIterations(2);
+		alg.epnp(observations, points, sets, setSize, numSets, poses);
+
+		PnPLepetitEPnP epnp = new PnPLepetitEPnP();
+		epnp.setNumIterations(2);
+		Se3_F64 found = new Se3_F64();
+		for( int i = 0; i < numSets; i++ ) {
+			List<Point3D_F64> world = new ArrayList<>();
+			List<Point2D_F64> obs = new ArrayList<>();
+			for( int j = 0; j < setSize; j++ ) {
+				world.add(pointPose.get(sets[i*setSize+j]).location);
+				obs.add(pointPose.get(sets[i*setSize+j]).observation);
+			}
+			epnp.process(world, obs, found);
+
+			assertEquals(0, error(poses, i*12, found), 1e-8);
+			assertEquals(0, error(poses, i*12, motion), 1e-6);
+		}
+	}
+
+	@Test
+	public void concurrent() {
+		createScene();
+		int sets3[] = createSets(3);
+		int sets6[] = createSets(6);
+
+		PnPBatch alg = new PnPBatch();
+
+		double posesA[] = new double[numSets*PnPBatch.MAX_P3P*12];
+		double posesB[] = new double[numSets*PnPBatch.MAX_P3P*12];
+		int countsA[] = new int[numSets];
+		int countsB[] = new int[numSets];
+
+		alg.p3p(observations, points, sets3, numSets, posesA, countsA);
+		alg.setConcurrent(true);
+		alg.p3p(observations, points, sets3, numSets, posesB, countsB);
+
+		assertArrayEquals(countsA, countsB);
+		assertArrayEquals(posesA, posesB, 0);
+
+		alg.setConcurrent(false);
+		alg.epnp(observations, points, sets6, 6, numSets, posesA);
+		alg.setConcurrent(true);
+		alg.epnp(observations, points, sets6, 6, numSets, posesB);
+
+		assertArrayEquals(posesA, posesB, 0);
+	}
+
+	@Test
+	public void outputTooSmall() {
+		createScene();
+		int sets[] = createSets(3);
+
+		PnPBatch alg = new PnPBatch();
+		try {
+			alg.p3p(observations, points, sets, numSets, new double[numSets*12], new int[numSets]);
+			fail("Should have thrown an exception");
+		} catch( IllegalArgumentException ignore ){}
+	}
+
+	/**
+	 * Largest difference between the flat pose and the expected pose
+	 */
+	private static double error( double poses[] , int index , Se3_F64 expected ) {
+		double error = 0;
+		for( int i = 0; i < 9; i++ ) {
+			error = Math.max(error, Math.abs(poses[index+i] - expected.getR().data[i]));
+		}
+		error = Math.max(error, Math.abs(poses[index+9 ] - expected.getT().x));
+		error = Math.max(error, Math.abs(poses[index+10] - expected.getT().y));
+		error = Math.max(error, Math.abs(poses[index+11] - expected.getT().z));
+		return error;
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.robust;
+
+import boofcv.struct.geo.AssociatedPair;
+import georegression.fitting.homography.ModelManagerHomography2D_F64;
+import georegression.struct.homography.Homography2D_F64;
+import georegression.struct.point.Point2D_F64;
+import georegression.transform.homography.HomographyPointOps_F64;
+import org.ddogleg.fitting.modelset.DistanceFromModel;
+import org.ddogleg.fitting.modelset.ModelGenerator;
+import org.ddogleg.fitting.modelset.ModelManager;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestRansacSprt {
+
+	Random rand = new Random(234);
+
+	Homography2D_F64 truth = new Homography2D_F64(1.2,0.05,20,-0.03,0.95,-15,0.0001,0.0002,1);
+
+	List<AssociatedPair> points = new ArrayList<>();
+	List<Integer> inliers = new ArrayList<>();
+	double quality[];
+
+	RobustModelFactory<Homography2D_F64,AssociatedPair> factory =
+			new RobustModelFactory<Homography2D_F64,AssociatedPair>() {
+		@Override
+		public ModelManager<Homography2D_F64> createManager() {
+			return new ModelManagerHomography2D_F64();
+		}
+
+		@Override
+		public ModelGenerator<Homography2D_F64, AssociatedPair> createGenerator() {
+			return new GenerateHomographyLinear(true);
+		}
+
+		@Override
+		public DistanceFromModel<Homography2D_F64, AssociatedPair> createDistance() {
+			return new DistanceHomographySq();
+		}
+	};
+
+	/**
+	 * Creates a data set where 40% of the points are inliers.  Inliers have a better quality on average
+	 */
+	private void createData( int N ) {
+		points.clear();
+		inliers.clear();
+		quality = new double[N];
+
+		for( int i = 0; i < N; i++ ) {
+			AssociatedPair p = new AssociatedPair();
+			p.p1.set(rand.nextDouble()*600, rand.nextDouble()*400);
+
+			if( rand.nextDouble() < 0.4 ) {
+				HomographyPointOps_F64.transform(truth, p.p1, p.p2);
+				inliers.add(i);
+				quality[i] = rand.nextDouble();
+			} else {
+				p.p2.set(rand.nextDouble()*600, rand.nextDouble()*400);
+				quality[i] = 0.5 + rand.nextDouble();
+			}
+			points.add(p);
+		}
+	}
+
+	@Test
+	public void allCombinations() {
+		createData(300);
+
+		for( int i = 0; i < 8; i++ ) {
+			RansacSprt<Homography2D_F64,AssociatedPair> alg = createAlg();
+			alg.setConcurrent((i & 1) != 0);
+			alg.setSprt((i & 2) != 0);
+			alg.setProsac((i & 4) != 0);
+			if( alg.prosac )
+				alg.setQuality(quality);
+
+			assertTrue(alg.process(points));
+			checkSolution(alg);
+		}
+	}
+
+	/**
+	 * The number of threads should not change the results
+	 */
+	@Test
+	public void concurrent_sameResults() {
+		createData(300);
+
+		RansacSprt<Homography2D_F64,AssociatedPair> sequential = createAlg();
+		sequential.setSprt(true);
+		RansacSprt<Homography2D_F64,AssociatedPair> concurrent = createAlg();
+		concurrent.setSprt(true);
+		concurrent.setConcurrent(true);
+
+		for( int trial = 0; trial < 3; trial++ ) {
+			assertTrue(sequential.process(points));
+			assertTrue(concurrent.process(points));
+
+			Homography2D_F64 a = sequential.getModelParameters();
+			Homography2D_F64 b = concurrent.getModelParameters();
+			assertEquals(a.a11, b.a11, 0);
+			assertEquals(a.a23, b.a23, 0);
+			assertEquals(a.a32, b.a32, 0);
+			assertEquals(sequential.getMatchSet().size(), concurrent.getMatchSet().size());
+		}
+	}
+
+	/**
+	 * With PROSAC the input should be sorted by quality if no quality is provided
+	 */
+	@Test
+	public void prosac_sortedInput() {
+		createData(300);
+
+		// sort so that the inliers come first
+		List<AssociatedPair> sorted = new ArrayList<>();
+		for( int i : inliers ) {
+			sorted.add(points.get(i));
+		}
+		for( int i = 0; i < points.size(); i++ ) {
+			if( !inliers.contains(i) )
+				sorted.add(points.get(i));
+		}
+
+		RansacSprt<Homography2D_F64,AssociatedPair> alg = createAlg();
+		alg.setProsac(true);
+		assertTrue(alg.process(sorted));
+
+		// the first samples are drawn from inliers only so it should stop almost immediately
+		assertEquals(inliers.size(), alg.getMatchSet().size());
+		assertEquals(0, alg.getInputIndex(0));
+	}
+
+	@Test
+	public void tooFewPoints() {
+		createData(3);
+
+		RansacSprt<Homography2D_F64,AssociatedPair> alg = createAlg();
+		assertFalse(alg.process(points));
+		assertEquals(0, alg.getMatchSet().size());
+	}
+
+	private RansacSprt<Homography2D_F64,AssociatedPair> createAlg() {
+		return new RansacSprt<>(0xBEEF, factory, 2000, 1.0);
+	}
+
+	private void checkSolution( RansacSprt<Homography2D_F64,AssociatedPair> alg ) {
+		assertEquals(inliers.size(), alg.getMatchSet().size());
+		for( int i = 0; i < inliers.size(); i++ ) {
+			assertEquals((int)inliers.get(i), alg.getInputIndex(i));
+			assertSame(points.get(inliers.get(i)), alg.getMatchSet().get(i));
+		}
+
+		// check the found model by transforming a point
+		Point2D_F64 expected = new Point2D_F64();
+		Point2D_F64 found = new Point2D_F64();
+		HomographyPointOps_F64.transform(truth, new Point2D_F64(100,200), expected);
+		HomographyPointOps_F64.transform(alg.getModelParameters(), new Point2D_F64(100,200), found);
+		assertEquals(0, expected.distance(found), 1e-4);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.geo.triangulate;
+
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestTriangulateBatch extends CommonTriangulationChecks {
+
+	int numPoints = 200;
+	double points[];
+
+	/**
+	 * Random points in front of the cameras and their observations in every view
+	 */
+	private double[] createObservations( List<Se3_F64> views ) {
+		points = new double[numPoints*3];
+		double observations[] = new double[numPoints*views.size()*2];
+
+		Point3D_F64 X = new Point3D_F64();
+		Point3D_F64 cameraPoint = new Point3D_F64();
+
+		for( int i = 0; i < numPoints; i++ ) {
+			X.set(rand.nextGaussian(), rand.nextGaussian(), 3+rand.nextDouble());
+			points[i*3] = X.x; points[i*3+1] = X.y; points[i*3+2] = X.z;
+
+			for( int j = 0; j < views.size(); j++ ) {
+				SePointOps_F64.transform(views.get(j), X, cameraPoint);
+				observations[(i*views.size()+j)*2  ] = cameraPoint.x/cameraPoint.z;
+				observations[(i*views.size()+j)*2+1] = cameraPoint.y/cameraPoint.z;
+			}
+		}
+		return observations;
+	}
+
+	/**
+	 * Compare against the single point implementation
+	 */
+	@Test
+	public void triangulate_two() {
+		createScene();
+		Se3_F64 fromAtoB = motionWorldToCamera.get(1);
+		double observations[] = createObservations(motionWorldToCamera.subList(0,2));
+
+		// add noise so that the two rays don't intersect
+		for( int i = 0; i < observations.length; i++ ) {
+			observations[i] += rand.nextGaussian()*0.002;
+		}
+
+		double obsA[] = new double[numPoints*2];
+		double obsB[] = new double[numPoints*2];
+		for( int i = 0; i < numPoints; i++ ) {
+			System.arraycopy(observations,i*4,obsA,i*2,2);
+			System.arraycopy(observations,i*4+2,obsB,i*2,2);
+		}
+
+		TriangulateBatch alg = new TriangulateBatch();
+		double found[] = new double[numPoints*3];
+		alg.triangulate(obsA,obsB,numPoints,fromAtoB,found);
+
+		TriangulateGeometric expected = new TriangulateGeometric();
+		Point3D_F64 p = new Point3D_F64();
+		for( int i = 0; i < numPoints; i++ ) {
+			expected.triangulate(new Point2D_F64(obsA[i*2],obsA[i*2+1]),
+					new Point2D_F64(obsB[i*2],obsB[i*2+1]),fromAtoB,p);
+
+			assertEquals(p.x,found[i*3  ],1e-8);
+			assertEquals(p.y,found[i*3+1],1e-8);
+			assertEquals(p.z,found[i*3+2],1e-8);
+		}
+	}
+
+	@Test
+	public void triangulate_N() {
+		createScene();
+		double observations[] = createObservations(motionWorldToCamera);
+
+		TriangulateBatch alg = new TriangulateBatch();
+		double found[] = new double[numPoints*3];
+		alg.triangulate(observations,numPoints,motionWorldToCamera,found);
+
+		for( int i = 0; i < found.length; i++ ) {
+			assertEquals(points[i],found[i],1e-8);
+		}
+	}
+
+	/**
+	 * Results should be identical when run concurrently
+	 */
+	@Test
+	public void concurrent() {
+		createScene();
+		numPoints = 2000;
+		double observations[] = createObservations(motionWorldToCamera.subList(0,3));
+
+		TriangulateBatch alg = new TriangulateBatch();
+		double expected[] = new double[numPoints*3];
+		alg.triangulate(observations,numPoints,motionWorldToCamera.subList(0,3),expected);
+
+		alg.setConcurrent(true);
+		double found[] = new double[numPoints*3];
+		alg.triangulate(observations,numPoints,motionWorldToCamera.subList(0,3),found);
+
+		for( int i = 0; i < found.length; i++ ) {
+			assertEquals(expected[i],found[i],0);
+		}
+	}
+
+	/**
+	 * No translation between the views so the rays are parallel
+	 */
+	@Test
+	public void parallelRays() {
+		double obs[] = new double[]{0.1,0.2};
+
+		TriangulateBatch alg = new TriangulateBatch();
+		double found[] = new double[3];
+		alg.triangulate(obs,obs,1,new Se3_F64(),found);
+
+		for( int i = 0; i < 3; i++ ) {
+			assertTrue(Double.isNaN(found[i]));
+		}
+	}
+}
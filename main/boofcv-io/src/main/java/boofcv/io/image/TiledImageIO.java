@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.io.image;
+
+import boofcv.struct.image.ImageBase;
+import boofcv.struct.image.ImageDataType;
+import boofcv.struct.image.ImageType;
+import boofcv.struct.image.TiledImage;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Saves and loads a {@link TiledImage} as a directory of tiles.  Each tile is saved to its own file, so a
+ * mosaic which is far too large to fit in memory or in a single image file can still be saved and loaded a
+ * piece at a time.  Tiles which have never been touched are not saved.  The directory contains an index file
+ * with the tile size and image type followed by one line for each tile:
+ * </p>
+ * <pre>
+ * # BoofCV Tiled Image
+ * tile_size 256
+ * image_type GRAY U8 1
+ * col row file_name
+ * </pre>
+ *
+ * <p>
+ * {@link #save} writes the raw pixel values, see {@link TiledImage#saveTile}, so {@link #load} reads back exactly
+ * the same image.  {@link #export} writes each tile in an image format instead so that it can be viewed by other
+ * applications.  Exported tiles can't be loaded.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class TiledImageIO {
+	/**
+	 * Name of the index file inside the directory
+	 */
+	public static final String INDEX_FILE = "tiles.txt";
+
+	/**
+	 * Saves the raw pixel values of each tile in the directory.  Evicted tiles are loaded one at a time.
+	 *
+	 * @param tiled The image being saved
+	 * @param directory Output directory.  Created if it doesn't exist
+	 */
+	public static <T extends ImageBase<T>> void save( TiledImage<T> tiled , File directory ) throws IOException {
+		writeTiles(tiled, directory, null);
+	}
+
+	/**
+	 * Saves each tile as an image which can be viewed by other applications.  Image formats can change pixel
+	 * values and don't support every image type, so the tiles can't be loaded with {@link #load}.  Evicted tiles
+	 * are loaded one at a time.
+	 *
+	 * @param tiled The image being saved
+	 * @param directory Output directory.  Created if it doesn't exist
+	 * @param extension Image file type, e.g. "png"
+	 */
+	public static <T extends ImageBase<T>> void export( TiledImage<T> tiled , File directory , String extension )
+			throws IOException
+	{
+		writeTiles(tiled, directory, extension);
+	}
+
+	/**
+	 * Writes the index and tiles
+	 *
+	 * @param extension Image file type or null to save the raw pixel values
+	 */
+	private static <T extends ImageBase<T>> void writeTiles( TiledImage<T> tiled , File directory , String extension )
+			throws IOException
+	{
+		if( !directory.exists() && !directory.mkdirs() )
+			throw new IOException("Can't create directory "+directory.getPath());
+
+		List<TiledImage.Tile<T>> tiles = new ArrayList<>();
+		tiled.getTiles(tiles);
+
+		PrintStream out = new PrintStream(new FileOutputStream(new File(directory,INDEX_FILE)));
+		try {
+			out.println("# BoofCV Tiled Image");
+			out.println("tile_size "+tiled.getTileSize());
+			if( extension == null ) {
+				ImageType<T> type = tiled.getImageType();
+				out.println("image_type "+type.getFamily()+" "+type.getDataType()+" "+type.getNumBands());
+			}
+			for( TiledImage.Tile<T> tile : tiles ) {
+				String name = String.format("tile_%d_%d.%s",tile.getCol(),tile.getRow(),
+						extension == null ? "raw" : extension);
+				File file = new File(directory,name);
+
+				// allow the previous tile to be evicted
+				tiled.markFrame();
+				if( extension == null ) {
+					OutputStream tileOut = new BufferedOutputStream(new FileOutputStream(file));
+					try {
+						tiled.saveTile(tile.getCol(), tile.getRow(), tileOut);
+					} finally {
+						tileOut.close();
+					}
+				} else {
+					T image = tiled.getTileImage(tile.getCol(),tile.getRow());
+					UtilImageIO.saveImage(image, file.getPath());
+				}
+				out.println(tile.getCol()+" "+tile.getRow()+" "+name);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Loads a tiled image which was saved using {@link #save}.
+	 *
+	 * @param directory Directory the tiles were saved to
+	 * @param imageType Type of image in each tile.  Must be the same as the saved image
+	 * @return The tiled image
+	 */
+	public static <T extends ImageBase<T>> TiledImage<T> load( File directory , ImageType<T> imageType )
+			throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(new File(directory,INDEX_FILE)));
+		try {
+			TiledImage<T> tiled = null;
+			int tileSize = -1;
+
+			String line;
+			while( (line = reader.readLine()) != null ) {
+				if( line.isEmpty() || line.charAt(0) == '#' )
+					continue;
+				String[] words = line.split(" ");
+				if( tileSize < 0 ) {
+					if( !words[0].equals("tile_size") )
+						throw new IOException("Expected tile_size");
+					tileSize = Integer.parseInt(words[1]);
+					continue;
+				}
+				if( tiled == null ) {
+					if( !words[0].equals("image_type") )
+						throw new IOException("Expected image_type.  Exported tiles can't be loaded");
+					if( words.length != 4 ||
+							ImageType.Family.valueOf(words[1]) != imageType.getFamily() ||
+							ImageDataType.valueOf(words[2]) != imageType.getDataType() ||
+							Integer.parseInt(words[3]) != imageType.getNumBands() )
+						throw new IOException("Saved image type doesn't match "+imageType+": "+line);
+					tiled = new TiledImage<>(imageType, tileSize);
+					continue;
+				}
+				if( words.length != 3 )
+					throw new IOException("Unexpected line: "+line);
+
+				int col = Integer.parseInt(words[0]);
+				int row = Integer.parseInt(words[1]);
+
+				tiled.markFrame();
+				InputStream tileIn = new BufferedInputStream(new FileInputStream(new File(directory,words[2])));
+				try {
+					tiled.loadTile(col, row, tileIn);
+				} finally {
+					tileIn.close();
+				}
+			}
+			if( tiled == null )
+				throw new IOException("Incomplete index file");
+			return tiled;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.io.points;
+
+import boofcv.struct.PackedPointCloud_F32;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Writes point clouds to a binary PLY or PCD file as they are generated.  Points are appended to the file through
+ * a small buffer, so a long sequence of clouds can be logged to a single file without keeping them in memory.
+ * Both formats need the number of points in the header.  A header with a fixed width count is written when
+ * the file is opened and overwritten with the final count when the writer is closed.  The file isn't valid until
+ * {@link #close()} has been called.
+ * </p>
+ *
+ * <p>
+ * Coordinates are saved as 32-bit floats in little endian byte order.  In PLY files color is saved as
+ * three uchar properties: red, green, blue.  In PCD files it's saved in the packed rgb field used by PCL.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class PointCloudStreamWriter implements Closeable {
+
+	/**
+	 * Supported file formats
+	 */
+	public enum Format {
+		PLY,
+		PCD
+	}
+
+	// number of characters used to write the number of points in the header
+	private static final int COUNT_WIDTH = 10;
+
+	private Format format;
+	private boolean color;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+
+	// number of points written so far
+	private long totalPoints = 0;
+
+	/**
+	 * Creates the file and writes a place holder header
+	 *
+	 * @param file Output file.  Overwritten if it already exists
+	 * @param format File format
+	 * @param color If true then the color of each point is saved
+	 */
+	public PointCloudStreamWriter( File file , Format format , boolean color ) throws IOException {
+		this.format = format;
+		this.color = color;
+
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		channel = this.file.getChannel();
+
+		buffer = ByteBuffer.allocateDirect(1 << 16);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+		writeHeader();
+	}
+
+	/**
+	 * Appends all the points in the cloud.  If color is being saved the cloud must have color.
+	 */
+	public void write( PackedPointCloud_F32 cloud ) throws IOException {
+		if( color && !cloud.hasColor() && cloud.size() > 0 )
+			throw new IllegalArgumentException("Cloud has no color");
+		write(cloud.xyz.data, color ? cloud.rgb.data : null, cloud.size());
+	}
+
+	/**
+	 * Appends points to the file.
+	 *
+	 * @param xyz Interleaved location of each point.
+	 * @param rgb Color of each point 0xRRGGBB.  Ignored if color is not being saved.
+	 * @param count Number of points
+	 */
+	public void write( float[] xyz , int[] rgb , int count ) throws IOException {
+		if( channel == null )
+			throw new IllegalArgumentException("Writer has been closed");
+		if( color && rgb == null )
+			throw new IllegalArgumentException("Color is being saved.  Must pass in rgb");
+
+		for (int i = 0; i < count; i++) {
+			if( buffer.remaining() < 16 )
+				flush();
+
+			buffer.putFloat(xyz[i*3]);
+			buffer.putFloat(xyz[i*3+1]);
+			buffer.putFloat(xyz[i*3+2]);
+			if( color ) {
+				int c = rgb[i];
+				if( format == Format.PLY ) {
+					buffer.put((byte)(c >> 16));
+					buffer.put((byte)(c >> 8));
+					buffer.put((byte)c);
+				} else {
+					buffer.putInt(c & 0xFFFFFF);
+				}
+			}
+		}
+		totalPoints += count;
+	}
+
+	/**
+	 * Writes the remaining points and the final header then closes the file
+	 */
+	@Override
+	public void close() throws IOException {
+		if( channel == null )
+			return;
+		try {
+			flush();
+			channel.position(0);
+			writeHeader();
+			flush();
+		} finally {
+			channel.close();
+			file.close();
+			channel = null;
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while( buffer.hasRemaining() )
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the header with the current number of points.  The header's length doesn't depend on the count
+	 */
+	private void writeHeader() throws IOException {
+		if( totalPoints > Integer.MAX_VALUE )
+			throw new IOException("Too many points for the header");
+		String count = String.format("%"+COUNT_WIDTH+"d", totalPoints);
+
+		StringBuilder header = new StringBuilder();
+		if( format == Format.PLY ) {
+			header.append("ply\n");
+			header.append("format binary_little_endian 1.0\n");
+			header.append("comment Created by BoofCV\n");
+			header.append("element vertex ").append(count).append('\n');
+			header.append("property float x\n");
+			header.append("property float y\n");
+			header.append("property float z\n");
+			if( color ) {
+				header.append("property uchar red\n");
+				header.append("property uchar green\n");
+				header.append("property uchar blue\n");
+			}
+			header.append("end_header\n");
+		} else {
+			header.append("# .PCD v0.7 - Point Cloud Data file format\n");
+			header.append("VERSION 0.7\n");
+			if( color ) {
+				header.append("FIELDS x y z rgb\n");
+				header.append("SIZE 4 4 4 4\n");
+				header.append("TYPE F F F F\n");
+				header.append("COUNT 1 1 1 1\n");
+			} else {
+				header.append("FIELDS x y z\n");
+				header.append("SIZE 4 4 4\n");
+				header.append("TYPE F F F\n");
+				header.append("COUNT 1 1 1\n");
+			}
+			header.append("WIDTH ").append(count).append('\n');
+			header.append("HEIGHT 1\n");
+			header.append("VIEWPOINT 0 0 0 1 0 0 0\n");
+			header.append("POINTS ").append(count).append('\n');
+			header.append("DATA binary\n");
+		}
+
+		buffer.put(header.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * Number of points which have been written
+	 */
+	public long getTotalPoints() {
+		return totalPoints;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public boolean isColor() {
+		return color;
+	}
+}
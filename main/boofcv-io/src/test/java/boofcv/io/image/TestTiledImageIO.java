@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.io.image;
+
+import boofcv.alg.misc.GImageMiscOps;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageBase;
+import boofcv.struct.image.ImageType;
+import boofcv.struct.image.TiledImage;
+import boofcv.testing.BoofTesting;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestTiledImageIO {
+	Random rand = new Random(234);
+
+	int[][] coordinates = new int[][]{{0,0},{-1,3},{5,-2},{2,2}};
+
+	/**
+	 * Saved and loaded images should be identical
+	 */
+	@Test
+	public void saveLoad() throws IOException {
+		saveLoad(ImageType.single(GrayU8.class), 255, ImageType.single(GrayF32.class));
+		saveLoad(ImageType.single(GrayF32.class), 1000, ImageType.single(GrayU8.class));
+		saveLoad(ImageType.pl(3, GrayF32.class), 1000, ImageType.single(GrayF32.class));
+	}
+
+	/**
+	 * @param wrongType Image type which doesn't match the saved image
+	 */
+	private <T extends ImageBase<T>> void saveLoad( ImageType<T> type , double maxValue , ImageType<?> wrongType )
+			throws IOException
+	{
+		TiledImage<T> tiled = createTiled(type, maxValue);
+
+		File directory = Files.createTempDirectory("tiled").toFile();
+		TiledImageIO.save(tiled, directory);
+
+		TiledImage<T> found = TiledImageIO.load(directory, type);
+		assertEquals(20, found.getTileSize());
+		assertEquals(coordinates.length, found.getNumTiles());
+		for( int[] c : coordinates ) {
+			BoofTesting.assertEquals(tiled.getTileImage(c[0],c[1]), found.getTileImage(c[0],c[1]), 0);
+		}
+		assertNull(found.getTileImage(1,1));
+
+		// the type has to match
+		try {
+			TiledImageIO.load(directory, wrongType);
+			fail("Should have thrown an exception");
+		} catch( IOException ignore ) {}
+
+		delete(directory);
+	}
+
+	/**
+	 * Exported tiles are image files which can't be loaded
+	 */
+	@Test
+	public void export() throws IOException {
+		TiledImage<GrayU8> tiled = createTiled(ImageType.single(GrayU8.class), 255);
+
+		File directory = Files.createTempDirectory("tiled").toFile();
+		TiledImageIO.export(tiled, directory, "png");
+
+		for( int[] c : coordinates ) {
+			File file = new File(directory, String.format("tile_%d_%d.png",c[0],c[1]));
+			GrayU8 image = UtilImageIO.loadImage(file.getPath(), GrayU8.class);
+			assertNotNull(image);
+			assertEquals(20, image.width);
+		}
+
+		try {
+			TiledImageIO.load(directory, ImageType.single(GrayU8.class));
+			fail("Should have thrown an exception");
+		} catch( IOException ignore ) {}
+
+		delete(directory);
+	}
+
+	private <T extends ImageBase<T>> TiledImage<T> createTiled( ImageType<T> type , double maxValue ) {
+		TiledImage<T> tiled = new TiledImage<>(type, 20);
+		for( int[] c : coordinates ) {
+			GImageMiscOps.fillUniform(tiled.getTile(c[0],c[1]).getImage(), rand, 0, maxValue);
+		}
+		return tiled;
+	}
+
+	private static void delete( File directory ) {
+		for( File f : directory.listFiles() ) {
+			f.delete();
+		}
+		directory.delete();
+	}
+}
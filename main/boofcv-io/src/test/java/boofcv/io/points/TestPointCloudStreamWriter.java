@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.io.points;
+
+import boofcv.struct.PackedPointCloud_F32;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestPointCloudStreamWriter {
+	Random rand = new Random(234);
+
+	/**
+	 * Write several clouds and see if the file contains all of them with the correct header
+	 */
+	@Test
+	public void ply_color() throws IOException {
+		PackedPointCloud_F32 cloudA = createCloud(20, true);
+		PackedPointCloud_F32 cloudB = createCloud(5000, true);
+
+		File tmp = File.createTempFile("ply_color",".ply");
+		PointCloudStreamWriter writer = new PointCloudStreamWriter(tmp, PointCloudStreamWriter.Format.PLY, true);
+		writer.write(cloudA);
+		writer.write(cloudB);
+		writer.close();
+		assertEquals(5020, writer.getTotalPoints());
+
+		byte[] data = Files.readAllBytes(tmp.toPath());
+		String header = extractHeader(data, "end_header\n");
+		assertTrue(header.startsWith("ply\nformat binary_little_endian 1.0\n"));
+		assertEquals(5020, parseCount(header, "element vertex"));
+		assertTrue(header.contains("property uchar red\n"));
+
+		ByteBuffer buffer = ByteBuffer.wrap(data, header.length(), data.length-header.length());
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(5020*15, buffer.remaining());
+		checkPoints(buffer, cloudA, PointCloudStreamWriter.Format.PLY);
+		checkPoints(buffer, cloudB, PointCloudStreamWriter.Format.PLY);
+
+		tmp.delete();
+	}
+
+	@Test
+	public void pcd() throws IOException {
+		checkPcd(true);
+		checkPcd(false);
+	}
+
+	private void checkPcd( boolean color ) throws IOException {
+		PackedPointCloud_F32 cloud = createCloud(300, color);
+
+		File tmp = File.createTempFile("pcd",".pcd");
+		PointCloudStreamWriter writer = new PointCloudStreamWriter(tmp, PointCloudStreamWriter.Format.PCD, color);
+		writer.write(cloud);
+		writer.close();
+
+		byte[] data = Files.readAllBytes(tmp.toPath());
+		String header = extractHeader(data, "DATA binary\n");
+		assertEquals(300, parseCount(header, "WIDTH"));
+		assertEquals(300, parseCount(header, "POINTS"));
+		assertEquals(color, header.contains("FIELDS x y z rgb\n"));
+
+		ByteBuffer buffer = ByteBuffer.wrap(data, header.length(), data.length-header.length());
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(300*(color ? 16 : 12), buffer.remaining());
+		checkPoints(buffer, cloud, PointCloudStreamWriter.Format.PCD);
+
+		tmp.delete();
+	}
+
+	/**
+	 * Closing without writing any points should produce a valid empty file
+	 */
+	@Test
+	public void empty() throws IOException {
+		File tmp = File.createTempFile("empty",".ply");
+		new PointCloudStreamWriter(tmp, PointCloudStreamWriter.Format.PLY, false).close();
+
+		byte[] data = Files.readAllBytes(tmp.toPath());
+		String header = extractHeader(data, "end_header\n");
+		assertEquals(0, parseCount(header, "element vertex"));
+		assertEquals(header.length(), data.length);
+
+		tmp.delete();
+	}
+
+	private void checkPoints( ByteBuffer buffer , PackedPointCloud_F32 cloud , PointCloudStreamWriter.Format format ) {
+		for (int i = 0; i < cloud.size(); i++) {
+			assertEquals(cloud.getX(i), buffer.getFloat(), 0f);
+			assertEquals(cloud.getY(i), buffer.getFloat(), 0f);
+			assertEquals(cloud.getZ(i), buffer.getFloat(), 0f);
+			if( cloud.hasColor() ) {
+				int rgb;
+				if( format == PointCloudStreamWriter.Format.PLY ) {
+					rgb = (buffer.get() & 0xFF) << 16;
+					rgb |= (buffer.get() & 0xFF) << 8;
+					rgb |= buffer.get() & 0xFF;
+				} else {
+					rgb = buffer.getInt();
+				}
+				assertEquals(cloud.getRgb(i), rgb);
+			}
+		}
+	}
+
+	private String extractHeader( byte[] data , String lastLine ) {
+		String text = new String(data, StandardCharsets.US_ASCII);
+		int end = text.indexOf(lastLine);
+		assertTrue(end >= 0);
+		return text.substring(0, end+lastLine.length());
+	}
+
+	private int parseCount( String header , String keyword ) {
+		for( String line : header.split("\n") ) {
+			if( line.startsWith(keyword+" ") )
+				return Integer.parseInt(line.substring(keyword.length()).trim());
+		}
+		throw new RuntimeException("Couldn't find "+keyword);
+	}
+
+	private PackedPointCloud_F32 createCloud( int size , boolean color ) {
+		PackedPointCloud_F32 cloud = new PackedPointCloud_F32();
+		for (int i = 0; i < size; i++) {
+			float x = rand.nextFloat()*10-5, y = rand.nextFloat()*10-5, z = rand.nextFloat()*10;
+			if( color )
+				cloud.add(x, y, z, rand.nextInt(0xFFFFFF+1));
+			else
+				cloud.add(x, y, z);
+		}
+		return cloud;
+	}
+}
@@ -197,6 +197,13 @@ public class GenerateImplBilinearPixel_IL extends CodeGeneratorBase {
 				"\t}\n" +
 				"\n" +
 				"\t@Override\n" +
+				"\tpublic "+className+" copy() {\n" +
+				"\t\t"+className+" out = new "+className+"(temp0.length);\n" +
+				"\t\tout.setBorder(border);\n" +
+				"\t\treturn out;\n" +
+				"\t}\n" +
+				"\n" +
+				"\t@Override\n" +
 				"\tpublic ImageType<"+imageName+"> getImageType() {\n" +
 				"\t\treturn orig.getImageType();\n" +
 				"\t}\n\n");
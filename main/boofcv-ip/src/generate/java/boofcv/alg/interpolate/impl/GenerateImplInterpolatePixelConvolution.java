@@ -248,6 +248,12 @@ public class GenerateImplInterpolatePixelConvolution extends CodeGeneratorBase {
 				"\t}" +
 				"\n" +
 				"\t@Override\n" +
+				"\tpublic "+className+" copy() {\n" +
+				"\t\t"+className+" out = new "+className+"(kernel,min,max);\n" +
+				"\t\tout.border = border;\n" +
+				"\t\treturn out;\n" +
+				"\t}\n" +
+				"\t@Override\n" +
 				"\tpublic ImageType<"+inputType.getSingleBandName()+"> getImageType() {\n" +
 				"\t\treturn ImageType.single("+inputType.getSingleBandName()+".class);\n" +
 				"\t}\n");
@@ -180,6 +180,12 @@ public class GenerateImplPolynomialPixel extends CodeGeneratorBase {
 						"\t\treturn ret;\n" +
 						"\t}\n" +
 						"\t@Override\n" +
+						"\tpublic "+className+" copy() {\n" +
+						"\t\t"+className+" out = new "+className+"(M,min,max);\n" +
+						"\t\tout.setBorder(border);\n" +
+						"\t\treturn out;\n" +
+						"\t}\n" +
+						"\t@Override\n" +
 						"\tpublic ImageType<"+image.getSingleBandName()+"> getImageType() {\n" +
 						"\t\treturn ImageType.single("+image.getSingleBandName()+".class);\n" +
 						"\t}\n\n"
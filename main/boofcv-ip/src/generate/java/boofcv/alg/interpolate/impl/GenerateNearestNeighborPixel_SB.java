@@ -123,6 +123,13 @@ public class GenerateNearestNeighborPixel_SB extends CodeGeneratorBase {
 				"\t}\n" +
 				"\n" +
 				"\t@Override\n" +
+				"\tpublic "+className+" copy() {\n" +
+				"\t\t"+className+" out = new "+className+"();\n" +
+				"\t\tout.setBorder(border);\n" +
+				"\t\treturn out;\n" +
+				"\t}\n" +
+				"\n" +
+				"\t@Override\n" +
 				"\tpublic ImageType<"+image.getSingleBandName()+"> getImageType() {\n" +
 				"\t\treturn ImageType.single("+image.getSingleBandName()+".class);\n" +
 				"\t}\n\n");
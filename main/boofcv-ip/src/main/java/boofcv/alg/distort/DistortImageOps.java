@@ -114,7 +114,7 @@ public class DistortImageOps {
 		Class<Output> outputType = (Class<Output>)input.getClass();
 		InterpolatePixelS<Input> interp = FactoryInterpolation.createPixelS(0, 255, interpType, borderType, inputType);
 
-		ImageDistort<Input,Output> distorter = FactoryDistort.distortSB(false, interp, outputType);
+		ImageDistort<Input,Output> distorter = FactoryDistort.distortSB(false, true, interp, outputType);
 		distorter.setRenderAll(!skip);
 		distorter.setModel(transform);
 		distorter.apply(input,output);
@@ -137,7 +137,7 @@ public class DistortImageOps {
 					   InterpolatePixelS<Input> interp)
 	{
 		Class<Output> inputType = (Class<Output>)input.getClass();
-		ImageDistort<Input,Output> distorter = FactoryDistort.distortSB(false, interp, inputType);
+		ImageDistort<Input,Output> distorter = FactoryDistort.distortSB(false, true, interp, inputType);
 		distorter.setRenderAll(renderAll);
 		distorter.setModel(transform);
 		distorter.apply(input,output);
@@ -164,7 +164,7 @@ public class DistortImageOps {
 		Class<Output> outputBandType = output.getBandType();
 		InterpolatePixelS<Input> interp = FactoryInterpolation.createPixelS(0, 255, interpType, borderType, inputBandType);
 
-		ImageDistort<Input,Output> distorter = FactoryDistort.distortSB(false, interp, outputBandType);
+		ImageDistort<Input,Output> distorter = FactoryDistort.distortSB(false, true, interp, outputBandType);
 		distorter.setModel(transform);
 
 		distortPL(input,output,distorter);
@@ -191,7 +191,7 @@ public class DistortImageOps {
 	{
 		InterpolatePixelS<Input> interp = FactoryInterpolation.createPixelS(0, 255, interpType,borderType, inputType);
 		ImageDistort<Input,Output> distorter =
-				FactoryDistort.distortSB(true, interp, outputType);
+				FactoryDistort.distortSB(true, true, interp, outputType);
 		distorter.setModel(new PointToPixelTransform_F32(transform));
 
 		return distorter;
@@ -19,6 +19,8 @@
 package boofcv.alg.distort;
 
 import boofcv.alg.interpolate.InterpolatePixel;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.struct.distort.PixelTransform2_F32;
 import boofcv.struct.image.ImageBase;
 
@@ -26,6 +28,10 @@ import boofcv.struct.image.ImageBase;
  * Most basic implementation of {@link ImageDistort}. Computes the distortion from the dst to src image
  * for each pixel.  The dst pixel value is then set to the interpolated value of the src image.
  *
+ * If concurrent, the rows in the destination image are split across threads.  Each thread gets its own copy of
+ * the interpolation and the transform.  Transforms which can't be copied, see
+ * {@link PixelTransform2_F32#copyConcurrent()}, are processed in a single thread.  The output is identical either way.
+ *
  * @author Peter Abeles
  */
 public abstract class ImageDistortBasic
@@ -42,9 +48,13 @@ public abstract class ImageDistortBasic
 
 	// should it render all pixels in the destination, even ones outside the input image
 	protected boolean renderAll = true;
+	// should rows be rendered in multiple threads
+	protected boolean concurrent = false;
 	protected Input srcImg;
 	protected Output dstImg;
 
+	private RowsTask rowsTask = new RowsTask();
+
 	/**
 	 * Specifies configuration parameters
 	 *
@@ -65,10 +75,7 @@ public abstract class ImageDistortBasic
 
 		x0 = 0;y0 = 0;x1 = dstImg.width;y1 = dstImg.height;
 
-		if(renderAll)
-			applyAll();
-		else
-			applyOnlyInside();
+		render();
 	}
 
 	@Override
@@ -77,10 +84,7 @@ public abstract class ImageDistortBasic
 
 		x0 = dstX0;y0 = dstY0;x1 = dstX1;y1 = dstY1;
 
-		if(renderAll)
-			applyAll();
-		else
-			applyOnlyInside();
+		render();
 	}
 
 	protected void init(Input srcImg, Output dstImg) {
@@ -89,9 +93,62 @@ public abstract class ImageDistortBasic
 		interp.setImage(srcImg);
 	}
 
-	protected abstract void applyAll();
+	private void render() {
+		PixelTransform2_F32 first = null;
+		if( concurrent && BoofConcurrency.isConcurrent() )
+			first = dstToSrc.copyConcurrent();
+
+		if( first != null ) {
+			rowsTask.first = first;
+			BoofConcurrency.loopBlocks(y0, y1, rowsTask);
+			rowsTask.first = null;
+		} else {
+			render(interp, dstToSrc, y0, y1);
+		}
+	}
 
-	protected abstract void applyOnlyInside();
+	private void render( Interpolate interp , PixelTransform2_F32 dstToSrc , int y0 , int y1 ) {
+		if( renderAll )
+			applyAll(interp, dstToSrc, y0, y1);
+		else
+			applyOnlyInside(interp, dstToSrc, y0, y1);
+	}
+
+	/**
+	 * Renders a block of rows using its own interpolation and transform
+	 */
+	private class RowsTask implements IntRangeTask {
+		// transform for the block which starts at y0.  Created when checking if the transform can be copied
+		PixelTransform2_F32 first;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			Interpolate interp = (Interpolate)ImageDistortBasic.this.interp.copy();
+			interp.setImage(srcImg);
+			PixelTransform2_F32 dstToSrc = minInclusive == y0 ? first : ImageDistortBasic.this.dstToSrc.copyConcurrent();
+			render(interp, dstToSrc, minInclusive, maxExclusive);
+		}
+	}
+
+	/**
+	 * Renders every pixel in the rows, even ones outside the source image.
+	 *
+	 * @param interp Interpolation which is used by this thread
+	 * @param dstToSrc Transform which is used by this thread
+	 * @param y0 First row, inclusive
+	 * @param y1 Last row, exclusive
+	 */
+	protected abstract void applyAll( Interpolate interp , PixelTransform2_F32 dstToSrc , int y0 , int y1 );
+
+	/**
+	 * Renders pixels in the rows which are inside the source image.
+	 *
+	 * @param interp Interpolation which is used by this thread
+	 * @param dstToSrc Transform which is used by this thread
+	 * @param y0 First row, inclusive
+	 * @param y1 Last row, exclusive
+	 */
+	protected abstract void applyOnlyInside( Interpolate interp , PixelTransform2_F32 dstToSrc , int y0 , int y1 );
 
 	@Override
 	public void setRenderAll(boolean renderAll) {
@@ -102,4 +159,15 @@ public abstract class ImageDistortBasic
 	public boolean getRenderAll() {
 		return renderAll;
 	}
+
+	/**
+	 * If true then rows will be rendered in multiple threads
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
 }
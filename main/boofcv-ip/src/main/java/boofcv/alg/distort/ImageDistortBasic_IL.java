@@ -19,6 +19,7 @@
 package boofcv.alg.distort;
 
 import boofcv.alg.interpolate.InterpolatePixelMB;
+import boofcv.struct.distort.PixelTransform2_F32;
 import boofcv.struct.image.ImageInterleaved;
 
 /**
@@ -31,9 +32,6 @@ public abstract class ImageDistortBasic_IL
 		<Input extends ImageInterleaved<Input>,Output extends ImageInterleaved<Output>>
 		extends ImageDistortBasic<Input,Output,InterpolatePixelMB<Input>> {
 
-	// storage for interpolated pixel values
-	float values[] = new float[0];
-
 	/**
 	 * Specifies configuration parameters
 	 *
@@ -44,15 +42,9 @@ public abstract class ImageDistortBasic_IL
 	}
 
 	@Override
-	protected void init(Input srcImg, Output dstImg) {
-		super.init(srcImg,dstImg);
-		if( values.length != srcImg.getNumBands() ) {
-			values = new float[ srcImg.getNumBands() ];
-		}
-	}
-
-	@Override
-	public void applyAll() {
+	protected void applyAll( InterpolatePixelMB<Input> interp , PixelTransform2_F32 dstToSrc , int y0 , int y1 ) {
+		// storage for interpolated pixel values
+		float values[] = new float[ srcImg.getNumBands() ];
 
 		// todo TO make this faster first apply inside the region which can process the fast border
 		// then do the slower border thingy
@@ -68,7 +60,9 @@ public abstract class ImageDistortBasic_IL
 	}
 
 	@Override
-	public void applyOnlyInside() {
+	protected void applyOnlyInside( InterpolatePixelMB<Input> interp , PixelTransform2_F32 dstToSrc , int y0 , int y1 ) {
+		// storage for interpolated pixel values
+		float values[] = new float[ srcImg.getNumBands() ];
 
 		float maxWidth = srcImg.getWidth()-1;
 		float maxHeight = srcImg.getHeight()-1;
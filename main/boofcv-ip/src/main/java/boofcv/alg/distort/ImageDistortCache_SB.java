@@ -19,15 +19,19 @@
 package boofcv.alg.distort;
 
 import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.struct.distort.PixelTransform2_F32;
 import boofcv.struct.image.ImageGray;
-import georegression.struct.point.Point2D_F32;
 
 /**
  * Except for very simple functions, computing the per pixel distortion is an expensive operation.
  * To overcome this problem the distortion is computed once and cached.  Then when the image is distorted
  * again the save results are simply recalled and not computed again.
  *
+ * If concurrent, rows are split across threads and each thread interpolates using its own copy of the
+ * interpolation.  The cache is also computed concurrently if the transform can be copied.
+ *
  * @author Peter Abeles
  */
 public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output extends ImageGray<Output>>
@@ -35,7 +39,8 @@ public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output
 
 	// size of output image
 	private int width=-1,height=-1;
-	private Point2D_F32 map[];
+	// distorted pixel coordinates. (x,y) interleaved
+	private float map[] = new float[0];
 	// sub pixel interpolation
 	private InterpolatePixelS<Input> interp;
 
@@ -47,11 +52,16 @@ public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output
 
 	// should it render all pixels in the destination, even ones outside the input image
 	protected boolean renderAll = true;
+	// should rows be processed in multiple threads
+	protected boolean concurrent = false;
 	protected Input srcImg;
 	protected Output dstImg;
 
 	protected boolean dirty;
 
+	private MapTask mapTask = new MapTask();
+	private RowsTask rowsTask = new RowsTask();
+
 	/**
 	 * Specifies configuration parameters
 	 *
@@ -73,7 +83,9 @@ public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output
 
 		x0 = 0;y0 = 0;x1 = dstImg.width;y1 = dstImg.height;
 
-		if( renderAll )
+		if( concurrent && BoofConcurrency.isConcurrent() )
+			BoofConcurrency.loopBlocks(y0, y1, rowsTask);
+		else if( renderAll )
 			renderAll();
 		else
 			applyOnlyInside();
@@ -85,7 +97,9 @@ public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output
 
 		x0 = dstX0;y0 = dstY0;x1 = dstX1;y1 = dstY1;
 
-		if( renderAll )
+		if( concurrent && BoofConcurrency.isConcurrent() )
+			BoofConcurrency.loopBlocks(y0, y1, rowsTask);
+		else if( renderAll )
 			renderAll();
 		else
 			applyOnlyInside();
@@ -95,17 +109,19 @@ public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output
 		if( dirty || width != dstImg.width || height != dstImg.height) {
 			width = dstImg.width;
 			height = dstImg.height;
-			map = new Point2D_F32[width*height];
-			for( int i = 0; i < map.length; i++ ) {
-				map[i] = new Point2D_F32();
-			}
-
-			int index = 0;
-			for( int y = 0; y < height; y++ ) {
-				for( int x = 0; x < width; x++ ) {
-					dstToSrc.compute(x,y);
-					map[index++].set(dstToSrc.distX,dstToSrc.distY);
-				}
+			if( map.length < width*height*2 )
+				map = new float[width*height*2];
+
+			PixelTransform2_F32 first = null;
+			if( concurrent && BoofConcurrency.isConcurrent() )
+				first = dstToSrc.copyConcurrent();
+
+			if( first != null ) {
+				mapTask.first = first;
+				BoofConcurrency.loopBlocks(0, height, mapTask);
+				mapTask.first = null;
+			} else {
+				computeMap(dstToSrc, 0, height);
 			}
 			dirty = false;
 		} else if( dstImg.width != width || dstImg.height != height )
@@ -116,36 +132,80 @@ public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output
 		interp.setImage(srcImg);
 	}
 
+	private void computeMap( PixelTransform2_F32 dstToSrc , int row0 , int row1 ) {
+		int index = row0*width*2;
+		for( int y = row0; y < row1; y++ ) {
+			for( int x = 0; x < width; x++ ) {
+				dstToSrc.compute(x,y);
+				map[index++] = dstToSrc.distX;
+				map[index++] = dstToSrc.distY;
+			}
+		}
+	}
+
 	public void renderAll() {
+		renderAll(interp, y0, y1);
+	}
 
+	public void applyOnlyInside() {
+		applyOnlyInside(interp, y0, y1);
+	}
+
+	private void renderAll( InterpolatePixelS<Input> interp , int y0 , int y1 ) {
 		// todo TO make this faster first apply inside the region which can process the fast border
 		// then do the slower border thingy
 		for( int y = y0; y < y1; y++ ) {
 			int indexDst = dstImg.startIndex + dstImg.stride*y + x0;
-			for( int x = x0; x < x1; x++ , indexDst++ ) {
-				Point2D_F32 s = map[indexDst];
-
-				assign(indexDst,interp.get(s.x, s.y));
+			int indexMap = (y*width + x0)*2;
+			for( int x = x0; x < x1; x++ , indexDst++ , indexMap += 2 ) {
+				assign(indexDst,interp.get(map[indexMap], map[indexMap+1]));
 			}
 		}
 	}
 
-	public void applyOnlyInside() {
+	private void applyOnlyInside( InterpolatePixelS<Input> interp , int y0 , int y1 ) {
 		float maxWidth = srcImg.getWidth()-1;
 		float maxHeight = srcImg.getHeight()-1;
 
 		for( int y = y0; y < y1; y++ ) {
 			int indexDst = dstImg.startIndex + dstImg.stride*y + x0;
-			for( int x = x0; x < x1; x++ , indexDst++ ) {
-				Point2D_F32 s = map[indexDst];
+			int indexMap = (y*width + x0)*2;
+			for( int x = x0; x < x1; x++ , indexDst++ , indexMap += 2 ) {
+				float sx = map[indexMap];
+				float sy = map[indexMap+1];
 
-				if( s.x >= 0 && s.x <= maxWidth && s.y >= 0 && s.y <= maxHeight ) {
-					assign(indexDst,interp.get(s.x, s.y));
+				if( sx >= 0 && sx <= maxWidth && sy >= 0 && sy <= maxHeight ) {
+					assign(indexDst,interp.get(sx, sy));
 				}
 			}
 		}
 	}
 
+	private class MapTask implements IntRangeTask {
+		// transform for the first block.  Created when checking if the transform can be copied
+		PixelTransform2_F32 first;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			computeMap(minInclusive == 0 ? first : dstToSrc.copyConcurrent(), minInclusive, maxExclusive);
+		}
+	}
+
+	/**
+	 * Renders a block of rows using its own interpolation
+	 */
+	private class RowsTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			InterpolatePixelS<Input> interp = ImageDistortCache_SB.this.interp.copy();
+			interp.setImage(srcImg);
+			if( renderAll )
+				renderAll(interp, minInclusive, maxExclusive);
+			else
+				applyOnlyInside(interp, minInclusive, maxExclusive);
+		}
+	}
+
 	protected abstract void assign( int indexDst , float value );
 
 	@Override
@@ -157,4 +217,15 @@ public abstract class ImageDistortCache_SB<Input extends ImageGray<Input>,Output
 	public boolean getRenderAll() {
 		return renderAll;
 	}
+
+	/**
+	 * If true then rows will be processed in multiple threads
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
 }
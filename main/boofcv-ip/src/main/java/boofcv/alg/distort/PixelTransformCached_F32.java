@@ -20,33 +20,41 @@ package boofcv.alg.distort;
 
 import boofcv.struct.distort.PixelTransform2_F32;
 import boofcv.struct.distort.Point2Transform2_F32;
-import georegression.struct.point.Point2D_F32;
 
 /**
  * Precomputes transformations for each pixel in the image.  Doesn't check bounds and will give an incorrect result
- * or crash if outside pixels are requested.
+ * or crash if outside pixels are requested.  The distorted coordinates are stored interleaved in a single
+ * float array, 8 bytes per pixel.  If that is too much memory see {@link PixelTransformGrid_F32}.
  *
  * @author Peter Abeles
  */
 public class PixelTransformCached_F32 extends PixelTransform2_F32 {
 
-	Point2D_F32 map[];
+	// distorted pixel coordinates. (x,y) interleaved
+	float map[];
 	int width,height;
 
 	public PixelTransformCached_F32(int width, int height, Point2Transform2_F32 transform ) {
 		this(width,height, new PointToPixelTransform_F32(transform));
 	}
 
+	private PixelTransformCached_F32( PixelTransformCached_F32 original ) {
+		this.width = original.width;
+		this.height = original.height;
+		this.map = original.map;
+	}
+
 	public PixelTransformCached_F32(int width, int height, PixelTransform2_F32 transform ) {
 		this.width = width+1; // add one to the width since some stuff checks the outside border
 		this.height = height+1;
 
-		map = new Point2D_F32[this.width*this.height];
+		map = new float[this.width*this.height*2];
 		int index = 0;
 		for (int y = 0; y < this.height; y++) {
 			for (int x = 0; x < this.width; x++) {
 				transform.compute(x,y);
-				map[index++] = new Point2D_F32(transform.distX,transform.distY);
+				map[index++] = transform.distX;
+				map[index++] = transform.distY;
 			}
 		}
 	}
@@ -56,8 +64,16 @@ public class PixelTransformCached_F32 extends PixelTransform2_F32 {
 //		if( x < 0 || y < 0 || x >= width || y >= height )
 //			throw new IllegalArgumentException("Out of bounds");
 
-		Point2D_F32 p = map[y*width+x];
-		distX = p.x;
-		distY = p.y;
+		int index = (y*width+x)*2;
+		distX = map[index];
+		distY = map[index+1];
+	}
+
+	/**
+	 * The map is shared with the copy
+	 */
+	@Override
+	public PixelTransformCached_F32 copyConcurrent() {
+		return new PixelTransformCached_F32(this);
 	}
 }
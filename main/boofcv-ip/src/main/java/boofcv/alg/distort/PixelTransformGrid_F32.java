@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.distort;
+
+import boofcv.struct.distort.PixelTransform2_F32;
+import boofcv.struct.distort.Point2Transform2_F32;
+
+/**
+ * <p>
+ * Precomputes the transformation on a coarse grid and bilinearly interpolates between grid points.  Lens distortion
+ * and rectification transforms are smooth, so a grid with a spacing of a few pixels introduces very little
+ * error while using a fraction of the memory of {@link PixelTransformCached_F32}.  With a step of 8 pixels the memory
+ * is reduced by a factor of 64.  The result is exact at grid points.
+ * </p>
+ *
+ * <p>
+ * The grid extends one pixel past the image, same as {@link PixelTransformCached_F32}.  Pixels outside of that
+ * will give an incorrect result or crash.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class PixelTransformGrid_F32 extends PixelTransform2_F32 {
+
+	// number of pixels between grid points
+	int step;
+	// number of grid points along each axis
+	int cols, rows;
+
+	// distorted pixel coordinates at each grid point. (x,y) interleaved
+	float grid[];
+
+	public PixelTransformGrid_F32(int width, int height, int step, Point2Transform2_F32 transform) {
+		this(width, height, step, new PointToPixelTransform_F32(transform));
+	}
+
+	private PixelTransformGrid_F32( PixelTransformGrid_F32 original ) {
+		this.step = original.step;
+		this.cols = original.cols;
+		this.rows = original.rows;
+		this.grid = original.grid;
+	}
+
+	/**
+	 * Computes the grid
+	 *
+	 * @param width Image width
+	 * @param height Image height
+	 * @param step Spacing between grid points in pixels.  Try 8.
+	 * @param transform The transform which is being approximated
+	 */
+	public PixelTransformGrid_F32(int width, int height, int step, PixelTransform2_F32 transform) {
+		if( step < 1 )
+			throw new IllegalArgumentException("step must be at least 1");
+
+		this.step = step;
+		// the outside border is included and there needs to be a point after the last pixel
+		this.cols = width/step + 2;
+		this.rows = height/step + 2;
+
+		grid = new float[cols*rows*2];
+		int index = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				transform.compute(col*step,row*step);
+				grid[index++] = transform.distX;
+				grid[index++] = transform.distY;
+			}
+		}
+	}
+
+	@Override
+	public void compute(int x, int y) {
+		int col = x/step;
+		int row = y/step;
+
+		float ax = (x - col*step)/(float)step;
+		float ay = (y - row*step)/(float)step;
+
+		int index00 = (row*cols + col)*2;
+		int index10 = index00 + cols*2;
+
+		float x0 = grid[index00  ] + ax*(grid[index00+2] - grid[index00  ]);
+		float y0 = grid[index00+1] + ax*(grid[index00+3] - grid[index00+1]);
+		float x1 = grid[index10  ] + ax*(grid[index10+2] - grid[index10  ]);
+		float y1 = grid[index10+1] + ax*(grid[index10+3] - grid[index10+1]);
+
+		distX = x0 + ay*(x1-x0);
+		distY = y0 + ay*(y1-y0);
+	}
+
+	/**
+	 * Distorted x-coordinate at the specified grid point
+	 */
+	public float getGridX( int col , int row ) {
+		return grid[(row*cols+col)*2];
+	}
+
+	/**
+	 * Distorted y-coordinate at the specified grid point
+	 */
+	public float getGridY( int col , int row ) {
+		return grid[(row*cols+col)*2+1];
+	}
+
+	public int getStep() {
+		return step;
+	}
+
+	public int getCols() {
+		return cols;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * The grid is shared with the copy
+	 */
+	@Override
+	public PixelTransformGrid_F32 copyConcurrent() {
+		return new PixelTransformGrid_F32(this);
+	}
+}
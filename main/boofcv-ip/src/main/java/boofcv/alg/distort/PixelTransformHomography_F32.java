@@ -71,4 +71,9 @@ public class PixelTransformHomography_F32 extends PixelTransform2_F32 {
 	public Homography2D_F32 getModel() {
 		return homo;
 	}
+
+	@Override
+	public PixelTransformHomography_F32 copyConcurrent() {
+		return new PixelTransformHomography_F32(homo);
+	}
 }
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.distort.impl;
+
+import boofcv.alg.distort.ImageDistort;
+import boofcv.alg.distort.PixelTransformGrid_F32;
+import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import boofcv.struct.distort.PixelTransform2_F32;
+import boofcv.struct.image.GrayU8;
+
+/**
+ * <p>
+ * Implementation of {@link ImageDistort} for {@link GrayU8} which looks up the distortion from a
+ * {@link PixelTransformGrid_F32} and bilinearly interpolates using fixed point math.  Along each row of a grid cell
+ * the source coordinate changes linearly, so it is computed by adding a 16.16 fixed point increment for each pixel.
+ * Pixel values are interpolated with 8-bit weights.  Output values are within one of the floating point bilinear
+ * interpolation.
+ * </p>
+ *
+ * <p>
+ * If the model passed in is a {@link PixelTransformGrid_F32} then it's used directly, otherwise a grid is computed
+ * from the model the first time an image is distorted.  Pixels which are not entirely inside the source image are
+ * handled by the provided interpolation, which should be bilinear.  If concurrent, rows are split across threads
+ * and each thread uses its own copy of the interpolation.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class ImplImageDistortGrid_U8 implements ImageDistort<GrayU8,GrayU8> {
+
+	// used along the image border
+	private InterpolatePixelS<GrayU8> interp;
+
+	// spacing of grid points when the grid is computed internally
+	private int step;
+
+	// the model which was passed in
+	private PixelTransform2_F32 dstToSrc;
+	// the grid which is being rendered
+	private PixelTransformGrid_F32 grid;
+	// the grid needs to be recomputed
+	private boolean dirty;
+
+	// should it render all pixels in the destination, even ones outside the input image
+	private boolean renderAll = true;
+	// should rows be rendered in multiple threads
+	private boolean concurrent = false;
+
+	// crop boundary
+	private int x0,y0,x1,y1;
+
+	private GrayU8 srcImg;
+	private GrayU8 dstImg;
+
+	// distorted coordinates of every grid column along the current row
+	private float rowX[] = new float[0];
+	private float rowY[] = new float[0];
+
+	private RowsTask rowsTask = new RowsTask();
+
+	/**
+	 * Specifies configuration parameters
+	 *
+	 * @param interp Interpolation algorithm used along the image border.
+	 * @param step Spacing in pixels of grid points if the grid is computed internally.  Try 8.
+	 */
+	public ImplImageDistortGrid_U8(InterpolatePixelS<GrayU8> interp, int step) {
+		if( step < 1 )
+			throw new IllegalArgumentException("step must be at least 1");
+		this.interp = interp;
+		this.step = step;
+	}
+
+	@Override
+	public void setModel(PixelTransform2_F32 dstToSrc) {
+		this.dstToSrc = dstToSrc;
+		if( dstToSrc instanceof PixelTransformGrid_F32 ) {
+			grid = (PixelTransformGrid_F32)dstToSrc;
+			dirty = false;
+		} else {
+			grid = null;
+			dirty = true;
+		}
+	}
+
+	@Override
+	public void apply(GrayU8 srcImg, GrayU8 dstImg) {
+		apply(srcImg, dstImg, 0, 0, dstImg.width, dstImg.height);
+	}
+
+	@Override
+	public void apply(GrayU8 srcImg, GrayU8 dstImg, int dstX0, int dstY0, int dstX1, int dstY1) {
+		init(srcImg, dstImg);
+
+		x0 = dstX0;y0 = dstY0;x1 = dstX1;y1 = dstY1;
+
+		if( concurrent && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(y0, y1, rowsTask);
+		} else {
+			renderRows(interp, rowX, rowY, y0, y1);
+		}
+	}
+
+	private void init(GrayU8 srcImg, GrayU8 dstImg) {
+		if( dirty || (dstToSrc != grid && !gridCovers(dstImg)) ) {
+			grid = new PixelTransformGrid_F32(dstImg.width, dstImg.height, step, dstToSrc);
+			dirty = false;
+		} else if( !gridCovers(dstImg) ) {
+			throw new IllegalArgumentException("Grid is too small for dstImg");
+		}
+
+		if( rowX.length < grid.getCols() ) {
+			rowX = new float[grid.getCols()];
+			rowY = new float[grid.getCols()];
+		}
+
+		this.srcImg = srcImg;
+		this.dstImg = dstImg;
+		interp.setImage(srcImg);
+	}
+
+	private boolean gridCovers( GrayU8 dstImg ) {
+		int s = grid.getStep();
+		return (grid.getCols()-1)*s > dstImg.width && (grid.getRows()-1)*s > dstImg.height;
+	}
+
+	/**
+	 * Renders a block of rows using its own interpolation and work space
+	 */
+	private class RowsTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			InterpolatePixelS<GrayU8> interp = ImplImageDistortGrid_U8.this.interp.copy();
+			interp.setImage(srcImg);
+			renderRows(interp, new float[grid.getCols()], new float[grid.getCols()], minInclusive, maxExclusive);
+		}
+	}
+
+	private void renderRows( InterpolatePixelS<GrayU8> interp , float rowX[] , float rowY[] , int row0 , int row1 ) {
+		for( int y = row0; y < row1; y++ ) {
+			renderRow(interp, rowX, rowY, y);
+		}
+	}
+
+	/**
+	 * Renders a single row in the destination image
+	 */
+	private void renderRow( InterpolatePixelS<GrayU8> interp , float rowX[] , float rowY[] , int y ) {
+		final int step = grid.getStep();
+		final int row = y/step;
+		final float ay = (y - row*step)/(float)step;
+
+		// interpolate the grid along the y-axis for every column which is touched
+		int col0 = x0/step;
+		int col1 = (x1-1)/step + 1;
+		for( int col = col0; col <= col1; col++ ) {
+			float gx = grid.getGridX(col,row);
+			float gy = grid.getGridY(col,row);
+			rowX[col] = gx + ay*(grid.getGridX(col,row+1) - gx);
+			rowY[col] = gy + ay*(grid.getGridY(col,row+1) - gy);
+		}
+
+		// fixed point coordinates must be less than these to be inside the fast region
+		final int maxFixedX = (srcImg.width-1) << 16;
+		final int maxFixedY = (srcImg.height-1) << 16;
+
+		final byte src[] = srcImg.data;
+		final byte dst[] = dstImg.data;
+		final int stride = srcImg.stride;
+
+		int indexDst = dstImg.startIndex + y*dstImg.stride + x0;
+
+		for( int col = col0; col < col1; col++ ) {
+			int xa = Math.max(x0, col*step);
+			int xb = Math.min(x1, (col+1)*step);
+
+			float sx0 = rowX[col], sy0 = rowY[col];
+			float dx = (rowX[col+1]-sx0)/step;
+			float dy = (rowY[col+1]-sy0)/step;
+
+			// coordinate of the first and last pixel in the segment
+			int offset = xa - col*step;
+			float fxa = sx0 + offset*dx, fya = sy0 + offset*dy;
+			float fxb = fxa + (xb-xa-1)*dx, fyb = fya + (xb-xa-1)*dy;
+
+			if( fxa >= 0 && fya >= 0 && fxb >= 0 && fyb >= 0 &&
+					fxa*65536f < maxFixedX && fxb*65536f < maxFixedX &&
+					fya*65536f < maxFixedY && fyb*65536f < maxFixedY ) {
+				int fx = (int)(fxa*65536f);
+				int fy = (int)(fya*65536f);
+				int stepX = (int)(dx*65536f);
+				int stepY = (int)(dy*65536f);
+
+				// the segment might end slightly outside due to rounding of the increment
+				int lastX = fx + stepX*(xb-xa-1);
+				int lastY = fy + stepY*(xb-xa-1);
+				if( lastX >= 0 && lastY >= 0 && lastX < maxFixedX && lastY < maxFixedY ) {
+					for( int x = xa; x < xb; x++ , fx += stepX , fy += stepY ) {
+						// weights are rounded to 8-bits.  256 is possible, which selects the next pixel
+						int wx = ((fx & 0xFFFF) + 128) >> 8;
+						int wy = ((fy & 0xFFFF) + 128) >> 8;
+						int indexSrc = srcImg.startIndex + (fy >> 16)*stride + (fx >> 16);
+
+						int p00 = src[indexSrc] & 0xFF;
+						int p01 = src[indexSrc+1] & 0xFF;
+						int p10 = src[indexSrc+stride] & 0xFF;
+						int p11 = src[indexSrc+stride+1] & 0xFF;
+
+						int top    = (p00 << 8) + (p01-p00)*wx;
+						int bottom = (p10 << 8) + (p11-p10)*wx;
+
+						dst[indexDst++] = (byte)(((top << 8) + (bottom-top)*wy) >> 16);
+					}
+					continue;
+				}
+			}
+
+			// at least part of the segment is along the image border
+			float maxWidth = srcImg.width-1;
+			float maxHeight = srcImg.height-1;
+			for( int x = xa; x < xb; x++ , indexDst++ ) {
+				float sx = sx0 + (x - col*step)*dx;
+				float sy = sy0 + (x - col*step)*dy;
+
+				if( renderAll || (sx >= 0 && sx <= maxWidth && sy >= 0 && sy <= maxHeight) ) {
+					dst[indexDst] = (byte)interp.get(sx, sy);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void setRenderAll(boolean renderAll) {
+		this.renderAll = renderAll;
+	}
+
+	@Override
+	public boolean getRenderAll() {
+		return renderAll;
+	}
+
+	public PixelTransformGrid_F32 getGrid() {
+		return grid;
+	}
+
+	/**
+	 * If true then rows will be rendered in multiple threads
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+}
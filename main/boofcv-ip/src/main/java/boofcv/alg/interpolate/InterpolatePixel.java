@@ -85,4 +85,12 @@ public interface InterpolatePixel<T extends ImageBase<T>> {
 	 */
 	public ImageType<T> getImageType();
 
+	/**
+	 * Creates a new instance with the same configuration which can be used in another thread.  The image border
+	 * is shared, so copies which are used at the same time must be interpolating the same image.  The image is not
+	 * copied and {@link #setImage} must be called.
+	 *
+	 * @return New instance
+	 */
+	public InterpolatePixel<T> copy();
 }
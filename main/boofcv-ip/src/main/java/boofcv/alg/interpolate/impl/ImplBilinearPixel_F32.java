@@ -89,6 +89,13 @@ public class ImplBilinearPixel_F32 extends BilinearPixelS<GrayF32> {
 		return get_fast(x,y);
 	}
 
+	@Override
+	public ImplBilinearPixel_F32 copy() {
+		ImplBilinearPixel_F32 out = new ImplBilinearPixel_F32();
+		out.setBorder(border);
+		return out;
+	}
+
 	@Override
 	public ImageType<GrayF32> getImageType() {
 		return ImageType.single(GrayF32.class);
@@ -122,6 +122,13 @@ public class ImplBilinearPixel_IL_S16 extends BilinearPixelMB<InterleavedS16> {
 			get_fast(x, y, values);
 	}
 
+	@Override
+	public ImplBilinearPixel_IL_S16 copy() {
+		ImplBilinearPixel_IL_S16 out = new ImplBilinearPixel_IL_S16(temp0.length);
+		out.setBorder(border);
+		return out;
+	}
+
 	@Override
 	public ImageType<InterleavedS16> getImageType() {
 		return orig.getImageType();
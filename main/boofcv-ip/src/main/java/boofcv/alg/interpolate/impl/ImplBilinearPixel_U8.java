@@ -89,6 +89,13 @@ public class ImplBilinearPixel_U8 extends BilinearPixelS<GrayU8> {
 		return get_fast(x,y);
 	}
 
+	@Override
+	public ImplBilinearPixel_U8 copy() {
+		ImplBilinearPixel_U8 out = new ImplBilinearPixel_U8();
+		out.setBorder(border);
+		return out;
+	}
+
 	@Override
 	public ImageType<GrayU8> getImageType() {
 		return ImageType.single(GrayU8.class);
@@ -206,6 +206,12 @@ public class ImplInterpolatePixelConvolution_F32 implements InterpolatePixelS<Gr
 		return border;
 	}
 	@Override
+	public ImplInterpolatePixelConvolution_F32 copy() {
+		ImplInterpolatePixelConvolution_F32 out = new ImplInterpolatePixelConvolution_F32(kernel,min,max);
+		out.border = border;
+		return out;
+	}
+	@Override
 	public ImageType<GrayF32> getImageType() {
 		return ImageType.single(GrayF32.class);
 	}
@@ -206,6 +206,12 @@ public class ImplInterpolatePixelConvolution_S16 implements InterpolatePixelS<Gr
 		return border;
 	}
 	@Override
+	public ImplInterpolatePixelConvolution_S16 copy() {
+		ImplInterpolatePixelConvolution_S16 out = new ImplInterpolatePixelConvolution_S16(kernel,min,max);
+		out.border = border;
+		return out;
+	}
+	@Override
 	public ImageType<GrayS16> getImageType() {
 		return ImageType.single(GrayS16.class);
 	}
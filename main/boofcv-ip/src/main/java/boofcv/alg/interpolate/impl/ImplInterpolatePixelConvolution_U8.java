@@ -206,6 +206,12 @@ public class ImplInterpolatePixelConvolution_U8 implements InterpolatePixelS<Gra
 		return border;
 	}
 	@Override
+	public ImplInterpolatePixelConvolution_U8 copy() {
+		ImplInterpolatePixelConvolution_U8 out = new ImplInterpolatePixelConvolution_U8(kernel,min,max);
+		out.border = border;
+		return out;
+	}
+	@Override
 	public ImageType<GrayU8> getImageType() {
 		return ImageType.single(GrayU8.class);
 	}
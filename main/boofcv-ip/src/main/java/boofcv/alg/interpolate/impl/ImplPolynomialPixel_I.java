@@ -141,6 +141,12 @@ public class ImplPolynomialPixel_I<T extends GrayI<T>> extends PolynomialPixel<T
 		return ret;
 	}
 	@Override
+	public ImplPolynomialPixel_I<T> copy() {
+		ImplPolynomialPixel_I<T> out = new ImplPolynomialPixel_I<>(M,min,max);
+		out.setBorder(border);
+		return out;
+	}
+	@Override
 	public ImageType<T> getImageType() {
 		return ImageType.<T>single((Class)GrayI.class);
 	}
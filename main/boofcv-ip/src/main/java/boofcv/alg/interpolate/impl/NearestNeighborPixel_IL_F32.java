@@ -61,4 +61,11 @@ public class NearestNeighborPixel_IL_F32 extends NearestNeighborPixelMB<Interlea
 		orig.unsafe_get(xx,yy,values);
 	}
 
+	@Override
+	public NearestNeighborPixel_IL_F32 copy() {
+		NearestNeighborPixel_IL_F32 out = new NearestNeighborPixel_IL_F32();
+		out.setBorder(border);
+		return out;
+	}
+
 }
@@ -74,4 +74,11 @@ public class NearestNeighborPixel_IL_U16 extends NearestNeighborPixelMB<Interlea
 		}
 	}
 
+	@Override
+	public NearestNeighborPixel_IL_U16 copy() {
+		NearestNeighborPixel_IL_U16 out = new NearestNeighborPixel_IL_U16();
+		out.setBorder(border);
+		return out;
+	}
+
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Central location for running code concurrently.  All concurrent algorithms share a single {@link ForkJoinPool}
+ * so that the number of threads used can be controlled from one place.  Loops are split into contiguous blocks,
+ * one for each thread, which works well for image processing where each row has about the same cost.
+ * </p>
+ *
+ * <p>
+ * If {@link #USE_CONCURRENT} is false or only one thread is allowed then loops are run in the calling thread.
+ * Loops which are invoked from inside a task already running in the pool are processed by the same pool,
+ * which prevents thread starvation when concurrent algorithms are nested.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class BoofConcurrency {
+	/**
+	 * If false then all code is run in the calling thread.
+	 */
+	public static boolean USE_CONCURRENT = true;
+
+	// the pool which all tasks are submitted to
+	private static volatile ForkJoinPool pool = new ForkJoinPool();
+
+	/**
+	 * Specifies the maximum number of threads which will be used.  Creates a new thread pool.
+	 *
+	 * @param maxThreads Maximum number of threads. &ge; 1
+	 */
+	public static synchronized void setMaxThreads( int maxThreads ) {
+		if( maxThreads < 1 )
+			throw new IllegalArgumentException("Must have at least one thread");
+		pool.shutdown();
+		pool = new ForkJoinPool(maxThreads);
+	}
+
+	/**
+	 * Returns the maximum number of threads which can be used
+	 */
+	public static int getMaxThreads() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Returns true if loops will be run in multiple threads
+	 */
+	public static boolean isConcurrent() {
+		return USE_CONCURRENT && pool.getParallelism() > 1;
+	}
+
+	/**
+	 * Splits the range into one block for each thread and processes them concurrently.  Returns after
+	 * all the blocks have finished.
+	 *
+	 * @param start First value in the range, inclusive
+	 * @param endExclusive Last value in the range, exclusive
+	 * @param task The task which processes a block
+	 */
+	public static void loopBlocks( int start , int endExclusive , IntRangeTask task ) {
+		loopBlocks(start, endExclusive, 1, task);
+	}
+
+	/**
+	 * Splits the range into one block for each thread and processes them concurrently.  Returns after
+	 * all the blocks have finished.
+	 *
+	 * @param start First value in the range, inclusive
+	 * @param endExclusive Last value in the range, exclusive
+	 * @param minBlock The smallest allowed block.  Prevents tiny ranges from being split up.
+	 * @param task The task which processes a block
+	 */
+	public static void loopBlocks( int start , int endExclusive , int minBlock , IntRangeTask task ) {
+		int length = endExclusive-start;
+		if( length <= 0 )
+			return;
+
+		int numBlocks = isConcurrent() ? Math.min(pool.getParallelism(), length/Math.max(1,minBlock)) : 1;
+
+		if( numBlocks <= 1 ) {
+			task.run(start, endExclusive);
+			return;
+		}
+
+		final List<Block> blocks = new ArrayList<>(numBlocks);
+		for( int i = 0; i < numBlocks; i++ ) {
+			int b0 = start + (int)((long)length*i/numBlocks);
+			int b1 = start + (int)((long)length*(i+1)/numBlocks);
+			blocks.add(new Block(task, b0, b1));
+		}
+
+		invokeAll(blocks);
+	}
+
+	/**
+	 * Runs all the tasks concurrently and returns after they have all finished.  If any of them throws an
+	 * exception it is rethrown in the calling thread.
+	 *
+	 * @param tasks Tasks which are to be run
+	 */
+	public static void invokeAll( Runnable ...tasks ) {
+		if( !isConcurrent() ) {
+			for( Runnable r : tasks ) {
+				r.run();
+			}
+			return;
+		}
+
+		final List<RecursiveAction> actions = new ArrayList<>(tasks.length);
+		for( final Runnable r : tasks ) {
+			actions.add(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					r.run();
+				}
+			});
+		}
+		invokeAll(actions);
+	}
+
+	private static void invokeAll( final List<? extends RecursiveAction> actions ) {
+		if( ForkJoinTask.inForkJoinPool() ) {
+			// already inside the pool.  Let the worker thread help out instead of blocking
+			ForkJoinTask.invokeAll(actions);
+		} else {
+			pool.invoke(new RecursiveAction() {
+				@Override
+				protected void compute() {
+					ForkJoinTask.invokeAll(actions);
+				}
+			});
+		}
+	}
+
+	/**
+	 * A single block in a loop
+	 */
+	private static class Block extends RecursiveAction {
+		IntRangeTask task;
+		int start, end;
+
+		public Block(IntRangeTask task, int start, int end) {
+			this.task = task;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			task.run(start, end);
+		}
+	}
+}
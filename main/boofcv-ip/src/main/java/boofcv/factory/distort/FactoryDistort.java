@@ -22,6 +22,8 @@ import boofcv.abst.distort.ConfigDeformPointMLS;
 import boofcv.abst.distort.PointDeformKeyPoints;
 import boofcv.abst.distort.PointDeform_MLS;
 import boofcv.alg.distort.ImageDistort;
+import boofcv.alg.distort.ImageDistortBasic;
+import boofcv.alg.distort.ImageDistortCache_SB;
 import boofcv.alg.distort.impl.*;
 import boofcv.alg.distort.mls.ImageDeformPointMLS_F32;
 import boofcv.alg.interpolate.InterpolatePixel;
@@ -68,16 +70,32 @@ public class FactoryDistort {
 	 */
 	public static <Input extends ImageBase<Input>, Output extends ImageBase<Output>>
 	ImageDistort<Input, Output> distort(boolean cached, InterpolatePixel<Input> interp, ImageType<Output> outputType) {
+		return distort(cached, false, interp, outputType);
+	}
+
+	/**
+	 * Creates a {@link boofcv.alg.distort.ImageDistort} for the specified image type, transformation
+	 * and interpolation instance.
+	 *
+	 * @param cached If true the distortion is only computed one.  False for recomputed each time, but less memory.
+	 * @param concurrent If true then rows are rendered in multiple threads.  The output is the same.
+	 * @param interp Which interpolation algorithm should be used.
+	 * @param outputType Type of output image.
+	 * @return ImageDistort
+	 */
+	public static <Input extends ImageBase<Input>, Output extends ImageBase<Output>>
+	ImageDistort<Input, Output> distort(boolean cached, boolean concurrent,
+										InterpolatePixel<Input> interp, ImageType<Output> outputType) {
 		switch( outputType.getFamily() ) {
 			case GRAY:
-				return distortSB(cached,(InterpolatePixelS)interp,outputType.getImageClass());
+				return distortSB(cached,concurrent,(InterpolatePixelS)interp,outputType.getImageClass());
 			case PLANAR:
-				return distortPL(cached,(InterpolatePixelS)interp,outputType.getImageClass());
+				return distortPL(cached,concurrent,(InterpolatePixelS)interp,outputType.getImageClass());
 			case INTERLEAVED:
 				if( interp instanceof InterpolatePixelS )
 					throw new IllegalArgumentException("Interpolation function for single band images was" +
 							" passed in for an interleaved image");
-				return distortIL(cached,(InterpolatePixelMB) interp, (ImageType)outputType);
+				return distortIL(cached,concurrent,(InterpolatePixelMB) interp, (ImageType)outputType);
 			default:
 				throw new IllegalArgumentException("Unknown image family "+outputType.getFamily());
 		}
@@ -93,34 +111,85 @@ public class FactoryDistort {
 	 */
 	public static <Input extends ImageGray<Input>, Output extends ImageGray<Output>>
 	ImageDistort<Input, Output> distortSB(boolean cached, InterpolatePixelS<Input> interp, Class<Output> outputType)
+	{
+		return distortSB(cached, false, interp, outputType);
+	}
+
+	/**
+	 * Creates a {@link boofcv.alg.distort.ImageDistort} for the specified image type, transformation
+	 * and interpolation instance.
+	 *
+	 * @param cached If true the distortion is only computed one.  False for recomputed each time, but less memory.
+	 * @param concurrent If true then rows are rendered in multiple threads.  The output is the same.
+	 * @param interp Which interpolation algorithm should be used.
+	 * @param outputType Type of output image.
+	 */
+	public static <Input extends ImageGray<Input>, Output extends ImageGray<Output>>
+	ImageDistort<Input, Output> distortSB(boolean cached, boolean concurrent,
+										  InterpolatePixelS<Input> interp, Class<Output> outputType)
 	{
 		if( cached ) {
+			ImageDistortCache_SB ret;
 			if( outputType == GrayF32.class ) {
-				return (ImageDistort<Input,Output>)new ImplImageDistortCache_F32(interp);
+				ret = new ImplImageDistortCache_F32(interp);
 			} else if( GrayS32.class.isAssignableFrom(outputType) ) {
-				return (ImageDistort<Input,Output>)new ImplImageDistortCache_S32(interp);
+				ret = new ImplImageDistortCache_S32(interp);
 			} else if( GrayI16.class.isAssignableFrom(outputType) ) {
-				return (ImageDistort<Input,Output>)new ImplImageDistortCache_I16(interp);
+				ret = new ImplImageDistortCache_I16(interp);
 			} else if( GrayI8.class.isAssignableFrom(outputType) ) {
-				return (ImageDistort<Input,Output>)new ImplImageDistortCache_I8(interp);
+				ret = new ImplImageDistortCache_I8(interp);
 			} else {
 				throw new IllegalArgumentException("Output type not supported: "+outputType.getSimpleName());
 			}
+			ret.setConcurrent(concurrent);
+			return (ImageDistort<Input,Output>)ret;
 		} else {
+			ImageDistortBasic ret;
 			if (outputType == GrayF32.class) {
-				return (ImageDistort<Input, Output>) new ImplImageDistort_F32(interp);
+				ret = new ImplImageDistort_F32(interp);
 			} else if (GrayS32.class.isAssignableFrom(outputType)) {
-				return (ImageDistort<Input, Output>) new ImplImageDistort_S32(interp);
+				ret = new ImplImageDistort_S32(interp);
 			} else if (GrayI16.class.isAssignableFrom(outputType)) {
-				return (ImageDistort<Input, Output>) new ImplImageDistort_I16(interp);
+				ret = new ImplImageDistort_I16(interp);
 			} else if (GrayI8.class.isAssignableFrom(outputType)) {
-				return (ImageDistort<Input, Output>) new ImplImageDistort_I8(interp);
+				ret = new ImplImageDistort_I8(interp);
 			} else {
 				throw new IllegalArgumentException("Output type not supported: " + outputType.getSimpleName());
 			}
+			ret.setConcurrent(concurrent);
+			return (ImageDistort<Input,Output>)ret;
 		}
 	}
 
+	/**
+	 * Creates a {@link boofcv.alg.distort.ImageDistort} for {@link GrayU8} which caches the distortion on a
+	 * coarse grid and uses fixed point bilinear interpolation.  Much less memory than a cached distortion and
+	 * faster, but the output can differ by one from bilinear interpolation.
+	 *
+	 * @see ImplImageDistortGrid_U8
+	 * @see boofcv.alg.distort.PixelTransformGrid_F32
+	 *
+	 * @param interp Interpolation used along the image border.  Should be bilinear.
+	 * @param step Spacing in pixels between grid points.  Try 8.
+	 */
+	public static ImageDistort<GrayU8, GrayU8> distortGrid_U8(InterpolatePixelS<GrayU8> interp, int step) {
+		return distortGrid_U8(false, interp, step);
+	}
+
+	/**
+	 * Same as {@link #distortGrid_U8(InterpolatePixelS, int)} but can render rows in multiple threads.
+	 *
+	 * @param concurrent If true then rows are rendered in multiple threads.  The output is the same.
+	 * @param interp Interpolation used along the image border.  Should be bilinear.
+	 * @param step Spacing in pixels between grid points.  Try 8.
+	 */
+	public static ImageDistort<GrayU8, GrayU8> distortGrid_U8(boolean concurrent,
+															  InterpolatePixelS<GrayU8> interp, int step) {
+		ImplImageDistortGrid_U8 ret = new ImplImageDistortGrid_U8(interp, step);
+		ret.setConcurrent(concurrent);
+		return ret;
+	}
+
 	/**
 	 * Creates a {@link boofcv.alg.distort.ImageDistort} for the planar images, transformation
 	 * and interpolation instance.
@@ -133,27 +202,63 @@ public class FactoryDistort {
 	ImageDistort<Planar<Input>,Planar<Output>>
 	distortPL(boolean cached , InterpolatePixelS<Input> interp, Class<Output> outputType)
 	{
-		ImageDistort<Input, Output> distortSingle = distortSB(cached, interp, outputType);
+		return distortPL(cached, false, interp, outputType);
+	}
+
+	/**
+	 * Creates a {@link boofcv.alg.distort.ImageDistort} for the planar images, transformation
+	 * and interpolation instance.  Bands are processed one at a time.
+	 *
+	 * @param cached If true the distortion is only computed one.  False for recomputed each time, but less memory.
+	 * @param concurrent If true then rows in each band are rendered in multiple threads.  The output is the same.
+	 * @param interp Which interpolation algorithm should be used.
+	 * @param outputType Type of output image.
+	 */
+	public static <Input extends ImageGray<Input>,Output extends ImageGray<Output>>
+	ImageDistort<Planar<Input>,Planar<Output>>
+	distortPL(boolean cached , boolean concurrent, InterpolatePixelS<Input> interp, Class<Output> outputType)
+	{
+		ImageDistort<Input, Output> distortSingle = distortSB(cached, concurrent, interp, outputType);
 		return new ImplImageDistort_PL<>(distortSingle);
 	}
 
 	public static <Input extends ImageInterleaved<Input>, Output extends ImageInterleaved<Output>>
 	ImageDistort<Input, Output>
 	distortIL(boolean cached, InterpolatePixelMB<Input> interp, ImageType<Output> outputType)
+	{
+		return distortIL(cached, false, interp, outputType);
+	}
+
+	/**
+	 * Creates a {@link boofcv.alg.distort.ImageDistort} for interleaved images.
+	 *
+	 * @param cached If true the distortion is only computed one.  Not supported yet.
+	 * @param concurrent If true then rows are rendered in multiple threads.  The output is the same.
+	 * @param interp Which interpolation algorithm should be used.
+	 * @param outputType Type of output image.
+	 */
+	public static <Input extends ImageInterleaved<Input>, Output extends ImageInterleaved<Output>>
+	ImageDistort<Input, Output>
+	distortIL(boolean cached, boolean concurrent, InterpolatePixelMB<Input> interp, ImageType<Output> outputType)
 	{
 		if( cached ) {
 			throw new IllegalArgumentException("Cached not supported yet");
 		} else {
+			ImageDistortBasic ret;
 			switch( outputType.getDataType() ) {
 				case F32:
-					return (ImageDistort<Input, Output>) new ImplImageDistort_IL_F32((InterpolatePixelMB)interp);
+					ret = new ImplImageDistort_IL_F32((InterpolatePixelMB)interp);
+					break;
 
 				case U8:
-					return (ImageDistort<Input, Output>) new ImplImageDistort_IL_U8((InterpolatePixelMB)interp);
+					ret = new ImplImageDistort_IL_U8((InterpolatePixelMB)interp);
+					break;
 
 				default:
 					throw new IllegalArgumentException("Not supported yet");
 			}
+			ret.setConcurrent(concurrent);
+			return (ImageDistort<Input, Output>)ret;
 		}
 	}
 
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.struct;
+
+import org.ddogleg.struct.GrowQueue_F32;
+import org.ddogleg.struct.GrowQueue_I32;
+
+/**
+ * Point cloud which is stored in flat arrays of primitives instead of one object per point.  Coordinates
+ * are interleaved (x,y,z) and the optional color of each point is packed into an int as 0xRRGGBB.  Memory is
+ * reused when the cloud is reset, so it can be filled every frame without creating garbage.
+ *
+ * @author Peter Abeles
+ */
+public class PackedPointCloud_F32 {
+	/**
+	 * Location of each point.  Interleaved x,y,z
+	 */
+	public GrowQueue_F32 xyz = new GrowQueue_F32();
+
+	/**
+	 * Color of each point.  0xRRGGBB.  Empty if the cloud has no color.
+	 */
+	public GrowQueue_I32 rgb = new GrowQueue_I32();
+
+	/**
+	 * Removes all points
+	 */
+	public void reset() {
+		xyz.reset();
+		rgb.reset();
+	}
+
+	/**
+	 * Changes the number of points.  Values of new points are not initialized.
+	 *
+	 * @param size Number of points
+	 * @param color If true then the color array will be resized too, otherwise it's emptied.
+	 */
+	public void resize( int size , boolean color ) {
+		xyz.resize(size*3);
+		rgb.resize(color ? size : 0);
+	}
+
+	public void add( float x , float y , float z ) {
+		xyz.add(x);
+		xyz.add(y);
+		xyz.add(z);
+	}
+
+	public void add( float x , float y , float z , int rgb ) {
+		add(x,y,z);
+		this.rgb.add(rgb);
+	}
+
+	/**
+	 * Number of points in the cloud
+	 */
+	public int size() {
+		return xyz.size/3;
+	}
+
+	/**
+	 * True if a color has been assigned to every point
+	 */
+	public boolean hasColor() {
+		return rgb.size > 0 && rgb.size == size();
+	}
+
+	public float getX( int index ) {
+		return xyz.data[index*3];
+	}
+
+	public float getY( int index ) {
+		return xyz.data[index*3+1];
+	}
+
+	public float getZ( int index ) {
+		return xyz.data[index*3+2];
+	}
+
+	public int getRgb( int index ) {
+		return rgb.data[index];
+	}
+}
@@ -37,4 +37,16 @@ public abstract class PixelTransform2_F32 implements PixelTransform {
 	public float getDistY() {
 		return distY;
 	}
+
+	/**
+	 * Returns an instance which can be used in another thread at the same time as this instance.  If sharing
+	 * this instance is safe then it's returned, otherwise a copy is created and read only data can be shared.  By
+	 * default null is returned, which indicates that the transform can't be copied and should only be used in a
+	 * single thread.
+	 *
+	 * @return this, a copy, or null if not supported
+	 */
+	public PixelTransform2_F32 copyConcurrent() {
+		return null;
+	}
 }
@@ -0,0 +1,561 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.struct.image;
+
+import boofcv.struct.ImageRectangle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Image of unbounded size which is broken up into square tiles.  A tile is only declared the first time it's
+ * requested, and pixels in tiles which have never been touched are implicitly zero.  Tile coordinates can be
+ * negative.  Pixel (x,y) is inside tile (floor(x/tileSize), floor(y/tileSize)).
+ * </p>
+ *
+ * <p>
+ * The number of tiles kept in memory can be limited by providing a cache file with {@link #setCache}.  When the
+ * limit is exceeded the least recently used tiles are written to the cache file and their memory is recycled.  The
+ * next time an evicted tile is requested it's read back in.  Tiles which have been requested since the last call to
+ * {@link #markFrame()} are never evicted.  That way all the tiles being processed for one frame stay valid, even if it
+ * means temporarily going over the limit.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe.  Request all the tiles first, then they can be modified concurrently.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class TiledImage<T extends ImageBase<T>> {
+
+	// type of image in each tile
+	private ImageType<T> imageType;
+	// width and height of a tile
+	private int tileSize;
+
+	// all the tiles which have been touched.  Key is computed from tile coordinate
+	private Map<Long,Tile<T>> tiles = new HashMap<>();
+	// images that can be reused by tiles
+	private List<T> unused = new ArrayList<>();
+
+	// maximum number of tiles in memory
+	private int maxInMemory = Integer.MAX_VALUE;
+	private int numInMemory = 0;
+
+	// tiles used after this time stamp are not evicted
+	private long frameStart = 0;
+	private long clock = 0;
+
+	// disk cache for evicted tiles
+	private File cacheFile;
+	private RandomAccessFile cache;
+	private FileChannel channel;
+	private ByteBuffer transfer;
+	// used to save and load tiles with streams
+	private ByteBuffer streamTransfer;
+	// number of tile slots in the cache file.  Each tile keeps its slot once it has been evicted
+	private int numSlots = 0;
+
+	/**
+	 * Specifies the type of image and tile size.  Tiles are kept in memory until {@link #setCache} is called.
+	 *
+	 * @param imageType Type of image in each tile
+	 * @param tileSize Width and height of a tile.  Try 256
+	 */
+	public TiledImage( ImageType<T> imageType , int tileSize ) {
+		if( tileSize <= 0 )
+			throw new IllegalArgumentException("Tile size must be positive");
+		this.imageType = imageType;
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Limits the number of tiles in memory.  Evicted tiles are saved to the cache file, which is overwritten.
+	 *
+	 * @param maxInMemory Maximum number of tiles in memory
+	 * @param cacheFile File which evicted tiles are written to.
+	 */
+	public void setCache( int maxInMemory , File cacheFile ) {
+		if( maxInMemory <= 0 )
+			throw new IllegalArgumentException("Must allow at least one tile in memory");
+		if( cache != null )
+			throw new IllegalArgumentException("Cache has already been specified");
+		this.maxInMemory = maxInMemory;
+		this.cacheFile = cacheFile;
+	}
+
+	/**
+	 * Tiles requested after this is called won't be evicted until it's called again.  Call before requesting
+	 * the tiles which are needed to process a new frame.  Tiles from the previous frame can now be evicted, so
+	 * the number in memory is reduced to the limit.
+	 */
+	public void markFrame() {
+		frameStart = ++clock;
+		trim(null);
+	}
+
+	/**
+	 * Returns the tile at the specified tile coordinate.  If it doesn't exist it's created and filled with zero.  If it
+	 * has been evicted it's read from the cache.
+	 *
+	 * @param col Tile column
+	 * @param row Tile row
+	 * @return The tile.  Its image is in memory.
+	 */
+	public Tile<T> getTile( int col , int row ) {
+		long key = key(col,row);
+		Tile<T> tile = tiles.get(key);
+		if( tile == null ) {
+			tile = new Tile<>(col,row);
+			tile.image = declareImage(true);
+			tiles.put(key,tile);
+			numInMemory++;
+		} else if( tile.image == null ) {
+			tile.image = declareImage(false);
+			readTile(tile);
+			numInMemory++;
+		}
+		tile.lastUsed = clock;
+
+		trim(tile);
+		return tile;
+	}
+
+	/**
+	 * Returns the tile if it has been touched or null if it hasn't.  Its image might not be in memory.
+	 */
+	public Tile<T> lookupTile( int col , int row ) {
+		return tiles.get(key(col,row));
+	}
+
+	/**
+	 * Returns the tile's image and makes sure it's in memory.  Intended for reading pixels.  Unlike {@link #getTile}
+	 * the tile isn't protected from eviction, so reading every tile doesn't load all of them into memory.  The
+	 * image is only valid until the next tile is requested.  If the tile has never been touched null is returned
+	 * and no tile is created.
+	 */
+	public T getTileImage( int col , int row ) {
+		Tile<T> tile = tiles.get(key(col,row));
+		if( tile == null )
+			return null;
+		if( tile.image == null ) {
+			// make room first so that the memory of an evicted tile is reused
+			while( numInMemory >= maxInMemory ) {
+				if( !evictOldest(null) )
+					break;
+			}
+			tile.image = declareImage(false);
+			readTile(tile);
+			numInMemory++;
+		}
+		// most recently used, but still not part of the current frame
+		if( tile.lastUsed < frameStart )
+			tile.lastUsed = frameStart-1;
+
+		trim(tile);
+		return tile.image;
+	}
+
+	/**
+	 * Writes the raw pixel values of a tile to the stream in little endian byte order.  Unlike saving the tile in an
+	 * image format the values are read back exactly by {@link #loadTile}.
+	 *
+	 * @param col Tile column
+	 * @param row Tile row
+	 * @param out Stream the tile is written to
+	 * @return false if the tile has never been touched and nothing was written
+	 */
+	public boolean saveTile( int col , int row , OutputStream out ) throws IOException {
+		T image = getTileImage(col,row);
+		if( image == null )
+			return false;
+
+		ByteBuffer buffer = streamTransfer();
+		for( Object data : rawData(image) )
+			write(data, buffer);
+		out.write(buffer.array(), 0, buffer.position());
+		return true;
+	}
+
+	/**
+	 * Reads the pixel values of a tile which were written by {@link #saveTile}.  The tile is created if it
+	 * doesn't exist.
+	 *
+	 * @param col Tile column
+	 * @param row Tile row
+	 * @param in Stream the tile is read from
+	 */
+	public void loadTile( int col , int row , InputStream in ) throws IOException {
+		ByteBuffer buffer = streamTransfer();
+		byte[] array = buffer.array();
+		int total = 0;
+		while( total < array.length ) {
+			int amount = in.read(array, total, array.length-total);
+			if( amount < 0 )
+				throw new IOException("Unexpected end of stream");
+			total += amount;
+		}
+		for( Object data : rawData(getTile(col,row).image) )
+			read(buffer, data);
+	}
+
+	private ByteBuffer streamTransfer() {
+		if( streamTransfer == null ) {
+			streamTransfer = ByteBuffer.allocate(bytesPerTile());
+			streamTransfer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		streamTransfer.clear();
+		return streamTransfer;
+	}
+
+	private int bytesPerTile() {
+		return tileSize*tileSize*imageType.getNumBands()*imageType.getDataType().getNumBits()/8;
+	}
+
+	/**
+	 * Adds all the tiles which have been touched to the list
+	 */
+	public void getTiles( List<Tile<T>> output ) {
+		output.addAll(tiles.values());
+	}
+
+	/**
+	 * Finds the range of tiles which have been touched.  Upper extent is exclusive.  If there are no tiles then
+	 * the rectangle has zero area.
+	 *
+	 * @param storage (Optional) storage for the output
+	 * @return Tile coordinates of the touched region
+	 */
+	public ImageRectangle getTileBounds( ImageRectangle storage ) {
+		if( storage == null )
+			storage = new ImageRectangle();
+		if( tiles.isEmpty() ) {
+			storage.set(0,0,0,0);
+			return storage;
+		}
+		storage.set(Integer.MAX_VALUE,Integer.MAX_VALUE,Integer.MIN_VALUE,Integer.MIN_VALUE);
+		for( Tile<T> t : tiles.values() ) {
+			storage.x0 = Math.min(storage.x0, t.col);
+			storage.y0 = Math.min(storage.y0, t.row);
+			storage.x1 = Math.max(storage.x1, t.col+1);
+			storage.y1 = Math.max(storage.y1, t.row+1);
+		}
+		return storage;
+	}
+
+	/**
+	 * Discards all the tiles.  The cache file is kept open and reused.
+	 */
+	public void reset() {
+		for( Tile<T> t : tiles.values() ) {
+			if( t.image != null )
+				unused.add(t.image);
+		}
+		tiles.clear();
+		numInMemory = 0;
+		numSlots = 0;
+		clock = frameStart = 0;
+	}
+
+	/**
+	 * Discards all the tiles and deletes the cache file
+	 */
+	public void close() {
+		reset();
+		if( cache != null ) {
+			try {
+				channel.close();
+				cache.close();
+			} catch( IOException e ) {
+				throw new RuntimeException(e);
+			}
+			cache = null;
+			channel = null;
+			if( !cacheFile.delete() )
+				cacheFile.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Evicts tiles until the number in memory is within the limit or none of the remaining ones can be evicted
+	 *
+	 * @param keep (Optional) Tile which must not be evicted
+	 */
+	private void trim( Tile<T> keep ) {
+		while( numInMemory > maxInMemory ) {
+			if( !evictOldest(keep) )
+				break;
+		}
+	}
+
+	/**
+	 * Evicts the least recently used tile which isn't being used by the current frame
+	 *
+	 * @param keep (Optional) Tile which must not be evicted
+	 * @return true if a tile was evicted
+	 */
+	private boolean evictOldest( Tile<T> keep ) {
+		Tile<T> oldest = null;
+		for( Tile<T> t : tiles.values() ) {
+			if( t.image == null || t.lastUsed >= frameStart || t == keep )
+				continue;
+			if( oldest == null || t.lastUsed < oldest.lastUsed )
+				oldest = t;
+		}
+		if( oldest == null )
+			return false;
+
+		writeTile(oldest);
+		unused.add(oldest.image);
+		oldest.image = null;
+		numInMemory--;
+		return true;
+	}
+
+	private T declareImage( boolean zero ) {
+		if( unused.isEmpty() )
+			return imageType.createImage(tileSize,tileSize);
+		T image = unused.remove(unused.size()-1);
+		if( zero ) {
+			for( Object data : rawData(image) )
+				fillZero(data);
+		}
+		return image;
+	}
+
+	private void writeTile( Tile<T> tile ) {
+		try {
+			openCache();
+			if( tile.cacheSlot < 0 )
+				tile.cacheSlot = numSlots++;
+
+			transfer.clear();
+			for( Object data : rawData(tile.image) )
+				write(data, transfer);
+			transfer.flip();
+
+			long position = (long)tile.cacheSlot*transfer.capacity();
+			while( transfer.hasRemaining() )
+				position += channel.write(transfer, position);
+		} catch( IOException e ) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void readTile( Tile<T> tile ) {
+		try {
+			transfer.clear();
+			long position = (long)tile.cacheSlot*transfer.capacity();
+			while( transfer.hasRemaining() ) {
+				int amount = channel.read(transfer, position);
+				if( amount < 0 )
+					throw new IOException("Unexpected end of cache file");
+				position += amount;
+			}
+			transfer.flip();
+			for( Object data : rawData(tile.image) )
+				read(transfer, data);
+		} catch( IOException e ) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void openCache() throws IOException {
+		if( cache != null )
+			return;
+		if( cacheFile == null )
+			throw new IllegalArgumentException("No cache file");
+
+		cache = new RandomAccessFile(cacheFile,"rw");
+		cache.setLength(0);
+		channel = cache.getChannel();
+
+		transfer = ByteBuffer.allocateDirect(bytesPerTile());
+		transfer.order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Returns the primitive arrays which store the image's pixels
+	 */
+	private Object[] rawData( T image ) {
+		if( image instanceof ImageGray ) {
+			return new Object[]{((ImageGray)image)._getData()};
+		} else if( image instanceof ImageInterleaved ) {
+			return new Object[]{((ImageInterleaved)image)._getData()};
+		} else if( image instanceof Planar ) {
+			Planar p = (Planar)image;
+			Object[] ret = new Object[p.getNumBands()];
+			for( int i = 0; i < ret.length; i++ ) {
+				ret[i] = p.getBand(i)._getData();
+			}
+			return ret;
+		} else {
+			throw new IllegalArgumentException("Unknown image type");
+		}
+	}
+
+	private static void fillZero( Object data ) {
+		if( data instanceof byte[] ) Arrays.fill((byte[])data,(byte)0);
+		else if( data instanceof short[] ) Arrays.fill((short[])data,(short)0);
+		else if( data instanceof int[] ) Arrays.fill((int[])data,0);
+		else if( data instanceof long[] ) Arrays.fill((long[])data,0);
+		else if( data instanceof float[] ) Arrays.fill((float[])data,0);
+		else if( data instanceof double[] ) Arrays.fill((double[])data,0);
+		else throw new IllegalArgumentException("Unknown array type");
+	}
+
+	private static void write( Object data , ByteBuffer buffer ) {
+		int p = buffer.position();
+		if( data instanceof byte[] ) {
+			buffer.put((byte[])data);
+		} else if( data instanceof short[] ) {
+			short[] a = (short[])data;
+			buffer.asShortBuffer().put(a);
+			buffer.position(p + a.length*2);
+		} else if( data instanceof int[] ) {
+			int[] a = (int[])data;
+			buffer.asIntBuffer().put(a);
+			buffer.position(p + a.length*4);
+		} else if( data instanceof long[] ) {
+			long[] a = (long[])data;
+			buffer.asLongBuffer().put(a);
+			buffer.position(p + a.length*8);
+		} else if( data instanceof float[] ) {
+			float[] a = (float[])data;
+			buffer.asFloatBuffer().put(a);
+			buffer.position(p + a.length*4);
+		} else if( data instanceof double[] ) {
+			double[] a = (double[])data;
+			buffer.asDoubleBuffer().put(a);
+			buffer.position(p + a.length*8);
+		} else {
+			throw new IllegalArgumentException("Unknown array type");
+		}
+	}
+
+	private static void read( ByteBuffer buffer , Object data ) {
+		int p = buffer.position();
+		if( data instanceof byte[] ) {
+			buffer.get((byte[])data);
+		} else if( data instanceof short[] ) {
+			short[] a = (short[])data;
+			buffer.asShortBuffer().get(a);
+			buffer.position(p + a.length*2);
+		} else if( data instanceof int[] ) {
+			int[] a = (int[])data;
+			buffer.asIntBuffer().get(a);
+			buffer.position(p + a.length*4);
+		} else if( data instanceof long[] ) {
+			long[] a = (long[])data;
+			buffer.asLongBuffer().get(a);
+			buffer.position(p + a.length*8);
+		} else if( data instanceof float[] ) {
+			float[] a = (float[])data;
+			buffer.asFloatBuffer().get(a);
+			buffer.position(p + a.length*4);
+		} else if( data instanceof double[] ) {
+			double[] a = (double[])data;
+			buffer.asDoubleBuffer().get(a);
+			buffer.position(p + a.length*8);
+		} else {
+			throw new IllegalArgumentException("Unknown array type");
+		}
+	}
+
+	private static long key( int col , int row ) {
+		return ((long)col << 32) | (row & 0xFFFFFFFFL);
+	}
+
+	public ImageType<T> getImageType() {
+		return imageType;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Number of tiles which have been touched
+	 */
+	public int getNumTiles() {
+		return tiles.size();
+	}
+
+	/**
+	 * Number of tiles which are currently in memory
+	 */
+	public int getNumInMemory() {
+		return numInMemory;
+	}
+
+	public int getMaxInMemory() {
+		return maxInMemory;
+	}
+
+	/**
+	 * A single tile in the image
+	 */
+	public static class Tile<T extends ImageBase<T>> {
+		// tile coordinate
+		int col,row;
+		// pixels in the tile.  null if evicted
+		T image;
+		// last time it was requested
+		long lastUsed;
+		// location in the cache file.  -1 if it has never been evicted
+		int cacheSlot = -1;
+
+		Tile( int col , int row ) {
+			this.col = col;
+			this.row = row;
+		}
+
+		public int getCol() {
+			return col;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		/**
+		 * Pixels inside the tile or null if it has been evicted
+		 */
+		public T getImage() {
+			return image;
+		}
+
+		public boolean isInMemory() {
+			return image != null;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.distort;
+
+import boofcv.struct.distort.PixelTransform2_F32;
+import georegression.struct.affine.Affine2D_F32;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestPixelTransformGrid_F32 {
+
+	int width = 20;
+	int height = 25;
+
+	/**
+	 * Bilinear interpolation of an affine transform is exact
+	 */
+	@Test
+	public void compareToAffine() {
+		PixelTransformAffine_F32 orig = new PixelTransformAffine_F32();
+		orig.set(new Affine2D_F32(1f,0.1f,0.05f,2f,5f,6f));
+
+		PixelTransformGrid_F32 alg = new PixelTransformGrid_F32(width,height,6,orig);
+
+		// it goes outside the border by one since some times the outside bound is used
+		for (int y = 0; y < height + 1; y++) {
+			for (int x = 0; x < width + 1; x++) {
+				alg.compute(x,y);
+				orig.compute(x,y);
+				assertEquals(orig.distX,alg.distX,1e-4);
+				assertEquals(orig.distY,alg.distY,1e-4);
+			}
+		}
+	}
+
+	/**
+	 * The grid points should have the exact value for any transform
+	 */
+	@Test
+	public void exactAtGridPoints() {
+		PixelTransform2_F32 orig = new PixelTransform2_F32() {
+			@Override
+			public void compute(int x, int y) {
+				distX = x*x*0.1f + y;
+				distY = (float)Math.sqrt(x+y);
+			}
+		};
+
+		int step = 4;
+		PixelTransformGrid_F32 alg = new PixelTransformGrid_F32(width,height,step,orig);
+
+		for (int row = 0; row*step <= height; row++) {
+			for (int col = 0; col*step <= width; col++) {
+				alg.compute(col*step,row*step);
+				orig.compute(col*step,row*step);
+				assertEquals(orig.distX,alg.distX,1e-4);
+				assertEquals(orig.distY,alg.distY,1e-4);
+				assertEquals(orig.distX,alg.getGridX(col,row),1e-4);
+				assertEquals(orig.distY,alg.getGridY(col,row),1e-4);
+			}
+		}
+	}
+}
@@ -95,6 +95,28 @@ public abstract class CommonImageDistortCacheTests<T extends ImageGray<T>> {
 		BoofTesting.assertEquals(dst0, dst1, 1e-4);
 	}
 	
+	/**
+	 * Computing the map and rendering in multiple threads should produce the same image
+	 */
+	@Test
+	public void compareConcurrent() {
+
+		ImageDistort<T,T> standard = FactoryDistort.distortSB(false, interp, imageType);
+		ImageDistortCache_SB<T,T> alg = create(interp,imageType);
+		alg.setConcurrent(true);
+
+		standard.setModel(tran);
+		alg.setModel(tran);
+
+		standard.apply(src,dst0);
+		alg.apply(src,dst1);
+		BoofTesting.assertEquals(dst0, dst1, 1e-4);
+
+		standard.apply(src,dst0,10,30,80,60);
+		alg.apply(src,dst1,10,30,80,60);
+		BoofTesting.assertEquals(dst0, dst1, 1e-4);
+	}
+
 	public abstract ImageDistortCache_SB<T,T>
 	create(InterpolatePixelS<T> interp, Class<T> imageType );
 }
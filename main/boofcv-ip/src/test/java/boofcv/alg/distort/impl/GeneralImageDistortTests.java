@@ -19,6 +19,8 @@
 package boofcv.alg.distort.impl;
 
 import boofcv.alg.distort.ImageDistort;
+import boofcv.alg.distort.ImageDistortBasic;
+import boofcv.alg.distort.ImageDistortCache_SB;
 import boofcv.alg.interpolate.InterpolatePixel;
 import boofcv.alg.interpolate.InterpolationType;
 import boofcv.alg.misc.GImageMiscOps;
@@ -222,6 +224,57 @@ public abstract class GeneralImageDistortTests<T extends ImageBase<T>> {
 		}
 	}
 
+	/**
+	 * Rendering rows in multiple threads should produce exactly the same image
+	 */
+	@Test
+	public void concurrent() {
+		T src = imageType.createImage(width,height);
+		GImageMiscOps.fillUniform(src, rand, 0, 100);
+
+		for( boolean renderAll : new boolean[]{true,false}) {
+			T expected = imageType.createImage(width, height);
+			T found = imageType.createImage(width, height);
+			GImageMiscOps.fill(expected,50);
+			GImageMiscOps.fill(found,50);
+
+			ImageDistort<T,T> alg = createDistort(new BasicTransform(),interp);
+			alg.setRenderAll(renderAll);
+			alg.apply(src,expected);
+
+			alg = createDistort(new BasicTransform(),interp);
+			if( !setConcurrent(alg) )
+				return;
+			alg.setRenderAll(renderAll);
+			alg.apply(src,found);
+
+			for( int y = 0; y < height; y++ ) {
+				for( int x = 0; x < width; x++ ) {
+					for (int band = 0; band < imageType.getNumBands(); band++) {
+						assertEquals(GeneralizedImageOps.get(expected, x, y, band),
+								GeneralizedImageOps.get(found, x, y, band), 0);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Turns on concurrent rendering.  Returns false if not supported.
+	 */
+	protected boolean setConcurrent( ImageDistort<T,T> alg ) {
+		if( alg instanceof ImageDistortBasic ) {
+			((ImageDistortBasic)alg).setConcurrent(true);
+		} else if( alg instanceof ImageDistortCache_SB ) {
+			((ImageDistortCache_SB)alg).setConcurrent(true);
+		} else if( alg instanceof ImplImageDistortGrid_U8 ) {
+			((ImplImageDistortGrid_U8)alg).setConcurrent(true);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
 	public class BasicTransform extends PixelTransform2_F32 {
 
 
@@ -230,5 +283,10 @@ public abstract class GeneralImageDistortTests<T extends ImageBase<T>> {
 			this.distX = x+offX;
 			this.distY = y+offY;
 		}
+
+		@Override
+		public PixelTransform2_F32 copyConcurrent() {
+			return new BasicTransform();
+		}
 	}
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.distort.impl;
+
+import boofcv.alg.distort.ImageDistort;
+import boofcv.alg.distort.PixelTransformGrid_F32;
+import boofcv.alg.interpolate.InterpolatePixel;
+import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.alg.misc.ImageMiscOps;
+import boofcv.core.image.border.BorderType;
+import boofcv.factory.interpolate.FactoryInterpolation;
+import boofcv.struct.distort.PixelTransform2_F32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageType;
+import boofcv.testing.BoofTesting;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestImplImageDistortGrid_U8 extends GeneralImageDistortTests<GrayU8> {
+
+	public TestImplImageDistortGrid_U8() {
+		super(ImageType.single(GrayU8.class));
+	}
+
+	@Override
+	public ImageDistort<GrayU8,GrayU8> createDistort(PixelTransform2_F32 dstToSrc,
+													 InterpolatePixel<GrayU8> interp) {
+		ImageDistort<GrayU8,GrayU8> ret = new ImplImageDistortGrid_U8((InterpolatePixelS) interp, 4);
+		ret.setModel(dstToSrc);
+		return ret;
+	}
+
+	/**
+	 * Compare against floating point bilinear interpolation using a smooth non-linear distortion
+	 */
+	@Test
+	public void compareToBilinear() {
+		compareToBilinear(true);
+		compareToBilinear(false);
+	}
+
+	private void compareToBilinear( boolean renderAll ) {
+		GrayU8 src = new GrayU8(120,100);
+		GrayU8 expected = new GrayU8(110,90);
+		GrayU8 found = new GrayU8(110,90);
+		ImageMiscOps.fillUniform(src, rand, 0, 255);
+
+		InterpolatePixelS<GrayU8> bilinear = FactoryInterpolation.bilinearPixelS(GrayU8.class, BorderType.EXTENDED);
+
+		PixelTransform2_F32 radial = new PixelTransform2_F32() {
+			@Override
+			public void compute(int x, int y) {
+				float dx = x - 55, dy = y - 45;
+				float r2 = (dx*dx + dy*dy)/2000f;
+				distX = 60 + dx*(1 + 0.1f*r2);
+				distY = 50 + dy*(1 + 0.1f*r2);
+			}
+		};
+
+		// compute the reference with the same approximation so that only the sampling is being compared
+		PixelTransformGrid_F32 grid = new PixelTransformGrid_F32(found.width, found.height, 8, radial);
+
+		ImageDistort<GrayU8,GrayU8> standard = new ImplImageDistort_I8<>(bilinear);
+		standard.setModel(grid);
+		standard.setRenderAll(renderAll);
+		standard.apply(src, expected);
+
+		ImplImageDistortGrid_U8 alg = new ImplImageDistortGrid_U8(bilinear, 8);
+		alg.setModel(radial);
+		alg.setRenderAll(renderAll);
+		alg.apply(src, found);
+
+		BoofTesting.assertEquals(expected, found, 1);
+
+		// see if it works when the grid is passed in
+		ImageMiscOps.fill(found, 0);
+		alg.setModel(grid);
+		alg.apply(src, found);
+		assertTrue(grid == alg.getGrid());
+
+		BoofTesting.assertEquals(expected, found, 1);
+	}
+}
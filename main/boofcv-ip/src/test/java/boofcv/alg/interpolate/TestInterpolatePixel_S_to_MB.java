@@ -108,5 +108,10 @@ public class TestInterpolatePixel_S_to_MB {
 		public ImageType getImageType() {
 			return ImageType.single(GrayU8.class);
 		}
+
+		@Override
+		public InterpolatePixelS copy() {
+			return new Helper();
+		}
 	}
 }
\ No newline at end of file
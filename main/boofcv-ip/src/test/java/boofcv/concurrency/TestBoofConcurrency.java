@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.concurrency;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestBoofConcurrency {
+
+	/**
+	 * Every value should be processed exactly once
+	 */
+	@Test
+	public void loopBlocks() {
+		for( int length : new int[]{0,1,3,17,1000}) {
+			final int[] counts = new int[length+5];
+			BoofConcurrency.loopBlocks(5, 5+length, new IntRangeTask() {
+				@Override
+				public void run(int minInclusive, int maxExclusive) {
+					for( int i = minInclusive; i < maxExclusive; i++ ) {
+						counts[i]++;
+					}
+				}
+			});
+
+			for( int i = 0; i < 5; i++ )
+				assertEquals(0, counts[i]);
+			for( int i = 5; i < counts.length; i++ )
+				assertEquals(1, counts[i]);
+		}
+	}
+
+	/**
+	 * Blocks should never be smaller than the minimum
+	 */
+	@Test
+	public void loopBlocks_minBlock() {
+		final AtomicInteger numBlocks = new AtomicInteger();
+		BoofConcurrency.loopBlocks(0, 20, 15, new IntRangeTask() {
+			@Override
+			public void run(int minInclusive, int maxExclusive) {
+				numBlocks.incrementAndGet();
+			}
+		});
+		assertEquals(1, numBlocks.get());
+	}
+
+	/**
+	 * Nested loops must not dead lock
+	 */
+	@Test
+	public void loopBlocks_nested() {
+		final AtomicInteger total = new AtomicInteger();
+		BoofConcurrency.loopBlocks(0, 50, new IntRangeTask() {
+			@Override
+			public void run(int minInclusive, int maxExclusive) {
+				for( int i = minInclusive; i < maxExclusive; i++ ) {
+					BoofConcurrency.loopBlocks(0, 20, new IntRangeTask() {
+						@Override
+						public void run(int minInclusive, int maxExclusive) {
+							total.addAndGet(maxExclusive-minInclusive);
+						}
+					});
+				}
+			}
+		});
+		assertEquals(50*20, total.get());
+	}
+
+	@Test
+	public void invokeAll() {
+		final AtomicInteger total = new AtomicInteger();
+		Runnable r = new Runnable() {
+			@Override
+			public void run() {
+				total.incrementAndGet();
+			}
+		};
+		BoofConcurrency.invokeAll(r, r, r);
+		assertEquals(3, total.get());
+	}
+
+	/**
+	 * Exceptions thrown inside a task should be passed to the caller
+	 */
+	@Test
+	public void invokeAll_exception() {
+		try {
+			BoofConcurrency.invokeAll(new Runnable() {
+				@Override
+				public void run() {
+					throw new IllegalArgumentException("Test");
+				}
+			}, new Runnable() {
+				@Override
+				public void run() {}
+			});
+			fail("Exception should have been thrown");
+		} catch( RuntimeException e ) {
+			assertTrue(e.getMessage().contains("Test"));
+		}
+	}
+}
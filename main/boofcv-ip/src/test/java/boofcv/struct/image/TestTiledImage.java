@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.struct.image;
+
+import boofcv.alg.misc.GImageMiscOps;
+import boofcv.struct.ImageRectangle;
+import boofcv.testing.BoofTesting;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestTiledImage {
+	Random rand = new Random(234);
+
+	/**
+	 * Tiles should only be declared when requested and start out as zero
+	 */
+	@Test
+	public void lazyAllocation() {
+		TiledImage<GrayU8> alg = new TiledImage<>(ImageType.single(GrayU8.class), 16);
+		assertEquals(0, alg.getNumTiles());
+		assertNull(alg.lookupTile(0,0));
+		assertNull(alg.getTileImage(0,0));
+		assertEquals(0, alg.getNumTiles());
+
+		TiledImage.Tile<GrayU8> tile = alg.getTile(-3,2);
+		assertEquals(-3, tile.getCol());
+		assertEquals(2, tile.getRow());
+		assertEquals(16, tile.getImage().width);
+		assertEquals(16, tile.getImage().height);
+		assertSame(tile, alg.lookupTile(-3,2));
+		assertEquals(1, alg.getNumTiles());
+
+		alg.getTile(4,-1);
+		ImageRectangle bounds = alg.getTileBounds(null);
+		assertEquals(-3, bounds.x0);
+		assertEquals(-1, bounds.y0);
+		assertEquals(5, bounds.x1);
+		assertEquals(3, bounds.y1);
+
+		// recycled images must be zero too
+		GImageMiscOps.fill(tile.getImage(), 5);
+		alg.reset();
+		assertEquals(0, alg.getNumTiles());
+		GrayU8 image = alg.getTile(0,0).getImage();
+		for (int i = 0; i < image.data.length; i++) {
+			assertEquals(0, image.data[i]);
+		}
+	}
+
+	/**
+	 * Evict tiles to disk and read them back in for several image types
+	 */
+	@Test
+	public void evictAndRestore() throws IOException {
+		evictAndRestore(ImageType.single(GrayU8.class));
+		evictAndRestore(ImageType.single(GrayS16.class));
+		evictAndRestore(ImageType.single(GrayF64.class));
+		evictAndRestore(ImageType.pl(3, GrayF32.class));
+		evictAndRestore(ImageType.il(2, InterleavedS32.class));
+	}
+
+	private <T extends ImageBase<T>> void evictAndRestore( ImageType<T> type ) throws IOException {
+		File cacheFile = File.createTempFile("tiled",null);
+		TiledImage<T> alg = new TiledImage<>(type, 10);
+		alg.setCache(3, cacheFile);
+
+		List<T> expected = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			alg.markFrame();
+			T image = alg.getTile(i,-i).getImage();
+			GImageMiscOps.fillUniform(image, rand, 0, 100);
+			expected.add(image.clone());
+			assertTrue(alg.getNumInMemory() <= 3);
+		}
+		assertEquals(8, alg.getNumTiles());
+		assertFalse(alg.lookupTile(0,0).isInMemory());
+
+		// modify a tile after it has been read back in and see if the change is saved
+		alg.markFrame();
+		GImageMiscOps.fill(alg.getTile(0,0).getImage(), 7);
+		GImageMiscOps.fill(expected.get(0), 7);
+
+		for (int i = 7; i >= 0; i--) {
+			alg.markFrame();
+			BoofTesting.assertEquals(expected.get(i), alg.getTileImage(i,-i), 0);
+		}
+
+		alg.close();
+		assertFalse(cacheFile.exists());
+	}
+
+	/**
+	 * Tiles requested in the current frame should not be evicted, even if it goes over the limit
+	 */
+	@Test
+	public void currentFrameNotEvicted() throws IOException {
+		File cacheFile = File.createTempFile("tiled",null);
+		TiledImage<GrayU8> alg = new TiledImage<>(ImageType.single(GrayU8.class), 10);
+		alg.setCache(2, cacheFile);
+
+		alg.markFrame();
+		List<TiledImage.Tile<GrayU8>> tiles = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			tiles.add(alg.getTile(i,0));
+		}
+		assertEquals(5, alg.getNumInMemory());
+		for( TiledImage.Tile<GrayU8> t : tiles ) {
+			assertTrue(t.isInMemory());
+		}
+
+		// next frame the old tiles can be evicted
+		alg.markFrame();
+		alg.getTile(10,0);
+		assertEquals(2, alg.getNumInMemory());
+
+		alg.close();
+	}
+
+	/**
+	 * Reading a tile shouldn't protect it from eviction, but tiles requested in the current frame stay protected
+	 */
+	@Test
+	public void readingDoesNotPin() throws IOException {
+		File cacheFile = File.createTempFile("tiled",null);
+		TiledImage<GrayU8> alg = new TiledImage<>(ImageType.single(GrayU8.class), 10);
+		alg.setCache(2, cacheFile);
+
+		alg.markFrame();
+		for (int i = 0; i < 5; i++) {
+			GImageMiscOps.fill(alg.getTile(i,0).getImage(), i+1);
+		}
+
+		alg.markFrame();
+		TiledImage.Tile<GrayU8> pinned = alg.getTile(0,0);
+		for (int trial = 0; trial < 2; trial++) {
+			for (int i = 1; i < 5; i++) {
+				assertEquals(i+1, alg.getTileImage(i,0).get(3,4));
+				assertTrue(alg.getNumInMemory() <= 2);
+				assertTrue(pinned.isInMemory());
+			}
+		}
+
+		alg.close();
+	}
+}
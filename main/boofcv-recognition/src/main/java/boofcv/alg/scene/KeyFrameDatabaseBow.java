@@ -0,0 +1,377 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.scene;
+
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F32;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Database of key frames described by visual words which can quickly find the key frames most similar to a new
+ * image, e.g. for loop closure detection in visual odometry.  Key frames are added incrementally and stored in an
+ * inverted file, a list for each word of the key frames which contain it.  A query only visits the key frames which
+ * share at least one word with it, so the cost depends on how common the query's words are and not the total number
+ * of key frames.  With a large vocabulary a query over 100,000 key frames visits a small fraction of them.
+ * </p>
+ *
+ * <p>
+ * Similarity is the cosine between TF-IDF weighted word vectors.  The term frequency (TF) is the value in the word
+ * histogram, e.g. from {@link FeatureToWordHistogram}.  The inverse document frequency (IDF) of word w is
+ * log(N/n<sub>w</sub>), where N is the number of key frames and n<sub>w</sub> the number which contain w.  Words
+ * found in every key frame have zero weight and are skipped during queries.  Since IDF changes as key frames are
+ * added it's recomputed, along with the norm of each key frame, only after the database has grown by a
+ * fraction of its size.  See {@link #setRefreshFraction(double)}.  Until then words which are new to the database
+ * are ignored.
+ * </p>
+ *
+ * <p>
+ * Key frames are identified by the order they were added in, starting from zero.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class KeyFrameDatabaseBow {
+
+	// number of words in the vocabulary
+	private int numWords;
+
+	// inverted file.  For each word the key frames which contain it, in the order they were added, and the word's
+	// term frequency in that key frame.  null if no key frame contains the word
+	private GrowQueue_I32[] postingFrame;
+	private GrowQueue_F32[] postingTF;
+
+	// IDF of each word and norm of each key frame's weighted vector.  Both computed from the same snapshot
+	private double[] idf;
+	private GrowQueue_F64 norms = new GrowQueue_F64();
+	// number of key frames when IDF was last computed
+	private int refreshedSize = 0;
+	// IDF is recomputed after the database grows by this fraction
+	private double refreshFraction = 0.1;
+
+	// the most recently added key frames are not returned by queries
+	private int ignoreRecent = 0;
+
+	// sparse version of the histogram being added or queried
+	private GrowQueue_I32 sparseWords = new GrowQueue_I32();
+	private GrowQueue_F32 sparseTF = new GrowQueue_F32();
+	private int[] sortedWords = new int[0];
+
+	// accumulated dot product with the query for each key frame and which key frames have been touched
+	private GrowQueue_F64 scores = new GrowQueue_F64();
+	private GrowQueue_I32 touched = new GrowQueue_I32();
+
+	/**
+	 * Creates an empty database
+	 *
+	 * @param numWords Number of words in the vocabulary
+	 */
+	public KeyFrameDatabaseBow( int numWords ) {
+		this.numWords = numWords;
+		postingFrame = new GrowQueue_I32[numWords];
+		postingTF = new GrowQueue_F32[numWords];
+		idf = new double[numWords];
+	}
+
+	/**
+	 * Adds a key frame described by a word histogram
+	 *
+	 * @param histogram Frequency of each word.  Zero elements are skipped.  Not modified.
+	 * @return ID of the key frame
+	 */
+	public int addKeyFrame( double[] histogram ) {
+		denseToSparse(histogram);
+		return addSparse();
+	}
+
+	/**
+	 * Adds a key frame described by the word each of its features was assigned to
+	 *
+	 * @param words Word of each feature.  Not modified.
+	 * @return ID of the key frame
+	 */
+	public int addKeyFrame( GrowQueue_I32 words ) {
+		wordsToSparse(words);
+		return addSparse();
+	}
+
+	/**
+	 * Finds the key frames which are the most similar to the word histogram
+	 *
+	 * @param histogram Frequency of each word.  Not modified.
+	 * @param maxResults Maximum number of matches returned
+	 * @param results (Output) Matches sorted from best to worst
+	 */
+	public void query( double[] histogram , int maxResults , FastQueue<Match> results ) {
+		denseToSparse(histogram);
+		querySparse(maxResults, results);
+	}
+
+	/**
+	 * Finds the key frames which are the most similar to the set of words
+	 *
+	 * @param words Word of each feature.  Not modified.
+	 * @param maxResults Maximum number of matches returned
+	 * @param results (Output) Matches sorted from best to worst
+	 */
+	public void query( GrowQueue_I32 words , int maxResults , FastQueue<Match> results ) {
+		wordsToSparse(words);
+		querySparse(maxResults, results);
+	}
+
+	private int addSparse() {
+		int frame = norms.size;
+
+		double norm2 = 0;
+		for( int i = 0; i < sparseWords.size; i++ ) {
+			int w = sparseWords.data[i];
+			float tf = sparseTF.data[i];
+
+			if( postingFrame[w] == null ) {
+				postingFrame[w] = new GrowQueue_I32(4);
+				postingTF[w] = new GrowQueue_F32(4);
+			}
+			postingFrame[w].add(frame);
+			postingTF[w].add(tf);
+
+			double v = tf*idf[w];
+			norm2 += v*v;
+		}
+		norms.add(Math.sqrt(norm2));
+		scores.add(0);
+
+		return frame;
+	}
+
+	private void querySparse( int maxResults , FastQueue<Match> results ) {
+		results.reset();
+		if( maxResults <= 0 )
+			return;
+
+		refreshIfNeeded();
+
+		// key frames at or after this index are too recent
+		int endFrame = norms.size - ignoreRecent;
+
+		// accumulate the dot product for every key frame which shares a word with the query
+		double[] scores = this.scores.data;
+		touched.reset();
+		double queryNorm2 = 0;
+		for( int i = 0; i < sparseWords.size; i++ ) {
+			int w = sparseWords.data[i];
+			double weight = idf[w];
+			if( weight == 0 )
+				continue;
+			double q = sparseTF.data[i]*weight;
+			queryNorm2 += q*q;
+
+			// the key frame's weight is multiplied by IDF too
+			q *= weight;
+
+			GrowQueue_I32 frames = postingFrame[w];
+			float[] tf = postingTF[w].data;
+			for( int j = 0; j < frames.size; j++ ) {
+				int frame = frames.data[j];
+				if( frame >= endFrame )
+					break;
+				if( scores[frame] == 0 )
+					touched.add(frame);
+				scores[frame] += q*tf[j];
+			}
+		}
+
+		double queryNorm = Math.sqrt(queryNorm2);
+
+		// select the best while resetting the scores for the next query
+		for( int i = 0; i < touched.size; i++ ) {
+			int frame = touched.data[i];
+			double score = scores[frame]/(queryNorm*norms.data[frame]);
+			scores[frame] = 0;
+
+			if( results.size < maxResults ) {
+				results.grow();
+			} else if( score <= results.data[results.size-1].score ) {
+				continue;
+			}
+			// insertion sort, shifting worse matches down
+			int j = results.size-1;
+			Match m = results.data[j];
+			while( j > 0 && results.data[j-1].score < score ) {
+				results.data[j] = results.data[j-1];
+				j--;
+			}
+			results.data[j] = m;
+			m.keyFrame = frame;
+			m.score = score;
+		}
+	}
+
+	/**
+	 * Recomputes IDF and the norm of every key frame if the database has grown enough
+	 */
+	private void refreshIfNeeded() {
+		int N = norms.size;
+		if( N == refreshedSize || N - refreshedSize < refreshFraction*refreshedSize )
+			return;
+		refreshedSize = N;
+
+		Arrays.fill(norms.data,0,N,0);
+		for( int w = 0; w < numWords; w++ ) {
+			GrowQueue_I32 frames = postingFrame[w];
+			if( frames == null ) {
+				idf[w] = 0;
+				continue;
+			}
+			double weight = idf[w] = Math.log(N/(double)frames.size);
+			float[] tf = postingTF[w].data;
+			for( int j = 0; j < frames.size; j++ ) {
+				double v = tf[j]*weight;
+				norms.data[frames.data[j]] += v*v;
+			}
+		}
+		for( int i = 0; i < N; i++ ) {
+			norms.data[i] = Math.sqrt(norms.data[i]);
+		}
+	}
+
+	private void denseToSparse( double[] histogram ) {
+		if( histogram.length != numWords )
+			throw new IllegalArgumentException("Histogram length doesn't match number of words");
+
+		sparseWords.reset();
+		sparseTF.reset();
+		for( int w = 0; w < numWords; w++ ) {
+			if( histogram[w] != 0 ) {
+				sparseWords.add(w);
+				sparseTF.add((float)histogram[w]);
+			}
+		}
+	}
+
+	/**
+	 * Converts a list of words into term frequency.  Counts are used since cosine similarity is scale invariant
+	 */
+	private void wordsToSparse( GrowQueue_I32 words ) {
+		sparseWords.reset();
+		sparseTF.reset();
+		if( words.size == 0 )
+			return;
+
+		if( sortedWords.length < words.size )
+			sortedWords = new int[words.size];
+		System.arraycopy(words.data,0,sortedWords,0,words.size);
+		Arrays.sort(sortedWords,0,words.size);
+
+		int count = 1;
+		for( int i = 1; i <= words.size; i++ ) {
+			if( i < words.size && sortedWords[i] == sortedWords[i-1] ) {
+				count++;
+			} else {
+				int w = sortedWords[i-1];
+				if( w < 0 || w >= numWords )
+					throw new IllegalArgumentException("Word out of range: "+w);
+				sparseWords.add(w);
+				sparseTF.add(count);
+				count = 1;
+			}
+		}
+	}
+
+	/**
+	 * Removes all key frames
+	 */
+	public void reset() {
+		for( int w = 0; w < numWords; w++ ) {
+			if( postingFrame[w] != null ) {
+				postingFrame[w].reset();
+				postingTF[w].reset();
+			}
+		}
+		Arrays.fill(idf,0);
+		norms.reset();
+		scores.reset();
+		refreshedSize = 0;
+	}
+
+	/**
+	 * Number of key frames in the database
+	 */
+	public int size() {
+		return norms.size;
+	}
+
+	public int getNumWords() {
+		return numWords;
+	}
+
+	/**
+	 * Number of key frames which contain the word
+	 */
+	public int getFrameCount( int word ) {
+		return postingFrame[word] == null ? 0 : postingFrame[word].size;
+	}
+
+	public double getRefreshFraction() {
+		return refreshFraction;
+	}
+
+	/**
+	 * IDF and key frame norms are recomputed during a query if the number of key frames has grown by this fraction
+	 * since the last time.  Zero will recompute if any key frames have been added, giving exact scores at the cost
+	 * of a pass through the whole database.
+	 *
+	 * @param refreshFraction Fraction of the database's size.  Try 0.1
+	 */
+	public void setRefreshFraction( double refreshFraction ) {
+		if( refreshFraction < 0 )
+			throw new IllegalArgumentException("Must be non-negative");
+		this.refreshFraction = refreshFraction;
+	}
+
+	public int getIgnoreRecent() {
+		return ignoreRecent;
+	}
+
+	/**
+	 * The most recently added key frames are excluded from query results.  In visual odometry these are nearby
+	 * and would otherwise be returned as revisits.
+	 *
+	 * @param ignoreRecent Number of key frames to exclude
+	 */
+	public void setIgnoreRecent( int ignoreRecent ) {
+		this.ignoreRecent = ignoreRecent;
+	}
+
+	/**
+	 * A key frame which matched the query
+	 */
+	public static class Match {
+		/**
+		 * ID of the key frame
+		 */
+		public int keyFrame;
+		/**
+		 * Cosine similarity to the query.  1 is a perfect match and 0 means no words in common
+		 */
+		public double score;
+	}
+}
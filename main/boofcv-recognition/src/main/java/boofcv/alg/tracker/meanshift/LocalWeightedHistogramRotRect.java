@@ -65,6 +65,13 @@ public class LocalWeightedHistogramRotRect<T extends ImageBase<T>> {
 	// list of sample points.  in square coordinates.  where 0.5 is 1/2 the width or height
 	protected List<Point2D_F32> samplePts = new ArrayList<>();
 
+	// sample points rotated and scaled into image pixels, relative to the region's center.  Only
+	// recomputed when the shape of the region changes, which doesn't happen during mean-shift iterations
+	protected float sampleOffsetX[];
+	protected float sampleOffsetY[];
+	// shape of the region the offsets were computed for
+	private float offsetWidth = -1, offsetHeight = -1, offsetC = Float.NaN, offsetS = Float.NaN;
+
 	/**
 	 * Configures histogram calculation.
 	 *
@@ -84,6 +91,8 @@ public class LocalWeightedHistogramRotRect<T extends ImageBase<T>> {
 		this.interpolate = interpolate;
 
 		sampleHistIndex = new int[ numSamples*numSamples ];
+		sampleOffsetX = new float[ numSamples*numSamples ];
+		sampleOffsetY = new float[ numSamples*numSamples ];
 		histogram = new float[ (int)Math.pow(numHistogramBins,numBands) ];
 		value = new float[ numBands ];
 
@@ -125,6 +134,16 @@ public class LocalWeightedHistogramRotRect<T extends ImageBase<T>> {
 		}
 	}
 
+	/**
+	 * Specifies the image which is about to be processed.  Should be called once for each new image before
+	 * {@link #computeHistogram} is called.
+	 *
+	 * @param image Input image
+	 */
+	public void setImage( T image ) {
+		interpolate.setImage(image);
+	}
+
 	/**
 	 * Computes the histogram inside the specified region.  Results are returned by calling {@link #getHistogram()}.
 	 *
@@ -156,10 +175,11 @@ public class LocalWeightedHistogramRotRect<T extends ImageBase<T>> {
 	 * Computes the histogram quickly inside the image
 	 */
 	protected void computeHistogramInside( RectangleRotate_F32 region) {
-		for( int i = 0; i < samplePts.size(); i++ ) {
-			Point2D_F32 p = samplePts.get(i);
+		updateSampleOffsets(region);
 
-			squareToImageSample(p.x, p.y, region);
+		for( int i = 0; i < samplePts.size(); i++ ) {
+			imageX = sampleOffsetX[i] + region.cx;
+			imageY = sampleOffsetY[i] + region.cy;
 
 			interpolate.get_fast(imageX,imageY,value);
 
@@ -174,10 +194,11 @@ public class LocalWeightedHistogramRotRect<T extends ImageBase<T>> {
 	 * Computes the histogram and skips pixels which are outside the image border
 	 */
 	protected void computeHistogramBorder(T image, RectangleRotate_F32 region) {
-		for( int i = 0; i < samplePts.size(); i++ ) {
-			Point2D_F32 p = samplePts.get(i);
+		updateSampleOffsets(region);
 
-			squareToImageSample(p.x, p.y, region);
+		for( int i = 0; i < samplePts.size(); i++ ) {
+			imageX = sampleOffsetX[i] + region.cx;
+			imageY = sampleOffsetY[i] + region.cy;
 
 			// make sure its inside the image
 			if( !BoofMiscOps.checkInside(image, imageX, imageY)) {
@@ -240,6 +261,31 @@ public class LocalWeightedHistogramRotRect<T extends ImageBase<T>> {
 		}
 	}
 
+	/**
+	 * Converts the sample points into pixel offsets from the region's center.  The same region shape is
+	 * sampled repeatedly during mean-shift, so the offsets are only recomputed if the shape has changed.
+	 */
+	protected void updateSampleOffsets( RectangleRotate_F32 region ) {
+		if( region.width == offsetWidth && region.height == offsetHeight && c == offsetC && s == offsetS )
+			return;
+
+		offsetWidth = region.width;
+		offsetHeight = region.height;
+		offsetC = c;
+		offsetS = s;
+
+		for( int i = 0; i < samplePts.size(); i++ ) {
+			Point2D_F32 p = samplePts.get(i);
+
+			// -1 because it starts counting at 0.  otherwise width+1 samples are made
+			float x = p.x*(region.width-1);
+			float y = p.y*(region.height-1);
+
+			sampleOffsetX[i] = x*c - y*s;
+			sampleOffsetY[i] = x*s + y*c;
+		}
+	}
+
 	/**
 	 * Converts a point from square coordinates into image coordinates
 	 */
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.tracker.meanshift;
+
+import boofcv.alg.misc.ImageMiscOps;
+import boofcv.core.image.FactoryGImageMultiBand;
+import boofcv.core.image.GImageMultiBand;
+import boofcv.struct.RectangleRotate_F32;
+import boofcv.struct.image.GrayS32;
+import boofcv.struct.image.ImageBase;
+import georegression.struct.shapes.Rectangle2D_I32;
+
+/**
+ * <p>
+ * Faster variant of {@link LocalWeightedHistogramRotRect} which doesn't interpolate the image.  For each new image
+ * a quantized image is maintained, where the value of each pixel is the index of the histogram bin it belongs to.
+ * The quantized image is computed lazily as pixels are sampled, so pixels which are sampled again by later
+ * mean-shift iterations or scale hypotheses are simply looked up.
+ * </p>
+ *
+ * <p>
+ * A sample's weight is split between the bins of the four pixels around it using bilinear weights.  Rounding
+ * to the nearest pixel instead makes the histogram change in steps as the region is scaled, which the scale
+ * hypotheses can't see, and the estimated size lags behind the target.  The bin used for the mean-shift
+ * step is the one of the nearest pixel.  The histogram is not identical to the interpolated version, which
+ * bins the interpolated pixel value instead.
+ * {@link #setImage} must be called each time a new image is processed, even if it's the same instance.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class LocalWeightedHistogramRotRectQuantized<T extends ImageBase<T>>
+		extends LocalWeightedHistogramRotRect<T>
+{
+	// histogram bin each pixel belongs to.  -1 if it has not been computed yet for the current image
+	private GrayS32 binImage = new GrayS32(1,1);
+	// region inside of binImage which has been modified.  Upper extent is exclusive
+	private Rectangle2D_I32 dirty = new Rectangle2D_I32();
+
+	// the image being processed
+	private T image;
+	// used to read pixel values from the image
+	private GImageMultiBand wrapped;
+	// storage for the value of a pixel
+	private float pixel[];
+
+	/**
+	 * Configures histogram calculation.
+	 *
+	 * @param numSamples Number of points it samples along each axis of the rectangle.
+	 * @param numSigmas Number of standard deviations away the sides will be from the center.  Try 3
+	 * @param numHistogramBins Number of bins in the histogram
+	 * @param numBands Number of bands in the input image
+	 * @param maxPixelValue Maximum value of a pixel across all bands
+	 */
+	public LocalWeightedHistogramRotRectQuantized(int numSamples, double numSigmas,
+												  int numHistogramBins, int numBands,
+												  float maxPixelValue ) {
+		super(numSamples, numSigmas, numHistogramBins, numBands, maxPixelValue, null);
+		pixel = new float[ numBands ];
+		ImageMiscOps.fill(binImage,-1);
+		clearDirty();
+	}
+
+	@Override
+	public void setImage(T image) {
+		this.image = image;
+		if( wrapped == null )
+			wrapped = FactoryGImageMultiBand.create(image.getImageType());
+		wrapped.wrap(image);
+
+		if( binImage.width != image.width || binImage.height != image.height ) {
+			binImage.reshape(image.width, image.height);
+			ImageMiscOps.fill(binImage,-1);
+		} else if( dirty.x1 > dirty.x0 ) {
+			// only erase the part of the image which was touched
+			ImageMiscOps.fillRectangle(binImage,-1,dirty.x0,dirty.y0,dirty.x1-dirty.x0,dirty.y1-dirty.y0);
+		}
+		clearDirty();
+	}
+
+	@Override
+	public void computeHistogram(T image, RectangleRotate_F32 region) {
+		if( image != this.image )
+			setImage(image);
+
+		c = (float)Math.cos( region.theta );
+		s = (float)Math.sin( region.theta );
+
+		for( int i = 0; i < histogram.length; i++ ) {
+			histogram[i] = 0;
+		}
+
+		updateSampleOffsets(region);
+
+		final int N = samplePts.size();
+		for( int i = 0; i < N; i++ ) {
+			float x = sampleOffsetX[i] + region.cx;
+			float y = sampleOffsetY[i] + region.cy;
+
+			// skip samples which would need pixels outside the image
+			if( x < 0 || y < 0 || x >= binImage.width-1 || y >= binImage.height-1 ) {
+				sampleHistIndex[i] = -1;
+				continue;
+			}
+			int px = (int)x;
+			int py = (int)y;
+			float ax = x - px;
+			float ay = y - py;
+
+			int bin00 = lookupBin(px  , py  );
+			int bin10 = lookupBin(px+1, py  );
+			int bin01 = lookupBin(px  , py+1);
+			int bin11 = lookupBin(px+1, py+1);
+
+			float w = weights[i];
+			histogram[bin00] += w*(1-ax)*(1-ay);
+			histogram[bin10] += w*ax*(1-ay);
+			histogram[bin01] += w*(1-ax)*ay;
+			histogram[bin11] += w*ax*ay;
+
+			if( ax < 0.5f )
+				sampleHistIndex[i] = ay < 0.5f ? bin00 : bin01;
+			else
+				sampleHistIndex[i] = ay < 0.5f ? bin10 : bin11;
+		}
+
+		normalizeHistogram();
+	}
+
+	/**
+	 * Returns the histogram bin the pixel belongs to.  If not already known it's computed and saved.
+	 */
+	protected int lookupBin( int x , int y ) {
+		int index = binImage.startIndex + y*binImage.stride + x;
+		int bin = binImage.data[index];
+		if( bin < 0 ) {
+			wrapped.get(x,y,pixel);
+			bin = binImage.data[index] = computeHistogramBin(pixel);
+
+			if( x < dirty.x0 ) dirty.x0 = x;
+			if( y < dirty.y0 ) dirty.y0 = y;
+			if( x >= dirty.x1 ) dirty.x1 = x+1;
+			if( y >= dirty.y1 ) dirty.y1 = y+1;
+		}
+		return bin;
+	}
+
+	private void clearDirty() {
+		dirty.x0 = dirty.y0 = Integer.MAX_VALUE;
+		dirty.x1 = dirty.y1 = Integer.MIN_VALUE;
+	}
+
+	public GrayS32 getBinImage() {
+		return binImage;
+	}
+}
@@ -140,6 +140,7 @@ public class TrackerMeanShiftComaniciu2003<T extends ImageBase<T>> {
 	 */
 	public void initialize( T image , RectangleRotate_F32 initial ) {
 		this.region.set(initial);
+		calcHistogram.setImage(image);
 		calcHistogram.computeHistogram(image,initial);
 		System.arraycopy(calcHistogram.getHistogram(),0,keyHistogram,0,keyHistogram.length);
 
@@ -160,6 +161,8 @@ public class TrackerMeanShiftComaniciu2003<T extends ImageBase<T>> {
 	 * @param image Most recent image in the sequence
 	 */
 	public void track( T image ) {
+		calcHistogram.setImage(image);
+
 		// configure the different regions based on size
 		region0.set( region );
 		region1.set( region );
@@ -40,6 +40,14 @@ import georegression.struct.shapes.RectangleLength2D_I32;
  * </p>
  *
  * <p>
+ * If configured to use integral images, the likelihood is computed once per frame inside a search window
+ * around the previous location and integral images of the likelihood and its first moments are computed.
+ * The weighted centroid of any rectangle inside the window can then be found with a constant number of
+ * operations, making the cost of each mean-shift iteration independent of the target's size.  The window is
+ * recomputed if the target moves outside of it.
+ * </p>
+ *
+ * <p>
  * [1] Yizong Chen, "Mean Shift, Mode Seeking, and Clustering" IEEE Trans. Pattern Analysis and Machine Intelligence,
  * VOL. 17, NO. 8, August 1995<br>
  * </p>
@@ -71,6 +79,17 @@ public class TrackerMeanShiftLikelihood<T extends ImageBase<T>> {
 	// if true the tracker has failed
 	private boolean failed;
 
+	// if true integral images are used to compute the weighted centroid
+	private boolean integral;
+	// region in the image which the integral images were computed inside of.  Upper extent is exclusive
+	private Rectangle2D_I32 window = new Rectangle2D_I32();
+	// integral images of the likelihood, x-coordinate times likelihood, and y-coordinate times likelihood.
+	// Has one more row and column than the window
+	private double integralP[] = new double[0];
+	private double integralX[] = new double[0];
+	private double integralY[] = new double[0];
+	private int integralStride;
+
 	/**
 	 * Configures tracker
 	 *
@@ -80,9 +99,25 @@ public class TrackerMeanShiftLikelihood<T extends ImageBase<T>> {
 	 *                           assumed to be lost
 	 */
 	public TrackerMeanShiftLikelihood(PixelLikelihood<T> targetModel, int maxIterations, float minFractionDrop) {
+		this(targetModel, maxIterations, minFractionDrop, false);
+	}
+
+	/**
+	 * Configures tracker
+	 *
+	 * @param targetModel Target used to model the target's likelihood
+	 * @param maxIterations Maximum number of iterations.  try 20
+	 * @param minFractionDrop If the likelihood drops below its initial value by this fraction the track is
+	 *                           assumed to be lost
+	 * @param integral If true integral images are used so that the cost of an iteration doesn't depend on
+	 *                 the target's size.
+	 */
+	public TrackerMeanShiftLikelihood(PixelLikelihood<T> targetModel, int maxIterations, float minFractionDrop,
+									  boolean integral ) {
 		this.targetModel = targetModel;
 		this.maxIterations = maxIterations;
 		this.minFractionDrop = minFractionDrop;
+		this.integral = integral;
 	}
 
 	/**
@@ -145,6 +180,9 @@ public class TrackerMeanShiftLikelihood<T extends ImageBase<T>> {
 
 		targetModel.setImage(image);
 
+		if( integral )
+			return processIntegral(image);
+
 		// mark the region where the pdf has been modified as dirty
 		dirty.set(location.x0, location.y0, location.x0 + location.width, location.y0 + location.height);
 		// compute the pdf inside the initial rectangle
@@ -220,6 +258,129 @@ public class TrackerMeanShiftLikelihood<T extends ImageBase<T>> {
 		return true;
 	}
 
+	/**
+	 * Mean-shift using integral images to compute the weighted centroid
+	 */
+	protected boolean processIntegral( T image ) {
+		int x0 = location.x0;
+		int y0 = location.y0;
+
+		computeIntegral(image, x0, y0);
+
+		int prevX = x0;
+		int prevY = y0;
+
+		for( int i = 0; i < maxIterations; i++ ) {
+			// the target moved outside of the window the likelihood is known inside of
+			if( x0 < window.x0 || y0 < window.y0 ||
+					x0+location.width > window.x1 || y0+location.height > window.y1 ) {
+				computeIntegral(image, x0, y0);
+			}
+
+			int ix0 = x0-window.x0, iy0 = y0-window.y0;
+			int ix1 = ix0+location.width, iy1 = iy0+location.height;
+
+			double totalPdf = sumRectangle(integralP, ix0, iy0, ix1, iy1);
+
+			// if the target isn't likely to be in view, give up
+			if( totalPdf <= minimumSum ) {
+				failed = true;
+				return false;
+			}
+
+			double sumX = sumRectangle(integralX, ix0, iy0, ix1, iy1);
+			double sumY = sumRectangle(integralY, ix0, iy0, ix1, iy1);
+
+			// Use the new center to find the new top left corner, while rounding to the nearest integer
+			x0 = (int)(sumX/totalPdf-location.width/2+0.5);
+			y0 = (int)(sumY/totalPdf-location.height/2+0.5);
+
+			// make sure it doesn't go outside the image
+			if( x0 < 0 )
+				x0 = 0;
+			else if( x0 >= image.width-location.width )
+				x0 = image.width-location.width;
+
+			if( y0 < 0 )
+				y0 = 0;
+			else if( y0 >= image.height-location.height )
+				y0 = image.height-location.height;
+
+			// see if it has converged
+			if( x0 == prevX && y0 == prevY )
+				break;
+
+			prevX = x0;
+			prevY = y0;
+		}
+
+		location.x0 = x0;
+		location.y0 = y0;
+
+		return true;
+	}
+
+	/**
+	 * Computes the likelihood inside a window around the target and the integral images.  The window extends
+	 * the width and height of the target in each direction.
+	 */
+	protected void computeIntegral( T image , int x0 , int y0 ) {
+		window.x0 = Math.max(0, x0 - location.width);
+		window.y0 = Math.max(0, y0 - location.height);
+		window.x1 = Math.min(image.width, x0 + 2*location.width);
+		window.y1 = Math.min(image.height, y0 + 2*location.height);
+
+		int width = window.x1 - window.x0;
+		int height = window.y1 - window.y0;
+
+		integralStride = width+1;
+		int N = integralStride*(height+1);
+		if( integralP.length < N ) {
+			integralP = new double[N];
+			integralX = new double[N];
+			integralY = new double[N];
+		}
+
+		// first row is all zeros
+		for( int x = 0; x < integralStride; x++ ) {
+			integralP[x] = integralX[x] = integralY[x] = 0;
+		}
+
+		for( int y = 0; y < height; y++ ) {
+			int imageY = y + window.y0;
+			int indexPrev = y*integralStride;
+			int index = indexPrev + integralStride;
+
+			// first column is all zeros
+			integralP[index] = integralX[index] = integralY[index] = 0;
+
+			double rowP = 0, rowX = 0, rowY = 0;
+			for( int x = 0; x < width; x++ ) {
+				int imageX = x + window.x0;
+				double p = targetModel.compute(imageX, imageY);
+
+				rowP += p;
+				rowX += imageX*p;
+				rowY += imageY*p;
+
+				index++; indexPrev++;
+				integralP[index] = integralP[indexPrev] + rowP;
+				integralX[index] = integralX[indexPrev] + rowX;
+				integralY[index] = integralY[indexPrev] + rowY;
+			}
+		}
+	}
+
+	/**
+	 * Sum of the values inside the rectangle using the integral image.  Coordinates are relative to the window
+	 * and the upper extent is exclusive.
+	 */
+	private double sumRectangle( double integral[] , int x0 , int y0 , int x1 , int y1 ) {
+		int row0 = y0*integralStride;
+		int row1 = y1*integralStride;
+		return integral[row1 + x1] - integral[row1 + x0] - integral[row0 + x1] + integral[row0 + x0];
+	}
+
 	/**
 	 * Computes the PDF only inside the image as needed amd update the dirty rectangle
 	 */
@@ -253,6 +414,10 @@ public class TrackerMeanShiftLikelihood<T extends ImageBase<T>> {
 		return location;
 	}
 
+	public boolean isIntegral() {
+		return integral;
+	}
+
 	/**
 	 * If true the tracker has filed
 	 */
@@ -129,12 +129,18 @@ public class FactoryTrackerObjectAlgs {
 		if( config == null )
 			config = new ConfigComaniciu2003();
 
-		InterpolatePixelMB<T> interp = FactoryInterpolation.createPixelMB(0,config.maxPixelValue,
-				config.interpolation, BorderType.EXTENDED,imageType);
+		LocalWeightedHistogramRotRect<T> hist;
 
-		LocalWeightedHistogramRotRect<T> hist =
-				new LocalWeightedHistogramRotRect<>(config.numSamples, config.numSigmas, config.numHistogramBins,
-						imageType.getNumBands(), config.maxPixelValue, interp);
+		if( config.quantizedImage ) {
+			hist = new LocalWeightedHistogramRotRectQuantized<>(config.numSamples, config.numSigmas,
+					config.numHistogramBins, imageType.getNumBands(), config.maxPixelValue);
+		} else {
+			InterpolatePixelMB<T> interp = FactoryInterpolation.createPixelMB(0,config.maxPixelValue,
+					config.interpolation, BorderType.EXTENDED,imageType);
+
+			hist = new LocalWeightedHistogramRotRect<>(config.numSamples, config.numSigmas,
+					config.numHistogramBins, imageType.getNumBands(), config.maxPixelValue, interp);
+		}
 
 		return new TrackerMeanShiftComaniciu2003<>(
 				config.updateHistogram, config.meanShiftMaxIterations, config.meanShiftMinimumChange,
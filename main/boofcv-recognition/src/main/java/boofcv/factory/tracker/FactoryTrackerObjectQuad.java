@@ -111,6 +111,31 @@ public class FactoryTrackerObjectQuad {
 											 double maxPixelValue,
 											 MeanShiftLikelihoodType modelType,
 											 ImageType<T> imageType) {
+		return meanShiftLikelihood(maxIterations, numBins, maxPixelValue, modelType, false, imageType);
+	}
+
+	/**
+	 * Very basic and very fast implementation of mean-shift which uses a fixed sized rectangle for its region.
+	 * Works best when the target is composed of a single color.
+	 *
+	 * @see TrackerMeanShiftLikelihood
+	 *
+	 * @param maxIterations Maximum number of mean-shift iterations.  Try 30.
+	 * @param numBins Number of bins in the histogram color model.  Try 5.
+	 * @param maxPixelValue Maximum number of pixel values.  For 8-bit images this will be 256
+	 * @param modelType Type of color model used.
+	 * @param integral If true integral images are used, making each iteration independent of the target's size.
+	 *                 Recommended for large targets or when tracking many targets.
+	 * @param imageType Type of image
+	 * @return TrackerObjectQuad based on {@link TrackerMeanShiftLikelihood}.
+	 */
+	public static <T extends ImageBase<T>>
+	TrackerObjectQuad<T> meanShiftLikelihood(int maxIterations,
+											 int numBins,
+											 double maxPixelValue,
+											 MeanShiftLikelihoodType modelType,
+											 boolean integral,
+											 ImageType<T> imageType) {
 		PixelLikelihood<T> likelihood;
 
 		switch( modelType ) {
@@ -136,7 +161,7 @@ public class FactoryTrackerObjectQuad {
 		}
 
 		TrackerMeanShiftLikelihood<T> alg =
-				new TrackerMeanShiftLikelihood<>(likelihood, maxIterations, 0.1f);
+				new TrackerMeanShiftLikelihood<>(likelihood, maxIterations, 0.1f, integral);
 
 		return new Msl_to_TrackerObjectQuad<>(alg, likelihood, imageType);
 	}
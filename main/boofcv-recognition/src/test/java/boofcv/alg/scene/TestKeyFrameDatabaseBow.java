@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.scene;
+
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestKeyFrameDatabaseBow {
+
+	Random rand = new Random(234);
+	int numWords = 200;
+
+	FastQueue<KeyFrameDatabaseBow.Match> results = new FastQueue<>(KeyFrameDatabaseBow.Match.class,true);
+
+	/**
+	 * Compare scores and order against a brute force TF-IDF cosine similarity
+	 */
+	@Test
+	public void compareToBruteForce() {
+		KeyFrameDatabaseBow alg = new KeyFrameDatabaseBow(numWords);
+		alg.setRefreshFraction(0);
+
+		List<double[]> frames = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			double[] hist = randomHistogram(20);
+			frames.add(hist);
+			assertEquals(i, alg.addKeyFrame(hist));
+		}
+
+		double[] query = randomHistogram(30);
+		alg.query(query, 10, results);
+		assertEquals(10, results.size);
+
+		double[] expected = bruteForce(frames, query);
+		for (int i = 0; i < results.size; i++) {
+			KeyFrameDatabaseBow.Match m = results.get(i);
+			assertEquals(expected[m.keyFrame], m.score, 1e-5);
+			if( i > 0 )
+				assertTrue(results.get(i-1).score >= m.score);
+		}
+
+		// none of the skipped frames should be better than the worst match
+		double worst = results.get(results.size-1).score;
+		int better = 0;
+		for (int i = 0; i < expected.length; i++) {
+			if( expected[i] > worst + 1e-5 )
+				better++;
+		}
+		assertTrue(better < results.size);
+	}
+
+	/**
+	 * Querying with a key frame which is in the database should return itself with a score of 1
+	 */
+	@Test
+	public void findSelf() {
+		KeyFrameDatabaseBow alg = new KeyFrameDatabaseBow(numWords);
+
+		List<double[]> frames = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			double[] hist = randomHistogram(20);
+			frames.add(hist);
+			alg.addKeyFrame(hist);
+		}
+
+		alg.query(frames.get(17), 3, results);
+		assertEquals(17, results.get(0).keyFrame);
+		assertEquals(1.0, results.get(0).score, 1e-5);
+	}
+
+	/**
+	 * A list of words should produce the same results as a histogram of the word counts
+	 */
+	@Test
+	public void wordsAndHistogramSame() {
+		KeyFrameDatabaseBow algA = new KeyFrameDatabaseBow(numWords);
+		KeyFrameDatabaseBow algB = new KeyFrameDatabaseBow(numWords);
+
+		GrowQueue_I32 words = new GrowQueue_I32();
+		for (int i = 0; i < 40; i++) {
+			double[] hist = randomWords(words);
+			algA.addKeyFrame(words);
+			algB.addKeyFrame(hist);
+		}
+
+		FastQueue<KeyFrameDatabaseBow.Match> resultsB = new FastQueue<>(KeyFrameDatabaseBow.Match.class,true);
+		double[] hist = randomWords(words);
+		algA.query(words, 5, results);
+		algB.query(hist, 5, resultsB);
+
+		assertEquals(results.size, resultsB.size);
+		for (int i = 0; i < results.size; i++) {
+			assertEquals(resultsB.get(i).keyFrame, results.get(i).keyFrame);
+			assertEquals(resultsB.get(i).score, results.get(i).score, 1e-8);
+		}
+	}
+
+	@Test
+	public void ignoreRecent() {
+		KeyFrameDatabaseBow alg = new KeyFrameDatabaseBow(numWords);
+		alg.setIgnoreRecent(5);
+
+		List<double[]> frames = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			double[] hist = randomHistogram(20);
+			frames.add(hist);
+			alg.addKeyFrame(hist);
+		}
+
+		alg.query(frames.get(27), 30, results);
+		assertTrue(results.size > 0);
+		for (int i = 0; i < results.size; i++) {
+			assertTrue(results.get(i).keyFrame < 25);
+		}
+	}
+
+	/**
+	 * Words in every key frame carry no information
+	 */
+	@Test
+	public void commonWordsIgnored() {
+		KeyFrameDatabaseBow alg = new KeyFrameDatabaseBow(numWords);
+
+		double[] hist = new double[numWords];
+		for (int i = 0; i < 10; i++) {
+			hist[0] = 1;
+			hist[1+i] = 1;
+			alg.addKeyFrame(hist);
+			hist[1+i] = 0;
+		}
+
+		// only shares the common word
+		hist[0] = 1;
+		hist[50] = 1;
+		alg.query(hist, 5, results);
+		assertEquals(0, results.size);
+
+		alg.reset();
+		assertEquals(0, alg.size());
+		assertEquals(0, alg.getFrameCount(0));
+	}
+
+	private double[] bruteForce( List<double[]> frames , double[] query ) {
+		int N = frames.size();
+		double[] idf = new double[numWords];
+		for (int w = 0; w < numWords; w++) {
+			int count = 0;
+			for( double[] f : frames ) {
+				if( f[w] != 0 )
+					count++;
+			}
+			idf[w] = count == 0 ? 0 : Math.log(N/(double)count);
+		}
+
+		double[] scores = new double[N];
+		for (int i = 0; i < N; i++) {
+			double[] f = frames.get(i);
+			double dot = 0, normA = 0, normB = 0;
+			for (int w = 0; w < numWords; w++) {
+				double a = (float)f[w]*idf[w];
+				double b = (float)query[w]*idf[w];
+				dot += a*b;
+				normA += a*a;
+				normB += b*b;
+			}
+			scores[i] = dot/Math.sqrt(normA*normB);
+		}
+		return scores;
+	}
+
+	private double[] randomHistogram( int numFeatures ) {
+		double[] hist = new double[numWords];
+		for (int i = 0; i < numFeatures; i++) {
+			hist[rand.nextInt(numWords)] += 1.0/numFeatures;
+		}
+		return hist;
+	}
+
+	private double[] randomWords( GrowQueue_I32 words ) {
+		double[] hist = new double[numWords];
+		words.reset();
+		for (int i = 0; i < 25; i++) {
+			int w = rand.nextInt(numWords);
+			words.add(w);
+			hist[w] += 1;
+		}
+		return hist;
+	}
+}
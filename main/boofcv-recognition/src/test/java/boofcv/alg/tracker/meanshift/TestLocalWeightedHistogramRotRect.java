@@ -112,6 +112,33 @@ public class TestLocalWeightedHistogramRotRect {
 			assertEquals(histIndex[i], alg.getSampleHistIndex()[i], 1e-4);
 	}
 
+	/**
+	 * Sample offsets are cached between calls.  Make sure changing the region's shape produces the same
+	 * results as a freshly constructed instance
+	 */
+	@Test
+	public void computeHistogram_changeShape() {
+		Planar<GrayF32> image = new Planar<>(GrayF32.class,40,50,3);
+		InterpolatePixelMB interp = FactoryInterpolation.createPixelPL(FactoryInterpolation.bilinearPixelS(
+				GrayF32.class, BorderType.EXTENDED));
+		GImageMiscOps.fillUniform(image,rand,0,100);
+
+		RectangleRotate_F32 rectA = new RectangleRotate_F32(20,25,10,15,0);
+		RectangleRotate_F32 rectB = new RectangleRotate_F32(21,24,12,11,0.4f);
+
+		LocalWeightedHistogramRotRect alg = new LocalWeightedHistogramRotRect(10,3,12,3,255,interp);
+		alg.computeHistogram(image, rectA);
+		alg.computeHistogram(image, rectB);
+
+		LocalWeightedHistogramRotRect expected = new LocalWeightedHistogramRotRect(10,3,12,3,255,interp);
+		expected.computeHistogram(image, rectB);
+
+		for( int i = 0; i < alg.histogram.length; i++ )
+			assertEquals(expected.histogram[i], alg.histogram[i], 1e-6f);
+		for( int i = 0; i < alg.sampleHistIndex.length; i++ )
+			assertEquals(expected.sampleHistIndex[i], alg.sampleHistIndex[i]);
+	}
+
 	/**
 	 * When given a region entirely inside, both inside and outside should produce identical solutions
 	 */
@@ -306,6 +333,11 @@ public class TestLocalWeightedHistogramRotRect {
 
 		@Override
 		public void get_fast(float x, float y, float[] values) {}
+
+		@Override
+		public InterpolatePixelMB copy() {
+			return null;
+		}
 	}
 
 }
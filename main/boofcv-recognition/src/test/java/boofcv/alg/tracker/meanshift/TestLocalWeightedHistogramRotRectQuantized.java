@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.tracker.meanshift;
+
+import boofcv.alg.misc.GImageMiscOps;
+import boofcv.struct.RectangleRotate_F32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.Planar;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestLocalWeightedHistogramRotRectQuantized {
+
+	Random rand = new Random(234);
+
+	/**
+	 * Compare against a histogram computed by reading the pixels around each sample directly
+	 */
+	@Test
+	public void computeHistogram() {
+		Planar<GrayU8> image = new Planar<>(GrayU8.class,40,50,3);
+		GImageMiscOps.fillUniform(image,rand,0,255);
+
+		RectangleRotate_F32 rect = new RectangleRotate_F32(20,25,10,15,0.3f);
+		LocalWeightedHistogramRotRectQuantized<Planar<GrayU8>> alg =
+				new LocalWeightedHistogramRotRectQuantized<>(10,3,12,3,255);
+
+		alg.setImage(image);
+		alg.computeHistogram(image, rect);
+
+		checkHistogram(image, rect, alg);
+
+		// second call should hit the cached bins and produce the same results
+		alg.computeHistogram(image, rect);
+		checkHistogram(image, rect, alg);
+	}
+
+	/**
+	 * Samples outside the image should be skipped
+	 */
+	@Test
+	public void computeHistogram_border() {
+		Planar<GrayU8> image = new Planar<>(GrayU8.class,40,50,3);
+		GImageMiscOps.fillUniform(image,rand,0,255);
+
+		RectangleRotate_F32 rect = new RectangleRotate_F32(2,3,10,15,0);
+		LocalWeightedHistogramRotRectQuantized<Planar<GrayU8>> alg =
+				new LocalWeightedHistogramRotRectQuantized<>(10,3,12,3,255);
+
+		alg.setImage(image);
+		alg.computeHistogram(image, rect);
+
+		int numOutside = 0;
+		for( int i = 0; i < alg.sampleHistIndex.length; i++ ) {
+			if( alg.sampleHistIndex[i] == -1 )
+				numOutside++;
+		}
+		assertTrue(numOutside > 0);
+		checkHistogram(image, rect, alg);
+	}
+
+	/**
+	 * Changing the image should invalidate the cached bins
+	 */
+	@Test
+	public void setImage_invalidate() {
+		Planar<GrayU8> image = new Planar<>(GrayU8.class,40,50,3);
+		GImageMiscOps.fillUniform(image,rand,0,255);
+
+		RectangleRotate_F32 rect = new RectangleRotate_F32(20,25,10,15,0);
+		LocalWeightedHistogramRotRectQuantized<Planar<GrayU8>> alg =
+				new LocalWeightedHistogramRotRectQuantized<>(10,3,12,3,255);
+
+		alg.setImage(image);
+		alg.computeHistogram(image, rect);
+
+		// same instance, new contents
+		GImageMiscOps.fillUniform(image,rand,0,255);
+		alg.setImage(image);
+		alg.computeHistogram(image, rect);
+
+		checkHistogram(image, rect, alg);
+	}
+
+	private void checkHistogram( Planar<GrayU8> image , RectangleRotate_F32 rect ,
+								 LocalWeightedHistogramRotRectQuantized alg ) {
+		float c = (float)Math.cos(rect.theta);
+		float s = (float)Math.sin(rect.theta);
+
+		float expected[] = new float[alg.histogram.length];
+		float value[] = new float[3];
+		float total = 0;
+		for( int i = 0; i < alg.samplePts.size(); i++ ) {
+			float x = alg.sampleOffsetX[i] + rect.cx;
+			float y = alg.sampleOffsetY[i] + rect.cy;
+
+			if( x < 0 || y < 0 || x >= image.width-1 || y >= image.height-1 ) {
+				assertEquals(-1, alg.sampleHistIndex[i]);
+				continue;
+			}
+
+			int x0 = (int)x, y0 = (int)y;
+			float ax = x-x0, ay = y-y0;
+
+			int bin00 = bin(image, x0, y0, value, alg);
+			int bin10 = bin(image, x0+1, y0, value, alg);
+			int bin01 = bin(image, x0, y0+1, value, alg);
+			int bin11 = bin(image, x0+1, y0+1, value, alg);
+
+			// mean-shift uses the nearest pixel
+			int nearest = bin(image, (int)(x+0.5f), (int)(y+0.5f), value, alg);
+			assertEquals(nearest, alg.sampleHistIndex[i]);
+
+			float w = alg.weights[i];
+			expected[bin00] += w*(1-ax)*(1-ay);
+			expected[bin10] += w*ax*(1-ay);
+			expected[bin01] += w*(1-ax)*ay;
+			expected[bin11] += w*ax*ay;
+			total += w;
+		}
+
+		for( int i = 0; i < expected.length; i++ ) {
+			assertEquals(expected[i]/total, alg.histogram[i], 1e-4f);
+		}
+
+		// sanity check the offsets
+		assertEquals(c, alg.c, 1e-6f);
+		assertEquals(s, alg.s, 1e-6f);
+	}
+
+	private int bin( Planar<GrayU8> image , int x , int y , float value[] ,
+					 LocalWeightedHistogramRotRectQuantized alg ) {
+		for( int band = 0; band < 3; band++ ) {
+			value[band] = image.getBand(band).get(x,y);
+		}
+		return alg.computeHistogramBin(value);
+	}
+}
@@ -150,4 +150,15 @@ public class WrapVisOdomDualTrackPnP<T extends ImageGray<T>>
 	public ImageType<T> getImageType() {
 		return ImageType.single(imageType);
 	}
+
+	/**
+	 * Stops background threads, e.g. the one used by sliding window bundle adjustment.  Call when done.
+	 */
+	public void close() {
+		alg.close();
+	}
+
+	public VisOdomDualTrackPnP<T, ?> getAlgorithm() {
+		return alg;
+	}
 }
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.depth;
+
+import boofcv.alg.InputSanityCheck;
+import boofcv.alg.distort.LensDistortionOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import boofcv.struct.PackedPointCloud_F32;
+import boofcv.struct.calib.CameraPinholeRadial;
+import boofcv.struct.distort.Point2Transform2_F64;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU16;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+import boofcv.struct.image.Planar;
+import georegression.struct.point.Point2D_F64;
+import org.ddogleg.struct.GrowQueue_F32;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.ejml.data.DMatrixRMaj;
+
+/**
+ * <p>
+ * Creates a point cloud from a depth image or a disparity image and writes it into a {@link PackedPointCloud_F32}.
+ * Unlike {@link VisualDepthOps} no object is created for each point and after the first frame no memory is
+ * declared unless the number of points grows.  The normalized image coordinate of every pixel is computed once
+ * and saved in a look up table, so lens distortion is only removed when the camera changes.
+ * </p>
+ *
+ * <p>
+ * Images are processed in two passes.  First the number of valid points in each row is counted, which gives the
+ * location in the output array each row starts at.  Then the rows are converted.  Both passes can be split into
+ * bands of rows and processed concurrently.  Points are always in the same order as they would be if processed
+ * sequentially.  Optionally only every N-th row and column is sampled.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class PointCloudBuilder {
+
+	// has it been configured and is it processing a depth image or a disparity image
+	private boolean configured = false;
+	private boolean depthMode;
+
+	// depth image parameters
+	private CameraPinholeRadial depthParam;
+	private float depthScale;
+
+	// disparity image parameters
+	private float baseline;
+	private double fx,fy,cx,cy;
+	private int minDisparity,rangeDisparity;
+
+	// normalized image coordinate of each pixel.  Interleaved x,y
+	private GrowQueue_F32 table = new GrowQueue_F32();
+	private int tableWidth,tableHeight;
+	private boolean tableValid = false;
+
+	// only every N-th pixel is sampled along each axis
+	private int stride = 1;
+
+	// should rows be processed using multiple threads
+	private boolean concurrent = false;
+
+	// index of the first point in each sampled row.  One more element than the number of rows
+	private GrowQueue_I32 rowStart = new GrowQueue_I32();
+
+	// images being processed
+	private GrayU16 depth;
+	private ImageGray disparity;
+	private Planar<GrayU8> rgb;
+	private PackedPointCloud_F32 output;
+
+	private CountTask countTask = new CountTask();
+	private FillTask fillTask = new FillTask();
+
+	/**
+	 * Specifies the depth camera.  Must be called before {@link #processDepth}.
+	 *
+	 * @param param Intrinsic camera parameters for depth image
+	 * @param depthScale Converts depth image values into output units.  1 for millimeters with a Kinect
+	 */
+	public void configureDepth( CameraPinholeRadial param , float depthScale ) {
+		this.depthParam = param;
+		this.depthScale = depthScale;
+		depthMode = true;
+		configured = true;
+		tableValid = false;
+	}
+
+	/**
+	 * Specifies the rectified stereo camera.  Must be called before {@link #processDisparity}.
+	 *
+	 * @param baseline Stereo baseline (world units)
+	 * @param K Intrinsic camera calibration matrix of rectified camera
+	 * @param minDisparity Minimum disparity that's computed (pixels)
+	 * @param maxDisparity Maximum disparity that's computed (pixels)
+	 */
+	public void configureDisparity( double baseline , DMatrixRMaj K , int minDisparity , int maxDisparity ) {
+		this.baseline = (float)baseline;
+		this.fx = K.get(0,0);
+		this.fy = K.get(1,1);
+		this.cx = K.get(0,2);
+		this.cy = K.get(1,2);
+		this.minDisparity = minDisparity;
+		this.rangeDisparity = maxDisparity-minDisparity;
+		depthMode = false;
+		configured = true;
+		tableValid = false;
+	}
+
+	/**
+	 * Converts a depth image into a point cloud.  Pixels with a value of zero are skipped.
+	 *
+	 * @param depth Depth image
+	 * @param rgb Color image that's aligned to the depth.  If null then no color is saved.
+	 * @param output (Output) point cloud
+	 */
+	public void processDepth( GrayU16 depth , Planar<GrayU8> rgb , PackedPointCloud_F32 output ) {
+		if( !configured || !depthMode )
+			throw new IllegalArgumentException("Must call configureDepth() first");
+		if( depth.width != depthParam.width || depth.height != depthParam.height )
+			throw new IllegalArgumentException("Depth image doesn't match the camera's shape");
+
+		this.depth = depth;
+		process(depth, rgb, output);
+		this.depth = null;
+	}
+
+	/**
+	 * Converts a disparity image into a point cloud.  Points will be in the rectified left camera's
+	 * reference frame.  Pixels with an invalid disparity are skipped.
+	 *
+	 * @param disparity Disparity image.  {@link GrayU8} or {@link GrayF32}
+	 * @param rgb Color image that's aligned to the rectified left image.  If null then no color is saved.
+	 * @param output (Output) point cloud
+	 */
+	public void processDisparity( ImageGray disparity , Planar<GrayU8> rgb , PackedPointCloud_F32 output ) {
+		if( !configured || depthMode )
+			throw new IllegalArgumentException("Must call configureDisparity() first");
+		if( !(disparity instanceof GrayU8 || disparity instanceof GrayF32) )
+			throw new IllegalArgumentException("Disparity must be GrayU8 or GrayF32");
+
+		this.disparity = disparity;
+		process(disparity, rgb, output);
+		this.disparity = null;
+	}
+
+	private void process( ImageGray image , Planar<GrayU8> rgb , PackedPointCloud_F32 output ) {
+		if( rgb != null ) {
+			InputSanityCheck.checkSameShape(image, rgb);
+			if( rgb.getNumBands() != 3 )
+				throw new IllegalArgumentException("Color image must have 3 bands");
+		}
+		checkTable(image.width, image.height);
+
+		this.rgb = rgb;
+		this.output = output;
+
+		int numRows = (image.height + stride - 1)/stride;
+		rowStart.resize(numRows+1);
+		rowStart.data[0] = 0;
+
+		// count the points in each row and find where each row starts
+		runRows(numRows, countTask);
+		for (int i = 0; i < numRows; i++) {
+			rowStart.data[i+1] += rowStart.data[i];
+		}
+
+		output.resize(rowStart.data[numRows], rgb != null);
+		runRows(numRows, fillTask);
+
+		this.rgb = null;
+		this.output = null;
+	}
+
+	private void runRows( int numRows , IntRangeTask task ) {
+		if( concurrent ) {
+			BoofConcurrency.loopBlocks(0, numRows, task);
+		} else {
+			task.run(0, numRows);
+		}
+	}
+
+	/**
+	 * Computes the look up table from pixel to normalized image coordinates if needed
+	 */
+	private void checkTable( int width , int height ) {
+		if( tableValid && tableWidth == width && tableHeight == height )
+			return;
+
+		table.resize(width*height*2);
+		tableWidth = width;
+		tableHeight = height;
+
+		if( depthMode ) {
+			Point2Transform2_F64 p2n = LensDistortionOps.narrow(depthParam).undistort_F64(true,false);
+			Point2D_F64 n = new Point2D_F64();
+			int index = 0;
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					p2n.compute(x,y,n);
+					table.data[index++] = (float)n.x;
+					table.data[index++] = (float)n.y;
+				}
+			}
+		} else {
+			int index = 0;
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					table.data[index++] = (float)((x - cx)/fx);
+					table.data[index++] = (float)((y - cy)/fy);
+				}
+			}
+		}
+		tableValid = true;
+	}
+
+	/**
+	 * Returns the distance along the z-axis of the pixel or a value &le; 0 if it's not valid
+	 */
+	private float computeZ( int x , int y ) {
+		if( depthMode ) {
+			int mm = depth.data[depth.startIndex + y*depth.stride + x] & 0xFFFF;
+			return mm*depthScale;
+		} else if( disparity instanceof GrayU8 ) {
+			GrayU8 d = (GrayU8)disparity;
+			int value = d.data[d.startIndex + y*d.stride + x] & 0xFF;
+			if( value >= rangeDisparity )
+				return 0;
+			value += minDisparity;
+			if( value == 0 )
+				return 0;
+			return (float)(baseline*fx/value);
+		} else {
+			GrayF32 d = (GrayF32)disparity;
+			float value = d.data[d.startIndex + y*d.stride + x];
+			if( !(value < rangeDisparity) )
+				return 0;
+			value += minDisparity;
+			if( value <= 0 )
+				return 0;
+			return (float)(baseline*fx/value);
+		}
+	}
+
+	/**
+	 * Counts the number of valid points in each row
+	 */
+	private class CountTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			for (int row = minInclusive; row < maxExclusive; row++) {
+				int y = row*stride;
+				int count = 0;
+				for (int x = 0; x < tableWidth; x += stride) {
+					if( computeZ(x,y) > 0 )
+						count++;
+				}
+				rowStart.data[row+1] = count;
+			}
+		}
+	}
+
+	/**
+	 * Computes the 3D location of valid points in each row
+	 */
+	private class FillTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			float[] xyz = output.xyz.data;
+			int[] colors = output.rgb.data;
+
+			for (int row = minInclusive; row < maxExclusive; row++) {
+				int y = row*stride;
+				int point = rowStart.data[row];
+				for (int x = 0; x < tableWidth; x += stride) {
+					float z = computeZ(x,y);
+					if( !(z > 0) )
+						continue;
+
+					int indexTable = (y*tableWidth + x)*2;
+					xyz[point*3]   = table.data[indexTable]*z;
+					xyz[point*3+1] = table.data[indexTable+1]*z;
+					xyz[point*3+2] = z;
+
+					if( rgb != null ) {
+						int r = rgb.getBand(0).unsafe_get(x,y);
+						int g = rgb.getBand(1).unsafe_get(x,y);
+						int b = rgb.getBand(2).unsafe_get(x,y);
+						colors[point] = r << 16 | g << 8 | b;
+					}
+					point++;
+				}
+			}
+		}
+	}
+
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Only every N-th row and column is sampled.  1 for every pixel.
+	 */
+	public void setStride(int stride) {
+		if( stride < 1 )
+			throw new IllegalArgumentException("Stride must be at least 1");
+		this.stride = stride;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * If true then bands of rows are processed using multiple threads.  Results are identical either way.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+}
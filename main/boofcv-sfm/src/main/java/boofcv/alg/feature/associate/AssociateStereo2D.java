@@ -20,11 +20,14 @@ package boofcv.alg.feature.associate;
 
 import boofcv.abst.feature.associate.AssociateDescription2D;
 import boofcv.abst.feature.associate.ScoreAssociation;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.struct.feature.AssociatedIndex;
 import boofcv.struct.feature.MatchScoreType;
 import boofcv.struct.feature.TupleDesc;
 import georegression.struct.point.Point2D_F64;
 import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
 import org.ddogleg.struct.GrowQueue_I32;
 
 /**
@@ -32,6 +35,13 @@ import org.ddogleg.struct.GrowQueue_I32;
  * coordinates are rectified and associations are only considered if the two observations are within tolerance
  * of each other along the y-axis and that the left observation's x-coordinate is greater than the right.
  *
+ * <p>
+ * Features in the right image are placed into buckets of rectified rows so that each left feature is only compared
+ * against right features in nearby rows, instead of every feature in the image.  Left features can optionally be
+ * scored in multiple threads, in which case the {@link ScoreAssociation} must be thread safe.  The matches are the
+ * same as when every pair is compared, in a single thread or not.
+ * </p>
+ *
  * @author Peter Abeles
  */
 public class AssociateStereo2D<Desc extends TupleDesc>
@@ -58,6 +68,22 @@ public class AssociateStereo2D<Desc extends TupleDesc>
 	private FastQueue<Desc> descriptionsLeft;
 	private FastQueue<Desc> descriptionsRight;
 
+	// right features sorted into buckets by their rectified y-coordinate.  Features in bucket i are stored in
+	// bucketFeatures from index bucketStart[i] to bucketStart[i+1]
+	private GrowQueue_I32 bucketStart = new GrowQueue_I32();
+	private GrowQueue_I32 bucketFeatures = new GrowQueue_I32();
+	// y-coordinate of the first bucket and height of each bucket
+	private double bucketY0;
+	private double bucketHeight;
+
+	// best match for each left feature
+	private GrowQueue_I32 bestIndexes = new GrowQueue_I32();
+	private GrowQueue_F64 bestScores = new GrowQueue_F64();
+
+	// if true left features are scored in multiple threads
+	private boolean concurrent = false;
+	private AssociateTask task = new AssociateTask();
+
 	public AssociateStereo2D( ScoreAssociation<Desc> scorer , double locationTolerance , Class<Desc> descType )
 	{
 		super(locationTolerance,locationTolerance);
@@ -93,6 +119,64 @@ public class AssociateStereo2D<Desc extends TupleDesc>
 			rightImageToRect.compute(orig.x,orig.y,rectified);
 		}
 		this.descriptionsRight = descriptions;
+		createBuckets();
+	}
+
+	/**
+	 * Sorts right features into buckets by row using a counting sort.  Buckets are at least as tall as the
+	 * tolerance along y, so a left feature only needs to look at three of them.
+	 */
+	private void createBuckets() {
+		bucketStart.reset();
+		bucketFeatures.resize(locationRight.size);
+		if( locationRight.size == 0 )
+			return;
+
+		double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for( int i = 0; i < locationRight.size; i++ ) {
+			double y = locationRight.data[i].y;
+			if( y < minY ) minY = y;
+			if( y > maxY ) maxY = y;
+		}
+
+		// the number of buckets is no more than the number of features
+		bucketY0 = minY;
+		bucketHeight = Math.max(toleranceY, (maxY-minY)/locationRight.size);
+		if( bucketHeight <= 0 )
+			bucketHeight = 1;
+		int numBuckets = Math.min(locationRight.size, (int)((maxY-minY)/bucketHeight)+1);
+
+		bucketStart.resize(numBuckets+1);
+		int[] start = bucketStart.data;
+		for( int i = 0; i <= numBuckets; i++ ) {
+			start[i] = 0;
+		}
+		for( int i = 0; i < locationRight.size; i++ ) {
+			start[bucket(locationRight.data[i].y)+1]++;
+		}
+		for( int i = 0; i < numBuckets; i++ ) {
+			start[i+1] += start[i];
+		}
+		// fill in order, keeping the features in each bucket in ascending order
+		for( int i = 0; i < locationRight.size; i++ ) {
+			int b = bucket(locationRight.data[i].y);
+			bucketFeatures.data[start[b]++] = i;
+		}
+		// start was shifted to the end of each bucket while filling
+		for( int i = numBuckets; i > 0; i-- ) {
+			start[i] = start[i-1];
+		}
+		start[0] = 0;
+	}
+
+	/**
+	 * Bucket which contains the y-coordinate, clipped to the valid range
+	 */
+	private int bucket( double y ) {
+		int b = (int)((y-bucketY0)/bucketHeight);
+		if( b < 0 )
+			return 0;
+		return Math.min(b, bucketStart.size-2);
 	}
 
 	@Override
@@ -101,29 +185,62 @@ public class AssociateStereo2D<Desc extends TupleDesc>
 		matches.reset();
 		unassociatedSrc.reset();
 
+		bestIndexes.resize(locationLeft.size);
+		bestScores.resize(locationLeft.size);
+
+		if( concurrent ) {
+			BoofConcurrency.loopBlocks(0, locationLeft.size, 50, task);
+		} else {
+			task.run(0, locationLeft.size);
+		}
+
 		for( int i = 0; i < locationLeft.size; i++ ) {
-			Point2D_F64 left = locationLeft.get(i);
-			Desc descLeft = descriptionsLeft.get(i);
+			int bestIndex = bestIndexes.data[i];
+			if( bestIndex >= 0 ) {
+				matches.grow().setAssociation(i,bestIndex,bestScores.data[i]);
+			} else {
+				unassociatedSrc.push(i);
+			}
+		}
+	}
+
+	/**
+	 * Finds the best match for each left feature in a range.  Only modifies the elements of bestIndexes and
+	 * bestScores which are in the range.
+	 */
+	private class AssociateTask implements IntRangeTask {
+		@Override
+		public void run(int start, int end) {
+			for( int i = start; i < end; i++ ) {
+				Point2D_F64 left = locationLeft.get(i);
+				Desc descLeft = descriptionsLeft.get(i);
 
-			int bestIndex = -1;
-			double bestScore = scoreThreshold;
+				int bestIndex = -1;
+				double bestScore = scoreThreshold;
 
-			for( int j = 0; j < locationRight.size; j++ ) {
-				Point2D_F64 right = locationRight.get(j);
+				if( bucketStart.size > 0 ) {
+					int b0 = bucket(left.y - toleranceY);
+					int b1 = bucket(left.y + toleranceY);
+					int idx0 = bucketStart.data[b0];
+					int idx1 = bucketStart.data[b1+1];
 
-				if( checkRectified(left,right) ) {
-					double dist = scorer.score(descLeft, descriptionsRight.get(j));
-					if( dist < bestScore ) {
-						bestScore = dist;
-						bestIndex = j;
+					for( int k = idx0; k < idx1; k++ ) {
+						int j = bucketFeatures.data[k];
+						Point2D_F64 right = locationRight.get(j);
+
+						if( checkRectified(left,right) ) {
+							double dist = scorer.score(descLeft, descriptionsRight.get(j));
+							// ties go to the lowest index, which is what a scan through all features would select
+							if( dist < bestScore || (dist == bestScore && j < bestIndex) ) {
+								bestScore = dist;
+								bestIndex = j;
+							}
+						}
 					}
 				}
-			}
 
-			if( bestIndex >= 0 ) {
-				matches.grow().setAssociation(i,bestIndex,bestScore);
-			} else {
-				unassociatedSrc.push(i);
+				bestIndexes.data[i] = bestIndex;
+				bestScores.data[i] = bestScore;
 			}
 		}
 	}
@@ -162,4 +279,15 @@ public class AssociateStereo2D<Desc extends TupleDesc>
 	public boolean uniqueDestination() {
 		return false;
 	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * If true then left features are scored in multiple threads.  The scorer must be thread safe.
+	 */
+	public void setConcurrent( boolean concurrent ) {
+		this.concurrent = concurrent;
+	}
 }
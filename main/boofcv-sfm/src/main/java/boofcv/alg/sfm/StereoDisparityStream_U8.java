@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm;
+
+import boofcv.alg.feature.disparity.DisparitySelect;
+import boofcv.alg.feature.disparity.impl.UtilDisparityScore;
+import boofcv.alg.geo.PerspectiveOps;
+import boofcv.alg.geo.RectifyImageOps;
+import boofcv.alg.geo.rectify.RectifyCalibrated;
+import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.core.image.border.BorderType;
+import boofcv.factory.interpolate.FactoryInterpolation;
+import boofcv.struct.calib.CameraPinholeRadial;
+import boofcv.struct.calib.StereoParameters;
+import boofcv.struct.distort.Point2Transform2_F32;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageGray;
+import georegression.struct.point.Point2D_F32;
+import georegression.struct.se.Se3_F64;
+import org.ejml.data.DMatrixRMaj;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.ops.ConvertMatrixData;
+
+/**
+ * <p>
+ * Computes the disparity between two unrectified stereo images without creating rectified images.  Rectification
+ * and disparity calculation are fused into a single pass down the image.  Each row is rectified from both input
+ * images into a single row buffer using precomputed remap tables, then scored and added to the rolling window of
+ * the rectangular SAD region, the same as {@link boofcv.alg.feature.disparity.impl.ImplDisparityScoreSadRect_U8}.
+ * As soon as the window has all the rows it needs the disparity of its center row is selected and
+ * passed to the {@link RowListener}, so processing can start on a row long before the whole image is done.
+ * </p>
+ *
+ * <p>
+ * The output is identical to rectifying each image with {@link RectifyImageOps#rectifyImage} using
+ * {@link BorderType#SKIP} and then computing the disparity.  Rectified pixels which lie outside the input
+ * image are set to zero.  Rows along the top and bottom border are not modified in the disparity image.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class StereoDisparityStream_U8<DI extends ImageGray<DI>> {
+
+	// the minimum disparity that it will check
+	private int minDisparity;
+	// maximum allowed image disparity
+	private int maxDisparity;
+	// difference between max and min
+	private int rangeDisparity;
+	// radius and size of the rectangular region
+	private int radiusX, radiusY;
+	private int regionWidth, regionHeight;
+
+	// Computes disparity from scores
+	private DisparitySelect<int[], DI> computeDisparity;
+
+	// shape of the rectified images
+	private int width, height;
+	// location in the input image of each rectified pixel.  (x,y) interleaved, row-major
+	private float mapLeft[] = new float[0];
+	private float mapRight[] = new float[0];
+
+	// interpolates the input images.  Same as what RectifyImageOps uses
+	private InterpolatePixelS<GrayU8> interpLeft = FactoryInterpolation.bilinearPixelS(GrayU8.class, BorderType.EXTENDED);
+	private InterpolatePixelS<GrayU8> interpRight = FactoryInterpolation.bilinearPixelS(GrayU8.class, BorderType.EXTENDED);
+
+	// the current rectified row in each image
+	private GrayU8 rowLeft = new GrayU8(1,1);
+	private GrayU8 rowRight = new GrayU8(1,1);
+
+	// rolling window of horizontal scores for the last regionHeight rows
+	private int horizontalScore[][];
+	// sum of the horizontal scores in the window
+	private int verticalScore[];
+	// stores the local scores for the width of the region
+	private int elementScore[];
+	private int lengthHorizontal;
+
+	// rectification matrices for left and right image
+	private DMatrixRMaj rect1, rect2;
+	// calibration matrix for both cameras after rectification
+	private DMatrixRMaj rectK;
+	// rotation matrix for both rectified cameras
+	private DMatrixRMaj rectR;
+
+	// is notified when a row of disparity is complete
+	private RowListener<DI> listener;
+
+	/**
+	 * Configures disparity calculation.
+	 *
+	 * @param minDisparity Minimum disparity that it will check. Must be &ge; 0 and < maxDisparity
+	 * @param maxDisparity Maximum disparity that it will calculate. Must be &gt; 0
+	 * @param regionRadiusX Radius of the rectangular region along x-axis.
+	 * @param regionRadiusY Radius of the rectangular region along y-axis.
+	 * @param computeDisparity Selects the disparity from the scores
+	 */
+	public StereoDisparityStream_U8( int minDisparity , int maxDisparity ,
+									 int regionRadiusX , int regionRadiusY ,
+									 DisparitySelect<int[], DI> computeDisparity ) {
+		if( maxDisparity <= 0 )
+			throw new IllegalArgumentException("Max disparity must be greater than zero");
+		if( minDisparity < 0 || minDisparity >= maxDisparity )
+			throw new IllegalArgumentException("Min disparity must be >= 0 and < maxDisparity");
+
+		this.minDisparity = minDisparity;
+		this.maxDisparity = maxDisparity;
+		this.rangeDisparity = maxDisparity - minDisparity;
+		this.radiusX = regionRadiusX;
+		this.radiusY = regionRadiusY;
+		this.regionWidth = regionRadiusX*2+1;
+		this.regionHeight = regionRadiusY*2+1;
+		this.computeDisparity = computeDisparity;
+	}
+
+	/**
+	 * Computes the rectification from the stereo calibration, in the same way as {@link StereoProcessingBase},
+	 * and builds the remap tables.
+	 *
+	 * @param stereoParam stereo parameters
+	 */
+	public void setCalibration( StereoParameters stereoParam ) {
+		CameraPinholeRadial left = stereoParam.getLeft();
+		CameraPinholeRadial right = stereoParam.getRight();
+
+		RectifyCalibrated rectifyAlg = RectifyImageOps.createCalibrated();
+		Se3_F64 leftToRight = stereoParam.getRightToLeft().invert(null);
+
+		DMatrixRMaj K1 = PerspectiveOps.calibrationMatrix(left, (DMatrixRMaj)null);
+		DMatrixRMaj K2 = PerspectiveOps.calibrationMatrix(right, (DMatrixRMaj)null);
+
+		rectifyAlg.process(K1,new Se3_F64(),K2,leftToRight);
+
+		rect1 = rectifyAlg.getRect1();
+		rect2 = rectifyAlg.getRect2();
+		rectK = rectifyAlg.getCalibrationMatrix();
+		rectR = rectifyAlg.getRectifiedRotation();
+
+		FMatrixRMaj rect1_F32 = new FMatrixRMaj(3,3);
+		FMatrixRMaj rect2_F32 = new FMatrixRMaj(3,3);
+
+		ConvertMatrixData.convert(rect1,rect1_F32);
+		ConvertMatrixData.convert(rect2,rect2_F32);
+
+		setRectification(left.getWidth(), left.getHeight(),
+				RectifyImageOps.transformRectToPixel(left, rect1_F32),
+				RectifyImageOps.transformRectToPixel(right, rect2_F32));
+	}
+
+	/**
+	 * Builds the remap tables from transforms which go from rectified pixels to input pixels.
+	 *
+	 * @param width Width of the rectified images
+	 * @param height Height of the rectified images
+	 * @param rectToLeft Transform from left rectified pixel to left input pixel
+	 * @param rectToRight Transform from right rectified pixel to right input pixel
+	 */
+	public void setRectification( int width , int height ,
+								  Point2Transform2_F32 rectToLeft , Point2Transform2_F32 rectToRight ) {
+		if( maxDisparity > width-2*radiusX )
+			throw new IllegalArgumentException(
+					"The maximum disparity is too large for this image size: max size "+(width-2*radiusX));
+
+		this.width = width;
+		this.height = height;
+
+		if( mapLeft.length < width*height*2 ) {
+			mapLeft = new float[width*height*2];
+			mapRight = new float[width*height*2];
+		}
+		computeMap(rectToLeft, mapLeft);
+		computeMap(rectToRight, mapRight);
+
+		rowLeft.reshape(width,1);
+		rowRight.reshape(width,1);
+
+		lengthHorizontal = width*rangeDisparity;
+		if( horizontalScore == null || verticalScore.length < lengthHorizontal || elementScore.length < width ) {
+			horizontalScore = new int[regionHeight][lengthHorizontal];
+			verticalScore = new int[lengthHorizontal];
+			elementScore = new int[width];
+		}
+	}
+
+	private void computeMap( Point2Transform2_F32 rectToPixel , float map[] ) {
+		Point2D_F32 p = new Point2D_F32();
+		int index = 0;
+		for( int y = 0; y < height; y++ ) {
+			for( int x = 0; x < width; x++ ) {
+				rectToPixel.compute(x, y, p);
+				map[index++] = p.x;
+				map[index++] = p.y;
+			}
+		}
+	}
+
+	/**
+	 * Computes the disparity between the two input images.
+	 *
+	 * @param left Left input image.  Not rectified.
+	 * @param right Right input image.  Not rectified.
+	 * @param disparity (Output) Disparity in the left rectified image.  Must be the same shape as the rectified images.
+	 */
+	public void process( GrayU8 left , GrayU8 right , DI disparity ) {
+		if( disparity.width != width || disparity.height != height )
+			throw new IllegalArgumentException("Disparity image must be the same shape as the rectified images");
+
+		interpLeft.setImage(left);
+		interpRight.setImage(right);
+
+		computeDisparity.configure(disparity,minDisparity,maxDisparity,radiusX);
+
+		for( int row = 0; row < height; row++ ) {
+			rectifyRow(interpLeft, left, mapLeft, row, rowLeft);
+			rectifyRow(interpRight, right, mapRight, row, rowRight);
+
+			int scores[] = horizontalScore[row%regionHeight];
+
+			// remove the row which is leaving the window
+			if( row >= regionHeight ) {
+				for( int i = 0; i < lengthHorizontal; i++ ) {
+					verticalScore[i] -= scores[i];
+				}
+			}
+
+			UtilDisparityScore.computeScoreRow(rowLeft, rowRight, 0, scores,
+					minDisparity,maxDisparity,regionWidth,elementScore);
+
+			if( row < regionHeight-1 )
+				continue;
+
+			if( row == regionHeight-1 ) {
+				// sum up the rows in the initial window in the same order as the image based implementation
+				for( int i = 0; i < lengthHorizontal; i++ ) {
+					int sum = 0;
+					for( int j = 0; j < regionHeight; j++ ) {
+						sum += horizontalScore[j][i];
+					}
+					verticalScore[i] = sum;
+				}
+			} else {
+				for( int i = 0; i < lengthHorizontal; i++ ) {
+					verticalScore[i] += scores[i];
+				}
+			}
+
+			int center = row - radiusY;
+			computeDisparity.process(center, verticalScore);
+			if( listener != null )
+				listener.finishedRow(center, disparity);
+		}
+	}
+
+	/**
+	 * Renders a single rectified row.  Pixels outside the input image are set to zero.
+	 */
+	private static void rectifyRow( InterpolatePixelS<GrayU8> interp , GrayU8 input ,
+									float map[] , int row , GrayU8 output ) {
+		float maxWidth = input.width-1;
+		float maxHeight = input.height-1;
+
+		int indexMap = row*output.width*2;
+		for( int x = 0; x < output.width; x++ , indexMap += 2 ) {
+			float sx = map[indexMap];
+			float sy = map[indexMap+1];
+
+			if( sx >= 0 && sx <= maxWidth && sy >= 0 && sy <= maxHeight ) {
+				output.data[x] = (byte)interp.get(sx, sy);
+			} else {
+				output.data[x] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Is notified each time the disparity of a row is complete.
+	 */
+	public interface RowListener<DI extends ImageGray<DI>> {
+		/**
+		 * Called after the disparity of 'row' has been written.  Rows are passed in increasing order.
+		 *
+		 * @param row The row which is complete
+		 * @param disparity The disparity image being computed
+		 */
+		void finishedRow( int row , DI disparity );
+	}
+
+	public void setListener( RowListener<DI> listener ) {
+		this.listener = listener;
+	}
+
+	public RowListener<DI> getListener() {
+		return listener;
+	}
+
+	/**
+	 * Intrinsic camera calibration matrix for both cameras after rectification
+	 */
+	public DMatrixRMaj getRectK() {
+		return rectK;
+	}
+
+	/**
+	 * Rotation from the left camera to the rectified cameras
+	 */
+	public DMatrixRMaj getRectR() {
+		return rectR;
+	}
+
+	public DMatrixRMaj getRect1() {
+		return rect1;
+	}
+
+	public DMatrixRMaj getRect2() {
+		return rect2;
+	}
+
+	public int getBorderX() {
+		return radiusX;
+	}
+
+	public int getBorderY() {
+		return radiusY;
+	}
+
+	public int getMinDisparity() {
+		return minDisparity;
+	}
+
+	public int getMaxDisparity() {
+		return maxDisparity;
+	}
+}
@@ -20,6 +20,7 @@ package boofcv.alg.sfm.d2;
 
 import boofcv.abst.feature.tracker.PointTrack;
 import boofcv.abst.feature.tracker.PointTracker;
+import boofcv.concurrency.BoofConcurrency;
 import boofcv.struct.geo.AssociatedPair;
 import boofcv.struct.image.ImageBase;
 import georegression.struct.InvertibleTransform;
@@ -28,11 +29,26 @@ import org.ddogleg.fitting.modelset.ModelMatcher;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 
 /**
+ * <p>
  * Computes the transform from the first image in a sequence to the current frame. Keyframe based algorithm.
  * Whenever a new keyframe is selected by the user all tracks are dropped and new ones spawned.  No logic is
  * contained for selecting key frames and relies on the user for selecting them.
+ * </p>
+ *
+ * <p>
+ * Spawning tracks requires detecting features, which can take several times longer than tracking.  If a spare
+ * tracker is provided, see {@link #setSpareTracker}, then the expensive part of {@link #changeKeyFrame()} is
+ * done in a background thread.  The keyframe is still changed immediately, the image is copied, and the spare
+ * tracker spawns tracks in the copy in the background.  Until it's done {@link #process} keeps using the existing
+ * tracks.  In the first call to {@link #process} after it's done, the spare tracker tracks its new tracks into the
+ * current frame at the same time the existing tracks are processed, then the two trackers are swapped.  Detection
+ * never happens inside of {@link #process}, but a frame which swaps trackers does two tracking passes in parallel.
+ * If there are no active tracks when the keyframe is changed, e.g. the first frame, tracks are spawned immediately.
+ * Call {@link #close()} to stop the background thread.
+ * </p>
  *
  * @author Peter Abeles
  * @param <I> Input image type
@@ -63,6 +79,25 @@ public class ImageMotionPointTrackerKey<I extends ImageBase<I>, IT extends Inver
 	// if the current frame is a keyframe or not
 	protected boolean keyFrame;
 
+	// (Optional) tracker used to spawn tracks while the other tracker is processing the next frame
+	protected PointTracker<I> spareTracker;
+	// the most recently processed frame
+	protected I currentFrame;
+	// copy of the keyframe that the spare tracker spawns tracks in
+	protected I keyFrameImage;
+	// number of frames processed when the keyframe being spawned in was selected
+	protected int keyFrameCount;
+	// true if the trackers were swapped during the most recent call to process
+	protected boolean asyncSpawned = false;
+	// result from processing the active tracker in another thread
+	private boolean success;
+
+	// thread which the spare tracker spawns tracks in
+	private ExecutorService executor;
+	// spawns tracks with the spare tracker.  null if tracks aren't being spawned in the background
+	private Future<?> spawnJob;
+	private SpawnTask spawnTask = new SpawnTask();
+
 	/**
 	 * Specify algorithms to use internally.  Each of these classes must work with
 	 * compatible data structures.
@@ -98,18 +133,90 @@ public class ImageMotionPointTrackerKey<I extends ImageBase<I>, IT extends Inver
 	public void reset() {
 		totalFramesProcessed = 0;
 		tracker.dropAllTracks();
+		discardSpawn();
+		if( spareTracker != null )
+			spareTracker.reset();
+		asyncSpawned = false;
 		resetTransforms();
 	}
 
 	/**
-	 * Processes the next frame in the sequence.
+	 * Processes the next frame in the sequence.  If tracks are being spawned in the background and they are ready
+	 * then they are switched to, otherwise it doesn't wait for them.
 	 *
 	 * @param frame Next frame in the video sequence
 	 * @return true if motion was estimated and false if no motion was estimated
 	 */
-	public boolean process( I frame ) {
+	public boolean process( final I frame ) {
 		keyFrame = false;
+		asyncSpawned = false;
+		currentFrame = frame;
+
+		// keep on using the current tracks until the spare tracker is done spawning
+		if( spawnJob == null || !spawnJob.isDone() )
+			return estimateMotion(frame);
+		waitForSpawn();
+
+		// the new tracks are in the keyframe.  Track them into this frame while the current tracks are processed
+		BoofConcurrency.invokeAll(new Runnable() {
+			@Override
+			public void run() {
+				success = estimateMotion(frame);
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				spareTracker.process(frame);
+			}
+		});
 
+		// the new tracks haven't had a chance to be inliers yet
+		for( PointTrack t : spareTracker.getAllTracks(null) ) {
+			AssociatedPairTrack p = t.getCookie();
+			if( p != null )
+				p.lastUsed = totalFramesProcessed;
+		}
+
+		// switch to the new tracks.  They were spawned in the keyframe so the transforms don't need to change
+		PointTracker<I> tmp = tracker;
+		tracker = spareTracker;
+		spareTracker = tmp;
+		spareTracker.dropAllTracks();
+		asyncSpawned = true;
+
+		return success;
+	}
+
+	/**
+	 * Blocks until the spare tracker has finished spawning tracks
+	 */
+	private void waitForSpawn() {
+		try {
+			spawnJob.get();
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch( ExecutionException e ) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			spawnJob = null;
+		}
+	}
+
+	/**
+	 * If tracks are being spawned in the background, waits for it to finish and throws away the results
+	 */
+	private void discardSpawn() {
+		if( spawnJob == null )
+			return;
+		waitForSpawn();
+		spareTracker.dropAllTracks();
+	}
+
+	/**
+	 * Updates the motion using the current set of tracks
+	 */
+	private boolean estimateMotion( I frame ) {
 		// update the feature tracker
 		tracker.process(frame);
 
@@ -165,9 +272,16 @@ public class ImageMotionPointTrackerKey<I extends ImageBase<I>, IT extends Inver
 
 	/**
 	 * Change the current frame into the keyframe. p1 location of existing tracks is set to
-	 * their current location and new tracks are spawned.  Reference frame transformations are also updated
+	 * their current location and new tracks are spawned.  Reference frame transformations are also updated.
+	 * If a spare tracker has been provided and there are active tracks then the current frame is copied
+	 * and new tracks are spawned in it in a background thread.  If tracks are still being spawned for the previous
+	 * keyframe then it waits for them and discards them.  Must be called before the image passed to
+	 * {@link #process} is modified.
 	 */
 	public void changeKeyFrame() {
+		// tracks being spawned in the previous keyframe are not relative to the new keyframe
+		discardSpawn();
+
 		// drop all inactive tracks since their location is unknown in the current frame
 		List<PointTrack> inactive = tracker.getInactiveTracks(null);
 		for( PointTrack l : inactive ) {
@@ -182,7 +296,28 @@ public class ImageMotionPointTrackerKey<I extends ImageBase<I>, IT extends Inver
 			p.lastUsed = totalFramesProcessed;
 		}
 
-		tracker.spawnTracks();
+		if( spareTracker != null && executor != null && currentFrame != null && !active.isEmpty() ) {
+			if( keyFrameImage == null )
+				keyFrameImage = currentFrame.createSameShape();
+			keyFrameImage.setTo(currentFrame);
+			keyFrameCount = totalFramesProcessed;
+			spawnJob = executor.submit(spawnTask);
+		} else {
+			tracker.spawnTracks();
+			setupSpawned(tracker, totalFramesProcessed);
+		}
+
+		worldToKey.set(worldToCurr);
+		keyToCurr.reset();
+
+		keyFrame = true;
+	}
+
+	/**
+	 * Creates the pair information for tracks which were just spawned.  Their keyframe location is where they
+	 * were spawned.
+	 */
+	private static void setupSpawned( PointTracker<?> tracker , int frameCount ) {
 		List<PointTrack> spawned = tracker.getNewTracks(null);
 		for( PointTrack l : spawned ) {
 			AssociatedPairTrack p = l.getCookie();
@@ -193,13 +328,8 @@ public class ImageMotionPointTrackerKey<I extends ImageBase<I>, IT extends Inver
 				p.p2 = l;
 			}
 			p.p1.set(l);
-			p.lastUsed = totalFramesProcessed;
+			p.lastUsed = frameCount;
 		}
-
-		worldToKey.set(worldToCurr);
-		keyToCurr.reset();
-
-		keyFrame = true;
 	}
 
 	public void resetTransforms() {
@@ -236,7 +366,72 @@ public class ImageMotionPointTrackerKey<I extends ImageBase<I>, IT extends Inver
 		return keyFrame;
 	}
 
+	/**
+	 * True if tracks spawned in the background were switched to during the most recent call to {@link #process}
+	 */
+	public boolean isAsyncSpawned() {
+		return asyncSpawned;
+	}
+
+	/**
+	 * True if tracks are being spawned in the background and haven't been switched to yet
+	 */
+	public boolean isSpawnPending() {
+		return spawnJob != null;
+	}
+
+	public PointTracker<I> getSpareTracker() {
+		return spareTracker;
+	}
+
+	/**
+	 * Provides a second tracker which will be used to spawn tracks asynchronously.  Both trackers must be configured
+	 * the same way since they are swapped each time new tracks are spawned.  If null then tracks are spawned
+	 * immediately.
+	 *
+	 * @param spareTracker Second tracker or null
+	 */
+	public void setSpareTracker(PointTracker<I> spareTracker) {
+		discardSpawn();
+		this.spareTracker = spareTracker;
+		if( spareTracker != null && executor == null ) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SpawnTracks");
+					// don't prevent the application from exiting if close() isn't called
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stops the thread used to spawn tracks in the background.  Call when done with this class.
+	 */
+	public void close() {
+		if( executor != null ) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		spawnJob = null;
+	}
+
 	public Class<IT> getModelType() {
 		return (Class<IT>)keyToCurr.getClass();
 	}
+
+	/**
+	 * Spawns tracks in the copy of the keyframe using the spare tracker
+	 */
+	private class SpawnTask implements Runnable {
+		@Override
+		public void run() {
+			spareTracker.reset();
+			spareTracker.process(keyFrameImage);
+			spareTracker.spawnTracks();
+			setupSpawned(spareTracker, keyFrameCount);
+		}
+	}
 }
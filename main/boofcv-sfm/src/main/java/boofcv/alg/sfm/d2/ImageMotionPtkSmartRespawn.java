@@ -35,6 +35,11 @@ import java.util.List;
  * threshold, and when the area covered by the inliers decreases by too much.  Prunes clusters of closely packed points.
  * These tend to be non-informative and use up computational resources.
  *
+ * If tracks are spawned asynchronously, see {@link ImageMotionPointTrackerKey#setSpareTracker}, then the
+ * relative thresholds are computed from the new tracks after they have been swapped in and close tracks
+ * are not pruned since they are about to be replaced.  The keyframe isn't changed again while tracks are
+ * still being spawned.
+ *
  * @author Peter Abeles
  */
 public class ImageMotionPtkSmartRespawn<I extends ImageBase<I>, IT extends InvertibleTransform> {
@@ -86,7 +91,16 @@ public class ImageMotionPtkSmartRespawn<I extends ImageBase<I>, IT extends Inver
 	}
 
 	public boolean process(I input) {
-		if( !motion.process(input) )
+		boolean success = motion.process(input);
+
+		// tracks spawned in the previous frame were just switched to.  Wait until they have been used
+		// once before computing the relative thresholds
+		if( motion.isAsyncSpawned() ) {
+			previousWasKeyFrame = true;
+			return success;
+		}
+
+		if( !success )
 			return false;
 
 		boolean setKeyFrame = false;
@@ -119,10 +133,15 @@ public class ImageMotionPtkSmartRespawn<I extends ImageBase<I>, IT extends Inver
 			}
 		}
 
+		// new tracks are already on their way
+		if( motion.isSpawnPending() )
+			setKeyFrame = false;
+
 		if(setKeyFrame) {
 			// use the new keyframe as an opportunity to discard points that are too close.  commonly occurs
 			// when zooming out and points cluster together
-			pruneClosePoints(tracker, input.width, input.height);
+			if( motion.getSpareTracker() == null )
+				pruneClosePoints(tracker, input.width, input.height);
 			motion.changeKeyFrame();
 			previousWasKeyFrame = true;
 		}
@@ -21,15 +21,23 @@ package boofcv.alg.sfm.d2;
 import boofcv.abst.sfm.d2.ImageMotion2D;
 import boofcv.alg.distort.DistortImageOps;
 import boofcv.alg.distort.ImageDistort;
+import boofcv.alg.interpolate.InterpolatePixel;
 import boofcv.alg.misc.GImageMiscOps;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import boofcv.factory.distort.FactoryDistort;
 import boofcv.struct.distort.PixelTransform2_F32;
 import boofcv.struct.image.ImageBase;
+import boofcv.struct.image.TiledImage;
 import georegression.metric.Area2D_F64;
 import georegression.struct.InvertibleTransform;
 import georegression.struct.homography.Homography2D_F64;
 import georegression.struct.point.Point2D_F64;
 import georegression.struct.shapes.RectangleLength2D_I32;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Stitches together sequences of images using {@link ImageMotion2D}, typically used for image stabilization
  * and creating mosaics.  Internally any motion model in the Homogeneous family can be used.  For convenience,
@@ -43,6 +51,11 @@ import georegression.struct.shapes.RectangleLength2D_I32;
  * jump larger than the user specified threshold is detected then {@link #process(boofcv.struct.image.ImageBase)}
  * will return false.
  *
+ * Instead of a single fixed size image the mosaic can be rendered into a {@link TiledImage}, see
+ * {@link #setTiledMosaic}.  The mosaic is then unbounded, tiles are only declared when the view first reaches them,
+ * and old tiles can be evicted to disk.  Only the tiles which the current frame overlaps are rendered and
+ * each tile can be rendered in a different thread.  The stitch image size is ignored in this mode.
+ *
  * @author Peter Abeles
  */
 
@@ -86,6 +99,20 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 	// first time that it has been called
 	private boolean first = true;
 
+	// If not null then the mosaic is rendered into tiles instead of stitchedImage
+	private TiledImage<I> tiled;
+	// used to create a distortion for each thread when rendering tiles
+	private InterpolatePixel<I> tiledInterp;
+	// should tiles be rendered concurrently
+	private boolean concurrent = false;
+	// tiles which the current frame overlaps
+	private List<TiledImage.Tile<I>> renderTiles = new ArrayList<>();
+	// bounds of the current frame in world coordinates.  upper extent is exclusive
+	private int frameX0,frameY0,frameX1,frameY1;
+	private Corners frameCorners = new Corners();
+	private final List<TileWorker> idleWorkers = new ArrayList<>();
+	private TileTask tileTask = new TileTask();
+
 	/**
 	 * Provides internal algorithms and tuning parameters.
 	 *
@@ -123,6 +150,23 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 		this.heightStitch = heightStitch;
 	}
 
+	/**
+	 * Renders the mosaic into a tiled image instead of a fixed size stitch image.  Must be called before any images
+	 * are processed.  The tiled image's pixel coordinates are the stitch image coordinates.
+	 *
+	 * @param tiled Storage for the mosaic.  If null then the stitch image is used.
+	 * @param interp Interpolation used to render the tiles.  A copy is made for each thread.
+	 */
+	public void setTiledMosaic( TiledImage<I> tiled , InterpolatePixel<I> interp ) {
+		if( tiled != null && interp == null )
+			throw new IllegalArgumentException("Interpolation must be specified");
+		this.tiled = tiled;
+		this.tiledInterp = interp;
+		synchronized( idleWorkers ) {
+			idleWorkers.clear();
+		}
+	}
+
 	/**
 	 * Estimates the image motion and updates stitched image.  If it is unable to estimate the motion then false
 	 * is returned and the stitched image is left unmodified. If false is returned then in most situations it is
@@ -132,7 +176,7 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 	 * @return True if the stitched image is updated and false if it failed and was not
 	 */
 	public boolean process( I image ) {
-		if( stitchedImage == null ) {
+		if( tiled == null && stitchedImage == null ) {
 			stitchedImage = (I)image.createNew(widthStitch, heightStitch);
 			workImage = (I)image.createNew(widthStitch, heightStitch);
 		}
@@ -153,6 +197,8 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 	public void reset() {
 		if( stitchedImage != null )
 			GImageMiscOps.fill(stitchedImage, 0);
+		if( tiled != null )
+			tiled.reset();
 		motion.reset();
 		worldToCurr.reset();
 		first = true;
@@ -174,8 +220,7 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 
 			double area = computeArea(corners);
 
-			double change = Math.max(area/previousArea,previousArea/area)-1;
-			if( change > maxJumpFraction ) {
+			if( isLargeChange(area) ) {
 				return true;
 			}
 			previousArea = area;
@@ -185,6 +230,14 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 
 	}
 
+	/**
+	 * Returns true if the view area has changed by more than the allowed fraction since the previous frame
+	 */
+	private boolean isLargeChange( double area ) {
+		double change = Math.max(area/previousArea,previousArea/area)-1;
+		return change > maxJumpFraction;
+	}
+
 	private double computeArea( Corners c ) {
 		return Area2D_F64.triangle(c.p0,c.p1,c.p2) +
 				Area2D_F64.triangle(c.p0,c.p2,c.p3);
@@ -198,6 +251,11 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 	private void update(I image) {
 		computeCurrToInit_PixelTran();
 
+		if( tiled != null ) {
+			updateTiled(image);
+			return;
+		}
+
 		// only process a cropped portion to speed up processing
 		RectangleLength2D_I32 box = DistortImageOps.boundBox(image.width, image.height,
 				stitchedImage.width, stitchedImage.height, tranCurrToWorld);
@@ -211,6 +269,139 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 		distorter.apply(image, stitchedImage,x0,y0,x1,y1);
 	}
 
+	/**
+	 * Renders the image into every tile it overlaps
+	 */
+	private void updateTiled(I image) {
+		getImageCorners(image.width, image.height, frameCorners);
+
+		double minX = Math.min(Math.min(frameCorners.p0.x, frameCorners.p1.x), Math.min(frameCorners.p2.x, frameCorners.p3.x));
+		double maxX = Math.max(Math.max(frameCorners.p0.x, frameCorners.p1.x), Math.max(frameCorners.p2.x, frameCorners.p3.x));
+		double minY = Math.min(Math.min(frameCorners.p0.y, frameCorners.p1.y), Math.min(frameCorners.p2.y, frameCorners.p3.y));
+		double maxY = Math.max(Math.max(frameCorners.p0.y, frameCorners.p1.y), Math.max(frameCorners.p2.y, frameCorners.p3.y));
+
+		frameX0 = (int)Math.floor(minX);
+		frameY0 = (int)Math.floor(minY);
+		frameX1 = (int)Math.ceil(maxX)+1;
+		frameY1 = (int)Math.ceil(maxY)+1;
+
+		// a bad motion estimate could touch a huge number of tiles.  Skip the frame since it will be rejected
+		if( !first && isLargeChange(computeArea(frameCorners)) )
+			return;
+
+		int tileSize = tiled.getTileSize();
+		int col0 = floorDiv(frameX0, tileSize);
+		int row0 = floorDiv(frameY0, tileSize);
+		int col1 = floorDiv(frameX1-1, tileSize);
+		int row1 = floorDiv(frameY1-1, tileSize);
+
+		// request all the tiles first since the tiled image isn't thread safe
+		tiled.markFrame();
+		renderTiles.clear();
+		for (int row = row0; row <= row1; row++) {
+			for (int col = col0; col <= col1; col++) {
+				renderTiles.add(tiled.getTile(col,row));
+			}
+		}
+
+		tileTask.image = image;
+		tileTask.first = concurrent ? tranWorldToCurr.copyConcurrent() : null;
+		if( tileTask.first != null ) {
+			BoofConcurrency.loopBlocks(0, renderTiles.size(), tileTask);
+		} else {
+			tileTask.run(0, renderTiles.size());
+		}
+		tileTask.image = null;
+		tileTask.first = null;
+	}
+
+	private static int floorDiv( int a , int b ) {
+		int d = a/b;
+		return (a % b != 0 && (a < 0) != (b < 0)) ? d - 1 : d;
+	}
+
+	private TileWorker acquireWorker() {
+		synchronized( idleWorkers ) {
+			if( idleWorkers.isEmpty() )
+				return new TileWorker();
+			return idleWorkers.remove(idleWorkers.size()-1);
+		}
+	}
+
+	private void releaseWorker( TileWorker worker ) {
+		synchronized( idleWorkers ) {
+			idleWorkers.add(worker);
+		}
+	}
+
+	/**
+	 * Renders a range of tiles
+	 */
+	private class TileTask implements IntRangeTask {
+		I image;
+		// transform for the first block, created when checking if it can be copied.  null if single threaded
+		PixelTransform2_F32 first;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			TileWorker w = acquireWorker();
+			try {
+				if( first == null )
+					w.offset.worldToCurr = tranWorldToCurr;
+				else
+					w.offset.worldToCurr = minInclusive == 0 ? first : tranWorldToCurr.copyConcurrent();
+
+				int tileSize = tiled.getTileSize();
+				for (int i = minInclusive; i < maxExclusive; i++) {
+					TiledImage.Tile<I> tile = renderTiles.get(i);
+					int originX = tile.getCol()*tileSize;
+					int originY = tile.getRow()*tileSize;
+
+					// part of the tile that the frame overlaps
+					int x0 = Math.max(0, frameX0-originX);
+					int y0 = Math.max(0, frameY0-originY);
+					int x1 = Math.min(tileSize, frameX1-originX);
+					int y1 = Math.min(tileSize, frameY1-originY);
+
+					w.offset.offsetX = originX;
+					w.offset.offsetY = originY;
+					w.distorter.setModel(w.offset);
+					w.distorter.apply(image, tile.getImage(), x0, y0, x1, y1);
+				}
+			} finally {
+				releaseWorker(w);
+			}
+		}
+	}
+
+	/**
+	 * Distortion and transform used by one thread at a time
+	 */
+	private class TileWorker {
+		ImageDistort<I,I> distorter;
+		TileToCurrent offset = new TileToCurrent();
+
+		public TileWorker() {
+			distorter = FactoryDistort.distort(false, tiledInterp.copy(), tiled.getImageType());
+			distorter.setRenderAll(false);
+		}
+	}
+
+	/**
+	 * Converts pixels in a tile into world pixels then applies the world to current transform
+	 */
+	private static class TileToCurrent extends PixelTransform2_F32 {
+		PixelTransform2_F32 worldToCurr;
+		int offsetX, offsetY;
+
+		@Override
+		public void compute(int x, int y) {
+			worldToCurr.compute(x+offsetX, y+offsetY);
+			distX = worldToCurr.distX;
+			distY = worldToCurr.distY;
+		}
+	}
+
 	private void computeCurrToInit_PixelTran() {
 		IT initToCurr = motion.getFirstToCurrent();
 		worldToInit.concat(initToCurr, worldToCurr);
@@ -228,6 +419,15 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 	 * Must be called after {@link #process(boofcv.struct.image.ImageBase)}.
 	 */
 	public void setOriginToCurrent() {
+		if( tiled != null ) {
+			// the mosaic is unbounded so it doesn't need to be moved.  Only the motion's reference frame changes
+			worldToInit.set(worldToCurr);
+			motion.setToFirst();
+			first = true;
+			computeCurrToInit_PixelTran();
+			return;
+		}
+
 		IT currToWorld = (IT)worldToCurr.invert(null);
 		IT oldWorldToNewWorld = (IT) worldToInit.concat(currToWorld,null);
 
@@ -260,6 +460,8 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 	 * @param newToOldStitch (Optional) Transform from new stitch image pixels to old stick pixels.  Can be null.
 	 */
 	public void resizeStitchImage( int widthStitch, int heightStitch , IT newToOldStitch ) {
+		if( tiled != null )
+			throw new IllegalArgumentException("The tiled mosaic is unbounded and can't be resized");
 
 		// copy the old image into the new one
 		workImage.reshape(widthStitch,heightStitch);
@@ -331,6 +533,21 @@ public class StitchingFromMotion2D<I extends ImageBase<I>, IT extends Invertible
 		return motion;
 	}
 
+	public TiledImage<I> getTiledMosaic() {
+		return tiled;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * If true then tiles in a tiled mosaic are rendered using multiple threads
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
 	public static class Corners {
 		public Point2D_F64 p0 = new Point2D_F64();
 		public Point2D_F64 p1 = new Point2D_F64();
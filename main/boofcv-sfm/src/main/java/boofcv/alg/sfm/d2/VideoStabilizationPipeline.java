@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm.d2;
+
+import boofcv.abst.sfm.d2.ImageMotion2D;
+import boofcv.alg.distort.ImageDistort;
+import boofcv.alg.distort.PixelTransformHomography_F32;
+import boofcv.alg.filter.misc.AverageDownSampleOps;
+import boofcv.struct.image.ImageBase;
+import georegression.struct.InvertibleTransform;
+import georegression.struct.homography.Homography2D_F64;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Stabilizes a video stream with a fixed latency.  Frames are pushed in one at a time and the stabilized frames
+ * are passed to a {@link Listener} in the same order.  Processing is split into three stages:
+ * </p>
+ * <ol>
+ * <li>Image motion is estimated on a proxy image which has been down sampled by an integer factor.  Motion
+ * estimation is usually the most expensive part and doesn't need full resolution.  The found motion is then scaled
+ * back up to the full resolution image.</li>
+ * <li>The camera path is smoothed with a Gaussian weighted average of the motion over a window which extends
+ * {@link #getSmoothRadius() radius} frames into the past and future.  A frame is only output once the future
+ * half of its window has been seen, so output lags input by that many frames.</li>
+ * <li>Full resolution frames are warped in a background thread, with rows rendered concurrently, while the caller
+ * continues with the next frame's motion.  If the warping falls more than {@link #getMaxPending()} frames behind,
+ * new frames are dropped instead of being queued up.  Latency is thus bounded and dropped frames are counted.</li>
+ * </ol>
+ *
+ * <p>
+ * If motion estimation fails the motion model is reset and the path continues from the last known location, assuming
+ * no motion between the two frames.  Each failure is counted.  Call {@link #finish()} at the end of the stream to
+ * output frames still in the smoothing window and {@link #close()} to stop the background thread.
+ * </p>
+ *
+ * <p>
+ * NOTE: The listener is called from the background thread.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class VideoStabilizationPipeline<I extends ImageBase<I>, IT extends InvertibleTransform> {
+
+	// estimates motion between frames
+	private ImageMotion2D<I,IT> motion;
+	// converts the motion model into a homography
+	private StitchingTransform<IT> stitchTransform;
+	// warps full resolution images.  Only used by the warping thread
+	private ImageDistort<I,I> distorter;
+	private PixelTransformHomography_F32 warpTransform = new PixelTransformHomography_F32();
+
+	// motion is estimated on an image down sampled by this factor
+	private int proxyScale;
+	// number of frames on each side of a frame used to smooth the path
+	private int smoothRadius;
+	// standard deviation of the Gaussian smoothing weights, in frames
+	private double smoothSigma;
+	// maximum number of frames waiting to be warped
+	private int maxPending;
+
+	private Listener<I> listener;
+
+	// down sampled input image
+	private I proxy;
+	// stabilized image.  Only used by the warping thread
+	private I stabilized;
+	// copies of input images which can be recycled.  Access is synchronized on the list
+	private final List<I> unused = new ArrayList<>();
+
+	// frames in the smoothing window, ordered by index.  Frames before 'next' have been output already and are kept
+	// around since they are in the window of later frames
+	private List<Frame<I>> window = new ArrayList<>();
+	private List<Frame<I>> unusedFrames = new ArrayList<>();
+	// index in window of the next frame to be output
+	private int next;
+
+	// start of the current motion segment in the world frame.  A new segment starts after a motion fault
+	private Homography2D_F64 worldToSegment = new Homography2D_F64();
+	// world to previous frame
+	private Homography2D_F64 worldToPrev = new Homography2D_F64();
+	// storage
+	private Homography2D_F64 proxyToCurr = new Homography2D_F64();
+	private Homography2D_F64 segmentToCurr = new Homography2D_F64();
+	private Homography2D_F64 currToWorld = new Homography2D_F64();
+	private Homography2D_F64 currToOther = new Homography2D_F64();
+	private Homography2D_F64 currToSmooth = new Homography2D_F64();
+
+	// thread which images are warped in.  Only one thread so that the output is in order
+	private ExecutorService executor;
+	// the most recently submitted warp
+	private Future<?> lastWarp;
+	// number of frames submitted for warping but not yet finished
+	private final AtomicInteger pending = new AtomicInteger();
+	// first exception thrown by the warping thread
+	private volatile RuntimeException failure;
+
+	// statistics
+	private int framesIn;
+	private final AtomicInteger framesOutput = new AtomicInteger();
+	private int framesDropped;
+	private int motionFaults;
+
+	/**
+	 * Specifies internal algorithms and configuration
+	 *
+	 * @param motion Estimates motion between frames.  Processes the proxy images.
+	 * @param stitchTransform Converts the motion model into a homography
+	 * @param distorter Warps the full resolution images.  Should render all pixels and can be concurrent.
+	 * @param proxyScale Motion is estimated on images down sampled by this factor.  1 = full resolution.
+	 * @param smoothRadius Number of frames before and after a frame used to smooth its motion.  Output is delayed by
+	 *                     this many frames. 0 = no smoothing
+	 * @param maxPending Maximum number of frames waiting to be warped before new frames are dropped. &ge; 1
+	 */
+	public VideoStabilizationPipeline(ImageMotion2D<I, IT> motion, StitchingTransform<IT> stitchTransform,
+									  ImageDistort<I, I> distorter,
+									  int proxyScale, int smoothRadius, int maxPending) {
+		if( proxyScale < 1 )
+			throw new IllegalArgumentException("proxyScale must be >= 1");
+		if( smoothRadius < 0 )
+			throw new IllegalArgumentException("smoothRadius must be >= 0");
+		if( maxPending < 1 )
+			throw new IllegalArgumentException("maxPending must be >= 1");
+
+		this.motion = motion;
+		this.stitchTransform = stitchTransform;
+		this.distorter = distorter;
+		this.proxyScale = proxyScale;
+		this.smoothRadius = smoothRadius;
+		this.smoothSigma = Math.max(1.0, smoothRadius/2.0);
+		this.maxPending = maxPending;
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "VideoStabilization");
+				// don't prevent the application from exiting if close() isn't called
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Processes the next frame in the sequence.  The stabilized version of an earlier frame might be passed to
+	 * the listener while this is running.
+	 *
+	 * @param frame Next frame.  Not modified and can be modified once this function returns.
+	 */
+	public void process( I frame ) {
+		checkFailure();
+		if( listener == null )
+			throw new IllegalArgumentException("Must specify a listener first");
+
+		Frame<I> f = unusedFrames.isEmpty() ? new Frame<I>() : unusedFrames.remove(unusedFrames.size()-1);
+		f.index = framesIn++;
+		estimateMotion(frame, f.worldToCurr);
+		f.image = copy(frame);
+		window.add(f);
+
+		// output frames once their window has been filled
+		while( window.size()-1-next >= smoothRadius ) {
+			outputNext();
+		}
+	}
+
+	/**
+	 * Outputs all the frames which are still in the smoothing window and blocks until they have been passed
+	 * to the listener.  Near the end of the stream the window is truncated.  After this is called the next frame
+	 * will be processed as the start of a new sequence.
+	 */
+	public void finish() {
+		while( next < window.size() ) {
+			outputNext();
+		}
+		waitForWarps();
+
+		for( Frame<I> f : window ) {
+			unusedFrames.add(f);
+		}
+		window.clear();
+		next = 0;
+		motion.reset();
+		worldToSegment.reset();
+		checkFailure();
+	}
+
+	/**
+	 * Discards all frames which have not been output yet and resets the motion estimate.  Statistics are not reset.
+	 */
+	public void reset() {
+		waitForWarps();
+		for( Frame<I> f : window ) {
+			if( f.image != null ) {
+				recycle(f.image);
+				f.image = null;
+			}
+			unusedFrames.add(f);
+		}
+		window.clear();
+		next = 0;
+		motion.reset();
+		worldToSegment.reset();
+		failure = null;
+	}
+
+	/**
+	 * Stops the background thread.  Frames which have not been output are discarded.
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Estimates the motion from the world frame to the current frame at full resolution
+	 */
+	private void estimateMotion( I frame , Homography2D_F64 worldToCurr ) {
+		I input = frame;
+		if( proxyScale > 1 ) {
+			if( proxy == null )
+				proxy = frame.createNew(1,1);
+			AverageDownSampleOps.reshapeDown(proxy, frame.width, frame.height, proxyScale);
+			AverageDownSampleOps.down(frame, proxyScale, proxy);
+			input = proxy;
+		}
+
+		if( !motion.process(input) ) {
+			motionFaults++;
+			// start a new segment at the previous frame's location
+			motion.reset();
+			motion.process(input);
+			worldToSegment.set(worldToPrev);
+		}
+
+		stitchTransform.convertH(motion.getFirstToCurrent(), proxyToCurr);
+		proxyToFull(proxyToCurr, proxyScale, segmentToCurr);
+		worldToSegment.concat(segmentToCurr, worldToCurr);
+		worldToPrev.set(worldToCurr);
+	}
+
+	/**
+	 * Converts a homography between proxy images into one between full resolution images.  The center of a proxy
+	 * pixel is at the center of the block of pixels it was computed from, x = s*x' + (s-1)/2.
+	 */
+	static void proxyToFull( Homography2D_F64 proxy , int scale , Homography2D_F64 full ) {
+		double s = scale;
+		double c = (scale-1)/2.0;
+
+		// full = S*proxy*inv(S) where S maps proxy pixels into full resolution pixels
+		double a11 = proxy.a11, a12 = proxy.a12, a13 = proxy.a13;
+		double a21 = proxy.a21, a22 = proxy.a22, a23 = proxy.a23;
+		double a31 = proxy.a31, a32 = proxy.a32, a33 = proxy.a33;
+
+		// proxy*inv(S), with inv(S) = [1/s 0 -c/s; 0 1/s -c/s; 0 0 1]
+		double b11 = a11/s, b12 = a12/s, b13 = a13 - (a11+a12)*c/s;
+		double b21 = a21/s, b22 = a22/s, b23 = a23 - (a21+a22)*c/s;
+		double b31 = a31/s, b32 = a32/s, b33 = a33 - (a31+a32)*c/s;
+
+		// S*(proxy*inv(S)), with S = [s 0 c; 0 s c; 0 0 1]
+		full.a11 = s*b11 + c*b31; full.a12 = s*b12 + c*b32; full.a13 = s*b13 + c*b33;
+		full.a21 = s*b21 + c*b31; full.a22 = s*b22 + c*b32; full.a23 = s*b23 + c*b33;
+		full.a31 = b31;           full.a32 = b32;           full.a33 = b33;
+	}
+
+	/**
+	 * Computes the smoothed motion of the next frame and submits it for warping, or drops it
+	 */
+	private void outputNext() {
+		Frame<I> f = window.get(next++);
+
+		// drop frames from the past which are no longer inside any frame's window
+		if( next > smoothRadius+1 ) {
+			Frame<I> old = window.remove(0);
+			unusedFrames.add(old);
+			next--;
+		}
+
+		if( pending.get() >= maxPending ) {
+			framesDropped++;
+			recycle(f.image);
+			f.image = null;
+			return;
+		}
+
+		WarpTask task = new WarpTask();
+		task.image = f.image;
+		task.index = f.index;
+		f.image = null;
+		computeSmoothing(f, task.smoothToCurr);
+
+		pending.incrementAndGet();
+		try {
+			lastWarp = executor.submit(task);
+		} catch( RuntimeException e ) {
+			pending.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Computes the transform from the smoothed frame to the frame, using a Gaussian weighted average of the
+	 * transform from the frame to every other frame in its window.
+	 */
+	private void computeSmoothing( Frame<I> f , Homography2D_F64 smoothToCurr ) {
+		int indexF = next-1;
+		int start = Math.max(0, indexF - smoothRadius);
+		int end = Math.min(window.size(), indexF + smoothRadius + 1);
+
+		f.worldToCurr.invert(currToWorld);
+
+		Homography2D_F64 sum = currToSmooth;
+		sum.a11 = sum.a12 = sum.a13 = 0;
+		sum.a21 = sum.a22 = sum.a23 = 0;
+		sum.a31 = sum.a32 = sum.a33 = 0;
+		double totalWeight = 0;
+		for( int i = start; i < end; i++ ) {
+			double d = (i-indexF)/smoothSigma;
+			double w = Math.exp(-0.5*d*d);
+
+			currToWorld.concat(window.get(i).worldToCurr, currToOther);
+			// homographies are only defined up to a scale factor
+			w /= currToOther.a33;
+
+			sum.a11 += w*currToOther.a11; sum.a12 += w*currToOther.a12; sum.a13 += w*currToOther.a13;
+			sum.a21 += w*currToOther.a21; sum.a22 += w*currToOther.a22; sum.a23 += w*currToOther.a23;
+			sum.a31 += w*currToOther.a31; sum.a32 += w*currToOther.a32; sum.a33 += w*currToOther.a33;
+			totalWeight += Math.exp(-0.5*d*d);
+		}
+		sum.a11 /= totalWeight; sum.a12 /= totalWeight; sum.a13 /= totalWeight;
+		sum.a21 /= totalWeight; sum.a22 /= totalWeight; sum.a23 /= totalWeight;
+		sum.a31 /= totalWeight; sum.a32 /= totalWeight; sum.a33 /= totalWeight;
+
+		currToSmooth.invert(smoothToCurr);
+	}
+
+	private I copy( I frame ) {
+		I image;
+		synchronized( unused ) {
+			image = unused.isEmpty() ? null : unused.remove(unused.size()-1);
+		}
+		if( image == null )
+			image = frame.createSameShape();
+		image.setTo(frame);
+		return image;
+	}
+
+	private void recycle( I image ) {
+		synchronized( unused ) {
+			unused.add(image);
+		}
+	}
+
+	private void waitForWarps() {
+		if( lastWarp == null )
+			return;
+		try {
+			lastWarp.get();
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch( Exception e ) {
+			throw new RuntimeException(e);
+		}
+		lastWarp = null;
+	}
+
+	private void checkFailure() {
+		RuntimeException e = failure;
+		if( e != null ) {
+			failure = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * Waits until the background thread has stopped.  Only needed if something must be done after the
+	 * last frame has been passed to the listener.
+	 *
+	 * @return true if it stopped before the timeout
+	 */
+	public boolean awaitClose( long timeoutMilli ) throws InterruptedException {
+		return executor.awaitTermination(timeoutMilli, TimeUnit.MILLISECONDS);
+	}
+
+	public void setListener( Listener<I> listener ) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Number of frames passed into {@link #process}
+	 */
+	public int getFramesIn() {
+		return framesIn;
+	}
+
+	/**
+	 * Number of stabilized frames passed to the listener
+	 */
+	public int getFramesOutput() {
+		return framesOutput.get();
+	}
+
+	/**
+	 * Number of frames dropped because warping fell behind
+	 */
+	public int getFramesDropped() {
+		return framesDropped;
+	}
+
+	/**
+	 * Number of times motion estimation failed and was reset
+	 */
+	public int getMotionFaults() {
+		return motionFaults;
+	}
+
+	/**
+	 * Number of frames waiting to be warped
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+	public int getProxyScale() {
+		return proxyScale;
+	}
+
+	public int getSmoothRadius() {
+		return smoothRadius;
+	}
+
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	public ImageMotion2D<I, IT> getMotion() {
+		return motion;
+	}
+
+	/**
+	 * Warps a frame into the stabilized image and passes it to the listener
+	 */
+	private class WarpTask implements Runnable {
+		I image;
+		int index;
+		Homography2D_F64 smoothToCurr = new Homography2D_F64();
+
+		@Override
+		public void run() {
+			try {
+				if( stabilized == null )
+					stabilized = image.createSameShape();
+				else
+					stabilized.reshape(image.width, image.height);
+
+				warpTransform.set(smoothToCurr);
+				distorter.setModel(warpTransform);
+				distorter.apply(image, stabilized);
+
+				framesOutput.incrementAndGet();
+				listener.processedFrame(index, stabilized);
+			} catch( Throwable e ) {
+				// rethrown in the caller's thread
+				if( failure == null )
+					failure = e instanceof RuntimeException ? (RuntimeException)e : new RuntimeException(e);
+			} finally {
+				recycle(image);
+				pending.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * A frame in the smoothing window
+	 */
+	private static class Frame<I> {
+		// copy of the input image.  null once it has been output or dropped
+		I image;
+		// index of the frame in the sequence
+		int index;
+		Homography2D_F64 worldToCurr = new Homography2D_F64();
+	}
+
+	/**
+	 * Receives stabilized frames
+	 */
+	public interface Listener<I extends ImageBase<I>> {
+		/**
+		 * Called from the warping thread when a frame has been stabilized.
+		 *
+		 * @param frameIndex Index of the frame in the input sequence, starting from zero
+		 * @param stabilized The stabilized frame.  Is recycled after this function returns.
+		 */
+		void processedFrame( int frameIndex , I stabilized );
+	}
+}
@@ -25,6 +25,7 @@ import boofcv.abst.feature.tracker.PointTracker;
 import boofcv.abst.geo.TriangulateTwoViewsCalibrated;
 import boofcv.alg.distort.LensDistortionOps;
 import boofcv.alg.feature.associate.StereoConsistencyCheck;
+import boofcv.concurrency.BoofConcurrency;
 import boofcv.struct.calib.StereoParameters;
 import boofcv.struct.distort.Point2Transform2_F64;
 import boofcv.struct.feature.AssociatedIndex;
@@ -38,6 +39,7 @@ import georegression.transform.se.SePointOps_F64;
 import org.ddogleg.fitting.modelset.ModelFitter;
 import org.ddogleg.fitting.modelset.ModelMatcher;
 import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_B;
 import org.ddogleg.struct.GrowQueue_I32;
 
 import java.util.ArrayList;
@@ -52,6 +54,15 @@ import java.util.List;
  *
  * Estimated motion is relative to left camera.
  *
+ * If concurrent, the left and right trackers are updated and spawn tracks at the same time.  The two trackers
+ * must be different instances.  Results are not affected.  To also associate new tracks using multiple threads
+ * the association needs to be configured as concurrent, e.g.
+ * {@link boofcv.alg.feature.associate.AssociateStereo2D#setConcurrent}.
+ *
+ * Drift can be reduced by optimizing the most recent key frames with {@link WindowedStereoBundle}.  A key frame is
+ * added each time new tracks are spawned and optimization is done in a background thread.  When it finishes
+ * the correction is applied to the key frame's pose at the start of the next call to {@link #process}.
+ *
  * @author Peter Abeles
  */
 public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc> {
@@ -95,6 +106,13 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 	// known stereo baseline
 	private Se3_F64 leftToRight = new Se3_F64();
 
+	// observations of newly associated features in normalized image coordinates, their triangulated location
+	// in the current camera frame, and if triangulation was successful
+	private FastQueue<Point2D_F64> obsLeft = new FastQueue<>(Point2D_F64.class, true);
+	private FastQueue<Point2D_F64> obsRight = new FastQueue<>(Point2D_F64.class, true);
+	private FastQueue<Point3D_F64> cameraP3 = new FastQueue<>(Point3D_F64.class, true);
+	private GrowQueue_B triangulated = new GrowQueue_B();
+
 	// List of tracks from left image that remain after geometric filters have been applied
 	private List<PointTrack> candidates = new ArrayList<>();
 
@@ -110,6 +128,16 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 	// is this the first frame
 	private boolean first = true;
 
+	// optional sliding window bundle adjustment over key frames
+	private WindowedStereoBundle bundleWindow;
+	// correction to the world frame from bundle adjustment
+	private Se3_F64 worldCorrection = new Se3_F64();
+
+	// if true the left and right trackers are processed concurrently
+	private boolean concurrent = false;
+	private TrackerTask taskLeft = new TrackerTask();
+	private TrackerTask taskRight = new TrackerTask();
+
 	/**
 	 * Specifies internal algorithms and parameters
 	 *
@@ -157,6 +185,8 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 		leftImageToNorm = LensDistortionOps.narrow(param.left).undistort_F64(true,false);
 		rightImageToNorm = LensDistortionOps.narrow(param.right).undistort_F64(true,false);
 		stereoCheck.setCalibration(param);
+		if( bundleWindow != null )
+			bundleWindow.setLeftToRight(leftToRight);
 	}
 
 	/**
@@ -169,6 +199,8 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 		currToKey.reset();
 		first = true;
 		tick = 0;
+		if( bundleWindow != null )
+			bundleWindow.reset();
 	}
 
 	/**
@@ -185,11 +217,20 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 		this.inputRight = right;
 
 		tick++;
-		trackerLeft.process(left);
-		trackerRight.process(right);
+		applyBundleCorrection();
+
+		if( concurrent ) {
+			taskLeft.setProcess(trackerLeft, left);
+			taskRight.setProcess(trackerRight, right);
+			BoofConcurrency.invokeAll(taskLeft, taskRight);
+		} else {
+			trackerLeft.process(left);
+			trackerRight.process(right);
+		}
 
 		if( first ) {
 			addNewTracks();
+			addKeyFrameToBundle();
 			first = false;
 		} else {
 			mutualTrackDrop();
@@ -208,11 +249,47 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 			if( thresholdAdd <= 0 || N < thresholdAdd ) {
 				changePoseToReference();
 				addNewTracks();
+				addKeyFrameToBundle();
 			}
 		}
 		return true;
 	}
 
+	/**
+	 * If bundle adjustment has finished then the key frame is moved to where it was optimized to.  Since the
+	 * current frame is relative to the key frame it's moved too.
+	 */
+	private void applyBundleCorrection() {
+		if( bundleWindow == null || !bundleWindow.applyResults(worldCorrection) )
+			return;
+
+		Se3_F64 temp = new Se3_F64();
+		keyToWorld.concat(worldCorrection, temp);
+		keyToWorld.set(temp);
+	}
+
+	/**
+	 * Adds the current frame, which just became the key frame, to bundle adjustment.  The inlier tracks and
+	 * the newly spawned tracks are observed in it.
+	 */
+	private void addKeyFrameToBundle() {
+		if( bundleWindow == null )
+			return;
+
+		WindowedStereoBundle.KeyFrame kf = bundleWindow.createKeyFrame(keyToWorld.invert(null));
+
+		Point3D_F64 world = new Point3D_F64();
+		for( PointTrack t : trackerLeft.getActiveTracks(null) ) {
+			LeftTrackInfo info = t.getCookie();
+			if( info == null || info.right == null || info.lastInlier != tick )
+				continue;
+
+			SePointOps_F64.transform(keyToWorld, info.location.location, world);
+			kf.addObservation(t.featureId, info.location.leftObs, info.location.rightObs, world);
+		}
+		bundleWindow.addKeyFrame(kf);
+	}
+
 	/**
 	 * Non-linear refinement of motion estimate
 	 */
@@ -390,8 +467,14 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 	 * Spawns tracks in each image and associates features together.
 	 */
 	private void addNewTracks() {
-		trackerLeft.spawnTracks();
-		trackerRight.spawnTracks();
+		if( concurrent ) {
+			taskLeft.setSpawn(trackerLeft);
+			taskRight.setSpawn(trackerRight);
+			BoofConcurrency.invokeAll(taskLeft, taskRight);
+		} else {
+			trackerLeft.spawnTracks();
+			trackerRight.spawnTracks();
+		}
 
 		List<PointTrack> newLeft = trackerLeft.getNewTracks(null);
 		List<PointTrack> newRight = trackerRight.getNewTracks(null);
@@ -406,8 +489,7 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 		assocL2R.associate();
 		FastQueue<AssociatedIndex> matches = assocL2R.getMatches();
 
-		// storage for the triangulated location in the camera frame
-		Point3D_F64 cameraP3 = new Point3D_F64();
+		triangulateMatches(newLeft, newRight, matches);
 
 		for( int i = 0; i < matches.size; i++ ) {
 			AssociatedIndex m = matches.get(i);
@@ -415,6 +497,13 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 			PointTrack trackL = newLeft.get(m.src);
 			PointTrack trackR = newRight.get(m.dst);
 
+			if( !triangulated.data[i] ) {
+				// triangulation failed, drop both tracks
+				trackerLeft.dropTrack(trackL);
+				trackerRight.dropTrack(trackR);
+				continue;
+			}
+
 			// declare additional track information stored in each track.  Tracks can be recycled so it
 			// might not always need to be declared
 			LeftTrackInfo infoLeft = trackL.getCookie();
@@ -426,26 +515,15 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 				trackR.cookie = infoRight = new RightTrackInfo();
 
 			Stereo2D3D p2d3d = infoLeft.location;
-
-			// convert pixel observations into normalized image coordinates
-			leftImageToNorm.compute(trackL.x,trackL.y,p2d3d.leftObs);
-			rightImageToNorm.compute(trackR.x,trackR.y,p2d3d.rightObs);
-
-			// triangulate 3D coordinate in the current camera frame
-			if( triangulate.triangulate(p2d3d.leftObs,p2d3d.rightObs,leftToRight,cameraP3) )
-			{
-				// put the track into the current keyframe coordinate system
-				SePointOps_F64.transform(currToKey,cameraP3,p2d3d.location);
-				// save a reference to the matching track in the right camera frame
-				infoLeft.right = trackR;
-				infoLeft.lastConsistent = infoLeft.lastInlier = tick;
-				infoRight.left = trackL;
-			} else {
-				// triangulation failed, drop track
-				trackerLeft.dropTrack(trackL);
-				// TODO need way to mark right tracks which are unassociated after this loop
-				throw new RuntimeException("This special case needs to be handled!");
-			}
+			p2d3d.leftObs.set(obsLeft.get(i));
+			p2d3d.rightObs.set(obsRight.get(i));
+
+			// put the track into the current keyframe coordinate system
+			SePointOps_F64.transform(currToKey,cameraP3.get(i),p2d3d.location);
+			// save a reference to the matching track in the right camera frame
+			infoLeft.right = trackR;
+			infoLeft.lastConsistent = infoLeft.lastInlier = tick;
+			infoRight.left = trackL;
 		}
 
 		// drop tracks that were not associated
@@ -496,6 +574,32 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 	}
 
 
+	/**
+	 * Converts the observations of every match into normalized image coordinates and triangulates them in
+	 * a single pass
+	 */
+	private void triangulateMatches( List<PointTrack> newLeft , List<PointTrack> newRight ,
+									 FastQueue<AssociatedIndex> matches ) {
+		obsLeft.reset();
+		obsRight.reset();
+		cameraP3.reset();
+		triangulated.resize(matches.size);
+
+		for( int i = 0; i < matches.size; i++ ) {
+			AssociatedIndex m = matches.get(i);
+			PointTrack trackL = newLeft.get(m.src);
+			PointTrack trackR = newRight.get(m.dst);
+
+			leftImageToNorm.compute(trackL.x,trackL.y,obsLeft.grow());
+			rightImageToNorm.compute(trackR.x,trackR.y,obsRight.grow());
+		}
+
+		for( int i = 0; i < matches.size; i++ ) {
+			// 3D coordinate in the current camera frame
+			triangulated.data[i] = triangulate.triangulate(obsLeft.get(i),obsRight.get(i),leftToRight,cameraP3.grow());
+		}
+	}
+
 	private void concatMotion() {
 		Se3_F64 temp = new Se3_F64();
 		currToKey.concat(keyToWorld,temp);
@@ -503,6 +607,70 @@ public class VisOdomDualTrackPnP<T extends ImageBase<T>,Desc extends TupleDesc>
 		currToKey.reset();
 	}
 
+	/**
+	 * If true then the left and right trackers are processed concurrently.
+	 */
+	public void setConcurrent( boolean concurrent ) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	public WindowedStereoBundle getBundleWindow() {
+		return bundleWindow;
+	}
+
+	/**
+	 * Specifies sliding window bundle adjustment which is used to reduce drift.  The previous bundle adjustment,
+	 * if any, is closed.
+	 *
+	 * @param bundleWindow Bundle adjustment or null to disable it
+	 */
+	public void setBundleWindow( WindowedStereoBundle bundleWindow ) {
+		if( this.bundleWindow != null && this.bundleWindow != bundleWindow )
+			this.bundleWindow.close();
+		this.bundleWindow = bundleWindow;
+		if( bundleWindow != null )
+			bundleWindow.setLeftToRight(leftToRight);
+	}
+
+	/**
+	 * Stops background threads used by bundle adjustment.  Call when done with this class.
+	 */
+	public void close() {
+		if( bundleWindow != null )
+			bundleWindow.close();
+	}
+
+	/**
+	 * Updates a tracker or spawns new tracks.  Used to process the left and right trackers at the same time.
+	 */
+	private class TrackerTask implements Runnable {
+		PointTracker<T> tracker;
+		// image being processed.  If null then tracks are spawned
+		T image;
+
+		void setProcess( PointTracker<T> tracker , T image ) {
+			this.tracker = tracker;
+			this.image = image;
+		}
+
+		void setSpawn( PointTracker<T> tracker ) {
+			this.tracker = tracker;
+			this.image = null;
+		}
+
+		@Override
+		public void run() {
+			if( image != null )
+				tracker.process(image);
+			else
+				tracker.spawnTracks();
+		}
+	}
+
 	public Se3_F64 getCurrToWorld() {
 		currToKey.concat(keyToWorld, currToWorld);
 		return currToWorld;
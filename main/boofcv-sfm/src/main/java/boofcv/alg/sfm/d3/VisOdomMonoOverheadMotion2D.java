@@ -124,6 +124,13 @@ public class VisOdomMonoOverheadMotion2D<T extends ImageBase<T>>
 		GImageMiscOps.fill(overhead.image,0);
 	}
 
+	/**
+	 * If true the overhead image is rendered in multiple threads
+	 */
+	public void setConcurrent( boolean concurrent ) {
+		createOverhead.setConcurrent(concurrent);
+	}
+
 	/**
 	 * Resets the algorithm into its initial state
 	 */
@@ -24,6 +24,7 @@ import boofcv.abst.feature.detdesc.PointDescSet;
 import boofcv.abst.geo.TriangulateTwoViewsCalibrated;
 import boofcv.alg.descriptor.UtilFeature;
 import boofcv.alg.distort.LensDistortionOps;
+import boofcv.concurrency.BoofConcurrency;
 import boofcv.struct.calib.StereoParameters;
 import boofcv.struct.distort.Point2Transform2_F64;
 import boofcv.struct.feature.AssociatedIndex;
@@ -57,6 +58,12 @@ import org.ddogleg.struct.GrowQueue_I32;
  *
  * Estimated motion is relative to left camera.
  *
+ * If a second detector and same camera association are provided then the left and right images are described
+ * and associated concurrently.  In pipelined mode the features in the new stereo pair are detected, described and
+ * associated left to right while the motion from the previous stereo pair is being estimated.  Each frame is then
+ * limited by the slower of the two stages instead of their sum, but the motion estimate is one frame behind the
+ * most recent image.
+ *
  * @author Peter Abeles
  */
 public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
@@ -72,20 +79,31 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 
 	// Detects feature inside the image
 	private DetectDescribeMulti<T,TD> detector;
+	// Detects features inside the right image.  If null then detector is used.
+	private DetectDescribeMulti<T,TD> detectorRight;
 	// Associates feature between the same camera
 	private AssociateDescription2D<TD> assocSame;
+	// Associates features between right images.  If null then assocSame is used.
+	private AssociateDescription2D<TD> assocSameRight;
 	// Associates features from left to right camera
 	private AssociateDescription2D<TD> assocL2R;
 
 	// Set of associated features across all views
 	private FastQueue<QuadView> quadViews = new FastQueue<>(10, QuadView.class, true);
 
-	// features info extracted from the stereo pairs. 0 = previous 1 = current
-	private ImageInfo<TD> featsLeft0,featsLeft1;
-	private ImageInfo<TD> featsRight0,featsRight1;
-	// Matched features between all four images.  One set of matches for each type of detected feature
+	// features extracted from the stereo pairs. 0 = previous 1 = current.  next is written to while pipelined
+	private StereoFrame<TD> frame0,frame1,frameNext;
+	// Matched features between the two stereo pairs.  One set of matches for each type of detected feature
 	private SetMatches setMatches[];
 
+	// if true the next frame is described while motion is estimated for the previous one
+	private boolean pipelined = false;
+	// number of frames which have been described
+	private int framesDescribed;
+	// tasks used to process the two stages concurrently
+	private FrontEndTask frontEndTask = new FrontEndTask();
+	private MotionTask motionTask = new MotionTask();
+
 	// stereo baseline going from left to right
 	private Se3_F64 leftToRight = new Se3_F64();
 
@@ -98,10 +116,6 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 	// transform from the current camera view to the world frame
 	private Se3_F64 leftCamToWorld = new Se3_F64();
 
-	// number of frames that have been processed
-	// is this the first frame
-	private boolean first = true;
-
 	// used to indicate which image features are being used
 	private boolean usedLeft[] = new boolean[ 1 ];
 	private boolean usedRight[] = new boolean[ 1];
@@ -124,8 +138,36 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 						  ModelMatcher<Se3_F64, Stereo2D3D> matcher,
 						  ModelFitter<Se3_F64, Stereo2D3D> modelRefiner )
 	{
+		this(detector, null, assocSame, null, assocL2R, triangulate, matcher, modelRefiner);
+	}
+
+	/**
+	 * Specifies internal algorithms.  If the right camera has its own detector and association then the
+	 * left and right cameras are processed concurrently.
+	 *
+	 * @param detector Estimates image features in the left camera
+	 * @param detectorRight Estimates image features in the right camera.  If null then detector is used.
+	 * @param assocSame Association algorithm used for left to left
+	 * @param assocSameRight Association algorithm used for right to right.  If null then assocSame is used.
+	 * @param assocL2R Assocation algorithm used for left to right
+	 * @param triangulate Used to estimate 3D location of a feature using stereo correspondence
+	 * @param matcher Robust model estimation.  Often RANSAC
+	 * @param modelRefiner Non-linear refinement of motion estimation
+	 */
+	public VisOdomQuadPnP(DetectDescribeMulti<T,TD> detector, DetectDescribeMulti<T,TD> detectorRight,
+						  AssociateDescription2D<TD> assocSame , AssociateDescription2D<TD> assocSameRight,
+						  AssociateDescription2D<TD> assocL2R ,
+						  TriangulateTwoViewsCalibrated triangulate,
+						  ModelMatcher<Se3_F64, Stereo2D3D> matcher,
+						  ModelFitter<Se3_F64, Stereo2D3D> modelRefiner )
+	{
+		if( detectorRight != null && detectorRight.getNumberOfSets() != detector.getNumberOfSets() )
+			throw new IllegalArgumentException("Left and right detectors must have the same number of sets");
+
 		this.detector = detector;
+		this.detectorRight = detectorRight;
 		this.assocSame = assocSame;
+		this.assocSameRight = assocSameRight;
 		this.assocL2R = assocL2R;
 		this.triangulate = triangulate;
 		this.matcher = matcher;
@@ -136,10 +178,9 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 			setMatches[i] = new SetMatches();
 		}
 
-		featsLeft0 = new ImageInfo<>(detector);
-		featsLeft1 = new ImageInfo<>(detector);
-		featsRight0 = new ImageInfo<>(detector);
-		featsRight1 = new ImageInfo<>(detector);
+		frame0 = new StereoFrame<>(detector);
+		frame1 = new StereoFrame<>(detector);
+		frameNext = new StereoFrame<>(detector);
 	}
 
 	public void setCalibration(StereoParameters param) {
@@ -153,89 +194,114 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 	 * Resets the algorithm into its original state
 	 */
 	public void reset() {
-		featsLeft0.reset();
-		featsLeft1.reset();
-		featsRight0.reset();
-		featsRight1.reset();
+		frame0.reset();
+		frame1.reset();
+		frameNext.reset();
 		for( SetMatches m : setMatches )
 			m.reset();
 		newToOld.reset();
 		leftCamToWorld.reset();
-		first = true;
+		framesDescribed = 0;
 	}
 
 	/**
-	 * Estimates camera egomotion from the stereo pair
+	 * Estimates camera egomotion from the stereo pair.  If pipelined the motion estimate is for the
+	 * previous stereo pair and will only be updated after three frames have been processed.
+	 *
 	 * @param left Image from left camera
 	 * @param right Image from right camera
 	 * @return true if motion was estimated and false if not
 	 */
 	public boolean process( T left , T right ) {
+		if( pipelined )
+			return processPipelined(left, right);
 
-		if( first ) {
-			associateL2R(left, right);
-			first = false;
-		} else {
-//			long time0 = System.currentTimeMillis();
-			associateL2R(left, right);
-//			long time1 = System.currentTimeMillis();
-			associateF2F();
-//			long time2 = System.currentTimeMillis();
-			cyclicConsistency();
-//			long time3 = System.currentTimeMillis();
-			if( !estimateMotion() )
-				return false;
-//			long time4 = System.currentTimeMillis();
-
-//			System.out.println("timing: "+(time1-time0)+" "+(time2-time1)+" "+(time3-time2)+" "+(time4-time3));
+		StereoFrame<TD> tmp = frame0;
+		frame0 = frame1; frame1 = tmp;
+
+		describeAndAssociateL2R(left, right, frame1);
+		framesDescribed++;
+
+		if( framesDescribed == 1 )
+			return true;
 
+		return estimateFrameToFrame();
+	}
+
+	/**
+	 * Describes the new stereo pair while the motion between the two previous pairs is estimated
+	 */
+	private boolean processPipelined( T left , T right ) {
+		frontEndTask.left = left;
+		frontEndTask.right = right;
+
+		boolean success = true;
+		if( framesDescribed >= 2 ) {
+			BoofConcurrency.invokeAll(frontEndTask, motionTask);
+			success = motionTask.success;
+		} else {
+			frontEndTask.run();
 		}
+		frontEndTask.left = frontEndTask.right = null;
+		framesDescribed++;
 
-		return true;
+		StereoFrame<TD> tmp = frame0;
+		frame0 = frame1; frame1 = frameNext; frameNext = tmp;
+
+		return success;
+	}
+
+	/**
+	 * Associates the two most recent stereo pairs and estimates the motion between them
+	 */
+	private boolean estimateFrameToFrame() {
+		associateF2F();
+		cyclicConsistency();
+		return estimateMotion();
 	}
 
 	/**
-	 * Associates image features from the left and right camera together while applying epipolar constraints.
+	 * Detects and describes features in both images then associates image features from the left and right
+	 * camera together while applying epipolar constraints.
 	 *
 	 * @param left Image from left camera
 	 * @param right Image from right camera
+	 * @param frame (Output) Storage for features and left to right matches
 	 */
-	private void associateL2R( T left , T right ) {
-		// make the previous new observations into the new old ones
-		ImageInfo<TD> tmp = featsLeft1;
-		featsLeft1 = featsLeft0; featsLeft0 = tmp;
-		tmp = featsRight1;
-		featsRight1 = featsRight0; featsRight0 = tmp;
-
-		// detect and associate features in the two images
-		featsLeft1.reset();
-		featsRight1.reset();
-
-//		long time0 = System.currentTimeMillis();
-		describeImage(left,featsLeft1);
-		describeImage(right,featsRight1);
-//		long time1 = System.currentTimeMillis();
-
-		// detect and associate features in the current stereo pair
-		for( int i = 0; i < detector.getNumberOfSets(); i++ ) {
-			SetMatches matches = setMatches[i];
-			matches.swap();
-			matches.match2to3.reset();
+	private void describeAndAssociateL2R( final T left , final T right , final StereoFrame<TD> frame ) {
+		frame.left.reset();
+		frame.right.reset();
+
+		if( detectorRight != null ) {
+			BoofConcurrency.invokeAll(new Runnable() {
+				@Override
+				public void run() {
+					describeImage(detector, left, frame.left);
+				}
+			}, new Runnable() {
+				@Override
+				public void run() {
+					describeImage(detectorRight, right, frame.right);
+				}
+			});
+		} else {
+			describeImage(detector, left, frame.left);
+			describeImage(detector, right, frame.right);
+		}
 
-			FastQueue<Point2D_F64> leftLoc = featsLeft1.location[i];
-			FastQueue<Point2D_F64> rightLoc = featsRight1.location[i];
+		// associate features in the current stereo pair
+		for( int i = 0; i < detector.getNumberOfSets(); i++ ) {
+			FastQueue<Point2D_F64> leftLoc = frame.left.location[i];
+			FastQueue<Point2D_F64> rightLoc = frame.right.location[i];
 
-			assocL2R.setSource(leftLoc,featsLeft1.description[i]);
-			assocL2R.setDestination(rightLoc, featsRight1.description[i]);
+			assocL2R.setSource(leftLoc,frame.left.description[i]);
+			assocL2R.setDestination(rightLoc, frame.right.description[i]);
 			assocL2R.associate();
 
 			FastQueue<AssociatedIndex> found = assocL2R.getMatches();
 
-//			removeUnassociated(leftLoc,featsLeft1.description[i],rightLoc,featsRight1.description[i],found);
-			setMatches(matches.match2to3, found, leftLoc.size);
+			setMatches(frame.matchL2R[i], found, leftLoc.size);
 		}
-//		long time2 = System.currentTimeMillis();
-//		System.out.println("  desc "+(time1-time0)+" assoc "+(time2-time1));
 	}
 
 	private void removeUnassociated( FastQueue<Point2D_F64> leftLoc , FastQueue<TD> leftDesc ,
@@ -301,22 +367,40 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 	{
 		quadViews.reset();
 
-		for( int i = 0; i < detector.getNumberOfSets(); i++ ) {
-			SetMatches matches = setMatches[i];
+		if( assocSameRight != null ) {
+			BoofConcurrency.invokeAll(new Runnable() {
+				@Override
+				public void run() {
+					associateF2F(assocSame, true);
+				}
+			}, new Runnable() {
+				@Override
+				public void run() {
+					associateF2F(assocSameRight, false);
+				}
+			});
+		} else {
+			associateF2F(assocSame, true);
+			associateF2F(assocSame, false);
+		}
+	}
 
-			// old left to new left
-			assocSame.setSource(featsLeft0.location[i],featsLeft0.description[i]);
-			assocSame.setDestination(featsLeft1.location[i], featsLeft1.description[i]);
-			assocSame.associate();
+	/**
+	 * Associates features in one camera between the previous and current frame
+	 */
+	private void associateF2F( AssociateDescription2D<TD> assoc , boolean leftCamera ) {
+		ImageInfo<TD> feats0 = leftCamera ? frame0.left : frame0.right;
+		ImageInfo<TD> feats1 = leftCamera ? frame1.left : frame1.right;
 
-			setMatches(matches.match0to2, assocSame.getMatches(), featsLeft0.location[i].size);
+		for( int i = 0; i < detector.getNumberOfSets(); i++ ) {
+			SetMatches matches = setMatches[i];
 
-			// old right to new right
-			assocSame.setSource(featsRight0.location[i],featsRight0.description[i]);
-			assocSame.setDestination(featsRight1.location[i], featsRight1.description[i]);
-			assocSame.associate();
+			assoc.setSource(feats0.location[i],feats0.description[i]);
+			assoc.setDestination(feats1.location[i], feats1.description[i]);
+			assoc.associate();
 
-			setMatches(matches.match1to3, assocSame.getMatches(), featsRight0.location[i].size);
+			GrowQueue_I32 output = leftCamera ? matches.match0to2 : matches.match1to3;
+			setMatches(output, assoc.getMatches(), feats0.location[i].size);
 		}
 	}
 
@@ -326,25 +410,27 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 	 */
 	private void cyclicConsistency() {
 		for( int i = 0; i < detector.getNumberOfSets(); i++ ) {
-			FastQueue<Point2D_F64> obs0 = featsLeft0.location[i];
-			FastQueue<Point2D_F64> obs1 = featsRight0.location[i];
-			FastQueue<Point2D_F64> obs2 = featsLeft1.location[i];
-			FastQueue<Point2D_F64> obs3 = featsRight1.location[i];
+			FastQueue<Point2D_F64> obs0 = frame0.left.location[i];
+			FastQueue<Point2D_F64> obs1 = frame0.right.location[i];
+			FastQueue<Point2D_F64> obs2 = frame1.left.location[i];
+			FastQueue<Point2D_F64> obs3 = frame1.right.location[i];
 
 			SetMatches matches = setMatches[i];
+			GrowQueue_I32 match0to1 = frame0.matchL2R[i];
+			GrowQueue_I32 match2to3 = frame1.matchL2R[i];
 
-			if( matches.match0to1.size != matches.match0to2.size )
+			if( match0to1.size != matches.match0to2.size )
 				throw new RuntimeException("Failed sanity check");
 
-			for( int j = 0; j < matches.match0to1.size; j++ ) {
-				int indexIn1 = matches.match0to1.data[j];
+			for( int j = 0; j < match0to1.size; j++ ) {
+				int indexIn1 = match0to1.data[j];
 				int indexIn2 = matches.match0to2.data[j];
 
 				if( indexIn1 < 0 || indexIn2 < 0 )
 					continue;
 
 				int indexIn3a = matches.match1to3.data[indexIn1];
-				int indexIn3b = matches.match2to3.data[indexIn2];
+				int indexIn3b = match2to3.data[indexIn2];
 
 				if( indexIn3a < 0 || indexIn3b < 0 )
 					continue;
@@ -377,7 +463,7 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 	/**
 	 * Computes image features and stores the results in info
 	 */
-	private void describeImage(T left , ImageInfo<TD> info ) {
+	private void describeImage( DetectDescribeMulti<T,TD> detector , T left , ImageInfo<TD> info ) {
 		detector.process(left);
 		for( int i = 0; i < detector.getNumberOfSets(); i++ ) {
 			PointDescSet<TD> set = detector.getFeatureSet(i);
@@ -467,6 +553,18 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 		return leftCamToWorld;
 	}
 
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * If true then the next stereo pair is described while motion is estimated for the previous pair.  The
+	 * motion estimate is one frame behind.  Should be set before any images are processed.
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
 	/**
 	 * Storage for detected features inside an image
 	 */
@@ -494,34 +592,71 @@ public class VisOdomQuadPnP<T extends ImageGray<T>,TD extends TupleDesc> {
 	}
 
 	/**
-	 * Correspondences between images
+	 * Features from a stereo pair and the matches between the left and right images
+	 */
+	public static class StereoFrame<TD extends TupleDesc>
+	{
+		ImageInfo<TD> left,right;
+		// left to right matches for each set
+		GrowQueue_I32 matchL2R[];
+
+		public StereoFrame( DetectDescribeMulti<?,TD> detector ) {
+			left = new ImageInfo<>(detector);
+			right = new ImageInfo<>(detector);
+			matchL2R = new GrowQueue_I32[ detector.getNumberOfSets() ];
+			for( int i = 0; i < matchL2R.length; i++ ) {
+				matchL2R[i] = new GrowQueue_I32(10);
+			}
+		}
+
+		public void reset() {
+			left.reset();
+			right.reset();
+			for( int i = 0; i < matchL2R.length; i++ ) {
+				matchL2R[i].reset();
+			}
+		}
+	}
+
+	/**
+	 * Correspondences between the same camera in the previous and current frame
 	 */
 	public static class SetMatches {
-		// previous left to previous right
-		GrowQueue_I32 match0to1 = new GrowQueue_I32(10);
 		// previous left to current left
 		GrowQueue_I32 match0to2 = new GrowQueue_I32(10);
-		// current left to current right
-		GrowQueue_I32 match2to3 = new GrowQueue_I32(10);
 		// previous right to current right
 		GrowQueue_I32 match1to3 = new GrowQueue_I32(10);
 
-		public void swap() {
-			GrowQueue_I32 tmp;
-
-			tmp = match2to3;
-			match2to3 = match0to1;
-			match0to1 = tmp;
-		}
-
 		public void reset() {
-			match0to1.reset();
 			match0to2.reset();
-			match2to3.reset();
 			match1to3.reset();
 		}
 	}
 
+	/**
+	 * Describes the new stereo pair
+	 */
+	private class FrontEndTask implements Runnable {
+		T left,right;
+
+		@Override
+		public void run() {
+			describeAndAssociateL2R(left, right, frameNext);
+		}
+	}
+
+	/**
+	 * Estimates motion between the two previous stereo pairs
+	 */
+	private class MotionTask implements Runnable {
+		boolean success;
+
+		@Override
+		public void run() {
+			success = estimateFrameToFrame();
+		}
+	}
+
 	/**
 	 * 3D coordinate of the feature and its observed location in each image
 	 */
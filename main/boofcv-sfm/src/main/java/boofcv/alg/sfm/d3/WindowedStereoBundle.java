@@ -0,0 +1,480 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm.d3;
+
+import boofcv.abst.geo.BundleAdjustmentCalibrated;
+import boofcv.alg.geo.bundle.CalibratedPoseAndPoint;
+import boofcv.alg.geo.bundle.ViewPointObservations;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.struct.FastQueue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * Sliding window bundle adjustment for stereo visual odometry.  The odometry adds a key frame each time it changes
+ * its reference frame, with the pose of the left camera and the stereo observations of the tracks which are inliers.
+ * Only the most recent key frames are kept.  After a key frame is added, bundle adjustment is started in a
+ * background thread on a snapshot of the window, so the odometry's latency isn't affected.  Once it's done
+ * the odometry calls {@link #applyResults} which updates the window and returns a correction for the odometry's
+ * world frame.
+ * </p>
+ *
+ * <p>
+ * Each key frame contributes a view for the left and right camera.  The right view is rigidly attached to the
+ * left view by the stereo baseline, see {@link CalibratedPoseAndPoint#setViewRelative}, so only the left camera's
+ * pose is optimized and observations in both cameras constrain it.  The oldest key frame is held fixed, which
+ * defines the world frame.  Bundle adjustment must support attached views and should take advantage of the
+ * problem's sparsity, e.g. {@link boofcv.abst.geo.bundle.BundleAdjustmentCalibratedSparse}.
+ * </p>
+ *
+ * <p>
+ * If a key frame is added while bundle adjustment is still running then it's added to the window, but a new
+ * optimization isn't started until the results have been applied.  Key frames which were added while it was
+ * running are moved along with the newest optimized key frame.
+ * </p>
+ *
+ * @author Peter Abeles
+ */
+public class WindowedStereoBundle {
+
+	// minimum number of points each key frame must share with other key frames for the window to be optimized
+	public static final int MIN_SHARED_POINTS = 5;
+
+	// performs bundle adjustment.  Only used by the background thread while an optimization is running
+	private BundleAdjustmentCalibrated bundle;
+
+	// maximum number of key frames in the window
+	private int windowSize;
+
+	// transform from left to right camera
+	private Se3_F64 leftToRight = new Se3_F64();
+
+	// key frames in the window, oldest first
+	private List<KeyFrame> window = new ArrayList<>();
+	// points observed by key frames in the window
+	private Map<Long,WindowPoint> points = new HashMap<>();
+	// ID assigned to the next key frame
+	private int nextKeyFrameId = 0;
+
+	// snapshot of the window being optimized.  Only modified when no optimization is running
+	private CalibratedPoseAndPoint model = new CalibratedPoseAndPoint();
+	private FastQueue<ViewPointObservations> observations = new FastQueue<>(ViewPointObservations.class, true);
+	private List<KeyFrame> snapshotFrames = new ArrayList<>();
+	private List<WindowPoint> snapshotPoints = new ArrayList<>();
+	// pose of the newest key frame in the snapshot before optimization
+	private Se3_F64 snapshotWorldToNewest = new Se3_F64();
+
+	// thread which bundle adjustment is run in
+	private ExecutorService executor;
+	// the optimization which is running or hasn't been applied yet
+	private Future<?> running;
+	private BundleTask task = new BundleTask();
+
+	// storage
+	private Se3_F64 currToWorld = new Se3_F64();
+	private Se3_F64 worldNewToOld = new Se3_F64();
+	private Se3_F64 temp = new Se3_F64();
+
+	// statistics
+	private int totalOptimized;
+	private int totalFailed;
+
+	/**
+	 * Specifies bundle adjustment algorithm and the window size
+	 *
+	 * @param bundle Bundle adjustment.  Must support attached views.  Only used in the background thread.
+	 * @param windowSize Maximum number of key frames in the window. &ge; 2
+	 */
+	public WindowedStereoBundle( BundleAdjustmentCalibrated bundle , int windowSize ) {
+		if( windowSize < 2 )
+			throw new IllegalArgumentException("Window must contain at least two key frames");
+		this.bundle = bundle;
+		this.windowSize = windowSize;
+
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "WindowedStereoBundle");
+				// don't prevent the application from exiting if close() isn't called
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Specifies the stereo baseline
+	 *
+	 * @param leftToRight Transform from left to right camera.  Not modified.
+	 */
+	public void setLeftToRight( Se3_F64 leftToRight ) {
+		this.leftToRight.set(leftToRight);
+	}
+
+	/**
+	 * Creates a new key frame.  Observations should be added to it and then it's passed to {@link #addKeyFrame}.
+	 *
+	 * @param worldToLeft Transform from world to the left camera.  Copied.
+	 * @return The key frame
+	 */
+	public KeyFrame createKeyFrame( Se3_F64 worldToLeft ) {
+		KeyFrame kf = new KeyFrame();
+		kf.worldToLeft.set(worldToLeft);
+		return kf;
+	}
+
+	/**
+	 * Adds a key frame to the window, discarding the oldest if the window is full.  If no optimization is
+	 * running or waiting to be applied a new one is started.  Optimization is skipped if a key frame shares fewer
+	 * than {@link #MIN_SHARED_POINTS} points with the others.
+	 *
+	 * @param kf Key frame from {@link #createKeyFrame}.  Must not be modified afterwards.
+	 */
+	public void addKeyFrame( KeyFrame kf ) {
+		kf.id = nextKeyFrameId++;
+		window.add(kf);
+		for( int i = 0; i < kf.observations.size; i++ ) {
+			Observation o = kf.observations.get(i);
+			WindowPoint p = points.get(o.trackId);
+			if( p == null ) {
+				p = new WindowPoint();
+				p.location.set(o.initial);
+				points.put(o.trackId, p);
+			}
+			p.numKeyFrames++;
+		}
+
+		if( window.size() > windowSize ) {
+			KeyFrame old = window.remove(0);
+			for( int i = 0; i < old.observations.size; i++ ) {
+				long id = old.observations.get(i).trackId;
+				WindowPoint p = points.get(id);
+				if( --p.numKeyFrames == 0 )
+					points.remove(id);
+			}
+		}
+
+		if( running == null && window.size() >= 2 )
+			startOptimization();
+	}
+
+	/**
+	 * Copies the window into the bundle adjustment model and starts optimizing it in the background thread
+	 */
+	private void startOptimization() {
+		snapshotFrames.clear();
+		snapshotFrames.addAll(window);
+
+		// only points seen by more than one key frame are optimized.  The others don't relate key frames to
+		// each other and would only make the problem larger
+		snapshotPoints.clear();
+		for( WindowPoint p : points.values() ) {
+			if( p.numKeyFrames > 1 ) {
+				p.index = snapshotPoints.size();
+				snapshotPoints.add(p);
+			} else {
+				p.index = -1;
+			}
+		}
+		if( snapshotPoints.isEmpty() )
+			return;
+
+		int numViews = snapshotFrames.size()*2;
+		model.configure(numViews, snapshotPoints.size());
+		observations.reset();
+		for( int i = 0; i < snapshotFrames.size(); i++ ) {
+			KeyFrame kf = snapshotFrames.get(i);
+			model.getWorldToCamera(i*2).set(kf.worldToLeft);
+			kf.worldToLeft.concat(leftToRight, model.getWorldToCamera(i*2+1));
+
+			// the oldest key frame defines the world frame.  The right camera moves with the left camera
+			model.setViewKnown(i*2, i == 0);
+			model.setViewRelative(i*2+1, i*2, leftToRight);
+
+			ViewPointObservations obsLeft = observations.grow();
+			ViewPointObservations obsRight = observations.grow();
+			obsLeft.getPoints().reset();
+			obsRight.getPoints().reset();
+			for( int j = 0; j < kf.observations.size; j++ ) {
+				Observation o = kf.observations.get(j);
+				int index = points.get(o.trackId).index;
+				if( index < 0 )
+					continue;
+				obsLeft.getPoints().grow().set(index, o.left);
+				obsRight.getPoints().grow().set(index, o.right);
+			}
+
+			// the pose of a key frame which shares few points with the others can't be estimated
+			if( obsLeft.getPoints().size < MIN_SHARED_POINTS )
+				return;
+		}
+		for( int i = 0; i < snapshotPoints.size(); i++ ) {
+			model.getPoint(i).set(snapshotPoints.get(i).location);
+		}
+		snapshotWorldToNewest.set(snapshotFrames.get(snapshotFrames.size()-1).worldToLeft);
+
+		task.success = false;
+		running = executor.submit(task);
+	}
+
+	/**
+	 * If an optimization has finished, updates the key frames and points in the window with the results and
+	 * starts a new optimization.  Key frames and points which were added while it was running are moved by the
+	 * same amount as the newest optimized key frame.
+	 *
+	 * @param oldWorldToNew (Output) Transform from the world frame the odometry is using to the corrected one.
+	 *                      Concatenate it onto each camera to world transform.  Only modified if true is returned.
+	 * @return true if the results were applied
+	 */
+	public boolean applyResults( Se3_F64 oldWorldToNew ) {
+		if( running == null || !running.isDone() )
+			return false;
+		waitForResults();
+		running = null;
+
+		if( !task.success ) {
+			totalFailed++;
+			restartIfPending();
+			return false;
+		}
+		totalOptimized++;
+
+		// how the newest optimized key frame moved tells where the newer key frames should be moved
+		model.getWorldToCamera((snapshotFrames.size()-1)*2).invert(currToWorld);
+		snapshotWorldToNewest.concat(currToWorld, oldWorldToNew);
+		oldWorldToNew.invert(worldNewToOld);
+
+		for( int i = 0; i < window.size(); i++ ) {
+			KeyFrame kf = window.get(i);
+			int index = snapshotFrames.indexOf(kf);
+			if( index >= 0 ) {
+				kf.worldToLeft.set(model.getWorldToCamera(index*2));
+			} else {
+				worldNewToOld.concat(kf.worldToLeft, temp);
+				kf.worldToLeft.set(temp);
+			}
+		}
+
+		for( WindowPoint p : points.values() ) {
+			if( p.index >= 0 && p.index < snapshotPoints.size() && snapshotPoints.get(p.index) == p ) {
+				p.location.set(model.getPoint(p.index));
+			} else {
+				SePointOps_F64.transform(oldWorldToNew, p.location, p.location);
+			}
+		}
+
+		restartIfPending();
+		return true;
+	}
+
+	/**
+	 * Starts a new optimization if key frames were added since the last one started
+	 */
+	private void restartIfPending() {
+		KeyFrame newest = window.get(window.size()-1);
+		KeyFrame newestSnapshot = snapshotFrames.get(snapshotFrames.size()-1);
+		if( newest != newestSnapshot && window.size() >= 2 )
+			startOptimization();
+	}
+
+	/**
+	 * Blocks until the running optimization finishes.  Results still need to be applied.
+	 */
+	public void waitForResults() {
+		if( running == null )
+			return;
+		try {
+			running.get();
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch( Exception e ) {
+			running = null;
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns true if an optimization is running or its results haven't been applied yet
+	 */
+	public boolean isPending() {
+		return running != null;
+	}
+
+	/**
+	 * Discards all key frames.  Waits for a running optimization to finish first.
+	 */
+	public void reset() {
+		waitForResults();
+		running = null;
+		window.clear();
+		points.clear();
+		snapshotFrames.clear();
+		snapshotPoints.clear();
+	}
+
+	/**
+	 * Stops the background thread
+	 */
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns true if {@link #close()} has been called
+	 */
+	public boolean isClosed() {
+		return executor.isShutdown();
+	}
+
+	/**
+	 * Number of key frames in the window
+	 */
+	public int getNumKeyFrames() {
+		return window.size();
+	}
+
+	/**
+	 * Returns a key frame in the window.  0 is the oldest
+	 */
+	public KeyFrame getKeyFrame( int index ) {
+		return window.get(index);
+	}
+
+	/**
+	 * Number of points observed by key frames in the window
+	 */
+	public int getNumPoints() {
+		return points.size();
+	}
+
+	/**
+	 * Location of a point in the world frame or null if it isn't in the window
+	 */
+	public Point3D_F64 getPoint( long trackId ) {
+		WindowPoint p = points.get(trackId);
+		return p == null ? null : p.location;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Number of optimizations which were successful and applied
+	 */
+	public int getTotalOptimized() {
+		return totalOptimized;
+	}
+
+	/**
+	 * Number of optimizations where bundle adjustment failed
+	 */
+	public int getTotalFailed() {
+		return totalFailed;
+	}
+
+	/**
+	 * Runs bundle adjustment on the snapshot
+	 */
+	private class BundleTask implements Runnable {
+		volatile boolean success;
+
+		@Override
+		public void run() {
+			success = bundle.process(model, observations.toList());
+		}
+	}
+
+	/**
+	 * Key frame in the window
+	 */
+	public static class KeyFrame {
+		// unique ID of the key frame
+		int id = -1;
+		// transform from world to left camera
+		Se3_F64 worldToLeft = new Se3_F64();
+		// stereo observations of tracks
+		FastQueue<Observation> observations = new FastQueue<>(Observation.class, true);
+
+		/**
+		 * Adds a stereo observation of a track
+		 *
+		 * @param trackId Unique ID of the track
+		 * @param left Observation in left camera, normalized image coordinates.  Copied.
+		 * @param right Observation in right camera, normalized image coordinates.  Copied.
+		 * @param location Estimated location of the point in the world frame.  Only used if the point isn't
+		 *                 already in the window.  Copied.
+		 */
+		public void addObservation( long trackId , Point2D_F64 left , Point2D_F64 right , Point3D_F64 location ) {
+			Observation o = observations.grow();
+			o.trackId = trackId;
+			o.left.set(left);
+			o.right.set(right);
+			o.initial.set(location);
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		/**
+		 * Transform from world to left camera.  Updated when optimization results are applied.
+		 */
+		public Se3_F64 getWorldToLeft() {
+			return worldToLeft;
+		}
+
+		public int getNumObservations() {
+			return observations.size;
+		}
+	}
+
+	/**
+	 * Stereo observation of a track
+	 */
+	public static class Observation {
+		long trackId;
+		Point2D_F64 left = new Point2D_F64();
+		Point2D_F64 right = new Point2D_F64();
+		Point3D_F64 initial = new Point3D_F64();
+	}
+
+	/**
+	 * A point observed by key frames in the window
+	 */
+	private static class WindowPoint {
+		Point3D_F64 location = new Point3D_F64();
+		// number of key frames in the window which observe it
+		int numKeyFrames;
+		// index in the bundle adjustment model or -1 if not in it
+		int index = -1;
+	}
+}
@@ -192,6 +192,26 @@ public class PyramidDirectColorDepth<T extends ImageGray<T>> {
 		worldToCurrent.reset();
 	}
 
+	/**
+	 * If true then the linear system in each layer is computed using multiple threads.
+	 */
+	public void setConcurrent( boolean concurrent ) {
+		for (int layer = 0; layer < layersOdom.length; layer++) {
+			layersOdom[layer].setConcurrent(concurrent);
+		}
+	}
+
+	/**
+	 * Specifies which key frame pixels are used in every layer.
+	 *
+	 * @see VisOdomDirectColorDepth#setPixelSelection(float, int, int)
+	 */
+	public void setPixelSelection( float minGradient , int cellSize , int maxPerCell ) {
+		for (int layer = 0; layer < layersOdom.length; layer++) {
+			layersOdom[layer].setPixelSelection(minGradient, cellSize, maxPerCell);
+		}
+	}
+
 	public void setDiversityThreshold(double diversityThreshold) {
 		this.diversityThreshold = diversityThreshold;
 	}
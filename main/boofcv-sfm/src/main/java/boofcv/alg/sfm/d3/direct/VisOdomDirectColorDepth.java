@@ -24,6 +24,8 @@ import boofcv.alg.InputSanityCheck;
 import boofcv.alg.filter.derivative.DerivativeType;
 import boofcv.alg.interpolate.InterpolatePixelS;
 import boofcv.alg.interpolate.InterpolationType;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageMultiBand;
 import boofcv.core.image.GImageMultiBand;
 import boofcv.core.image.border.BorderType;
@@ -39,12 +41,35 @@ import georegression.transform.se.SePointOps_F32;
 import georegression.transform.twist.TwistCoordinate_F32;
 import georegression.transform.twist.TwistOps_F32;
 import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F32;
 import org.ejml.data.DMatrixRMaj;
 import org.ejml.dense.row.factory.LinearSolverFactory_DDRM;
 import org.ejml.interfaces.linsol.LinearSolverDense;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * TODO Fill in
+ * <p>
+ * Estimates the motion of a camera relative to a key frame by directly minimizing the photometric error of key frame
+ * pixels with known depth.  Gauss-Newton is used and each iteration linearizes the error around the current
+ * estimate.  Instead of building the full Jacobian, which has one row for every pixel and band, the 6x6 normal
+ * equations J<sup>T</sup>J and J<sup>T</sup>r are accumulated directly and solved with a Cholesky decomposition.
+ * </p>
+ *
+ * <p>
+ * Key frame pixels are split into fixed size blocks.  Each block computes its own partial sum and the partial sums
+ * are then combined with a pairwise tree reduction.  Since the blocks don't depend on the number of threads, the
+ * results are identical if {@link #setConcurrent concurrent} is true or false.
+ * </p>
+ *
+ * <p>
+ * By default every key frame pixel with a valid depth is used.  Pixels in flat regions contribute almost nothing
+ * to the solution and can be skipped with {@link #setPixelSelection}.  The image is divided into cells and
+ * in each cell only pixels with a high gradient are kept.  Selecting per cell keeps the pixels spread across the image,
+ * so the {@link FeatureSpatialDiversity_F32 spatial diversity} used to trigger new key frames still describes the
+ * whole scene.
+ * </p>
  *
  * @author Peter Abeles
  */
@@ -57,18 +82,42 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 	private ImageType<Planar<I>> imageType;
 	private ImageType<Planar<D>> derivType;
 
-	private LinearSolverDense<DMatrixRMaj> solver;
-	private DMatrixRMaj A = new DMatrixRMaj(1,6);
-	private DMatrixRMaj y = new DMatrixRMaj(1,1);
+	// number of key frame pixels in each block of the linear system
+	static final int BLOCK_SIZE = 1024;
+
+	private LinearSolverDense<DMatrixRMaj> solver = LinearSolverFactory_DDRM.chol(6);
+	// normal equations.  J'*J and J'*r
+	DMatrixRMaj JTJ = new DMatrixRMaj(6,6);
+	DMatrixRMaj JTr = new DMatrixRMaj(6,1);
 	private DMatrixRMaj twistMatrix = new DMatrixRMaj(6,1);
 
 	private ImageGradient<Planar<I>,Planar<D>> computeD;
 
-	private InterpolatePixelS<I> interpI;
-	private InterpolatePixelS<D> interpDX;
-	private InterpolatePixelS<D> interpDY;
+	// how images are interpolated.  Each worker has its own interpolation instances
+	private double inputMin,inputMax,derivMin,derivMax;
+	private InterpolationType interpType;
 
 	private GImageMultiBand wrapI;
+	private GImageMultiBand wrapDX,wrapDY;
+
+	// should the linear system be computed using multiple threads
+	private boolean concurrent = false;
+
+	// partial sum of the linear system for each block of key frame pixels
+	FastQueue<PartialSum> partials = new FastQueue<>(PartialSum.class,true);
+	// workers which are not in use
+	private final List<Worker> idleWorkers = new ArrayList<>();
+	// computes the partial sums for a range of blocks
+	private BlockTask blockTask = new BlockTask();
+
+	// pixel selection parameters
+	private float selectMinGradient = 0;
+	private int selectCellSize = 0;
+	private int selectMaxPerCell = 0;
+	// gradient score of each key pixel in the current cell
+	private GrowQueue_F32 cellScores = new GrowQueue_F32();
+	// storage for the gradient of a pixel
+	private float[] pixelDX, pixelDY;
 
 	// gradient of the current frame
 	Planar<D> derivX, derivY;
@@ -116,6 +165,10 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 		this.derivType = ImageType.pl(numBands,derivType);
 
 		wrapI = FactoryGImageMultiBand.create(this.imageType);
+		wrapDX = FactoryGImageMultiBand.create(this.derivType);
+		wrapDY = FactoryGImageMultiBand.create(this.derivType);
+		pixelDX = new float[numBands];
+		pixelDY = new float[numBands];
 		// min/max doesn't matter for bilinear interpolation
 		setInterpolation(0,0,0,0, InterpolationType.BILINEAR);
 
@@ -149,11 +202,6 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 
 		derivX.reshape(width, height);
 		derivY.reshape(width, height);
-
-		// set these to the maximum possible size
-		int N = width*height*imageType.getNumBands();
-		A.reshape(N,6);
-		y.reshape(N,1);
 	}
 
 	/**
@@ -166,9 +214,16 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 	 */
 	public void setInterpolation( double inputMin , double inputMax, double derivMin , double derivMax ,
 								  InterpolationType type) {
-		interpI = FactoryInterpolation.createPixelS(inputMin,inputMax,type, BorderType.EXTENDED, imageType.getImageClass());
-		interpDX = FactoryInterpolation.createPixelS(derivMin,derivMax,type, BorderType.EXTENDED, derivType.getImageClass());
-		interpDY = FactoryInterpolation.createPixelS(derivMin,derivMax,type, BorderType.EXTENDED, derivType.getImageClass());
+		this.inputMin = inputMin;
+		this.inputMax = inputMax;
+		this.derivMin = derivMin;
+		this.derivMax = derivMax;
+		this.interpType = type;
+
+		// workers need to be recreated with the new interpolation
+		synchronized( idleWorkers ) {
+			idleWorkers.clear();
+		}
 	}
 
 	/**
@@ -182,6 +237,23 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 		this.maxIterations = maxIterations;
 	}
 
+	/**
+	 * Specifies which pixels in the key frame are used.  A pixel is only considered if the magnitude of its gradient,
+	 * summed across all bands, is at least minGradient.  Inside each cell only the maxPerCell pixels with the largest
+	 * gradient are kept.  Set minGradient and maxPerCell to zero to use all pixels.
+	 *
+	 * @param minGradient Minimum gradient magnitude.  If &le; 0 then there's no minimum.
+	 * @param cellSize Width of a square cell in pixels.  Try 16
+	 * @param maxPerCell Maximum number of pixels selected in a cell. If &le; 0 then there's no limit.
+	 */
+	public void setPixelSelection( float minGradient , int cellSize , int maxPerCell ) {
+		if( maxPerCell > 0 && cellSize <= 0 )
+			throw new IllegalArgumentException("Cell size must be positive when there's a limit per cell");
+		this.selectMinGradient = minGradient;
+		this.selectCellSize = cellSize;
+		this.selectMaxPerCell = maxPerCell;
+	}
+
 	/**
 	 * Set's the keyframe.  This is the image which motion is estimated relative to.  The 3D location of points in
 	 * the keyframe must be known.
@@ -194,32 +266,110 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 		wrapI.wrap(input);
 		keypixels.reset();
 
-		for (int y = 0; y < input.height; y++) {
-			for (int x = 0; x < input.width; x++) {
-				// See if there's a valid 3D point at this location
-				if( !pixelTo3D.process(x,y) ) {
-					continue;
+		boolean select = selectMinGradient > 0 || selectMaxPerCell > 0;
+		if( select ) {
+			computeD.process(input,derivX,derivY);
+			wrapDX.wrap(derivX);
+			wrapDY.wrap(derivY);
+		}
+
+		float minGradient2 = selectMinGradient*selectMinGradient;
+		int cellSize = select && selectCellSize > 0 ? selectCellSize : Math.max(input.width,input.height);
+
+		for (int y0 = 0; y0 < input.height; y0 += cellSize) {
+			int y1 = Math.min(input.height, y0 + cellSize);
+			for (int x0 = 0; x0 < input.width; x0 += cellSize) {
+				int x1 = Math.min(input.width, x0 + cellSize);
+
+				int cellStart = keypixels.size;
+				cellScores.reset();
+
+				for (int y = y0; y < y1; y++) {
+					for (int x = x0; x < x1; x++) {
+						float score = 0;
+						if( select ) {
+							score = gradientNorm2(x, y);
+							if( score < minGradient2 )
+								continue;
+						}
+
+						if( addKeyPixel(x, y, pixelTo3D) )
+							cellScores.add(score);
+					}
 				}
 
-				float P_x = (float)pixelTo3D.getX();
-				float P_y = (float)pixelTo3D.getY();
-				float P_z = (float)pixelTo3D.getZ();
-				float P_w = (float)pixelTo3D.getW();
+				if( selectMaxPerCell > 0 )
+					keepBestInCell(cellStart, selectMaxPerCell);
+			}
+		}
+	}
 
-				// skip point if it's at infinity or has a negative value
-				if( P_w <= 0 )
-					continue;
+	/**
+	 * Adds the pixel to the key frame if it has a valid 3D location
+	 */
+	private boolean addKeyPixel( int x , int y , ImagePixelTo3D pixelTo3D ) {
+		// See if there's a valid 3D point at this location
+		if( !pixelTo3D.process(x,y) ) {
+			return false;
+		}
 
-				// save the results
-				Pixel p = keypixels.grow();
-				p.valid = true;
-				wrapI.get(x,y,p.bands);
+		float P_x = (float)pixelTo3D.getX();
+		float P_y = (float)pixelTo3D.getY();
+		float P_z = (float)pixelTo3D.getZ();
+		float P_w = (float)pixelTo3D.getW();
+
+		// skip point if it's at infinity or has a negative value
+		if( P_w <= 0 )
+			return false;
+
+		// save the results
+		Pixel p = keypixels.grow();
+		p.valid = true;
+		wrapI.get(x,y,p.bands);
+
+		p.x = x;
+		p.y = y;
+		p.p3.set(P_x/P_w,P_y/P_w,P_z/P_w);
+		return true;
+	}
+
+	/**
+	 * Squared magnitude of the gradient summed across all the bands
+	 */
+	private float gradientNorm2( int x , int y ) {
+		wrapDX.get(x,y,pixelDX);
+		wrapDY.get(x,y,pixelDY);
+
+		float total = 0;
+		for (int band = 0; band < pixelDX.length; band++) {
+			total += pixelDX[band]*pixelDX[band] + pixelDY[band]*pixelDY[band];
+		}
+		return total;
+	}
 
-				p.x = x;
-				p.y = y;
-				p.p3.set(P_x/P_w,P_y/P_w,P_z/P_w);
+	/**
+	 * Only keeps the key pixels in the cell with the largest score.  Pixels in the cell start at cellStart and
+	 * their scores are in {@link #cellScores}.
+	 */
+	private void keepBestInCell( int cellStart , int maxPerCell ) {
+		int N = cellScores.size;
+		if( N <= maxPerCell )
+			return;
+
+		// partial selection sort.  Number of pixels per cell is small
+		float[] scores = cellScores.data;
+		Pixel[] pixels = keypixels.data;
+		for (int i = 0; i < maxPerCell; i++) {
+			int best = i;
+			for (int j = i+1; j < N; j++) {
+				if( scores[j] > scores[best] )
+					best = j;
 			}
+			float tmpScore = scores[i]; scores[i] = scores[best]; scores[best] = tmpScore;
+			Pixel tmpPixel = pixels[cellStart+i]; pixels[cellStart+i] = pixels[cellStart+best];
+			pixels[cellStart+best] = tmpPixel;
 		}
+		keypixels.resize(cellStart+maxPerCell);
 	}
 
 	/**
@@ -279,10 +429,6 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 	 * Initialize motion related data structures
 	 */
 	void initMotion(Planar<I> input) {
-		if( solver == null ) {
-			solver = LinearSolverFactory_DDRM.qr(input.width*input.height*input.getNumBands(),6);
-		}
-
 		// compute image derivative and setup interpolation functions
 		computeD.process(input,derivX,derivY);
 	}
@@ -293,10 +439,47 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 	 */
 	void constructLinearSystem(Planar<I> input , Se3_F32 g ) {
 		int numBands = imageType.getNumBands();
+		int numBlocks = (keypixels.size + BLOCK_SIZE - 1)/BLOCK_SIZE;
 
-		// first precompute everything that does not depend on pixel values
-		inboundsPixels = 0;
-		for (int i = 0; i < keypixels.size(); i++) {
+		partials.resize(Math.max(1,numBlocks));
+		partials.get(0).reset();
+
+		blockTask.input = input;
+		blockTask.g = g;
+		if( concurrent ) {
+			BoofConcurrency.loopBlocks(0, numBlocks, blockTask);
+		} else {
+			blockTask.run(0, numBlocks);
+		}
+		blockTask.input = null;
+
+		// pairwise tree reduction.  Adds numbers of similar magnitude together and the order doesn't depend
+		// on the number of threads
+		for (int step = 1; step < numBlocks; step *= 2) {
+			for (int i = 0; i+step < numBlocks; i += 2*step) {
+				partials.data[i].add(partials.data[i+step]);
+			}
+		}
+
+		PartialSum total = partials.get(0);
+		total.copyInto(JTJ, JTr);
+
+		inboundsPixels = total.count;
+		errorOptical = (float)(total.error / (inboundsPixels*numBands));
+	}
+
+	/**
+	 * Computes the partial sum of the linear system for a block of key frame pixels
+	 */
+	private void computePartialSum(Worker w , Planar<I> input , Se3_F32 g , int block , PartialSum sum ) {
+		int numBands = imageType.getNumBands();
+		Point3D_F32 S = w.S;
+		float[] a = w.a;
+
+		sum.reset();
+
+		int end = Math.min(keypixels.size, (block+1)*BLOCK_SIZE);
+		for (int i = block*BLOCK_SIZE; i < end; i++) {
 			Pixel p = keypixels.data[i];
 
 			// Apply the known warp
@@ -318,7 +501,7 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 			} else {
 				p.valid = true;
 			}
-			inboundsPixels++;
+			sum.count++;
 
 			// pi matrix derivative relative to t at S
 			float ZZ = S.z * S.z;
@@ -327,33 +510,12 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 			p.dP13 = -S.x * fx / ZZ;
 			p.dP22 = fy / S.z;
 			p.dP23 = -S.y * fy / ZZ;
-		}
-
-		// how compute the components which require
-		errorOptical = 0;
-		int row = 0;
-		for (int band = 0; band < numBands; band++) {
-			interpDX.setImage(derivX.getBand(band));
-			interpDY.setImage(derivY.getBand(band));
-			interpI.setImage(input.getBand(band));
-
-			for (int i = 0; i < keypixels.size(); i++) {
-				Pixel p = keypixels.data[i];
-
-				if( !p.valid )
-					continue;
-
-				// Apply the known warp
-				// TODO precompute?
-				SePointOps_F32.transform(g, p.p3, S);
 
+			for (int band = 0; band < numBands; band++) {
 				// sample pixel values at warped location in I_1
-				// NOTE: This could be highly optimized.  Compute and save interpolation weights once per input
-				//       instead of for each band and image (current,dx,dy)
-				// TODO create a special bilinear class for this?
-				float current = interpI.get( p.proj.x, p.proj.y);
-				float dx      = interpDX.get(p.proj.x, p.proj.y);
-				float dy      = interpDY.get(p.proj.x, p.proj.y);
+				float current = w.interpI[band].get( p.proj.x, p.proj.y);
+				float dx      = w.interpDX[band].get(p.proj.x, p.proj.y);
+				float dy      = w.interpDY[band].get(p.proj.x, p.proj.y);
 
 				// B = grad^T * dPI/dt = shape(1,3)
 				float b1 = dx*p.dP11;
@@ -361,32 +523,38 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 				float b3 = dx*p.dP13 + dy*p.dP23;
 
 				// C * A(S'(x)) = shape(1,6)
-				int indexA = row * 6;
-				A.data[indexA++] = -b2*S.z + b3*S.y;
-				A.data[indexA++] =  b1*S.z - b3*S.x;
-				A.data[indexA++] = -b1*S.y + b2*S.x;
-				A.data[indexA++] = b1;
-				A.data[indexA++] = b2;
-				A.data[indexA]   = b3;
+				a[0] = -b2*S.z + b3*S.y;
+				a[1] =  b1*S.z - b3*S.x;
+				a[2] = -b1*S.y + b2*S.x;
+				a[3] = b1;
+				a[4] = b2;
+				a[5] = b3;
 
 				float error = -(current - p.bands[band]);
-				y.data[row] = error;
-
-				errorOptical += Math.abs(error);
-				row += 1;
+				sum.addRow(a, error);
 			}
 		}
-		errorOptical /= row;
+	}
 
-		A.numRows = row;
-		y.numRows = row;
+	private Worker acquireWorker() {
+		synchronized( idleWorkers ) {
+			if( idleWorkers.isEmpty() )
+				return new Worker();
+			return idleWorkers.remove(idleWorkers.size()-1);
+		}
+	}
+
+	private void releaseWorker( Worker worker ) {
+		synchronized( idleWorkers ) {
+			idleWorkers.add(worker);
+		}
 	}
 
 	boolean solveSystem() {
-		if( !solver.setA(A))
+		if( !solver.setA(JTJ))
 			return false;
 
-		solver.solve(y,twistMatrix);
+		solver.solve(JTr,twistMatrix);
 
 		twist.set((float)twistMatrix.data[0], (float)twistMatrix.data[1], (float)twistMatrix.data[2],
 				(float)twistMatrix.data[3], (float)twistMatrix.data[4], (float)twistMatrix.data[5]);
@@ -424,6 +592,121 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 		}
 	}
 
+	/**
+	 * Partial sum of the normal equations for a block of pixels.  Only the upper triangle of J'*J is stored.
+	 */
+	public static class PartialSum {
+		double[] jtj = new double[21];
+		double[] jtr = new double[6];
+		// sum of absolute error
+		double error;
+		// number of pixels which were inside the image
+		int count;
+
+		public void reset() {
+			for (int i = 0; i < jtj.length; i++) {
+				jtj[i] = 0;
+			}
+			for (int i = 0; i < jtr.length; i++) {
+				jtr[i] = 0;
+			}
+			error = 0;
+			count = 0;
+		}
+
+		/**
+		 * Adds a single row of the Jacobian and its residual
+		 */
+		public void addRow( float[] a , float residual ) {
+			int index = 0;
+			for (int row = 0; row < 6; row++) {
+				double v = a[row];
+				for (int col = row; col < 6; col++) {
+					jtj[index++] += v*a[col];
+				}
+				jtr[row] += v*residual;
+			}
+			error += Math.abs(residual);
+		}
+
+		public void add( PartialSum src ) {
+			for (int i = 0; i < jtj.length; i++) {
+				jtj[i] += src.jtj[i];
+			}
+			for (int i = 0; i < jtr.length; i++) {
+				jtr[i] += src.jtr[i];
+			}
+			error += src.error;
+			count += src.count;
+		}
+
+		public void copyInto( DMatrixRMaj JTJ , DMatrixRMaj JTr ) {
+			int index = 0;
+			for (int row = 0; row < 6; row++) {
+				for (int col = row; col < 6; col++) {
+					double v = jtj[index++];
+					JTJ.unsafe_set(row,col,v);
+					JTJ.unsafe_set(col,row,v);
+				}
+				JTr.data[row] = jtr[row];
+			}
+		}
+	}
+
+	/**
+	 * Computes partial sums for a range of blocks
+	 */
+	private class BlockTask implements IntRangeTask {
+		Planar<I> input;
+		Se3_F32 g;
+
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			Worker w = acquireWorker();
+			try {
+				w.setImages(input);
+				for (int block = minInclusive; block < maxExclusive; block++) {
+					computePartialSum(w, input, g, block, partials.data[block]);
+				}
+			} finally {
+				releaseWorker(w);
+			}
+		}
+	}
+
+	/**
+	 * Interpolation and work space used by one thread at a time
+	 */
+	private class Worker {
+		InterpolatePixelS<I>[] interpI;
+		InterpolatePixelS<D>[] interpDX;
+		InterpolatePixelS<D>[] interpDY;
+
+		Point3D_F32 S = new Point3D_F32();
+		// row in the Jacobian
+		float[] a = new float[6];
+
+		public Worker() {
+			int numBands = imageType.getNumBands();
+			interpI = new InterpolatePixelS[numBands];
+			interpDX = new InterpolatePixelS[numBands];
+			interpDY = new InterpolatePixelS[numBands];
+			for (int band = 0; band < numBands; band++) {
+				interpI[band] = FactoryInterpolation.createPixelS(inputMin,inputMax,interpType, BorderType.EXTENDED, imageType.getImageClass());
+				interpDX[band] = FactoryInterpolation.createPixelS(derivMin,derivMax,interpType, BorderType.EXTENDED, derivType.getImageClass());
+				interpDY[band] = FactoryInterpolation.createPixelS(derivMin,derivMax,interpType, BorderType.EXTENDED, derivType.getImageClass());
+			}
+		}
+
+		public void setImages( Planar<I> input ) {
+			for (int band = 0; band < interpI.length; band++) {
+				interpI[band].setImage(input.getBand(band));
+				interpDX[band].setImage(derivX.getBand(band));
+				interpDY[band].setImage(derivY.getBand(band));
+			}
+		}
+	}
+
 	public Se3_F32 getKeyToCurrent() {
 		return keyToCurrent;
 	}
@@ -435,4 +718,15 @@ public class VisOdomDirectColorDepth<I extends ImageGray<I>, D extends ImageGray
 	public ImageType<Planar<D>> getDerivType() {
 		return derivType;
 	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * If true then the linear system is computed using multiple threads.  Results are identical either way.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
 }
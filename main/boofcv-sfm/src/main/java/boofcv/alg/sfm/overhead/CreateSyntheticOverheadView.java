@@ -28,7 +28,8 @@ import georegression.struct.point.Point2D_F64;
 import georegression.struct.point.Point3D_F64;
 import georegression.struct.se.Se3_F64;
 import georegression.transform.se.SePointOps_F64;
-import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F32;
+import org.ddogleg.struct.GrowQueue_I32;
 
 /**
  * <p>
@@ -50,8 +51,10 @@ import org.ddogleg.struct.FastQueue;
  *
  * <p>
  * Implementation Notes:<br>
- * The transform is precomputed and stored in an array which is w*h*2*8 bytes, where (w,h) is the size of the overhead
- * image.
+ * The transform is precomputed and only cells in the overhead image which are visible in the camera are saved.
+ * Their pixel coordinates are stored in two float arrays, 8 bytes per visible cell, in row-major order.  Visible
+ * cells in each row are described by runs, the column the run starts at and its length, so invalid cells are
+ * skipped without being examined.  If concurrent, blocks of rows are rendered in different threads.
  * </p>
 
  * @author Peter Abeles
@@ -62,11 +65,18 @@ public abstract class CreateSyntheticOverheadView<T extends ImageBase<T>>
 	protected int overheadWidth;
 	protected int overheadHeight;
 
-	// pixel coordinate for each pixel in the overhead image
-	// if an element is null that means there is no corresponding image pixel
-	protected Point2D_F32 mapPixels[];
+	// pixel coordinate in the camera image of each visible cell in the overhead image. Row-major order
+	protected GrowQueue_F32 mapX = new GrowQueue_F32();
+	protected GrowQueue_F32 mapY = new GrowQueue_F32();
+	// runs of visible cells. For each run the column it starts at and the number of cells
+	protected GrowQueue_I32 runs = new GrowQueue_I32();
+	// index of the first run in each row.  overheadHeight+1 elements
+	protected GrowQueue_I32 rowRuns = new GrowQueue_I32();
+	// index in mapX and mapY of the first visible cell in each row.  overheadHeight+1 elements
+	protected GrowQueue_I32 rowPoints = new GrowQueue_I32();
 
-	private FastQueue<Point2D_F32> points = new FastQueue<>(Point2D_F32.class, true);
+	// should rows be rendered in multiple threads
+	protected boolean concurrent = false;
 
 	/**
 	 * Specifies camera configurations.
@@ -88,12 +98,11 @@ public abstract class CreateSyntheticOverheadView<T extends ImageBase<T>>
 
 		Point2Transform2_F64 normToPixel = LensDistortionOps.narrow(intrinsic).distort_F64(false, true);
 
-		// Declare storage for precomputed pixel locations
-		int overheadPixels = overheadHeight*overheadWidth;
-		if( mapPixels == null || mapPixels.length < overheadPixels) {
-			mapPixels = new Point2D_F32[overheadPixels];
-		}
-		points.reset();
+		mapX.reset();
+		mapY.reset();
+		runs.reset();
+		rowRuns.resize(overheadHeight+1);
+		rowPoints.resize(overheadHeight+1);
 
 		// -------- storage for intermediate results
 		Point2D_F64 pixel = new Point2D_F64();
@@ -102,15 +111,21 @@ public abstract class CreateSyntheticOverheadView<T extends ImageBase<T>>
 		// coordinate in camera reference frame
 		Point3D_F64 pt_cam = new Point3D_F64();
 
-		int indexOut = 0;
 		for( int i = 0; i < overheadHeight; i++ ) {
+			rowRuns.data[i] = runs.size/2;
+			rowPoints.data[i] = mapX.size;
+
 			pt_plane.x = -(i*cellSize - centerY);
-			for( int j = 0; j < overheadWidth; j++ , indexOut++ ) {
+			// column the current run started at. -1 if not inside a run
+			int runStart = -1;
+			for( int j = 0; j < overheadWidth; j++ ) {
 				pt_plane.z = j*cellSize - centerX;
 
 				// plane to camera reference frame
 				SePointOps_F64.transform(planeToCamera, pt_plane, pt_cam);
 
+				boolean visible = false;
+
 				// can't see behind the camera
 				if( pt_cam.z > 0 ) {
 					// compute normalized then convert to pixels
@@ -121,25 +136,65 @@ public abstract class CreateSyntheticOverheadView<T extends ImageBase<T>>
 
 					// make sure it's in the image
 					if(BoofMiscOps.checkInside(intrinsic.width,intrinsic.height,x,y) ){
-						Point2D_F32 p = points.grow();
-						p.set(x,y);
-						mapPixels[ indexOut ]= p;
-					} else {
-						mapPixels[ indexOut ]= null;
+						mapX.add(x);
+						mapY.add(y);
+						visible = true;
 					}
 				}
+
+				if( visible ) {
+					if( runStart < 0 )
+						runStart = j;
+				} else if( runStart >= 0 ) {
+					runs.add(runStart);
+					runs.add(j-runStart);
+					runStart = -1;
+				}
+			}
+			if( runStart >= 0 ) {
+				runs.add(runStart);
+				runs.add(overheadWidth-runStart);
 			}
 		}
+		rowRuns.data[overheadHeight] = runs.size/2;
+		rowPoints.data[overheadHeight] = mapX.size;
 	}
 
 	/**
 	 * Returns corresponding pixel to pixel coordinate in overhead image
 	 * @param x overhead pixel x-coordinate
 	 * @param y overhead pixel y-coordinate
-	 * @return Pixel in camera image
+	 * @return Pixel in camera image or null if it isn't visible.  A new instance is returned.
 	 */
 	public Point2D_F32 getOverheadToPixel( int x , int y ) {
-		return mapPixels[y*overheadWidth + x];
+		int indexPt = rowPoints.data[y];
+		for( int r = rowRuns.data[y]; r < rowRuns.data[y+1]; r++ ) {
+			int col = runs.data[r*2];
+			int length = runs.data[r*2+1];
+			if( x < col )
+				return null;
+			if( x < col + length ) {
+				indexPt += x - col;
+				return new Point2D_F32(mapX.data[indexPt],mapY.data[indexPt]);
+			}
+			indexPt += length;
+		}
+		return null;
+	}
+
+	/**
+	 * Number of cells in the overhead image which are visible in the camera
+	 */
+	public int getNumberVisible() {
+		return mapX.size;
+	}
+
+	/**
+	 * Makes sure the output image has the same shape as the overhead image
+	 */
+	protected void checkOutput( ImageBase output ) {
+		if( output.width != overheadWidth || output.height != overheadHeight )
+			throw new IllegalArgumentException("Output image must be "+overheadWidth+"x"+overheadHeight);
 	}
 
 	/**
@@ -149,4 +204,15 @@ public abstract class CreateSyntheticOverheadView<T extends ImageBase<T>>
 	 * @param output (Output) Image containing overhead view.
 	 */
 	public abstract void process(T input,  T output);
+
+	/**
+	 * If true then rows will be rendered in multiple threads.  The output is the same.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
 }
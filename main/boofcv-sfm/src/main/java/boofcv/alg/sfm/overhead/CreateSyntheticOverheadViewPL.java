@@ -20,13 +20,14 @@ package boofcv.alg.sfm.overhead;
 
 import boofcv.alg.interpolate.InterpolatePixelS;
 import boofcv.alg.interpolate.InterpolationType;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageGray;
 import boofcv.core.image.GImageGray;
 import boofcv.core.image.border.BorderType;
 import boofcv.factory.interpolate.FactoryInterpolation;
 import boofcv.struct.image.ImageGray;
 import boofcv.struct.image.Planar;
-import georegression.struct.point.Point2D_F32;
 
 /**
  * Implementation of {@link CreateSyntheticOverheadView} for {@link Planar}.
@@ -41,8 +42,11 @@ public class CreateSyntheticOverheadViewPL<T extends ImageGray<T>>
 	private InterpolatePixelS<T> interp[];
 
 	// local variables
+	private Planar<T> input;
 	private GImageGray output[];
 
+	private RowsTask rowsTask = new RowsTask();
+
 	/**
 	 * Constructor which allows the interpolator for each band to be specified
 	 *
@@ -75,24 +79,63 @@ public class CreateSyntheticOverheadViewPL<T extends ImageGray<T>>
 	 * @param output (Output) Image containing overhead view.
 	 */
 	public void process(Planar<T> input, Planar<T> output) {
+		checkOutput(output);
 
+		this.input = input;
 		int N = input.getNumBands();
 		for( int i = 0; i < N; i++ ) {
 			this.output[i] = FactoryGImageGray.wrap(output.getBand(i),this.output[i]);
 			interp[i].setImage(input.getBand(i));
 		}
 
-		int indexMap = 0;
-		for( int i = 0; i < output.height; i++ ) {
-			int indexOut = output.startIndex + i*output.stride;
-			for( int j = 0; j < output.width; j++ , indexOut++,indexMap++ ) {
-				Point2D_F32 p = mapPixels[indexMap];
-				if( p != null ) {
-					for( int k = 0; k < N; k++ ) {
-						this.output[k].set(indexOut, interp[k].get( p.x, p.y));
+		if( concurrent && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(0, overheadHeight, rowsTask);
+		} else {
+			render(interp, 0, overheadHeight);
+		}
+	}
+
+	/**
+	 * Renders each band in the block of rows.  Bands are processed one at a time so that each pass reads through
+	 * the mapping table sequentially.
+	 */
+	private void render( InterpolatePixelS<T> interp[] , int y0 , int y1 ) {
+		final float[] mapX = this.mapX.data;
+		final float[] mapY = this.mapY.data;
+		final int[] runs = this.runs.data;
+
+		for( int band = 0; band < interp.length; band++ ) {
+			InterpolatePixelS<T> interpBand = interp[band];
+			GImageGray outputBand = output[band];
+			ImageGray image = outputBand.getImage();
+
+			for( int y = y0; y < y1; y++ ) {
+				int indexPt = rowPoints.data[y];
+				int indexRow = image.startIndex + y*image.stride;
+				int runEnd = rowRuns.data[y+1]*2;
+				for( int r = rowRuns.data[y]*2; r < runEnd; r += 2 ) {
+					int indexOut = indexRow + runs[r];
+					int indexEnd = indexOut + runs[r+1];
+					for( ; indexOut < indexEnd; indexOut++, indexPt++ ) {
+						outputBand.set(indexOut,interpBand.get(mapX[indexPt], mapY[indexPt]));
 					}
 				}
 			}
 		}
 	}
+
+	/**
+	 * Renders a block of rows using its own interpolation
+	 */
+	private class RowsTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			InterpolatePixelS<T> interp[] = new InterpolatePixelS[CreateSyntheticOverheadViewPL.this.interp.length];
+			for( int i = 0; i < interp.length; i++ ) {
+				interp[i] = CreateSyntheticOverheadViewPL.this.interp[i].copy();
+				interp[i].setImage(input.getBand(i));
+			}
+			render(interp, minInclusive, maxExclusive);
+		}
+	}
 }
@@ -19,10 +19,11 @@
 package boofcv.alg.sfm.overhead;
 
 import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
 import boofcv.core.image.FactoryGImageGray;
 import boofcv.core.image.GImageGray;
 import boofcv.struct.image.ImageGray;
-import georegression.struct.point.Point2D_F32;
 
 /**
  * Implementation of {@link CreateSyntheticOverheadView} for {@link ImageGray}.
@@ -35,8 +36,11 @@ public class CreateSyntheticOverheadViewS<T extends ImageGray<T>> extends Create
 	private InterpolatePixelS<T> interp;
 
 	// local variables
+	private T input;
 	private GImageGray output;
 
+	private RowsTask rowsTask = new RowsTask();
+
 	/**
 	 * Constructor
 	 *
@@ -52,19 +56,48 @@ public class CreateSyntheticOverheadViewS<T extends ImageGray<T>> extends Create
 	 * @param output (Output) Image containing overhead view.
 	 */
 	public void process(T input, T output) {
+		checkOutput(output);
 
+		this.input = input;
 		this.output = FactoryGImageGray.wrap(output,this.output);
 		interp.setImage(input);
 
-		int indexMap = 0;
-		for( int i = 0; i < output.height; i++ ) {
-			int indexOut = output.startIndex + i*output.stride;
-			for( int j = 0; j < output.width; j++ , indexOut++,indexMap++ ) {
-				Point2D_F32 p = mapPixels[indexMap];
-				if( p != null ) {
-					this.output.set(indexOut,interp.get( p.x, p.y));
+		if( concurrent && BoofConcurrency.isConcurrent() ) {
+			BoofConcurrency.loopBlocks(0, overheadHeight, rowsTask);
+		} else {
+			render(interp, 0, overheadHeight);
+		}
+	}
+
+	private void render( InterpolatePixelS<T> interp , int y0 , int y1 ) {
+		final float[] mapX = this.mapX.data;
+		final float[] mapY = this.mapY.data;
+		final int[] runs = this.runs.data;
+		final ImageGray image = output.getImage();
+
+		for( int y = y0; y < y1; y++ ) {
+			int indexPt = rowPoints.data[y];
+			int indexRow = image.startIndex + y*image.stride;
+			int runEnd = rowRuns.data[y+1]*2;
+			for( int r = rowRuns.data[y]*2; r < runEnd; r += 2 ) {
+				int indexOut = indexRow + runs[r];
+				int indexEnd = indexOut + runs[r+1];
+				for( ; indexOut < indexEnd; indexOut++, indexPt++ ) {
+					output.set(indexOut,interp.get(mapX[indexPt], mapY[indexPt]));
 				}
 			}
 		}
 	}
+
+	/**
+	 * Renders a block of rows using its own interpolation
+	 */
+	private class RowsTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			InterpolatePixelS<T> interp = CreateSyntheticOverheadViewS.this.interp.copy();
+			interp.setImage(input);
+			render(interp, minInclusive, maxExclusive);
+		}
+	}
 }
@@ -0,0 +1,960 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm.structure;
+
+import boofcv.abst.feature.associate.AssociateDescription;
+import boofcv.abst.feature.detdesc.DetectDescribePoint;
+import boofcv.abst.geo.BundleAdjustmentCalibrated;
+import boofcv.abst.geo.TriangulateNViewsCalibrated;
+import boofcv.alg.distort.LensDistortionOps;
+import boofcv.alg.geo.bundle.CalibratedPoseAndPoint;
+import boofcv.alg.geo.bundle.ViewPointObservations;
+import boofcv.concurrency.BoofConcurrency;
+import boofcv.concurrency.IntRangeTask;
+import boofcv.struct.calib.CameraPinholeRadial;
+import boofcv.struct.distort.Point2Transform2_F64;
+import boofcv.struct.feature.AssociatedIndex;
+import boofcv.struct.feature.TupleDesc;
+import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.geo.Point2D3D;
+import boofcv.struct.image.ImageBase;
+import georegression.geometry.GeometryMath_F64;
+import georegression.geometry.UtilVector3D_F64;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.point.Vector3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.fitting.modelset.ModelMatcher;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_F64;
+import org.ddogleg.struct.GrowQueue_I32;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Incremental structure from motion for a camera with known intrinsic parameters.  Views are added one at a time,
+ * e.g. frames from a video or an ordered photo collection, and the reconstruction is grown as they arrive.
+ * For each new view:
+ * </p>
+ *
+ * <ol>
+ *     <li>Pixel observations are converted into normalized image coordinates and descriptions are saved.</li>
+ *     <li>The view is associated against the previous {@link #setMatchWindow(int) matchWindow} views and each
+ *     pair is verified by robustly estimating an essential matrix.  Pairs can be processed concurrently.  Each
+ *     position in the window has its own association and robust estimator created by {@link PairMatcherFactory},
+ *     so the results are the same with or without threads.</li>
+ *     <li>Inlier matches are merged into tracks.  Tracks are never merged with each other, which ensures that
+ *     a track has at most one observation in each view.</li>
+ *     <li>Until the reconstruction has been initialized, the pair with the most inliers whose median parallax
+ *     exceeds {@link #setMinBootstrapAngle(double) minBootstrapAngle} defines the world frame and scale.</li>
+ *     <li>Next best view: the unregistered view which observes the most triangulated tracks has its pose estimated
+ *     using PnP.  This is repeated until no more views can be registered.  After each view is registered the
+ *     tracks it observes are triangulated, local bundle adjustment is run on the most recent views and every
+ *     {@link #setGlobalBundlePeriod(int) globalBundlePeriod} registrations all views are adjusted.  A view
+ *     which fails PnP is only tried again once it observes more triangulated tracks and is abandoned after
+ *     {@link #setMaxRegisterAttempts(int) maxRegisterAttempts} failures.</li>
+ * </ol>
+ *
+ * <p>
+ * Memory is bounded by the number of observations.  Images are never saved and descriptions are discarded once
+ * a view leaves the match window, so long sequences with thousands of views can be processed.  Observations
+ * which don't agree with their point after bundle adjustment are removed from their track.
+ * </p>
+ *
+ * <p>
+ * Feature and association backends are pluggable.  Features can be computed by any {@link DetectDescribePoint}
+ * or passed in directly with {@link #addView}, and association is provided by {@link PairMatcherFactory}.
+ * </p>
+ *
+ * @param <Desc> Type of feature description
+ *
+ * @author Peter Abeles
+ */
+public class IncrementalStructureFromMotion<Desc extends TupleDesc<Desc>> {
+
+	// type of feature description
+	private Class<Desc> descType;
+
+	// converts pixels into normalized image coordinates
+	private CameraPinholeRadial intrinsic;
+	private Point2Transform2_F64 pixelToNorm;
+
+	// creates association and epipolar estimators for each thread
+	private PairMatcherFactory<Desc> matcherFactory;
+	// estimates the pose of a view from known 3D points
+	private ModelMatcher<Se3_F64,Point2D3D> estimatePnP;
+	// estimates the location of a track from its observations
+	private TriangulateNViewsCalibrated triangulate;
+	// refines the pose of views and the location of tracks
+	private BundleAdjustmentCalibrated bundle;
+
+	// number of previous views a new view is associated against
+	private int matchWindow = 5;
+	// minimum number of inliers for a pair of views to be accepted
+	private int minPairInliers = 30;
+	// minimum number of PnP inliers for a view to be registered
+	private int minRegisterInliers = 20;
+	// minimum median angle between rays in radians for a pair to initialize the reconstruction
+	private double minBootstrapAngle = 0.05;
+	// minimum angle between any two rays in radians for a track to be triangulated
+	private double minTriangulationAngle = 0.02;
+	// maximum reprojection error in pixels for an observation
+	private double maxReprojectionError = 3;
+	// number of recently registered views optimized by local bundle adjustment
+	private int localBundleViews = 10;
+	// global bundle adjustment is run after this many views are registered. If <= 0 it's never run
+	private int globalBundlePeriod = 50;
+	// a view is abandoned after PnP fails this many times
+	private int maxRegisterAttempts = 3;
+
+	// if true pairs of views are matched concurrently
+	private boolean concurrent = true;
+
+	// all the views which have been added
+	private List<View<Desc>> views = new ArrayList<>();
+	// views which have not been registered yet
+	private List<View<Desc>> unregistered = new ArrayList<>();
+	// index of registered views in the order they were registered
+	private GrowQueue_I32 registered = new GrowQueue_I32();
+	// all tracks.  A track is a feature observed in multiple views
+	private FastQueue<Track> tracks = new FastQueue<>(Track.class, true);
+	// number of views registered since the last global bundle adjustment
+	private int registeredSinceGlobal;
+
+	// results from matching the new view against each view in the window
+	private List<PairResult> pairResults = new ArrayList<>();
+	private int numPairs;
+	// the view being matched
+	private View<Desc> matchTarget;
+	// worker for each position in the window.  The same position is always processed by the same worker
+	private List<MatchWorker> workers = new ArrayList<>();
+	private MatchTask matchTask = new MatchTask();
+
+	// storage for PnP
+	private FastQueue<Point2D3D> pnpPoints = new FastQueue<>(Point2D3D.class, true);
+
+	// storage for triangulation
+	private List<Point2D_F64> triObs = new ArrayList<>();
+	private List<Se3_F64> triPoses = new ArrayList<>();
+	private FastQueue<Vector3D_F64> triRays = new FastQueue<>(Vector3D_F64.class, true);
+	private Point3D_F64 cameraPt = new Point3D_F64();
+
+	// storage for parallax
+	private GrowQueue_F64 angles = new GrowQueue_F64();
+	private Vector3D_F64 rayA = new Vector3D_F64();
+	private Vector3D_F64 rayB = new Vector3D_F64();
+	private Vector3D_F64 rayBinA = new Vector3D_F64();
+
+	// storage for bundle adjustment
+	private CalibratedPoseAndPoint bundleModel = new CalibratedPoseAndPoint();
+	private FastQueue<ViewPointObservations> bundleObs = new FastQueue<>(ViewPointObservations.class, true);
+	private List<View<Desc>> bundleViews = new ArrayList<>();
+	private List<Track> bundlePoints = new ArrayList<>();
+
+	// storage used when features are detected internally
+	private FastQueue<Point2D_F64> detectedPixels = new FastQueue<>(Point2D_F64.class, false);
+	private FastQueue<Desc> detectedDesc;
+
+	/**
+	 * Specifies the algorithms it uses
+	 *
+	 * @param intrinsic Intrinsic camera parameters
+	 * @param matcherFactory Creates association and epipolar estimators for each thread
+	 * @param estimatePnP Robust PnP.  Observations are in normalized image coordinates.
+	 * @param triangulate Triangulation from N views
+	 * @param bundle Bundle adjustment
+	 * @param descType Type of feature description
+	 */
+	public IncrementalStructureFromMotion(CameraPinholeRadial intrinsic,
+										 PairMatcherFactory<Desc> matcherFactory,
+										 ModelMatcher<Se3_F64, Point2D3D> estimatePnP,
+										 TriangulateNViewsCalibrated triangulate,
+										 BundleAdjustmentCalibrated bundle,
+										 Class<Desc> descType ) {
+		this.descType = descType;
+		this.intrinsic = intrinsic;
+		this.matcherFactory = matcherFactory;
+		this.estimatePnP = estimatePnP;
+		this.triangulate = triangulate;
+		this.bundle = bundle;
+
+		pixelToNorm = LensDistortionOps.narrow(intrinsic).undistort_F64(true, false);
+		detectedDesc = new FastQueue<>(descType, false);
+	}
+
+	/**
+	 * Detects features inside the image and adds it as a new view.
+	 *
+	 * @param detector Feature detector and descriptor
+	 * @param image The image.  Not saved internally.
+	 */
+	public <T extends ImageBase<T>> void addImage( DetectDescribePoint<T,Desc> detector , T image ) {
+		detector.detect(image);
+
+		detectedPixels.reset();
+		detectedDesc.reset();
+		for( int i = 0; i < detector.getNumberOfFeatures(); i++ ) {
+			detectedPixels.add(detector.getLocation(i));
+			detectedDesc.add(detector.getDescription(i));
+		}
+
+		addView(detectedPixels, detectedDesc);
+	}
+
+	/**
+	 * Adds a new view and updates the reconstruction.
+	 *
+	 * @param pixels Location of each feature in pixels.  Not modified.
+	 * @param descriptions Description of each feature.  Copied internally.
+	 */
+	public void addView( FastQueue<Point2D_F64> pixels , FastQueue<Desc> descriptions ) {
+		if( pixels.size() != descriptions.size() )
+			throw new IllegalArgumentException("The two lists must be the same size");
+
+		View<Desc> view = new View<>();
+		view.index = views.size();
+		view.descriptions = new FastQueue<>(descriptions.size(), descType, false);
+		for( int i = 0; i < pixels.size(); i++ ) {
+			Point2D_F64 p = pixels.get(i);
+			pixelToNorm.compute(p.x, p.y, view.observations.grow());
+			view.descriptions.add(descriptions.get(i).copy());
+			view.tracks.add(-1);
+		}
+		views.add(view);
+		unregistered.add(view);
+
+		matchToWindow(view);
+		updateTracks(view);
+
+		// the oldest view in the window will never be associated again
+		if( view.index >= matchWindow ) {
+			View<Desc> oldest = views.get(view.index - matchWindow);
+			oldest.descriptions = null;
+			// it can't gain any more tracks, so if it has none it can never be registered
+			if( !oldest.registered && !hasTracks(oldest) )
+				unregistered.remove(oldest);
+		}
+
+		if( registered.size == 0 ) {
+			if( !bootstrap(view) )
+				return;
+		}
+
+		registerViews();
+	}
+
+	/**
+	 * Associates the view against the previous views in the window and verifies each pair
+	 */
+	private void matchToWindow( View<Desc> view ) {
+		int first = Math.max(0, view.index - matchWindow);
+		numPairs = view.index - first;
+
+		while( pairResults.size() < numPairs ) {
+			pairResults.add(new PairResult());
+			workers.add(new MatchWorker());
+		}
+		for( int i = 0; i < numPairs; i++ ) {
+			pairResults.get(i).reset();
+			pairResults.get(i).viewA = first + i;
+		}
+
+		matchTarget = view;
+		if( concurrent ) {
+			BoofConcurrency.loopBlocks(0, numPairs, matchTask);
+		} else {
+			matchTask.run(0, numPairs);
+		}
+		matchTarget = null;
+	}
+
+	/**
+	 * Adds the inliers from each pair to the tracks.  Pairs are processed in order so that the results
+	 * don't depend on the number of threads.
+	 */
+	private void updateTracks( View<Desc> viewB ) {
+		for( int i = 0; i < numPairs; i++ ) {
+			PairResult result = pairResults.get(i);
+			if( !result.valid )
+				continue;
+
+			View<Desc> viewA = views.get(result.viewA);
+
+			for( int j = 0; j < result.featuresA.size; j++ ) {
+				int featA = result.featuresA.data[j];
+				int featB = result.featuresB.data[j];
+
+				int trackA = viewA.tracks.data[featA];
+				int trackB = viewB.tracks.data[featB];
+
+				if( trackA == -1 && trackB == -1 ) {
+					Track t = tracks.grow();
+					t.reset();
+					t.index = tracks.size() - 1;
+					addObservation(t, viewA, featA);
+					addObservation(t, viewB, featB);
+				} else if( trackB == -1 ) {
+					Track t = tracks.get(trackA);
+					if( !t.isObservedBy(viewB.index) )
+						addObservation(t, viewB, featB);
+				} else if( trackA == -1 ) {
+					Track t = tracks.get(trackB);
+					if( !t.isObservedBy(viewA.index) )
+						addObservation(t, viewA, featA);
+				}
+				// if both features already belong to tracks then nothing is done
+			}
+		}
+	}
+
+	private static void addObservation( Track track , View view , int feature ) {
+		track.views.add(view.index);
+		track.features.add(feature);
+		view.tracks.data[feature] = track.index;
+	}
+
+	/**
+	 * Initializes the reconstruction using the pair with the most inliers and sufficient parallax.  The first
+	 * view becomes the world frame and the baseline has a length of one.
+	 */
+	private boolean bootstrap( View<Desc> viewB ) {
+		PairResult best = null;
+		for( int i = 0; i < numPairs; i++ ) {
+			PairResult result = pairResults.get(i);
+			if( !result.valid )
+				continue;
+			if( best != null && result.featuresA.size <= best.featuresA.size )
+				continue;
+			if( computeMedianParallax(result, viewB) >= minBootstrapAngle )
+				best = result;
+		}
+
+		if( best == null )
+			return false;
+
+		Vector3D_F64 T = best.aToB.getT();
+		double length = T.norm();
+		if( length == 0 )
+			return false;
+
+		View<Desc> viewA = views.get(best.viewA);
+		viewA.worldToView.reset();
+		viewB.worldToView.set(best.aToB);
+		viewB.worldToView.getT().set(T.x/length, T.y/length, T.z/length);
+
+		markRegistered(viewA);
+		markRegistered(viewB);
+		triangulateTracks(viewA);
+		triangulateTracks(viewB);
+
+		bundle(0);
+		registeredSinceGlobal = 0;
+		return true;
+	}
+
+	/**
+	 * Median angle between rays of inlier matches in the first view's reference frame
+	 */
+	private double computeMedianParallax( PairResult result , View<Desc> viewB ) {
+		View<Desc> viewA = views.get(result.viewA);
+
+		angles.reset();
+		for( int i = 0; i < result.featuresA.size; i++ ) {
+			Point2D_F64 a = viewA.observations.get(result.featuresA.data[i]);
+			Point2D_F64 b = viewB.observations.get(result.featuresB.data[i]);
+
+			rayA.set(a.x, a.y, 1);
+			rayB.set(b.x, b.y, 1);
+			GeometryMath_F64.multTran(result.aToB.getR(), rayB, rayBinA);
+
+			angles.add(UtilVector3D_F64.acute(rayA, rayBinA));
+		}
+		if( angles.size == 0 )
+			return 0;
+
+		Arrays.sort(angles.data, 0, angles.size);
+		return angles.data[angles.size/2];
+	}
+
+	/**
+	 * Registers views until no more can be registered
+	 */
+	private void registerViews() {
+		while( true ) {
+			View<Desc> best = null;
+			int bestCount = minRegisterInliers - 1;
+			for( int i = 0; i < unregistered.size(); i++ ) {
+				View<Desc> v = unregistered.get(i);
+				int count = countTriangulated(v);
+				// nothing has changed since it last failed
+				if( count <= v.failedTriangulated )
+					continue;
+				if( count > bestCount ) {
+					bestCount = count;
+					best = v;
+				}
+			}
+
+			if( best == null )
+				break;
+
+			if( !estimatePose(best) ) {
+				best.failedTriangulated = bestCount;
+				if( ++best.registerFailures >= maxRegisterAttempts )
+					unregistered.remove(best);
+				continue;
+			}
+
+			markRegistered(best);
+			triangulateTracks(best);
+
+			if( globalBundlePeriod > 0 && ++registeredSinceGlobal >= globalBundlePeriod ) {
+				bundle(0);
+				registeredSinceGlobal = 0;
+			} else {
+				bundle(Math.max(0, registered.size - localBundleViews));
+			}
+		}
+	}
+
+	private static boolean hasTracks( View view ) {
+		for( int i = 0; i < view.tracks.size; i++ ) {
+			if( view.tracks.data[i] != -1 )
+				return true;
+		}
+		return false;
+	}
+
+	private int countTriangulated( View<Desc> view ) {
+		int total = 0;
+		for( int i = 0; i < view.tracks.size; i++ ) {
+			int t = view.tracks.data[i];
+			if( t != -1 && tracks.data[t].triangulated )
+				total++;
+		}
+		return total;
+	}
+
+	/**
+	 * Estimates the view's pose from the triangulated tracks it observes
+	 */
+	private boolean estimatePose( View<Desc> view ) {
+		pnpPoints.reset();
+		for( int i = 0; i < view.tracks.size; i++ ) {
+			int t = view.tracks.data[i];
+			if( t == -1 || !tracks.data[t].triangulated )
+				continue;
+			Point2D3D p = pnpPoints.grow();
+			p.observation.set(view.observations.get(i));
+			p.location.set(tracks.data[t].location);
+		}
+
+		if( pnpPoints.size() < minRegisterInliers )
+			return false;
+		if( !estimatePnP.process(pnpPoints.toList()) )
+			return false;
+		if( estimatePnP.getMatchSet().size() < minRegisterInliers )
+			return false;
+
+		view.worldToView.set(estimatePnP.getModelParameters());
+		return true;
+	}
+
+	private void markRegistered( View<Desc> view ) {
+		view.registered = true;
+		registered.add(view.index);
+		unregistered.remove(view);
+	}
+
+	/**
+	 * Triangulates all the tracks observed by the view which have not been triangulated yet
+	 */
+	private void triangulateTracks( View<Desc> view ) {
+		for( int i = 0; i < view.tracks.size; i++ ) {
+			int t = view.tracks.data[i];
+			if( t != -1 && !tracks.data[t].triangulated )
+				triangulate(tracks.data[t]);
+		}
+	}
+
+	/**
+	 * Triangulates the track using all of its observations in registered views.  The track is only
+	 * marked as triangulated if it's well conditioned and consistent with every observation.
+	 */
+	private void triangulate( Track track ) {
+		triObs.clear();
+		triPoses.clear();
+		for( int i = 0; i < track.views.size; i++ ) {
+			View<Desc> v = views.get(track.views.data[i]);
+			if( !v.registered )
+				continue;
+			triObs.add(v.observations.get(track.features.data[i]));
+			triPoses.add(v.worldToView);
+		}
+
+		if( triObs.size() < 2 )
+			return;
+		if( !triangulate.triangulate(triObs, triPoses, track.location) )
+			return;
+
+		// the largest angle between two rays needs to be large enough for the depth to be observable
+		triRays.reset();
+		for( int i = 0; i < triPoses.size(); i++ ) {
+			Se3_F64 worldToView = triPoses.get(i);
+			if( !isConsistent(worldToView, triObs.get(i), track.location) )
+				return;
+
+			// ray from the camera center to the point in world coordinates
+			GeometryMath_F64.multTran(worldToView.getR(), worldToView.getT(), cameraPt);
+			Vector3D_F64 ray = triRays.grow();
+			ray.set(track.location.x + cameraPt.x, track.location.y + cameraPt.y, track.location.z + cameraPt.z);
+		}
+
+		double largest = 0;
+		for( int i = 0; i < triRays.size(); i++ ) {
+			for( int j = i+1; j < triRays.size(); j++ ) {
+				largest = Math.max(largest, UtilVector3D_F64.acute(triRays.get(i), triRays.get(j)));
+			}
+		}
+
+		track.triangulated = largest >= minTriangulationAngle;
+	}
+
+	/**
+	 * Checks to see if the point is in front of the camera and its reprojection error is within tolerance
+	 */
+	private boolean isConsistent( Se3_F64 worldToView , Point2D_F64 obs , Point3D_F64 location ) {
+		SePointOps_F64.transform(worldToView, location, cameraPt);
+		if( cameraPt.z <= 0 )
+			return false;
+
+		double dx = (cameraPt.x/cameraPt.z - obs.x)*intrinsic.fx;
+		double dy = (cameraPt.y/cameraPt.z - obs.y)*intrinsic.fy;
+
+		return dx*dx + dy*dy <= maxReprojectionError*maxReprojectionError;
+	}
+
+	/**
+	 * Bundle adjustment on registered views from the specified index in the registration order onwards.
+	 * Other registered views which observe the same points are included but their pose is held fixed.
+	 *
+	 * @param first Index in the registration order of the first view which is optimized
+	 */
+	private void bundle( int first ) {
+		bundleViews.clear();
+		bundlePoints.clear();
+
+		for( int i = first; i < registered.size; i++ ) {
+			View<Desc> v = views.get(registered.data[i]);
+			v.bundleIndex = bundleViews.size();
+			bundleViews.add(v);
+		}
+		int numOptimized = bundleViews.size();
+
+		for( int i = 0; i < numOptimized; i++ ) {
+			View<Desc> v = bundleViews.get(i);
+			for( int j = 0; j < v.tracks.size; j++ ) {
+				int t = v.tracks.data[j];
+				if( t == -1 )
+					continue;
+				Track track = tracks.data[t];
+				if( track.triangulated && track.bundleIndex == -1 ) {
+					track.bundleIndex = bundlePoints.size();
+					bundlePoints.add(track);
+				}
+			}
+		}
+
+		// views outside the window which observe the points constrain the solution
+		for( int i = 0; i < bundlePoints.size(); i++ ) {
+			Track track = bundlePoints.get(i);
+			for( int j = 0; j < track.views.size; j++ ) {
+				View<Desc> v = views.get(track.views.data[j]);
+				if( v.registered && v.bundleIndex == -1 ) {
+					v.bundleIndex = bundleViews.size();
+					bundleViews.add(v);
+				}
+			}
+		}
+
+		if( bundlePoints.size() > 0 ) {
+			bundleModel.configure(bundleViews.size(), bundlePoints.size());
+			bundleObs.reset();
+			for( int i = 0; i < bundleViews.size(); i++ ) {
+				View<Desc> v = bundleViews.get(i);
+				bundleModel.getWorldToCamera(i).set(v.worldToView);
+				bundleModel.setViewKnown(i, i >= numOptimized);
+
+				ViewPointObservations obs = bundleObs.grow();
+				obs.getPoints().reset();
+				for( int j = 0; j < v.tracks.size; j++ ) {
+					int t = v.tracks.data[j];
+					if( t != -1 && tracks.data[t].bundleIndex != -1 )
+						obs.getPoints().grow().set(tracks.data[t].bundleIndex, v.observations.get(j));
+				}
+			}
+			// if nothing is fixed then the oldest view defines the world frame
+			if( numOptimized == bundleViews.size() )
+				bundleModel.setViewKnown(0, true);
+
+			for( int i = 0; i < bundlePoints.size(); i++ ) {
+				bundleModel.getPoint(i).set(bundlePoints.get(i).location);
+			}
+
+			if( bundle.process(bundleModel, bundleObs.toList()) ) {
+				for( int i = 0; i < numOptimized; i++ ) {
+					bundleViews.get(i).worldToView.set(bundleModel.getWorldToCamera(i));
+				}
+				for( int i = 0; i < bundlePoints.size(); i++ ) {
+					bundlePoints.get(i).location.set(bundleModel.getPoint(i));
+				}
+			}
+		}
+
+		for( int i = 0; i < bundleViews.size(); i++ ) {
+			bundleViews.get(i).bundleIndex = -1;
+		}
+		for( int i = 0; i < bundlePoints.size(); i++ ) {
+			Track track = bundlePoints.get(i);
+			track.bundleIndex = -1;
+			removeOutliers(track);
+		}
+	}
+
+	/**
+	 * Removes observations in registered views which are inconsistent with the track's location.  If any
+	 * are removed the track is triangulated again.
+	 */
+	private void removeOutliers( Track track ) {
+		boolean removed = false;
+		for( int i = track.views.size-1; i >= 0; i-- ) {
+			View<Desc> v = views.get(track.views.data[i]);
+			if( !v.registered )
+				continue;
+			int feature = track.features.data[i];
+			if( isConsistent(v.worldToView, v.observations.get(feature), track.location) )
+				continue;
+
+			v.tracks.data[feature] = -1;
+			int last = track.views.size-1;
+			track.views.data[i] = track.views.data[last];
+			track.features.data[i] = track.features.data[last];
+			track.views.size--;
+			track.features.size--;
+			removed = true;
+		}
+
+		if( removed ) {
+			track.triangulated = false;
+			triangulate(track);
+		}
+	}
+
+	/**
+	 * Processes a block of view pairs.
+	 */
+	private class MatchTask implements IntRangeTask {
+		@Override
+		public void run(int minInclusive, int maxExclusive) {
+			for( int i = minInclusive; i < maxExclusive; i++ ) {
+				PairResult result = pairResults.get(i);
+				workers.get(i).process(views.get(result.viewA), matchTarget, result);
+			}
+		}
+	}
+
+	/**
+	 * Association and epipolar verification of a pair of views.  RANSAC's random state is carried between calls,
+	 * so each position in the window has its own worker and the sequence of pairs it sees doesn't depend on
+	 * how the pairs are split between threads.
+	 */
+	private class MatchWorker {
+		AssociateDescription<Desc> associate = matcherFactory.createAssociate();
+		ModelMatcher<Se3_F64,AssociatedPair> epipolar = matcherFactory.createEpipolar();
+		FastQueue<AssociatedPair> pairs = new FastQueue<>(AssociatedPair.class, true);
+
+		void process( View<Desc> viewA , View<Desc> viewB , PairResult result ) {
+			associate.setSource(viewA.descriptions);
+			associate.setDestination(viewB.descriptions);
+			associate.associate();
+
+			FastQueue<AssociatedIndex> matches = associate.getMatches();
+			if( matches.size() < minPairInliers )
+				return;
+
+			pairs.reset();
+			for( int i = 0; i < matches.size(); i++ ) {
+				AssociatedIndex m = matches.get(i);
+				pairs.grow().set(viewA.observations.get(m.src), viewB.observations.get(m.dst));
+			}
+
+			if( !epipolar.process(pairs.toList()) )
+				return;
+
+			int numInliers = epipolar.getMatchSet().size();
+			if( numInliers < minPairInliers )
+				return;
+
+			for( int i = 0; i < numInliers; i++ ) {
+				AssociatedIndex m = matches.get(epipolar.getInputIndex(i));
+				result.featuresA.add(m.src);
+				result.featuresB.add(m.dst);
+			}
+			result.aToB.set(epipolar.getModelParameters());
+			result.valid = true;
+		}
+	}
+
+	/**
+	 * Creates the algorithms used to match a pair of views.  A new instance is requested for each position in
+	 * the match window.
+	 */
+	public interface PairMatcherFactory<Desc> {
+		/**
+		 * Association between the descriptions of two views
+		 */
+		AssociateDescription<Desc> createAssociate();
+
+		/**
+		 * Robust estimator for the motion from the first to the second view.  Observations are in
+		 * normalized image coordinates.
+		 */
+		ModelMatcher<Se3_F64,AssociatedPair> createEpipolar();
+	}
+
+	/**
+	 * Verified matches between an older view and the new view
+	 */
+	private static class PairResult {
+		int viewA;
+		boolean valid;
+		GrowQueue_I32 featuresA = new GrowQueue_I32();
+		GrowQueue_I32 featuresB = new GrowQueue_I32();
+		Se3_F64 aToB = new Se3_F64();
+
+		void reset() {
+			valid = false;
+			featuresA.reset();
+			featuresB.reset();
+		}
+	}
+
+	/**
+	 * Observations and pose of a single view
+	 */
+	public static class View<Desc> {
+		/** Index of the view in the order it was added */
+		public int index;
+		/** Features in normalized image coordinates */
+		public FastQueue<Point2D_F64> observations = new FastQueue<>(Point2D_F64.class, true);
+		/** Track each feature belongs to or -1 if none */
+		public GrowQueue_I32 tracks = new GrowQueue_I32();
+		/** Feature descriptions.  Null once the view leaves the match window */
+		public FastQueue<Desc> descriptions;
+		/** Transform from world to this view.  Only valid if registered */
+		public Se3_F64 worldToView = new Se3_F64();
+		/** True if the pose of the view has been estimated */
+		public boolean registered;
+
+		// index of the view inside of bundle adjustment or -1
+		int bundleIndex = -1;
+		// number of triangulated tracks it observed the last time PnP failed
+		int failedTriangulated = -1;
+		// number of times PnP has failed
+		int registerFailures;
+	}
+
+	/**
+	 * A feature which has been observed in multiple views
+	 */
+	public static class Track {
+		/** Index of the track */
+		public int index;
+		/** Location in world coordinates.  Only valid if triangulated */
+		public Point3D_F64 location = new Point3D_F64();
+		/** True if the location has been estimated */
+		public boolean triangulated;
+		/** Views which observe this track */
+		public GrowQueue_I32 views = new GrowQueue_I32();
+		/** Index of the feature in each view */
+		public GrowQueue_I32 features = new GrowQueue_I32();
+
+		// index of the point inside of bundle adjustment or -1
+		int bundleIndex = -1;
+
+		public boolean isObservedBy( int view ) {
+			for( int i = 0; i < views.size; i++ ) {
+				if( views.data[i] == view )
+					return true;
+			}
+			return false;
+		}
+
+		public void reset() {
+			triangulated = false;
+			views.reset();
+			features.reset();
+			bundleIndex = -1;
+		}
+	}
+
+	/**
+	 * All the views in the order they were added
+	 */
+	public List<View<Desc>> getViews() {
+		return views;
+	}
+
+	/**
+	 * All the tracks.  Only tracks which have been triangulated have a valid location.
+	 */
+	public FastQueue<Track> getTracks() {
+		return tracks;
+	}
+
+	/**
+	 * Index of registered views in the order they were registered
+	 */
+	public GrowQueue_I32 getRegistered() {
+		return registered;
+	}
+
+	/**
+	 * Views which might still be registered
+	 */
+	public List<View<Desc>> getUnregistered() {
+		return unregistered;
+	}
+
+	/**
+	 * If true then pairs of views are associated and verified concurrently.  The results are identical either way.
+	 * On by default.
+	 */
+	public void setConcurrent( boolean concurrent ) {
+		this.concurrent = concurrent;
+	}
+
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	public int getMatchWindow() {
+		return matchWindow;
+	}
+
+	/**
+	 * Number of previous views a new view is associated against.
+	 */
+	public void setMatchWindow(int matchWindow) {
+		this.matchWindow = matchWindow;
+	}
+
+	public int getMinPairInliers() {
+		return minPairInliers;
+	}
+
+	/**
+	 * Minimum number of inliers for a pair of views to be accepted.
+	 */
+	public void setMinPairInliers(int minPairInliers) {
+		this.minPairInliers = minPairInliers;
+	}
+
+	public int getMinRegisterInliers() {
+		return minRegisterInliers;
+	}
+
+	/**
+	 * Minimum number of PnP inliers for a view to be registered.
+	 */
+	public void setMinRegisterInliers(int minRegisterInliers) {
+		this.minRegisterInliers = minRegisterInliers;
+	}
+
+	public double getMinBootstrapAngle() {
+		return minBootstrapAngle;
+	}
+
+	/**
+	 * Minimum median parallax in radians for a pair of views to initialize the reconstruction.
+	 */
+	public void setMinBootstrapAngle(double minBootstrapAngle) {
+		this.minBootstrapAngle = minBootstrapAngle;
+	}
+
+	public double getMinTriangulationAngle() {
+		return minTriangulationAngle;
+	}
+
+	/**
+	 * Minimum angle in radians between two rays for a track to be triangulated.
+	 */
+	public void setMinTriangulationAngle(double minTriangulationAngle) {
+		this.minTriangulationAngle = minTriangulationAngle;
+	}
+
+	public double getMaxReprojectionError() {
+		return maxReprojectionError;
+	}
+
+	/**
+	 * Maximum reprojection error in pixels.  Observations with a larger error are removed from their track.
+	 */
+	public void setMaxReprojectionError(double maxReprojectionError) {
+		this.maxReprojectionError = maxReprojectionError;
+	}
+
+	public int getLocalBundleViews() {
+		return localBundleViews;
+	}
+
+	/**
+	 * Number of recently registered views which are optimized by local bundle adjustment.
+	 */
+	public void setLocalBundleViews(int localBundleViews) {
+		this.localBundleViews = localBundleViews;
+	}
+
+	public int getMaxRegisterAttempts() {
+		return maxRegisterAttempts;
+	}
+
+	/**
+	 * A view is no longer considered for registration after PnP has failed this many times.  It is only
+	 * tried again if it observes more triangulated tracks than when it last failed.
+	 */
+	public void setMaxRegisterAttempts(int maxRegisterAttempts) {
+		this.maxRegisterAttempts = maxRegisterAttempts;
+	}
+
+	public int getGlobalBundlePeriod() {
+		return globalBundlePeriod;
+	}
+
+	/**
+	 * Global bundle adjustment is run after this many views have been registered.  If &le; 0 then it's never run.
+	 */
+	public void setGlobalBundlePeriod(int globalBundlePeriod) {
+		this.globalBundlePeriod = globalBundlePeriod;
+	}
+}
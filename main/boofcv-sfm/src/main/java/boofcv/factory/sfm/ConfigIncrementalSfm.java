@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.factory.sfm;
+
+import boofcv.factory.geo.ConfigBundleAdjustment;
+import boofcv.factory.geo.ConfigRansac;
+import boofcv.struct.Configuration;
+import boofcv.struct.calib.CameraPinholeRadial;
+
+/**
+ * Configuration for {@link boofcv.alg.sfm.structure.IncrementalStructureFromMotion}.
+ *
+ * @author Peter Abeles
+ */
+public class ConfigIncrementalSfm implements Configuration {
+	/**
+	 * Intrinsic camera parameters.
+	 */
+	public CameraPinholeRadial intrinsic;
+
+	/**
+	 * Number of previous views a new view is associated against.
+	 */
+	public int matchWindow = 5;
+
+	/**
+	 * Maximum association error between two descriptions.
+	 */
+	public double associateMaxError = Double.MAX_VALUE;
+
+	/**
+	 * RANSAC used to verify pairs of views with an essential matrix.  Inlier threshold is in pixels.
+	 */
+	public ConfigRansac ransacEpipolar = new ConfigRansac(200, 1.0);
+
+	/**
+	 * RANSAC used to register a view with PnP.  Inlier threshold is in pixels.
+	 */
+	public ConfigRansac ransacPnP = new ConfigRansac(200, 2.0);
+
+	/**
+	 * Minimum number of inliers for a pair of views to be accepted.
+	 */
+	public int minPairInliers = 30;
+
+	/**
+	 * Minimum number of PnP inliers for a view to be registered.
+	 */
+	public int minRegisterInliers = 20;
+
+	/**
+	 * Minimum median parallax in radians for a pair of views to initialize the reconstruction.
+	 */
+	public double minBootstrapAngle = 0.05;
+
+	/**
+	 * Minimum angle in radians between two rays for a track to be triangulated.
+	 */
+	public double minTriangulationAngle = 0.02;
+
+	/**
+	 * Maximum reprojection error in pixels.
+	 */
+	public double maxReprojectionError = 3.0;
+
+	/**
+	 * Number of recently registered views which are optimized by local bundle adjustment.
+	 */
+	public int localBundleViews = 10;
+
+	/**
+	 * Global bundle adjustment is run after this many views have been registered.  If &le; 0 then it's never run.
+	 */
+	public int globalBundlePeriod = 50;
+
+	/**
+	 * A view is abandoned after PnP fails to register it this many times.
+	 */
+	public int maxRegisterAttempts = 3;
+
+	/**
+	 * Bundle adjustment which is used for both local and global refinement.
+	 */
+	public ConfigBundleAdjustment bundle = new ConfigBundleAdjustment(1e-6, 20);
+
+	/**
+	 * If true then pairs of views are associated and verified concurrently.  The results are identical either way.
+	 */
+	public boolean concurrent = true;
+
+	public ConfigIncrementalSfm(CameraPinholeRadial intrinsic) {
+		this.intrinsic = intrinsic;
+	}
+
+	public ConfigIncrementalSfm() {
+	}
+
+	@Override
+	public void checkValidity() {
+		if( intrinsic == null )
+			throw new IllegalArgumentException("intrinsic must be specified");
+		if( matchWindow < 1 )
+			throw new IllegalArgumentException("matchWindow must be >= 1");
+		if( minPairInliers < 5 )
+			throw new IllegalArgumentException("minPairInliers must be >= 5");
+		if( minRegisterInliers < 4 )
+			throw new IllegalArgumentException("minRegisterInliers must be >= 4");
+		if( localBundleViews < 1 )
+			throw new IllegalArgumentException("localBundleViews must be >= 1");
+		if( maxRegisterAttempts < 1 )
+			throw new IllegalArgumentException("maxRegisterAttempts must be >= 1");
+		ransacEpipolar.checkValidity();
+		ransacPnP.checkValidity();
+		bundle.checkValidity();
+	}
+}
@@ -32,6 +32,7 @@ import boofcv.factory.interpolate.FactoryInterpolation;
 import boofcv.struct.geo.AssociatedPair;
 import boofcv.struct.image.ImageBase;
 import boofcv.struct.image.ImageType;
+import boofcv.struct.image.TiledImage;
 import georegression.fitting.MotionTransformPoint;
 import georegression.fitting.affine.ModelManagerAffine2D_F64;
 import georegression.fitting.homography.ModelManagerHomography2D_F64;
@@ -76,6 +77,28 @@ public class FactoryMotion2D {
 										double respawnCoverageFraction,
 										boolean refineEstimate ,
 										PointTracker<I> tracker , IT motionModel ) {
+		return createMotion2D(ransacIterations, inlierThreshold, outlierPrune, absoluteMinimumTracks,
+				respawnTrackFraction, respawnCoverageFraction, refineEstimate, tracker, null, motionModel);
+	}
+
+	/**
+	 * Same as {@link #createMotion2D(int, double, int, int, double, double, boolean, PointTracker, InvertibleTransform)}
+	 * but new tracks can be spawned in the background.  When a new keyframe is selected the spare tracker spawns
+	 * tracks in it in another thread while the existing tracks continue to be used.  Prevents the time to process
+	 * a frame from jumping whenever tracks are respawned.
+	 *
+	 * @see ImageMotionPointTrackerKey#setSpareTracker
+	 *
+	 * @param spareTracker (Optional) Second point tracker configured the same as 'tracker'.  If null tracks are
+	 *                     spawned immediately.
+	 */
+	public static <I extends ImageBase<I>, IT extends InvertibleTransform>
+	ImageMotion2D<I,IT> createMotion2D( int ransacIterations , double inlierThreshold,int outlierPrune,
+										int absoluteMinimumTracks, double respawnTrackFraction,
+										double respawnCoverageFraction,
+										boolean refineEstimate ,
+										PointTracker<I> tracker , PointTracker<I> spareTracker ,
+										IT motionModel ) {
 
 		ModelManager<IT> manager;
 		ModelGenerator<IT,AssociatedPair> fitter;
@@ -112,6 +135,7 @@ public class FactoryMotion2D {
 
 		ImageMotionPointTrackerKey<I,IT> lowlevel =
 				new ImageMotionPointTrackerKey<>(tracker, modelMatcher, modelRefiner, motionModel, outlierPrune);
+		lowlevel.setSpareTracker(spareTracker);
 
 		ImageMotionPtkSmartRespawn<I,IT> smartRespawn =
 				new ImageMotionPtkSmartRespawn<>(lowlevel,
@@ -143,18 +167,80 @@ public class FactoryMotion2D {
 			transform = (StitchingTransform)FactoryStitchingTransform.createHomography_F64();
 		}
 
-		InterpolatePixel<I> interp;
+		InterpolatePixel<I> interp = createStitchInterpolation(imageType);
+
+		ImageDistort<I,I> distorter = FactoryDistort.distort(false, interp, imageType);
+		distorter.setRenderAll(false);
+
+		return new StitchingFromMotion2D<>(motion2D, distorter, transform, maxJumpFraction);
+	}
+
+	/**
+	 * Same as {@link #createVideoStitch(double, ImageMotion2D, ImageType)} but the mosaic is rendered into
+	 * a {@link TiledImage} of unlimited size.
+	 *
+	 * @param maxJumpFraction If the area changes by this much between two consecuative frames then the transform
+	 *                        is reset.
+	 * @param motion2D Estimates the image motion.
+	 * @param imageType Type of image processed
+	 * @param tiled Storage for the mosaic.  Use {@link TiledImage#setCache} to limit memory.
+	 * @param concurrent If true then tiles are rendered using multiple threads
+	 * @return StitchingFromMotion2D
+	 */
+	public static <I extends ImageBase<I>, IT extends InvertibleTransform>
+	StitchingFromMotion2D<I, IT>
+	createVideoStitch( double maxJumpFraction , ImageMotion2D<I,IT> motion2D , ImageType<I> imageType ,
+					   TiledImage<I> tiled , boolean concurrent ) {
+		StitchingFromMotion2D<I, IT> alg = createVideoStitch(maxJumpFraction, motion2D, imageType);
+		alg.setTiledMosaic(tiled, createStitchInterpolation(imageType));
+		alg.setConcurrent(concurrent);
+		return alg;
+	}
+
+	/**
+	 * Creates a pipeline for stabilizing a video stream with a fixed latency.  Motion is estimated on down sampled
+	 * images and full resolution frames are warped in a background thread.
+	 *
+	 * @see VideoStabilizationPipeline
+	 *
+	 * @param motion2D Estimates the image motion.  Processes the down sampled images.
+	 * @param imageType Type of image processed
+	 * @param proxyScale Motion is estimated on images down sampled by this factor.  Try 2
+	 * @param smoothRadius Number of frames before and after a frame used to smooth its motion.  Try 15
+	 * @param maxPending Maximum number of frames waiting to be warped before frames are dropped.  Try 2
+	 * @return VideoStabilizationPipeline
+	 */
+	@SuppressWarnings("unchecked")
+	public static <I extends ImageBase<I>, IT extends InvertibleTransform>
+	VideoStabilizationPipeline<I, IT>
+	createVideoStabilization( ImageMotion2D<I,IT> motion2D , ImageType<I> imageType ,
+							  int proxyScale , int smoothRadius , int maxPending ) {
+		StitchingTransform<IT> transform;
+
+		if( motion2D.getTransformType() == Affine2D_F64.class ) {
+			transform = (StitchingTransform)FactoryStitchingTransform.createAffine_F64();
+		} else {
+			transform = (StitchingTransform)FactoryStitchingTransform.createHomography_F64();
+		}
+
+		// pixels outside the input image are black instead of smeared
+		InterpolatePixel<I> interp = FactoryInterpolation.createPixel(0, 255, InterpolationType.BILINEAR,
+				BorderType.ZERO, imageType);
+
+		ImageDistort<I,I> distorter = FactoryDistort.distort(false, true, interp, imageType);
+		distorter.setRenderAll(true);
+
+		return new VideoStabilizationPipeline<>(motion2D, transform, distorter, proxyScale, smoothRadius, maxPending);
+	}
 
+	@SuppressWarnings("unchecked")
+	private static <I extends ImageBase<I>>
+	InterpolatePixel<I> createStitchInterpolation( ImageType<I> imageType ) {
 		if( imageType.getFamily() == ImageType.Family.GRAY || imageType.getFamily() == ImageType.Family.PLANAR ) {
-			interp = FactoryInterpolation.createPixelS(0, 255, InterpolationType.BILINEAR, BorderType.EXTENDED,
+			return FactoryInterpolation.createPixelS(0, 255, InterpolationType.BILINEAR, BorderType.EXTENDED,
 					imageType.getImageClass());
 		} else {
 			throw new IllegalArgumentException("Unsupported image type");
 		}
-
-		ImageDistort<I,I> distorter = FactoryDistort.distort(false, interp, imageType);
-		distorter.setRenderAll(false);
-
-		return new StitchingFromMotion2D<>(motion2D, distorter, transform, maxJumpFraction);
 	}
 }
@@ -18,15 +18,28 @@
 
 package boofcv.factory.sfm;
 
+import boofcv.abst.feature.associate.AssociateDescription;
+import boofcv.abst.geo.BundleAdjustmentCalibrated;
 import boofcv.alg.interpolate.InterpolatePixelS;
 import boofcv.alg.interpolate.InterpolationType;
 import boofcv.alg.sfm.overhead.CreateSyntheticOverheadView;
 import boofcv.alg.sfm.overhead.CreateSyntheticOverheadViewPL;
 import boofcv.alg.sfm.overhead.CreateSyntheticOverheadViewS;
+import boofcv.alg.sfm.structure.IncrementalStructureFromMotion;
 import boofcv.core.image.border.BorderType;
+import boofcv.factory.feature.associate.FactoryAssociation;
+import boofcv.factory.geo.ConfigEssential;
+import boofcv.factory.geo.ConfigPnP;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.factory.geo.FactoryMultiViewRobust;
 import boofcv.factory.interpolate.FactoryInterpolation;
+import boofcv.struct.feature.TupleDesc;
+import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.geo.Point2D3D;
 import boofcv.struct.image.ImageBase;
 import boofcv.struct.image.ImageType;
+import georegression.struct.se.Se3_F64;
+import org.ddogleg.fitting.modelset.ModelMatcher;
 
 /**
  * Factory for creating classes which don't go anywhere else.
@@ -53,4 +66,53 @@ public class FactorySfmMisc {
 				throw new IllegalArgumentException(imageType.getFamily()+" is not supported");
 		}
 	}
+
+	/**
+	 * Creates incremental structure from motion which associates features using greedy association with
+	 * backwards validation and the default score for the description type.  For a different association
+	 * backend create {@link IncrementalStructureFromMotion} directly.
+	 *
+	 * @param config Configuration.  Can't be null since it contains the intrinsic parameters.
+	 * @param descType Type of feature description
+	 * @return IncrementalStructureFromMotion
+	 */
+	public static <Desc extends TupleDesc<Desc>>
+	IncrementalStructureFromMotion<Desc> incrementalSfm( final ConfigIncrementalSfm config , final Class<Desc> descType ) {
+		config.checkValidity();
+
+		IncrementalStructureFromMotion.PairMatcherFactory<Desc> matcherFactory =
+				new IncrementalStructureFromMotion.PairMatcherFactory<Desc>() {
+					@Override
+					public AssociateDescription<Desc> createAssociate() {
+						return FactoryAssociation.greedy(FactoryAssociation.defaultScore(descType),
+								config.associateMaxError, true);
+					}
+
+					@Override
+					public ModelMatcher<Se3_F64, AssociatedPair> createEpipolar() {
+						return FactoryMultiViewRobust.essentialRansac(
+								new ConfigEssential(config.intrinsic), config.ransacEpipolar);
+					}
+				};
+
+		ModelMatcher<Se3_F64,Point2D3D> pnp =
+				FactoryMultiViewRobust.pnpRansac(new ConfigPnP(config.intrinsic), config.ransacPnP);
+		BundleAdjustmentCalibrated bundle = FactoryMultiView.bundleCalibrated(config.bundle);
+
+		IncrementalStructureFromMotion<Desc> alg = new IncrementalStructureFromMotion<>(config.intrinsic,
+				matcherFactory, pnp, FactoryMultiView.triangulateNDLT(), bundle, descType);
+
+		alg.setMatchWindow(config.matchWindow);
+		alg.setMinPairInliers(config.minPairInliers);
+		alg.setMinRegisterInliers(config.minRegisterInliers);
+		alg.setMinBootstrapAngle(config.minBootstrapAngle);
+		alg.setMinTriangulationAngle(config.minTriangulationAngle);
+		alg.setMaxReprojectionError(config.maxReprojectionError);
+		alg.setLocalBundleViews(config.localBundleViews);
+		alg.setGlobalBundlePeriod(config.globalBundlePeriod);
+		alg.setMaxRegisterAttempts(config.maxRegisterAttempts);
+		alg.setConcurrent(config.concurrent);
+
+		return alg;
+	}
 }
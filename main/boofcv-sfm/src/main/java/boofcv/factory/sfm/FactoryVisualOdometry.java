@@ -46,6 +46,7 @@ import boofcv.alg.sfm.d3.direct.PyramidDirectColorDepth;
 import boofcv.alg.sfm.robust.DistancePlane2DToPixelSq;
 import boofcv.alg.sfm.robust.GenerateSe2_PlanePtPixel;
 import boofcv.factory.feature.associate.FactoryAssociation;
+import boofcv.factory.geo.ConfigBundleAdjustment;
 import boofcv.factory.geo.EnumPNP;
 import boofcv.factory.geo.EstimatorToGenerator;
 import boofcv.factory.geo.FactoryMultiView;
@@ -298,6 +299,75 @@ public class FactoryVisualOdometry {
 												 PointTracker<T> trackerLeft, PointTracker<T> trackerRight,
 												 DescribeRegionPoint<T,Desc> descriptor,
 												 Class<T> imageType)
+	{
+		return stereoDualTrackerPnP(thresholdAdd, thresholdRetire, inlierPixelTol, epipolarPixelTol,
+				ransacIterations, refineIterations, trackerLeft, trackerRight, descriptor, false, imageType);
+	}
+
+	/**
+	 * Creates a stereo visual odometry algorithm that independently tracks features in left and right camera.
+	 *
+	 * @see VisOdomDualTrackPnP
+	 *
+	 * @param thresholdAdd When the number of inliers is below this number new features are detected
+	 * @param thresholdRetire When a feature has not been in the inlier list for this many ticks it is dropped
+	 * @param inlierPixelTol Tolerance in pixels for defining an inlier during robust model matching.  Typically 1.5
+	 * @param epipolarPixelTol Tolerance in pixels for enforcing the epipolar constraint
+	 * @param ransacIterations Number of iterations performed by RANSAC.  Try 300 or more.
+	 * @param refineIterations Number of iterations done during non-linear optimization.  Try 50 or more.
+	 * @param trackerLeft Tracker used for left camera
+	 * @param trackerRight Tracker used for right camera.  Must be a different instance from the left tracker.
+	 * @param concurrent If true the left and right trackers are processed concurrently and new tracks are
+	 *                   associated using multiple threads
+	 * @param imageType Type of image being processed
+	 * @return Stereo visual odometry algorithm.
+	 */
+	public static <T extends ImageGray<T>, Desc extends TupleDesc>
+	StereoVisualOdometry<T> stereoDualTrackerPnP(int thresholdAdd, int thresholdRetire,
+												 double inlierPixelTol,
+												 double epipolarPixelTol,
+												 int ransacIterations,
+												 int refineIterations,
+												 PointTracker<T> trackerLeft, PointTracker<T> trackerRight,
+												 DescribeRegionPoint<T,Desc> descriptor,
+												 boolean concurrent,
+												 Class<T> imageType)
+	{
+		return stereoDualTrackerPnP(thresholdAdd, thresholdRetire, inlierPixelTol, epipolarPixelTol,
+				ransacIterations, refineIterations, trackerLeft, trackerRight, descriptor, concurrent, 0, imageType);
+	}
+
+	/**
+	 * Creates a stereo visual odometry algorithm that independently tracks features in left and right camera.
+	 *
+	 * @see VisOdomDualTrackPnP
+	 *
+	 * @param thresholdAdd When the number of inliers is below this number new features are detected
+	 * @param thresholdRetire When a feature has not been in the inlier list for this many ticks it is dropped
+	 * @param inlierPixelTol Tolerance in pixels for defining an inlier during robust model matching.  Typically 1.5
+	 * @param epipolarPixelTol Tolerance in pixels for enforcing the epipolar constraint
+	 * @param ransacIterations Number of iterations performed by RANSAC.  Try 300 or more.
+	 * @param refineIterations Number of iterations done during non-linear optimization.  Try 50 or more.
+	 * @param trackerLeft Tracker used for left camera
+	 * @param trackerRight Tracker used for right camera.  Must be a different instance from the left tracker.
+	 * @param concurrent If true the left and right trackers are processed concurrently and new tracks are
+	 *                   associated using multiple threads
+	 * @param bundleWindowSize Number of key frames optimized by sliding window bundle adjustment in a background
+	 *                         thread.  If &le; 1 then bundle adjustment isn't used.
+	 * @param imageType Type of image being processed
+	 * @return Stereo visual odometry algorithm.
+	 */
+	public static <T extends ImageGray<T>, Desc extends TupleDesc>
+	StereoVisualOdometry<T> stereoDualTrackerPnP(int thresholdAdd, int thresholdRetire,
+												 double inlierPixelTol,
+												 double epipolarPixelTol,
+												 int ransacIterations,
+												 int refineIterations,
+												 PointTracker<T> trackerLeft, PointTracker<T> trackerRight,
+												 DescribeRegionPoint<T,Desc> descriptor,
+												 boolean concurrent,
+												 int bundleWindowSize,
+												 Class<T> imageType)
 	{
 		EstimateNofPnP pnp = FactoryMultiView.computePnP_N(EnumPNP.P3P_FINSTERWALDER, -1);
 		DistanceModelMonoPixels<Se3_F64,Point2D3D> distanceMono = new PnPDistanceReprojectionSq();
@@ -318,6 +388,7 @@ public class FactoryVisualOdometry {
 		Class<Desc> descType = descriptor.getDescriptionType();
 		ScoreAssociation<Desc> scorer = FactoryAssociation.defaultScore(descType);
 		AssociateStereo2D<Desc> associateStereo = new AssociateStereo2D<>(scorer, epipolarPixelTol, descType);
+		associateStereo.setConcurrent(concurrent);
 
 		// need to make sure associations are unique
 		AssociateDescription2D<Desc> associateUnique = associateStereo;
@@ -333,6 +404,11 @@ public class FactoryVisualOdometry {
 
 		VisOdomDualTrackPnP<T,Desc> alg = new VisOdomDualTrackPnP<>(thresholdAdd, thresholdRetire, epipolarPixelTol,
 				trackerLeft, trackerRight, descriptor, associateUnique, triangulate, motion, refinePnP);
+		alg.setConcurrent(concurrent);
+		if( bundleWindowSize > 1 ) {
+			alg.setBundleWindow(new WindowedStereoBundle(
+					FactoryMultiView.bundleCalibrated(new ConfigBundleAdjustment()), bundleWindowSize));
+		}
 
 		return new WrapVisOdomDualTrackPnP<>(pnpStereo, distanceMono, distanceStereo, associateStereo, alg, refinePnP, imageType);
 	}
@@ -361,6 +437,42 @@ public class FactoryVisualOdometry {
 										   int refineIterations ,
 										   DetectDescribeMulti<T,Desc> detector,
 										   Class<T> imageType )
+	{
+		return stereoQuadPnP(inlierPixelTol, epipolarPixelTol, maxDistanceF2F, maxAssociationError,
+				ransacIterations, refineIterations, detector, null, false, imageType);
+	}
+
+	/**
+	 * Stereo visual odometry which uses the two most recent stereo observations (total of four views) to estimate
+	 * motion.  Can process the left and right cameras concurrently and pipeline feature detection with
+	 * motion estimation.
+	 *
+	 * @see VisOdomQuadPnP
+	 *
+	 * @param inlierPixelTol Pixel tolerance for RANSAC inliers - Euclidean distance
+	 * @param epipolarPixelTol Feature association tolerance in pixels.
+	 * @param maxDistanceF2F Maximum allowed distance between two features in pixels
+	 * @param maxAssociationError Maxium error between two features when associating.
+	 * @param ransacIterations Number of iterations RANSAC will perform
+	 * @param refineIterations Number of refinement iterations
+	 * @param detector Which feature detector to use
+	 * @param detectorRight Detector for the right camera.  Same configuration as detector but a different instance.
+	 *                      If not null then the left and right cameras are processed concurrently.
+	 * @param pipelined If true then the next frame is described while the previous frame's motion is estimated.
+	 *                  Motion estimates will be one frame behind.
+	 * @param imageType Type of input image
+	 */
+	public static <T extends ImageGray<T>,Desc extends TupleDesc>
+	StereoVisualOdometry<T> stereoQuadPnP( double inlierPixelTol ,
+										   double epipolarPixelTol ,
+										   double maxDistanceF2F,
+										   double maxAssociationError,
+										   int ransacIterations ,
+										   int refineIterations ,
+										   DetectDescribeMulti<T,Desc> detector,
+										   DetectDescribeMulti<T,Desc> detectorRight,
+										   boolean pipelined,
+										   Class<T> imageType )
 	{
 		EstimateNofPnP pnp = FactoryMultiView.computePnP_N(EnumPNP.P3P_FINSTERWALDER, -1);
 		DistanceModelMonoPixels<Se3_F64,Point2D3D> distanceMono = new PnPDistanceReprojectionSq();
@@ -385,23 +497,31 @@ public class FactoryVisualOdometry {
 
 		ScoreAssociation<Desc> scorer = FactoryAssociation.defaultScore(descType);
 
-		AssociateDescription2D<Desc> assocSame;
-		if( maxDistanceF2F > 0 )
-			assocSame = new AssociateMaxDistanceNaive<>(scorer, true, maxAssociationError, maxDistanceF2F);
-		else
-			assocSame = new AssociateDescTo2D<>(FactoryAssociation.greedy(scorer, maxAssociationError, true));
+		AssociateDescription2D<Desc> assocSame = createAssociateF2F(scorer, maxDistanceF2F, maxAssociationError);
+		AssociateDescription2D<Desc> assocSameRight = null;
+		if( detectorRight != null )
+			assocSameRight = createAssociateF2F(scorer, maxDistanceF2F, maxAssociationError);
 
 		AssociateStereo2D<Desc> associateStereo = new AssociateStereo2D<>(scorer, epipolarPixelTol, descType);
 		TriangulateTwoViewsCalibrated triangulate = FactoryMultiView.triangulateTwoGeometric();
 
 		associateStereo.setThreshold(maxAssociationError);
 
-		VisOdomQuadPnP<T,Desc> alg = new VisOdomQuadPnP<>(
-				detector, assocSame, associateStereo, triangulate, motion, refinePnP);
+		VisOdomQuadPnP<T,Desc> alg = new VisOdomQuadPnP<>(detector, detectorRight,
+				assocSame, assocSameRight, associateStereo, triangulate, motion, refinePnP);
+		alg.setPipelined(pipelined);
 
 		return new WrapVisOdomQuadPnP<>(alg, refinePnP, associateStereo, distanceStereo, distanceMono, imageType);
 	}
 
+	private static <Desc extends TupleDesc> AssociateDescription2D<Desc>
+	createAssociateF2F( ScoreAssociation<Desc> scorer , double maxDistanceF2F , double maxAssociationError ) {
+		if( maxDistanceF2F > 0 )
+			return new AssociateMaxDistanceNaive<>(scorer, true, maxAssociationError, maxDistanceF2F);
+		else
+			return new AssociateDescTo2D<>(FactoryAssociation.greedy(scorer, maxAssociationError, true));
+	}
+
 	/**
 	 * Wraps around a {@link StereoVisualOdometry} instance and will rescale the input images and adjust the cameras
 	 * intrinsic parameters automatically.  Rescaling input images is often an easy way to improve runtime performance
@@ -435,11 +555,37 @@ public class FactoryVisualOdometry {
 	public static <Vis extends ImageGray<Vis>, Depth extends ImageGray<Depth>>
 	DepthVisualOdometry<Planar<Vis>,Depth> depthDirect( DepthSparse3D<Depth> sparse3D,
 														ImageType<Planar<Vis>> visualType , Class<Depth> depthType)
+	{
+		return depthDirect(sparse3D, 0, 0, 0, false, visualType, depthType);
+	}
+
+	/**
+	 * Direct visual odometry for RGB-D cameras which minimizes the photometric error of key frame pixels.
+	 *
+	 * @see PyramidDirectColorDepth
+	 * @see boofcv.alg.sfm.d3.direct.VisOdomDirectColorDepth#setPixelSelection(float, int, int)
+	 *
+	 * @param sparse3D Used to compute the 3D location of pixels
+	 * @param minGradient Only key frame pixels with a gradient at least this large are used. &le; 0 for all. Try 10
+	 * @param cellSize Size of a cell when selecting pixels. Try 16
+	 * @param maxPerCell Maximum number of pixels selected in a cell.  &le; 0 for no limit.  Try 32
+	 * @param concurrent If true then the linear system is computed using multiple threads
+	 * @param visualType Type of color image
+	 * @param depthType Type of depth image
+	 * @return DepthVisualOdometry
+	 */
+	public static <Vis extends ImageGray<Vis>, Depth extends ImageGray<Depth>>
+	DepthVisualOdometry<Planar<Vis>,Depth> depthDirect( DepthSparse3D<Depth> sparse3D,
+														float minGradient , int cellSize , int maxPerCell ,
+														boolean concurrent ,
+														ImageType<Planar<Vis>> visualType , Class<Depth> depthType)
 	{
 		ImagePyramid<Planar<Vis>> pyramid = FactoryPyramid.discreteGaussian(new int[]{1,2,4},
 				-1,2,false, visualType);
 
 		PyramidDirectColorDepth<Vis> alg = new PyramidDirectColorDepth<>(pyramid);
+		alg.setPixelSelection(minGradient, cellSize, maxPerCell);
+		alg.setConcurrent(concurrent);
 
 		return new PyramidDirectColorDepth_to_DepthVisualOdometry<>(sparse3D,alg,depthType);
 	}
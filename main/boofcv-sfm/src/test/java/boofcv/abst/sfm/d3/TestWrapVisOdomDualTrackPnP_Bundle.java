@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.abst.sfm.d3;
+
+import boofcv.abst.feature.describe.DescribeRegionPoint;
+import boofcv.abst.feature.detect.interest.ConfigGeneralDetector;
+import boofcv.abst.feature.tracker.PointTracker;
+import boofcv.alg.sfm.d3.VisOdomDualTrackPnP;
+import boofcv.alg.sfm.d3.WindowedStereoBundle;
+import boofcv.alg.tracker.klt.PkltConfig;
+import boofcv.factory.feature.describe.FactoryDescribeRegionPoint;
+import boofcv.factory.feature.tracker.FactoryPointTracker;
+import boofcv.factory.sfm.FactoryVisualOdometry;
+import boofcv.struct.image.GrayF32;
+import georegression.struct.se.Se3_F64;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stereo visual odometry with sliding window bundle adjustment turned on
+ *
+ * @author Peter Abeles
+ */
+public class TestWrapVisOdomDualTrackPnP_Bundle extends CheckVisualOdometryStereoSim<GrayF32> {
+
+	public TestWrapVisOdomDualTrackPnP_Bundle() {
+		super(GrayF32.class);
+	}
+
+	@Override
+	public StereoVisualOdometry<GrayF32> createAlgorithm() {
+		return createAlgorithm(90);
+	}
+
+	/**
+	 * @param thresholdAdd When the number of inliers drops below this value a new key frame is created
+	 */
+	private WrapVisOdomDualTrackPnP<GrayF32> createAlgorithm( int thresholdAdd ) {
+		ConfigGeneralDetector configDetector = new ConfigGeneralDetector(600,2,1);
+
+		PkltConfig kltConfig = new PkltConfig();
+		kltConfig.templateRadius = 3;
+		kltConfig.pyramidScaling =  new int[]{1, 2, 4, 8};
+
+		PointTracker<GrayF32> trackerLeft = FactoryPointTracker.klt(kltConfig, configDetector,
+				GrayF32.class,GrayF32.class);
+		PointTracker<GrayF32> trackerRight = FactoryPointTracker.klt(kltConfig, configDetector,
+				GrayF32.class,GrayF32.class);
+
+		DescribeRegionPoint describe = FactoryDescribeRegionPoint.surfFast(null, GrayF32.class);
+
+		return (WrapVisOdomDualTrackPnP<GrayF32>)FactoryVisualOdometry.stereoDualTrackerPnP(
+				thresholdAdd, 2, 1.5, 1.5, 200, 50,
+				trackerLeft, trackerRight, describe, true, 3, GrayF32.class);
+	}
+
+	/**
+	 * Every frame is a key frame and each optimization is allowed to finish before the next frame.  The
+	 * corrections applied by bundle adjustment should keep the estimate close to the truth.
+	 */
+	@Test
+	public void everyFrameKeyFrame() {
+		WrapVisOdomDualTrackPnP<GrayF32> algorithm = createAlgorithm(100000);
+		algorithm.setCalibration(param);
+
+		WindowedStereoBundle window = algorithm.getAlgorithm().getBundleWindow();
+		assertNotNull(window);
+		assertEquals(3, window.getWindowSize());
+
+		for( int i = 0; i < 10; i++ ) {
+			Se3_F64 worldToLeft = new Se3_F64();
+			worldToLeft.getT().z = i*0.05;
+
+			renderStereo(worldToLeft);
+			assertTrue("iteration "+i,algorithm.process(left,right));
+			checkPose(worldToLeft, algorithm);
+
+			window.waitForResults();
+		}
+		algorithm.close();
+
+		assertEquals(3, window.getNumKeyFrames());
+		assertTrue(window.getTotalOptimized() > 0);
+		assertEquals(0, window.getTotalFailed());
+	}
+
+	/**
+	 * Reset while an optimization is pending.  The stale results should be discarded and the algorithm
+	 * work the same after a reset.
+	 */
+	@Test
+	public void resetWhilePending() {
+		WrapVisOdomDualTrackPnP<GrayF32> algorithm = createAlgorithm(100000);
+		algorithm.setCalibration(param);
+
+		VisOdomDualTrackPnP<GrayF32,?> alg = algorithm.getAlgorithm();
+		WindowedStereoBundle window = alg.getBundleWindow();
+
+		for( int trial = 0; trial < 2; trial++ ) {
+			for( int i = 0; i < 3; i++ ) {
+				Se3_F64 worldToLeft = new Se3_F64();
+				worldToLeft.getT().z = i*0.05;
+
+				renderStereo(worldToLeft);
+				assertTrue(algorithm.process(left,right));
+				checkPose(worldToLeft, algorithm);
+			}
+			// results are only applied inside of process() so this is still true
+			assertTrue(window.isPending());
+			algorithm.reset();
+			assertFalse(window.isPending());
+			assertEquals(0, window.getNumKeyFrames());
+		}
+		algorithm.close();
+	}
+
+	/**
+	 * Replacing the window should shut down the thread of the old one
+	 */
+	@Test
+	public void setBundleWindow_closesOld() {
+		WrapVisOdomDualTrackPnP<GrayF32> algorithm = createAlgorithm(90);
+		algorithm.setCalibration(param);
+
+		VisOdomDualTrackPnP<GrayF32,?> alg = algorithm.getAlgorithm();
+		WindowedStereoBundle original = alg.getBundleWindow();
+		alg.setBundleWindow(null);
+		assertNull(alg.getBundleWindow());
+		assertTrue(original.isClosed());
+
+		renderStereo(new Se3_F64());
+		assertTrue(algorithm.process(left,right));
+		algorithm.close();
+	}
+
+	private void renderStereo( Se3_F64 worldToLeft ) {
+		Se3_F64 leftToRight = param.getRightToLeft().invert(null);
+		Se3_F64 worldToRight = worldToLeft.concat(leftToRight, null);
+
+		setIntrinsic(param.getLeft());
+		left.setTo(render(worldToLeft));
+		setIntrinsic(param.getRight());
+		right.setTo(render(worldToRight));
+	}
+
+	private void checkPose( Se3_F64 expected , StereoVisualOdometry<GrayF32> algorithm ) {
+		Se3_F64 found = algorithm.getCameraToWorld().invert(null);
+		assertTrue(MatrixFeatures_DDRM.isIdentical(found.getR(),expected.getR(),0.1));
+		assertTrue(found.getT().distance(expected.getT()) < tolerance);
+	}
+}
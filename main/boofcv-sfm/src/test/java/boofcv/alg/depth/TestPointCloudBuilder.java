@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.depth;
+
+import boofcv.alg.misc.GImageMiscOps;
+import boofcv.struct.FastQueueArray_I32;
+import boofcv.struct.PackedPointCloud_F32;
+import boofcv.struct.calib.CameraPinholeRadial;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.GrayU16;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.Planar;
+import georegression.struct.point.Point3D_F64;
+import org.ddogleg.struct.FastQueue;
+import org.ejml.data.DMatrixRMaj;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestPointCloudBuilder {
+	Random rand = new Random(234);
+	int width = 160;
+	int height = 120;
+
+	CameraPinholeRadial param = new CameraPinholeRadial(200,201,0,width/2,height/2,width,height).fsetRadial(0.01,-0.02);
+
+	/**
+	 * Compare against the point cloud created by {@link VisualDepthOps}
+	 */
+	@Test
+	public void processDepth() {
+		GrayU16 depth = createDepth();
+		Planar<GrayU8> rgb = new Planar<>(GrayU8.class,width,height,3);
+		GImageMiscOps.fillUniform(rgb, rand, 0, 255);
+
+		FastQueue<Point3D_F64> expected = new FastQueue<>(Point3D_F64.class, true);
+		FastQueueArray_I32 expectedColor = new FastQueueArray_I32(3);
+		VisualDepthOps.depthTo3D(param,rgb,depth,expected,expectedColor);
+
+		PointCloudBuilder alg = new PointCloudBuilder();
+		alg.configureDepth(param, 1.0f);
+
+		PackedPointCloud_F32 found = new PackedPointCloud_F32();
+		alg.processDepth(depth, rgb, found);
+
+		assertEquals(expected.size(), found.size());
+		assertTrue(found.hasColor());
+		for (int i = 0; i < expected.size(); i++) {
+			Point3D_F64 e = expected.get(i);
+			assertEquals(e.x, found.getX(i), 1e-3*e.z);
+			assertEquals(e.y, found.getY(i), 1e-3*e.z);
+			assertEquals(e.z, found.getZ(i), 1e-3*e.z);
+
+			int[] c = expectedColor.get(i);
+			assertEquals(c[0] << 16 | c[1] << 8 | c[2], found.getRgb(i));
+		}
+
+		// without color
+		alg.processDepth(depth, null, found);
+		assertEquals(expected.size(), found.size());
+		assertFalse(found.hasColor());
+	}
+
+	/**
+	 * Only every N-th pixel should be used
+	 */
+	@Test
+	public void stride() {
+		GrayU16 depth = createDepth();
+
+		PointCloudBuilder alg = new PointCloudBuilder();
+		alg.configureDepth(param, 1.0f);
+		PackedPointCloud_F32 all = new PackedPointCloud_F32();
+		alg.processDepth(depth, null, all);
+
+		alg.setStride(3);
+		PackedPointCloud_F32 found = new PackedPointCloud_F32();
+		alg.processDepth(depth, null, found);
+
+		int index = 0, indexAll = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if( depth.get(x,y) == 0 )
+					continue;
+				if( x%3 == 0 && y%3 == 0 ) {
+					assertEquals(all.getX(indexAll), found.getX(index), 0f);
+					assertEquals(all.getY(indexAll), found.getY(index), 0f);
+					assertEquals(all.getZ(indexAll), found.getZ(index), 0f);
+					index++;
+				}
+				indexAll++;
+			}
+		}
+		assertEquals(index, found.size());
+	}
+
+	/**
+	 * Results should be identical when processed using multiple threads
+	 */
+	@Test
+	public void concurrent() {
+		GrayU16 depth = createDepth();
+		Planar<GrayU8> rgb = new Planar<>(GrayU8.class,width,height,3);
+		GImageMiscOps.fillUniform(rgb, rand, 0, 255);
+
+		PointCloudBuilder alg = new PointCloudBuilder();
+		alg.configureDepth(param, 0.001f);
+		PackedPointCloud_F32 expected = new PackedPointCloud_F32();
+		alg.processDepth(depth, rgb, expected);
+
+		alg.setConcurrent(true);
+		PackedPointCloud_F32 found = new PackedPointCloud_F32();
+		alg.processDepth(depth, rgb, found);
+
+		assertEquals(expected.size(), found.size());
+		for (int i = 0; i < expected.xyz.size; i++) {
+			assertEquals(expected.xyz.get(i), found.xyz.get(i), 0f);
+		}
+		for (int i = 0; i < expected.rgb.size; i++) {
+			assertEquals(expected.rgb.get(i), found.rgb.get(i));
+		}
+	}
+
+	@Test
+	public void processDisparity() {
+		DMatrixRMaj K = new DMatrixRMaj(3,3,true,150,0,70,0,155,65,0,0,1);
+		double baseline = 0.2;
+		int minDisparity = 5;
+
+		GrayF32 disparityF = new GrayF32(width,height);
+		GImageMiscOps.fill(disparityF, 100); // invalid
+		disparityF.set(20,30, 10.5f);
+		disparityF.set(100,90, 0.5f);
+
+		GrayU8 disparityU = new GrayU8(width,height);
+		GImageMiscOps.fill(disparityU, 100);
+		disparityU.set(20,30, 10);
+		disparityU.set(100,90, 1);
+
+		PointCloudBuilder alg = new PointCloudBuilder();
+		alg.configureDisparity(baseline, K, minDisparity, minDisparity+40);
+
+		PackedPointCloud_F32 found = new PackedPointCloud_F32();
+		alg.processDisparity(disparityF, null, found);
+		assertEquals(2, found.size());
+		checkDisparity(found, 0, 20, 30, 10.5+minDisparity, baseline, K);
+		checkDisparity(found, 1, 100, 90, 0.5+minDisparity, baseline, K);
+
+		alg.processDisparity(disparityU, null, found);
+		assertEquals(2, found.size());
+		checkDisparity(found, 0, 20, 30, 10+minDisparity, baseline, K);
+		checkDisparity(found, 1, 100, 90, 1+minDisparity, baseline, K);
+	}
+
+	private void checkDisparity( PackedPointCloud_F32 cloud , int index , int x , int y , double d ,
+								 double baseline , DMatrixRMaj K ) {
+		double fx = K.get(0,0), fy = K.get(1,1), cx = K.get(0,2), cy = K.get(1,2);
+		double z = baseline*fx/d;
+		assertEquals(z, cloud.getZ(index), 1e-5);
+		assertEquals(z*(x-cx)/fx, cloud.getX(index), 1e-5);
+		assertEquals(z*(y-cy)/fy, cloud.getY(index), 1e-5);
+	}
+
+	private GrayU16 createDepth() {
+		GrayU16 depth = new GrayU16(width,height);
+		for (int i = 0; i < depth.data.length; i++) {
+			// some pixels have no depth
+			if( rand.nextInt(4) != 0 )
+				depth.data[i] = (short)(200 + rand.nextInt(4000));
+		}
+		return depth;
+	}
+}
@@ -34,6 +34,8 @@ import org.ejml.dense.row.CommonOps_DDRM;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -189,4 +191,77 @@ public class TestAssociateStereo2D {
 		alg.associate();
 		assertEquals(0,alg.getMatches().size);
 	}
+
+	/**
+	 * Compares the bucketed association against comparing every pair of features.  Descriptors are quantized
+	 * so that there are ties.
+	 */
+	@Test
+	public void compareToAllPairs() {
+		Random rand = new Random(234);
+		for (int i = 0; i < 300; i++) {
+			pointsLeft.grow().set(rand.nextDouble()*320, rand.nextDouble()*240);
+			randomDesc(rand, descLeft.grow());
+		}
+		for (int i = 0; i < 300; i++) {
+			// many of the right features are on the same rows as left features
+			Point2D_F64 p = pointsRight.grow();
+			if( i < 150 )
+				p.set(rand.nextDouble()*320, pointsLeft.get(i).y + rand.nextDouble()*2-1);
+			else
+				p.set(rand.nextDouble()*320, rand.nextDouble()*240);
+			randomDesc(rand, descRight.grow());
+		}
+
+		for( boolean concurrent : new boolean[]{false,true} ) {
+			AssociateStereo2D<TupleDesc_F64> alg = new AssociateStereo2D<>(scorer, 1.5, TupleDesc_F64.class);
+			alg.setCalibration(param);
+			alg.setThreshold(2.5);
+			alg.setConcurrent(concurrent);
+
+			alg.setSource(pointsLeft,descLeft);
+			alg.setDestination(pointsRight, descRight);
+			alg.associate();
+
+			FastQueue<AssociatedIndex> matches = alg.getMatches();
+
+			// brute force
+			Point2D_F64 rectL = new Point2D_F64();
+			Point2D_F64 rectR = new Point2D_F64();
+			int total = 0;
+			for (int i = 0; i < pointsLeft.size; i++) {
+				Point2D_F64 l = pointsLeft.get(i);
+				alg.leftImageToRect.compute(l.x, l.y, rectL);
+
+				int bestIndex = -1;
+				double bestScore = 2.5;
+				for (int j = 0; j < pointsRight.size; j++) {
+					Point2D_F64 r = pointsRight.get(j);
+					alg.rightImageToRect.compute(r.x, r.y, rectR);
+					if( !alg.checkRectified(rectL, rectR) )
+						continue;
+					double score = scorer.score(descLeft.get(i), descRight.get(j));
+					if( score < bestScore ) {
+						bestScore = score;
+						bestIndex = j;
+					}
+				}
+				if( bestIndex < 0 )
+					continue;
+
+				AssociatedIndex m = matches.get(total++);
+				assertEquals(i, m.src);
+				assertEquals(bestIndex, m.dst);
+				assertEquals(bestScore, m.fitScore, 1e-8);
+			}
+			assertEquals(total, matches.size);
+			assertEquals(pointsLeft.size-total, alg.getUnassociatedSource().size);
+		}
+	}
+
+	private static void randomDesc( Random rand , TupleDesc_F64 desc ) {
+		for (int i = 0; i < desc.size(); i++) {
+			desc.value[i] = rand.nextInt(2);
+		}
+	}
 }
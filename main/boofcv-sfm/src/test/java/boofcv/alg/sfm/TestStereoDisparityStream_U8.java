@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm;
+
+import boofcv.alg.distort.ImageDistort;
+import boofcv.alg.feature.disparity.impl.ImplDisparityScoreSadRect_U8;
+import boofcv.alg.feature.disparity.impl.ImplSelectRectStandard_S32_U8;
+import boofcv.alg.geo.RectifyImageOps;
+import boofcv.alg.misc.ImageMiscOps;
+import boofcv.core.image.border.BorderType;
+import boofcv.struct.calib.StereoParameters;
+import boofcv.struct.image.GrayU8;
+import boofcv.struct.image.ImageType;
+import org.ejml.data.FMatrixRMaj;
+import org.ejml.ops.ConvertMatrixData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestStereoDisparityStream_U8 {
+
+	Random rand = new Random(234);
+
+	int width = 160;
+	int height = 120;
+
+	int minDisparity = 2, maxDisparity = 30;
+	int radiusX = 3, radiusY = 2;
+
+	/**
+	 * Compare against rectifying the images then computing the disparity
+	 */
+	@Test
+	public void compareToRectifyThenDisparity() {
+		StereoParameters param = TestStereoProcessingBase.createStereoParam(width,height);
+
+		GrayU8 left = new GrayU8(width,height);
+		GrayU8 right = new GrayU8(width,height);
+		ImageMiscOps.fillUniform(left,rand,0,200);
+		ImageMiscOps.fillUniform(right,rand,0,200);
+
+		StereoDisparityStream_U8<GrayU8> alg = new StereoDisparityStream_U8<>(minDisparity,maxDisparity,
+				radiusX,radiusY,new ImplSelectRectStandard_S32_U8(-1,2,0.1));
+		alg.setCalibration(param);
+
+		GrayU8 found = new GrayU8(width,height);
+		alg.process(left,right,found);
+
+		// compute the expected solution the slow way
+		FMatrixRMaj rect1 = new FMatrixRMaj(3,3);
+		FMatrixRMaj rect2 = new FMatrixRMaj(3,3);
+		ConvertMatrixData.convert(alg.getRect1(),rect1);
+		ConvertMatrixData.convert(alg.getRect2(),rect2);
+
+		ImageType<GrayU8> imageType = ImageType.single(GrayU8.class);
+		ImageDistort<GrayU8,GrayU8> distortLeft = RectifyImageOps.rectifyImage(param.left,rect1,BorderType.SKIP,imageType);
+		ImageDistort<GrayU8,GrayU8> distortRight = RectifyImageOps.rectifyImage(param.right,rect2,BorderType.SKIP,imageType);
+
+		GrayU8 rectLeft = new GrayU8(width,height);
+		GrayU8 rectRight = new GrayU8(width,height);
+		distortLeft.apply(left,rectLeft);
+		distortRight.apply(right,rectRight);
+
+		ImplDisparityScoreSadRect_U8<GrayU8> disparityAlg = new ImplDisparityScoreSadRect_U8<>(minDisparity,maxDisparity,
+				radiusX,radiusY,new ImplSelectRectStandard_S32_U8(-1,2,0.1));
+		GrayU8 expected = new GrayU8(width,height);
+		disparityAlg.process(rectLeft,rectRight,expected);
+
+		for( int y = 0; y < height; y++ ) {
+			for( int x = 0; x < width; x++ ) {
+				assertEquals(x+" "+y,expected.get(x,y),found.get(x,y));
+			}
+		}
+	}
+
+	/**
+	 * Every row with a disparity should be passed to the listener once, in order
+	 */
+	@Test
+	public void listener() {
+		StereoParameters param = TestStereoProcessingBase.createStereoParam(width,height);
+
+		GrayU8 left = new GrayU8(width,height);
+		GrayU8 right = new GrayU8(width,height);
+		ImageMiscOps.fillUniform(left,rand,0,200);
+		ImageMiscOps.fillUniform(right,rand,0,200);
+
+		StereoDisparityStream_U8<GrayU8> alg = new StereoDisparityStream_U8<>(minDisparity,maxDisparity,
+				radiusX,radiusY,new ImplSelectRectStandard_S32_U8(-1,2,0.1));
+		alg.setCalibration(param);
+
+		final GrayU8 found = new GrayU8(width,height);
+		final List<Integer> rows = new ArrayList<>();
+		alg.setListener(new StereoDisparityStream_U8.RowListener<GrayU8>() {
+			@Override
+			public void finishedRow(int row, GrayU8 disparity) {
+				assertEquals(found,disparity);
+				rows.add(row);
+			}
+		});
+
+		// process twice to make sure the internal state is reset
+		for( int trial = 0; trial < 2; trial++ ) {
+			rows.clear();
+			alg.process(left, right, found);
+
+			assertEquals(height - 2*radiusY, rows.size());
+			for( int i = 0; i < rows.size(); i++ ) {
+				assertEquals(radiusY + i, (int)rows.get(i));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void disparityTooLarge() {
+		StereoParameters param = TestStereoProcessingBase.createStereoParam(width,height);
+
+		StereoDisparityStream_U8<GrayU8> alg = new StereoDisparityStream_U8<>(0,width-2*radiusX+1,
+				radiusX,radiusY,new ImplSelectRectStandard_S32_U8(-1,2,0.1));
+		alg.setCalibration(param);
+	}
+}
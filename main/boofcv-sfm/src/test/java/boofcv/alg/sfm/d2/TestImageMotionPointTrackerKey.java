@@ -29,6 +29,7 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.*;
 
@@ -121,6 +122,121 @@ public class TestImageMotionPointTrackerKey {
 		assertEquals(computed.getX(), worldToKey.getX(), 1e-8);
 	}
 
+	/**
+	 * Tracks should be spawned by the spare tracker in the background and the trackers swapped once it's done
+	 */
+	@Test
+	public void asyncSpawn() {
+		Se2_F32 computed = new Se2_F32(4,5,6);
+		Se2_F32 model = new Se2_F32();
+		DummyTracker tracker = new DummyTracker();
+		DummyTracker spare = new DummyTracker();
+		DummyModelMatcher<Se2_F32> matcher = new DummyModelMatcher<>(computed, 5);
+
+		GrayU8 input = new GrayU8(20,30);
+
+		ImageMotionPointTrackerKey<GrayU8,Se2_F32> alg =
+				new ImageMotionPointTrackerKey<>(tracker, matcher, null, model, 1000);
+		alg.setSpareTracker(spare);
+
+		// no active tracks so it can't be done in the background
+		assertFalse(alg.process(input));
+		alg.changeKeyFrame();
+		assertEquals(1, tracker.numSpawn);
+		assertFalse(alg.isSpawnPending());
+
+		assertTrue(alg.process(input));
+		assertFalse(alg.isAsyncSpawned());
+
+		// there are active tracks now.  The keyframe should change but tracks are spawned in the background
+		alg.changeKeyFrame();
+		assertTrue(alg.isKeyFrame());
+		assertTrue(alg.isSpawnPending());
+		assertEquals(1, tracker.numSpawn);
+		assertEquals(computed.getX(), alg.getWorldToKey().getX(), 1e-8);
+
+		processUntilSwapped(alg, input);
+		assertFalse(alg.isSpawnPending());
+		assertEquals(1, spare.numSpawn);
+		assertSame(spare, alg.getTracker());
+		assertSame(tracker, alg.getSpareTracker());
+		assertEquals(1, tracker.numDropAll);
+
+		// spawned tracks have their keyframe location set
+		for( PointTrack t : spare.listSpawned ) {
+			AssociatedPairTrack p = t.getCookie();
+			assertNotNull(p);
+			assertSame(t, p.p2);
+		}
+
+		assertTrue(alg.process(input));
+		assertFalse(alg.isAsyncSpawned());
+		alg.close();
+	}
+
+	/**
+	 * Process should not wait for the spare tracker to finish spawning tracks
+	 */
+	@Test(timeout = 10000)
+	public void asyncSpawn_doesNotBlock() throws InterruptedException {
+		Se2_F32 computed = new Se2_F32(4,5,6);
+		Se2_F32 model = new Se2_F32();
+		DummyTracker tracker = new DummyTracker();
+		SlowSpawnTracker spare = new SlowSpawnTracker();
+		DummyModelMatcher<Se2_F32> matcher = new DummyModelMatcher<>(computed, 5);
+
+		GrayU8 input = new GrayU8(20,30);
+
+		ImageMotionPointTrackerKey<GrayU8,Se2_F32> alg =
+				new ImageMotionPointTrackerKey<>(tracker, matcher, null, model, 1000);
+		alg.setSpareTracker(spare);
+
+		alg.process(input);
+		alg.changeKeyFrame();
+		alg.process(input);
+		alg.changeKeyFrame();
+		assertTrue(alg.isSpawnPending());
+
+		// the spare tracker is stuck detecting features.  The current tracks should still be used
+		spare.started.await();
+		for (int i = 0; i < 5; i++) {
+			assertTrue(alg.process(input));
+			assertFalse(alg.isAsyncSpawned());
+			assertTrue(alg.isSpawnPending());
+			assertSame(tracker, alg.getTracker());
+		}
+		assertEquals(7, alg.getTotalFramesProcessed());
+
+		// let it finish and the trackers should be swapped
+		spare.release.countDown();
+		processUntilSwapped(alg, input);
+		assertSame(spare, alg.getTracker());
+
+		// new tracks shouldn't be pruned because detection took several frames
+		for( PointTrack t : spare.listSpawned ) {
+			AssociatedPairTrack p = t.getCookie();
+			assertEquals(alg.getTotalFramesProcessed(), p.lastUsed);
+		}
+		alg.close();
+	}
+
+	/**
+	 * Processes frames until the trackers are swapped
+	 */
+	private static void processUntilSwapped( ImageMotionPointTrackerKey<GrayU8,?> alg , GrayU8 input ) {
+		for (int i = 0; i < 1000; i++) {
+			alg.process(input);
+			if( alg.isAsyncSpawned() )
+				return;
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		fail("Trackers were never swapped");
+	}
+
 	/**
 	 * See if tracks are pruned after not being in inlier set for X time
 	 */
@@ -219,6 +335,25 @@ public class TestImageMotionPointTrackerKey {
 		}
 	}
 
+	/**
+	 * Blocks inside of spawnTracks() until released
+	 */
+	public static class SlowSpawnTracker extends DummyTracker {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		@Override
+		public void spawnTracks() {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			super.spawnTracks();
+		}
+	}
+
 	public static class DummyModelMatcher<T extends InvertibleTransform> implements ModelMatcher<T,AssociatedPair> {
 
 		T found;
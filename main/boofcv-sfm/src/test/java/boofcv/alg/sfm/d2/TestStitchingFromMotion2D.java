@@ -22,6 +22,7 @@ import boofcv.abst.sfm.d2.ImageMotion2D;
 import boofcv.alg.distort.ImageDistort;
 import boofcv.alg.interpolate.InterpolatePixelS;
 import boofcv.alg.interpolate.InterpolationType;
+import boofcv.alg.misc.GImageMiscOps;
 import boofcv.alg.misc.ImageMiscOps;
 import boofcv.core.image.border.BorderType;
 import boofcv.factory.distort.FactoryDistort;
@@ -29,9 +30,15 @@ import boofcv.factory.interpolate.FactoryInterpolation;
 import boofcv.struct.distort.PixelTransform2_F32;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.ImageBase;
+import boofcv.struct.image.ImageType;
+import boofcv.struct.image.TiledImage;
 import georegression.struct.affine.Affine2D_F64;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 /**
@@ -89,6 +96,58 @@ public class TestStitchingFromMotion2D {
 		assertEquals(0,found.ty,1e-5);
 	}
 
+	/**
+	 * Render into a tiled mosaic and compare against a regular stitch image.  Checks concurrent rendering
+	 * and tiles being evicted to disk
+	 */
+	@Test
+	public void tiledMosaic() throws IOException {
+		GImageMiscOps.fillUniform(image, new Random(234), 0, 200);
+
+		StitchingFromMotion2D<GrayF32,Affine2D_F64> expected = createRealStitch();
+		expected.configure(200,300,null);
+		assertTrue(expected.process(image));
+
+		for( boolean concurrent : new boolean[]{false,true}) {
+			File cacheFile = File.createTempFile("tiled",null);
+			TiledImage<GrayF32> tiled = new TiledImage<>(ImageType.single(GrayF32.class), 32);
+			tiled.setCache(2, cacheFile);
+
+			StitchingFromMotion2D<GrayF32,Affine2D_F64> alg = createRealStitch();
+			alg.setTiledMosaic(tiled, FactoryInterpolation.bilinearPixelS(GrayF32.class, BorderType.EXTENDED));
+			alg.setConcurrent(concurrent);
+			alg.configure(200,300,null);
+			assertTrue(alg.process(image));
+			assertNull(alg.getStitchedImage());
+
+			// the image is shifted so that part of it is at negative x
+			assertTrue(tiled.lookupTile(-1,0) != null);
+			assertTrue(tiled.getNumInMemory() <= tiled.getNumTiles());
+
+			// release the tiles used by the last frame.  Reading shouldn't go over the limit after that
+			tiled.markFrame();
+			GrayF32 stitched = expected.getStitchedImage();
+			for (int y = 0; y < stitched.height; y++) {
+				for (int x = 0; x < stitched.width; x++) {
+					GrayF32 tile = tiled.getTileImage(x/32, y/32);
+					float found = tile == null ? 0 : tile.get(x%32, y%32);
+					assertEquals(stitched.get(x,y), found, 1e-2f);
+					assertTrue(tiled.getNumInMemory() <= 2);
+				}
+			}
+			tiled.close();
+			assertFalse(cacheFile.exists());
+		}
+	}
+
+	private StitchingFromMotion2D<GrayF32,Affine2D_F64> createRealStitch() {
+		InterpolatePixelS<GrayF32> interp = FactoryInterpolation.bilinearPixelS(GrayF32.class, BorderType.EXTENDED);
+		ImageDistort<GrayF32,GrayF32> distort = FactoryDistort.distortSB(false, interp, GrayF32.class);
+		distort.setRenderAll(false);
+		StitchingTransform trans = FactoryStitchingTransform.createAffine_F64();
+		return new StitchingFromMotion2D<>(new HelperMotion(), distort, trans, 0.3);
+	}
+
 	/**
 	 * Checks to see if the user specified initial transformation is correctly applied
 	 */
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm.d2;
+
+import boofcv.abst.sfm.d2.ImageMotion2D;
+import boofcv.alg.misc.ImageMiscOps;
+import boofcv.factory.sfm.FactoryMotion2D;
+import boofcv.struct.image.GrayF32;
+import boofcv.struct.image.ImageType;
+import georegression.struct.affine.Affine2D_F64;
+import georegression.struct.homography.Homography2D_F64;
+import georegression.struct.point.Point2D_F64;
+import georegression.transform.homography.HomographyPointOps_F64;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestVideoStabilizationPipeline {
+
+	int width = 60, height = 40;
+
+	/**
+	 * All frames should be passed to the listener in order
+	 */
+	@Test
+	public void outputInOrder() {
+		HelperMotion motion = new HelperMotion();
+		VideoStabilizationPipeline<GrayF32,Affine2D_F64> alg = create(motion, 1, 3, 100);
+		HelperListener listener = new HelperListener();
+		alg.setListener(listener);
+
+		GrayF32 frame = new GrayF32(width,height);
+		for (int i = 0; i < 20; i++) {
+			alg.process(frame);
+			// output lags by the smoothing radius
+			assertTrue(alg.getFramesOutput() <= Math.max(0,i-2));
+		}
+		alg.finish();
+		alg.close();
+
+		assertEquals(20, alg.getFramesIn());
+		assertEquals(20, alg.getFramesOutput());
+		assertEquals(0, alg.getFramesDropped());
+		assertEquals(0, alg.getPending());
+		assertEquals(20, listener.indexes.size());
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, (int)listener.indexes.get(i));
+		}
+	}
+
+	/**
+	 * With constant motion the smoothed path is the same as the actual path, away from the ends of the sequence,
+	 * so the frames shouldn't be changed
+	 */
+	@Test
+	public void constantMotionUnchanged() {
+		HelperMotion motion = new HelperMotion();
+		motion.stepX = 1.5;
+		motion.stepY = -0.5;
+		final int radius = 2;
+		VideoStabilizationPipeline<GrayF32,Affine2D_F64> alg = create(motion, 1, radius, 100);
+		final List<Integer> checked = new ArrayList<>();
+		alg.setListener(new VideoStabilizationPipeline.Listener<GrayF32>() {
+			@Override
+			public void processedFrame(int frameIndex, GrayF32 stabilized) {
+				if( frameIndex < radius || frameIndex >= 10-radius )
+					return;
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						assertEquals(value(frameIndex,x,y), stabilized.get(x,y), 1e-3f);
+					}
+				}
+				checked.add(frameIndex);
+			}
+		});
+
+		GrayF32 frame = new GrayF32(width,height);
+		for (int i = 0; i < 10; i++) {
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					frame.set(x,y,value(i,x,y));
+				}
+			}
+			alg.process(frame);
+		}
+		alg.finish();
+		alg.close();
+
+		assertEquals(10-2*radius, checked.size());
+	}
+
+	/**
+	 * Jitter is removed.  The stabilized image is shifted back towards the average location
+	 */
+	@Test
+	public void jitterRemoved() {
+		HelperMotion motion = new HelperMotion();
+		VideoStabilizationPipeline<GrayF32,Affine2D_F64> alg = create(motion, 1, 4, 100);
+		final float[] left = new float[20];
+		final float[] right = new float[20];
+		alg.setListener(new VideoStabilizationPipeline.Listener<GrayF32>() {
+			@Override
+			public void processedFrame(int frameIndex, GrayF32 stabilized) {
+				left[frameIndex] = stabilized.get(width/2+1,height/2);
+				right[frameIndex] = stabilized.get(width/2+4,height/2);
+			}
+		});
+
+		// a vertical edge which jumps back and forth by 6 pixels
+		GrayF32 frame = new GrayF32(width,height);
+		for (int i = 0; i < 20; i++) {
+			motion.jitterX = i%2 == 0 ? 0 : 6;
+			ImageMiscOps.fill(frame,0);
+			ImageMiscOps.fillRectangle(frame,100,0,0,width/2+(int)motion.jitterX,height);
+			alg.process(frame);
+		}
+		alg.finish();
+		alg.close();
+
+		// after stabilizing the edge is always about 3 pixels to the right of the center
+		for (int i = 4; i < 16; i++) {
+			assertEquals(100, left[i], 1e-3f);
+			assertEquals(0, right[i], 1e-3f);
+		}
+	}
+
+	@Test
+	public void proxyToFull() {
+		Homography2D_F64 proxy = new Homography2D_F64(1.1,0.05,2,-0.1,0.95,-3,0.001,0.002,1);
+		Homography2D_F64 full = new Homography2D_F64();
+
+		int scale = 3;
+		VideoStabilizationPipeline.proxyToFull(proxy, scale, full);
+
+		Point2D_F64 a = new Point2D_F64(45,-12);
+		Point2D_F64 p = new Point2D_F64((a.x-1)/scale, (a.y-1)/scale);
+		Point2D_F64 found = new Point2D_F64();
+		HomographyPointOps_F64.transform(proxy, p, p);
+		HomographyPointOps_F64.transform(full, a, found);
+
+		assertEquals(p.x*scale+1, found.x, 1e-8);
+		assertEquals(p.y*scale+1, found.y, 1e-8);
+	}
+
+	/**
+	 * Motion should be estimated on the down sampled image
+	 */
+	@Test
+	public void proxyImage() {
+		HelperMotion motion = new HelperMotion();
+		VideoStabilizationPipeline<GrayF32,Affine2D_F64> alg = create(motion, 4, 0, 100);
+		HelperListener listener = new HelperListener();
+		alg.setListener(listener);
+
+		alg.process(new GrayF32(width,height));
+		alg.finish();
+		alg.close();
+
+		assertEquals(width/4, motion.inputWidth);
+		assertEquals(height/4, motion.inputHeight);
+		assertEquals(1, listener.indexes.size());
+	}
+
+	/**
+	 * When motion estimation fails it should be reset and processing should continue
+	 */
+	@Test
+	public void motionFault() {
+		HelperMotion motion = new HelperMotion();
+		motion.failAt = 5;
+		VideoStabilizationPipeline<GrayF32,Affine2D_F64> alg = create(motion, 1, 2, 100);
+		HelperListener listener = new HelperListener();
+		alg.setListener(listener);
+
+		GrayF32 frame = new GrayF32(width,height);
+		for (int i = 0; i < 10; i++) {
+			alg.process(frame);
+		}
+		assertEquals(1, alg.getMotionFaults());
+		assertEquals(1, motion.numReset);
+		alg.finish();
+		alg.close();
+
+		assertEquals(10, listener.indexes.size());
+	}
+
+	/**
+	 * If warping falls behind frames are dropped instead of being queued
+	 */
+	@Test
+	public void dropFrames() throws InterruptedException {
+		HelperMotion motion = new HelperMotion();
+		VideoStabilizationPipeline<GrayF32,Affine2D_F64> alg = create(motion, 1, 0, 1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final HelperListener listener = new HelperListener();
+		alg.setListener(new VideoStabilizationPipeline.Listener<GrayF32>() {
+			@Override
+			public void processedFrame(int frameIndex, GrayF32 stabilized) {
+				try {
+					latch.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				listener.processedFrame(frameIndex, stabilized);
+			}
+		});
+
+		GrayF32 frame = new GrayF32(width,height);
+		for (int i = 0; i < 10; i++) {
+			alg.process(frame);
+		}
+		assertEquals(9, alg.getFramesDropped());
+		latch.countDown();
+		alg.finish();
+		alg.close();
+
+		assertEquals(10, alg.getFramesIn());
+		assertEquals(1, alg.getFramesOutput());
+		assertEquals(0, (int)listener.indexes.get(0));
+	}
+
+	private VideoStabilizationPipeline<GrayF32,Affine2D_F64>
+	create( HelperMotion motion , int proxyScale , int radius , int maxPending ) {
+		return FactoryMotion2D.createVideoStabilization(motion, ImageType.single(GrayF32.class),
+				proxyScale, radius, maxPending);
+	}
+
+	private static float value( int frame , int x , int y ) {
+		return (frame*7 + x*3 + y*5)%100;
+	}
+
+	private static class HelperListener implements VideoStabilizationPipeline.Listener<GrayF32> {
+		final List<Integer> indexes = new ArrayList<>();
+
+		@Override
+		public void processedFrame(int frameIndex, GrayF32 stabilized) {
+			indexes.add(frameIndex);
+		}
+	}
+
+	/**
+	 * Moves by a constant amount each frame plus jitter
+	 */
+	private static class HelperMotion implements ImageMotion2D<GrayF32,Affine2D_F64> {
+		double stepX, stepY;
+		double jitterX;
+		int failAt = -1;
+
+		int numProcess = 0;
+		int numReset = 0;
+		int inputWidth, inputHeight;
+		int framesSinceReset = 0;
+		Affine2D_F64 found = new Affine2D_F64();
+
+		@Override
+		public boolean process(GrayF32 input) {
+			inputWidth = input.width;
+			inputHeight = input.height;
+			if( numProcess++ == failAt )
+				return false;
+			if( framesSinceReset == 0 ) {
+				found.reset();
+			} else {
+				found.set(1,0,0,1,stepX*framesSinceReset+jitterX,stepY*framesSinceReset);
+			}
+			framesSinceReset++;
+			return true;
+		}
+
+		@Override
+		public void reset() {
+			numReset++;
+			framesSinceReset = 0;
+		}
+
+		@Override
+		public void setToFirst() {}
+
+		@Override
+		public Affine2D_F64 getFirstToCurrent() {
+			return found;
+		}
+
+		@Override
+		public Class<Affine2D_F64> getTransformType() {
+			return Affine2D_F64.class;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm.d3;
+
+import boofcv.factory.geo.FactoryMultiView;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestWindowedStereoBundle {
+
+	Random rand = new Random(234);
+
+	Se3_F64 leftToRight = new Se3_F64();
+	List<Point3D_F64> worldPts = new ArrayList<>();
+
+	@Before
+	public void before() {
+		leftToRight.getT().set(-0.1, 0, 0);
+		for (int i = 0; i < 30; i++) {
+			worldPts.add(new Point3D_F64(rand.nextGaussian()*0.5, rand.nextGaussian()*0.5, 4 + rand.nextDouble()*2));
+		}
+	}
+
+	/**
+	 * Key frames with noisy poses and perfect observations should be moved to their true location
+	 */
+	@Test
+	public void perfectObservations() {
+		WindowedStereoBundle alg = create(5);
+
+		for (int i = 0; i < 4; i++) {
+			Se3_F64 estimated = truthWorldToLeft(i);
+			if( i > 0 )
+				perturb(estimated);
+			alg.addKeyFrame(createKeyFrame(alg, estimated, truthWorldToLeft(i)));
+		}
+		process(alg);
+		alg.close();
+
+		assertEquals(4, alg.getNumKeyFrames());
+		assertTrue(alg.getTotalOptimized() > 0);
+		assertEquals(0, alg.getTotalFailed());
+		for (int i = 0; i < 4; i++) {
+			checkSame(truthWorldToLeft(i), alg.getKeyFrame(i).getWorldToLeft(), 1e-4);
+		}
+		for (int i = 0; i < worldPts.size(); i++) {
+			Point3D_F64 found = alg.getPoint(i);
+			assertEquals(0, found.distance(worldPts.get(i)), 1e-4);
+		}
+	}
+
+	/**
+	 * The oldest key frames and points which are only seen by them should be discarded
+	 */
+	@Test
+	public void slidingWindow() {
+		WindowedStereoBundle alg = create(3);
+
+		Se3_F64 correction = new Se3_F64();
+		assertFalse(alg.applyResults(correction));
+
+		for (int i = 0; i < 6; i++) {
+			Se3_F64 worldToLeft = truthWorldToLeft(i);
+			WindowedStereoBundle.KeyFrame kf = createKeyFrame(alg, worldToLeft, worldToLeft);
+
+			// points which are only seen by this key frame
+			for (int j = 0; j < 2; j++) {
+				Point3D_F64 X = new Point3D_F64(j*0.2, -0.3, 5);
+				Point2D_F64 left = new Point2D_F64();
+				Point2D_F64 right = new Point2D_F64();
+				render(worldToLeft, X, left, right);
+				kf.addObservation(1000 + i*2 + j, left, right, X);
+			}
+			alg.addKeyFrame(kf);
+			process(alg);
+		}
+		alg.close();
+
+		assertEquals(3, alg.getNumKeyFrames());
+		assertEquals(3, alg.getKeyFrame(0).getId());
+		assertEquals(5, alg.getKeyFrame(2).getId());
+		assertEquals(worldPts.size() + 3*2, alg.getNumPoints());
+		assertNull(alg.getPoint(1000));
+		assertNull(alg.getPoint(1005));
+		assertNotNull(alg.getPoint(1006));
+		assertNotNull(alg.getPoint(1011));
+	}
+
+	/**
+	 * A key frame which is added while the optimization is running should keep the same pose relative to the
+	 * newest optimized key frame
+	 */
+	@Test
+	public void keyFrameAddedWhileRunning() {
+		WindowedStereoBundle alg = create(5);
+
+		Se3_F64 worldToLeft0 = truthWorldToLeft(0);
+		Se3_F64 worldToLeft1 = truthWorldToLeft(1);
+		Se3_F64 worldToLeft2 = truthWorldToLeft(2);
+		perturb(worldToLeft1);
+
+		// pose of the new key frame is estimated relative to the old key frame, so it has the same error
+		Se3_F64 oneToTwo = truthWorldToLeft(1).invert(null).concat(worldToLeft2, null);
+		Se3_F64 estimated2 = worldToLeft1.concat(oneToTwo, null);
+
+		alg.addKeyFrame(createKeyFrame(alg, worldToLeft0, worldToLeft0));
+		alg.addKeyFrame(createKeyFrame(alg, worldToLeft1, truthWorldToLeft(1)));
+		assertTrue(alg.isPending());
+		alg.addKeyFrame(createKeyFrame(alg, estimated2, worldToLeft2));
+
+		alg.waitForResults();
+		Se3_F64 correction = new Se3_F64();
+		assertTrue(alg.applyResults(correction));
+
+		checkSame(truthWorldToLeft(1), alg.getKeyFrame(1).getWorldToLeft(), 1e-4);
+		checkSame(worldToLeft2, alg.getKeyFrame(2).getWorldToLeft(), 1e-4);
+
+		// the correction should move the estimated camera to world onto the true one
+		Se3_F64 found = worldToLeft1.invert(null).concat(correction, null);
+		checkSame(truthWorldToLeft(1).invert(null), found, 1e-4);
+
+		// an optimization including the third key frame should have been started
+		assertTrue(alg.isPending());
+		process(alg);
+		alg.close();
+		checkSame(worldToLeft2, alg.getKeyFrame(2).getWorldToLeft(), 1e-4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void windowTooSmall() {
+		create(1);
+	}
+
+	private WindowedStereoBundle create( int windowSize ) {
+		WindowedStereoBundle alg = new WindowedStereoBundle(FactoryMultiView.bundleCalibrated(1e-8, 500), windowSize);
+		alg.setLeftToRight(leftToRight);
+		return alg;
+	}
+
+	/**
+	 * Applies results until all the optimizations have finished
+	 */
+	private void process( WindowedStereoBundle alg ) {
+		Se3_F64 correction = new Se3_F64();
+		while( alg.isPending() ) {
+			alg.waitForResults();
+			alg.applyResults(correction);
+		}
+	}
+
+	/**
+	 * Creates a key frame which observes all the points
+	 *
+	 * @param estimated Pose the key frame is created with
+	 * @param truth Pose the observations are rendered from
+	 */
+	private WindowedStereoBundle.KeyFrame createKeyFrame( WindowedStereoBundle alg ,
+														  Se3_F64 estimated , Se3_F64 truth ) {
+		WindowedStereoBundle.KeyFrame kf = alg.createKeyFrame(estimated);
+		assertEquals(-1, kf.getId());
+
+		Point2D_F64 left = new Point2D_F64();
+		Point2D_F64 right = new Point2D_F64();
+		for (int i = 0; i < worldPts.size(); i++) {
+			Point3D_F64 X = worldPts.get(i);
+			render(truth, X, left, right);
+			kf.addObservation(i, left, right, X);
+		}
+		assertEquals(worldPts.size(), kf.getNumObservations());
+		return kf;
+	}
+
+	/**
+	 * Pose of the left camera moving forward and to the side
+	 */
+	private Se3_F64 truthWorldToLeft( int index ) {
+		Se3_F64 leftToWorld = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ, 0.01*index, -0.02*index, 0, leftToWorld.getR());
+		leftToWorld.getT().set(0.05*index, 0.01*index, 0.2*index);
+		return leftToWorld.invert(null);
+	}
+
+	private void perturb( Se3_F64 worldToLeft ) {
+		Se3_F64 noise = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ,
+				rand.nextGaussian()*0.005, rand.nextGaussian()*0.005, rand.nextGaussian()*0.005, noise.getR());
+		noise.getT().set(rand.nextGaussian()*0.02, rand.nextGaussian()*0.02, rand.nextGaussian()*0.02);
+		Se3_F64 found = worldToLeft.concat(noise, null);
+		worldToLeft.set(found);
+	}
+
+	/**
+	 * Renders the point in normalized image coordinates for both cameras
+	 */
+	private void render( Se3_F64 worldToLeft , Point3D_F64 X , Point2D_F64 left , Point2D_F64 right ) {
+		Point3D_F64 cameraL = SePointOps_F64.transform(worldToLeft, X, null);
+		Point3D_F64 cameraR = SePointOps_F64.transform(leftToRight, cameraL, null);
+		left.set(cameraL.x/cameraL.z, cameraL.y/cameraL.z);
+		right.set(cameraR.x/cameraR.z, cameraR.y/cameraR.z);
+	}
+
+	private static void checkSame( Se3_F64 expected , Se3_F64 found , double tol ) {
+		assertTrue(MatrixFeatures_DDRM.isIdentical(expected.getR(), found.getR(), tol));
+		assertEquals(0, expected.getT().distance(found.getT()), tol);
+	}
+}
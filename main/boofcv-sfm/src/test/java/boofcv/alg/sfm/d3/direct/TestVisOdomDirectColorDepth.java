@@ -18,6 +18,7 @@
 
 package boofcv.alg.sfm.d3.direct;
 
+import boofcv.abst.sfm.ImagePixelTo3D;
 import boofcv.alg.misc.GImageMiscOps;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.Planar;
@@ -25,12 +26,12 @@ import georegression.geometry.ConvertRotation3D_F32;
 import georegression.misc.GrlConstants;
 import georegression.struct.se.Se3_F32;
 import georegression.struct.so.Rodrigues_F32;
+import org.ejml.data.DMatrixRMaj;
 import org.junit.Test;
 
 import java.util.Random;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author Peter Abeles
@@ -85,6 +86,122 @@ public class TestVisOdomDirectColorDepth {
 		assertTrue( 1.5f*Math.abs(a.T.x) < Math.abs(d.T.x) );
 	}
 
+	/**
+	 * The linear system should be the same when computed using one or more threads and span several blocks
+	 */
+	@Test
+	public void constructLinearSystem_concurrent() {
+		Planar<GrayF32> input = new Planar<>(GrayF32.class,width,height,numBands);
+		GImageMiscOps.fillUniform(input, rand, 0, 100);
+
+		VisOdomDirectColorDepth<GrayF32,GrayF32> alg = new VisOdomDirectColorDepth<>(numBands,imageType,imageType);
+		alg.setCameraParameters(fx,fy,cx,cy,width,height);
+		alg.initMotion(input);
+		addRandomPixels(alg, VisOdomDirectColorDepth.BLOCK_SIZE*5+17);
+
+		Se3_F32 g = new Se3_F32();
+		g.T.set(0.01f,-0.02f,0.005f);
+
+		alg.constructLinearSystem(input, g);
+		DMatrixRMaj expectedJTJ = alg.JTJ.copy();
+		DMatrixRMaj expectedJTr = alg.JTr.copy();
+		float expectedError = alg.getErrorOptical();
+		int expectedInbounds = alg.getInboundsPixels();
+
+		alg.setConcurrent(true);
+		alg.constructLinearSystem(input, g);
+
+		assertEquals(expectedInbounds, alg.getInboundsPixels());
+		assertEquals(expectedError, alg.getErrorOptical(), 0f);
+		for (int i = 0; i < 36; i++) {
+			assertEquals(expectedJTJ.data[i], alg.JTJ.data[i], 0);
+		}
+		for (int i = 0; i < 6; i++) {
+			assertEquals(expectedJTr.data[i], alg.JTr.data[i], 0);
+		}
+	}
+
+	/**
+	 * Only pixels with a large enough gradient should be selected and no more than the maximum in each cell
+	 */
+	@Test
+	public void setKeyFrame_pixelSelection() {
+		// vertical edge in the middle of the image
+		Planar<GrayF32> input = new Planar<>(GrayF32.class,width,height,numBands);
+		GImageMiscOps.fillRectangle(input, 100, width/2, 0, width/2, height);
+
+		VisOdomDirectColorDepth<GrayF32,GrayF32> alg = new VisOdomDirectColorDepth<>(numBands,imageType,imageType);
+		alg.setCameraParameters(fx,fy,cx,cy,width,height);
+
+		// all pixels
+		alg.setKeyFrame(input, new ConstantDepth());
+		assertEquals(width*height, alg.getKeyframePixels());
+
+		// only the edge
+		alg.setPixelSelection(10, 16, 0);
+		alg.setKeyFrame(input, new ConstantDepth());
+		assertTrue(alg.getKeyframePixels() > 0);
+		for (int i = 0; i < alg.keypixels.size; i++) {
+			VisOdomDirectColorDepth.Pixel p = alg.keypixels.get(i);
+			assertTrue(Math.abs(p.x - width/2) <= 1);
+		}
+		int edgePixels = alg.getKeyframePixels();
+
+		// limit the number of pixels in each cell
+		alg.setPixelSelection(10, 16, 4);
+		alg.setKeyFrame(input, new ConstantDepth());
+		int cellsOnEdge = (height+15)/16;
+		assertTrue(alg.getKeyframePixels() < edgePixels);
+		assertTrue(alg.getKeyframePixels() <= cellsOnEdge*4*2);
+		for (int i = 0; i < alg.keypixels.size; i++) {
+			VisOdomDirectColorDepth.Pixel p = alg.keypixels.get(i);
+			assertTrue(Math.abs(p.x - width/2) <= 1);
+		}
+	}
+
+	private void addRandomPixels( VisOdomDirectColorDepth<GrayF32,GrayF32> alg , int total ) {
+		for (int i = 0; i < total; i++) {
+			VisOdomDirectColorDepth.Pixel p = alg.keypixels.grow();
+
+			for (int band = 0; band < numBands; band++) {
+				p.bands[band] = rand.nextFloat()*100;
+			}
+			p.x = rand.nextInt(width);
+			p.y = rand.nextInt(height);
+
+			float z = 1 + rand.nextFloat()*2;
+			p.p3.x = z*(p.x-cx)/fx;
+			p.p3.y = z*(p.y-cy)/fy;
+			p.p3.z = z;
+		}
+	}
+
+	/**
+	 * Every pixel is at the same depth
+	 */
+	private class ConstantDepth implements ImagePixelTo3D {
+		double x,y;
+
+		@Override
+		public boolean process(double x, double y) {
+			this.x = x;
+			this.y = y;
+			return true;
+		}
+
+		@Override
+		public double getX() { return 2*(x-cx)/fx; }
+
+		@Override
+		public double getY() { return 2*(y-cy)/fy; }
+
+		@Override
+		public double getZ() { return 2; }
+
+		@Override
+		public double getW() { return 1; }
+	}
+
 	public Se3_F32 computeMotion( float colorBefore , float colorAfter , float dx , float dy ) {
 		VisOdomDirectColorDepth<GrayF32,GrayF32> alg = new VisOdomDirectColorDepth<>(numBands,imageType,imageType);
 		alg.setCameraParameters(fx,fy,cx,cy,width,height);
@@ -19,16 +19,20 @@
 package boofcv.alg.sfm.overhead;
 
 import boofcv.alg.interpolate.InterpolationType;
+import boofcv.alg.misc.GImageMiscOps;
 import boofcv.alg.misc.ImageMiscOps;
 import boofcv.struct.calib.CameraPinholeRadial;
 import boofcv.struct.image.GrayF32;
 import boofcv.struct.image.Planar;
+import boofcv.testing.BoofTesting;
 import georegression.geometry.ConvertRotation3D_F64;
 import georegression.metric.UtilAngle;
 import georegression.struct.EulerType;
 import georegression.struct.se.Se3_F64;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -81,4 +85,29 @@ public class TestCreateSyntheticOverheadViewPL {
 		}
 	}
 
+	@Test
+	public void concurrent() {
+		Se3_F64 cameraToPlane = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ,UtilAngle.degreeToRadian(5), 0, 0, cameraToPlane.getR());
+		cameraToPlane.getT().set(0,-5,0);
+
+		Se3_F64 planeToCamera = cameraToPlane.invert(null);
+
+		CreateSyntheticOverheadViewPL<GrayF32> alg =
+				new CreateSyntheticOverheadViewPL<>(InterpolationType.BILINEAR,3,GrayF32.class);
+
+		alg.configure(param,planeToCamera,centerX,centerY,cellSize,overheadW,overheadH);
+
+		Planar<GrayF32> input = new Planar<>(GrayF32.class,width,height,3);
+		GImageMiscOps.fillUniform(input, new Random(234), 0, 200);
+
+		Planar<GrayF32> expected = new Planar<>(GrayF32.class,overheadW,overheadH,3);
+		Planar<GrayF32> found = new Planar<>(GrayF32.class,overheadW,overheadH,3);
+
+		alg.process(input,expected);
+		alg.setConcurrent(true);
+		alg.process(input,found);
+
+		BoofTesting.assertEquals(expected,found,1e-8);
+	}
 }
@@ -19,17 +19,22 @@
 package boofcv.alg.sfm.overhead;
 
 import boofcv.alg.interpolate.InterpolatePixelS;
+import boofcv.alg.misc.GImageMiscOps;
 import boofcv.alg.misc.ImageMiscOps;
 import boofcv.core.image.border.BorderType;
 import boofcv.factory.interpolate.FactoryInterpolation;
 import boofcv.struct.calib.CameraPinholeRadial;
 import boofcv.struct.image.GrayF32;
+import boofcv.testing.BoofTesting;
 import georegression.geometry.ConvertRotation3D_F64;
 import georegression.metric.UtilAngle;
 import georegression.struct.EulerType;
+import georegression.struct.point.Point2D_F32;
 import georegression.struct.se.Se3_F64;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -77,4 +82,46 @@ public class TestCreateSyntheticOverheadViewS {
 		assertEquals(10,output.get(499,300),1e-8);
 	}
 
+	/**
+	 * Compare every pixel against sampling the input image directly and see if the concurrent output is the same
+	 */
+	@Test
+	public void compareToMapping() {
+		Se3_F64 cameraToPlane = new Se3_F64();
+		ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ,UtilAngle.degreeToRadian(5), 0, 0, cameraToPlane.getR());
+		cameraToPlane.getT().set(0,-5,0);
+
+		Se3_F64 planeToCamera = cameraToPlane.invert(null);
+
+		InterpolatePixelS<GrayF32> interp = FactoryInterpolation.bilinearPixelS(GrayF32.class, BorderType.EXTENDED);
+		CreateSyntheticOverheadViewS<GrayF32> alg = new CreateSyntheticOverheadViewS<>(interp.copy());
+
+		alg.configure(param,planeToCamera,centerX,centerY,cellSize,overheadW,overheadH);
+
+		GrayF32 input = new GrayF32(width,height);
+		GImageMiscOps.fillUniform(input, new Random(234), 0, 200);
+		interp.setImage(input);
+
+		GrayF32 output = new GrayF32(overheadW,overheadH);
+		alg.process(input,output);
+
+		int visible = 0;
+		for (int y = 0; y < overheadH; y++) {
+			for (int x = 0; x < overheadW; x++) {
+				Point2D_F32 p = alg.getOverheadToPixel(x,y);
+				if( p == null ) {
+					assertEquals(0,output.get(x,y),1e-8);
+				} else {
+					visible++;
+					assertEquals(interp.get(p.x,p.y),output.get(x,y),1e-8);
+				}
+			}
+		}
+		assertEquals(visible, alg.getNumberVisible());
+
+		GrayF32 found = new GrayF32(overheadW,overheadH);
+		alg.setConcurrent(true);
+		alg.process(input,found);
+		BoofTesting.assertEquals(output,found,1e-8);
+	}
 }
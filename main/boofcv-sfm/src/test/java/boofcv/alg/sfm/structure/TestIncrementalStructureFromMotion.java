@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2011-2017, Peter Abeles. All Rights Reserved.
+ *
+ * This file is part of BoofCV (http://boofcv.org).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package boofcv.alg.sfm.structure;
+
+import boofcv.abst.feature.associate.AssociateDescription;
+import boofcv.factory.feature.associate.FactoryAssociation;
+import boofcv.factory.geo.ConfigEssential;
+import boofcv.factory.geo.ConfigRansac;
+import boofcv.factory.geo.FactoryMultiView;
+import boofcv.factory.geo.FactoryMultiViewRobust;
+import boofcv.factory.sfm.ConfigIncrementalSfm;
+import boofcv.factory.sfm.FactorySfmMisc;
+import boofcv.struct.calib.CameraPinholeRadial;
+import boofcv.struct.feature.TupleDesc_F64;
+import boofcv.struct.geo.AssociatedPair;
+import boofcv.struct.geo.Point2D3D;
+import georegression.geometry.ConvertRotation3D_F64;
+import georegression.struct.EulerType;
+import georegression.struct.point.Point2D_F64;
+import georegression.struct.point.Point3D_F64;
+import georegression.struct.se.Se3_F64;
+import georegression.transform.se.SePointOps_F64;
+import org.ddogleg.fitting.modelset.ModelMatcher;
+import org.ddogleg.struct.FastQueue;
+import org.ddogleg.struct.GrowQueue_I32;
+import org.ejml.UtilEjml;
+import org.ejml.dense.row.MatrixFeatures_DDRM;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Peter Abeles
+ */
+public class TestIncrementalStructureFromMotion {
+
+	Random rand = new Random(234);
+
+	int width = 640, height = 480;
+	CameraPinholeRadial intrinsic = new CameraPinholeRadial(400,410,0,width/2,height/2,width,height).fsetRadial(0,0);
+
+	// the scene
+	List<Point3D_F64> cloud = new ArrayList<>();
+	List<Se3_F64> worldToViews = new ArrayList<>();
+	// which point each feature in each view came from
+	List<GrowQueue_I32> featureToPoint = new ArrayList<>();
+
+	@Before
+	public void init() {
+		for( int i = 0; i < 400; i++ ) {
+			double x = rand.nextDouble()*4-2;
+			double y = rand.nextDouble()*3-1.5;
+			double z = rand.nextDouble()*4+4;
+			cloud.add( new Point3D_F64(x,y,z));
+		}
+
+		// camera moves sideways while slowly turning
+		for( int i = 0; i < 8; i++ ) {
+			Se3_F64 worldToView = new Se3_F64();
+			ConvertRotation3D_F64.eulerToMatrix(EulerType.XYZ,0,0.02*i,0,worldToView.R);
+			Point3D_F64 center = new Point3D_F64(0.3*i,0.02*i,0);
+			SePointOps_F64.transform(worldToView,center,center);
+			worldToView.T.set(-center.x,-center.y,-center.z);
+			worldToViews.add(worldToView);
+		}
+	}
+
+	@Test
+	public void simulatedSequence() {
+		checkSequence(false);
+	}
+
+	@Test
+	public void simulatedSequence_concurrent() {
+		checkSequence(true);
+	}
+
+	/**
+	 * Matching pairs concurrently should produce exactly the same reconstruction
+	 */
+	@Test
+	public void concurrentIsIdentical() {
+		IncrementalStructureFromMotion<TupleDesc_F64> single = processSequence(false);
+		IncrementalStructureFromMotion<TupleDesc_F64> concurrent = processSequence(true);
+
+		assertEquals(single.getRegistered().size, concurrent.getRegistered().size);
+		for( int i = 0; i < single.getViews().size(); i++ ) {
+			Se3_F64 a = single.getViews().get(i).worldToView;
+			Se3_F64 b = concurrent.getViews().get(i).worldToView;
+			assertTrue(MatrixFeatures_DDRM.isIdentical(a.R, b.R, 0));
+			assertEquals(a.T.x, b.T.x, 0);
+			assertEquals(a.T.y, b.T.y, 0);
+			assertEquals(a.T.z, b.T.z, 0);
+		}
+
+		assertEquals(single.getTracks().size(), concurrent.getTracks().size());
+		for( int i = 0; i < single.getTracks().size(); i++ ) {
+			IncrementalStructureFromMotion.Track a = single.getTracks().get(i);
+			IncrementalStructureFromMotion.Track b = concurrent.getTracks().get(i);
+			assertEquals(a.triangulated, b.triangulated);
+			assertEquals(0, a.location.distance(b.location), 0);
+		}
+	}
+
+	/**
+	 * A view without any tracks when it leaves the match window can never be registered and should be dropped
+	 */
+	@Test
+	public void dropViewsWithoutTracks() {
+		IncrementalStructureFromMotion<TupleDesc_F64> alg = processSequence(false);
+
+		// descriptions which don't match anything
+		FastQueue<Point2D_F64> pixels = new FastQueue<>(Point2D_F64.class,true);
+		FastQueue<TupleDesc_F64> descs = new FastQueue<>(TupleDesc_F64.class,false);
+		for( int i = 0; i < 50; i++ ) {
+			pixels.grow().set(rand.nextDouble()*width, rand.nextDouble()*height);
+			TupleDesc_F64 desc = new TupleDesc_F64(3);
+			desc.value[0] = 100 + i;
+			descs.add(desc);
+		}
+
+		int N = alg.getViews().size();
+		alg.addView(pixels,descs);
+		assertEquals(1, alg.getUnregistered().size());
+
+		// it's still inside the window
+		for( int i = 0; i < alg.getMatchWindow()-1; i++ ) {
+			alg.addView(new FastQueue<>(Point2D_F64.class,true), new FastQueue<>(TupleDesc_F64.class,false));
+			assertTrue(alg.getUnregistered().contains(alg.getViews().get(N)));
+		}
+		// it has now left the window
+		alg.addView(new FastQueue<>(Point2D_F64.class,true), new FastQueue<>(TupleDesc_F64.class,false));
+		assertFalse(alg.getUnregistered().contains(alg.getViews().get(N)));
+		assertTrue(alg.getUnregistered().contains(alg.getViews().get(N+1)));
+	}
+
+	private void checkSequence( boolean concurrent ) {
+		IncrementalStructureFromMotion<TupleDesc_F64> alg = processSequence(concurrent);
+
+		assertEquals(worldToViews.size(), alg.getRegistered().size);
+
+		// descriptions are discarded once a view leaves the window
+		List<IncrementalStructureFromMotion.View<TupleDesc_F64>> views = alg.getViews();
+		assertNull(views.get(0).descriptions);
+		assertNotNull(views.get(views.size()-1).descriptions);
+
+		// the first view defines the world frame and the first baseline has a length of one
+		assertTrue(MatrixFeatures_DDRM.isIdentity(views.get(0).worldToView.R, UtilEjml.TEST_F64));
+		assertEquals(0, views.get(0).worldToView.T.norm(), UtilEjml.TEST_F64);
+		double scale = worldToViews.get(1).T.norm()/views.get(1).worldToView.T.norm();
+
+		for( int i = 0; i < views.size(); i++ ) {
+			Se3_F64 expected = worldToViews.get(i);
+			Se3_F64 found = views.get(i).worldToView;
+
+			assertTrue(MatrixFeatures_DDRM.isIdentical(expected.R, found.R, 1e-4));
+			assertEquals(expected.T.x, found.T.x*scale, 1e-3);
+			assertEquals(expected.T.y, found.T.y*scale, 1e-3);
+			assertEquals(expected.T.z, found.T.z*scale, 1e-3);
+		}
+
+		int total = 0;
+		FastQueue<IncrementalStructureFromMotion.Track> tracks = alg.getTracks();
+		for( int i = 0; i < tracks.size(); i++ ) {
+			IncrementalStructureFromMotion.Track t = tracks.get(i);
+			if( !t.triangulated )
+				continue;
+			total++;
+
+			// every observation of a track must be the same point
+			int pointIndex = featureToPoint.get(t.views.get(0)).get(t.features.get(0));
+			for( int j = 1; j < t.views.size; j++ ) {
+				assertEquals(pointIndex, featureToPoint.get(t.views.get(j)).get(t.features.get(j)));
+			}
+
+			Point3D_F64 expected = cloud.get(pointIndex);
+			assertEquals(expected.x, t.location.x*scale, 1e-3);
+			assertEquals(expected.y, t.location.y*scale, 1e-3);
+			assertEquals(expected.z, t.location.z*scale, 1e-3);
+		}
+		assertTrue(total > cloud.size()/2);
+	}
+
+	private IncrementalStructureFromMotion<TupleDesc_F64> processSequence( boolean concurrent ) {
+		ConfigIncrementalSfm config = new ConfigIncrementalSfm(intrinsic);
+		config.associateMaxError = 1e-8;
+		config.minBootstrapAngle = 0.02;
+		config.matchWindow = 3;
+		config.localBundleViews = 3;
+		config.globalBundlePeriod = 4;
+		config.concurrent = concurrent;
+
+		IncrementalStructureFromMotion<TupleDesc_F64> alg =
+				FactorySfmMisc.incrementalSfm(config,TupleDesc_F64.class);
+
+		FastQueue<Point2D_F64> pixels = new FastQueue<>(Point2D_F64.class,true);
+		FastQueue<TupleDesc_F64> descs = new FastQueue<>(TupleDesc_F64.class,false);
+		for( Se3_F64 worldToView : worldToViews ) {
+			render(worldToView,pixels,descs);
+			alg.addView(pixels,descs);
+		}
+		return alg;
+	}
+
+	/**
+	 * PnP always fails.  A view should only be tried again if it observes more triangulated tracks and never
+	 * more than maxRegisterAttempts times, instead of every time a view is added.
+	 */
+	@Test
+	public void registerFailuresAreBounded() {
+		FailingPnP pnp = new FailingPnP();
+		IncrementalStructureFromMotion<TupleDesc_F64> alg = new IncrementalStructureFromMotion<>(intrinsic,
+				new IncrementalStructureFromMotion.PairMatcherFactory<TupleDesc_F64>() {
+					@Override
+					public AssociateDescription<TupleDesc_F64> createAssociate() {
+						return FactoryAssociation.greedy(
+								FactoryAssociation.defaultScore(TupleDesc_F64.class), 1e-8, true);
+					}
+
+					@Override
+					public ModelMatcher<Se3_F64, AssociatedPair> createEpipolar() {
+						return FactoryMultiViewRobust.essentialRansac(
+								new ConfigEssential(intrinsic), new ConfigRansac(200, 1.0));
+					}
+				}, pnp, FactoryMultiView.triangulateNDLT(), FactoryMultiView.bundleCalibrated(1e-6, 20),
+				TupleDesc_F64.class);
+		alg.setMinBootstrapAngle(0.02);
+		alg.setMatchWindow(3);
+		alg.setMaxRegisterAttempts(2);
+
+		FastQueue<Point2D_F64> pixels = new FastQueue<>(Point2D_F64.class,true);
+		FastQueue<TupleDesc_F64> descs = new FastQueue<>(TupleDesc_F64.class,false);
+		for( Se3_F64 worldToView : worldToViews ) {
+			render(worldToView,pixels,descs);
+			alg.addView(pixels,descs);
+		}
+
+		// only the bootstrap pair is registered
+		assertEquals(2, alg.getRegistered().size);
+		int numFailed = worldToViews.size()-2;
+		assertTrue(pnp.calls >= numFailed);
+		assertTrue(pnp.calls <= numFailed*2);
+	}
+
+	private static class FailingPnP implements ModelMatcher<Se3_F64,Point2D3D> {
+		int calls;
+
+		@Override
+		public boolean process(List<Point2D3D> dataSet) {
+			calls++;
+			return false;
+		}
+
+		@Override
+		public Se3_F64 getModelParameters() {return null;}
+
+		@Override
+		public List<Point2D3D> getMatchSet() {return null;}
+
+		@Override
+		public int getInputIndex(int matchIndex) {return 0;}
+
+		@Override
+		public double getFitQuality() {return 0;}
+
+		@Override
+		public int getMinimumSize() {return 4;}
+
+		@Override
+		public Class<Point2D3D> getPointType() {
+			return Point2D3D.class;
+		}
+
+		@Override
+		public Class<Se3_F64> getModelType() {
+			return Se3_F64.class;
+		}
+	}
+
+	/**
+	 * Renders the visible points.  The description of a feature is its 3D location, making association trivial.
+	 */
+	private void render( Se3_F64 worldToView , FastQueue<Point2D_F64> pixels , FastQueue<TupleDesc_F64> descs ) {
+		pixels.reset();
+		descs.reset();
+		GrowQueue_I32 points = new GrowQueue_I32();
+		featureToPoint.add(points);
+
+		Point3D_F64 X = new Point3D_F64();
+		for( int i = 0; i < cloud.size(); i++ ) {
+			Point3D_F64 p = cloud.get(i);
+			SePointOps_F64.transform(worldToView,p,X);
+			if( X.z <= 0 )
+				continue;
+
+			double x = intrinsic.fx*X.x/X.z + intrinsic.cx;
+			double y = intrinsic.fy*X.y/X.z + intrinsic.cy;
+			if( x < 0 || y < 0 || x >= width || y >= height )
+				continue;
+
+			pixels.grow().set(x,y);
+			TupleDesc_F64 desc = new TupleDesc_F64(3);
+			desc.value[0] = p.x;
+			desc.value[1] = p.y;
+			desc.value[2] = p.z;
+			descs.add(desc);
+			points.add(i);
+		}
+	}
+}